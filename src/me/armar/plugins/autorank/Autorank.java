@@ -1,5 +1,6 @@
 package me.armar.plugins.autorank;
 
+import java.io.File;
 import java.util.HashMap;
 import java.util.Map.Entry;
 
@@ -18,11 +19,18 @@ import me.armar.plugins.autorank.config.SettingsConfig;
 import me.armar.plugins.autorank.converter.DataConverter;
 import me.armar.plugins.autorank.data.flatfile.FlatFileManager;
 import me.armar.plugins.autorank.data.mysql.MySQLManager;
+import me.armar.plugins.autorank.data.sqlite.SQLiteDatabase;
+import me.armar.plugins.autorank.data.storage.FlatFileStorageProvider;
+import me.armar.plugins.autorank.data.storage.MemoryStorageProvider;
+import me.armar.plugins.autorank.data.storage.MySQLStorageProvider;
+import me.armar.plugins.autorank.data.storage.StorageProvider;
 import me.armar.plugins.autorank.debugger.Debugger;
 import me.armar.plugins.autorank.hooks.DependencyManager;
 import me.armar.plugins.autorank.language.LanguageHandler;
 import me.armar.plugins.autorank.leaderboard.LeaderboardHandler;
+import me.armar.plugins.autorank.listeners.EssentialsAFKListener;
 import me.armar.plugins.autorank.listeners.PlayerJoinListener;
+import me.armar.plugins.autorank.listeners.PlayerQuitListener;
 import me.armar.plugins.autorank.pathbuilder.PathManager;
 import me.armar.plugins.autorank.pathbuilder.builders.RequirementBuilder;
 import me.armar.plugins.autorank.pathbuilder.builders.ResultBuilder;
@@ -62,6 +70,7 @@ import me.armar.plugins.autorank.pathbuilder.requirement.PermissionRequirement;
 import me.armar.plugins.autorank.pathbuilder.requirement.PlayerKillsRequirement;
 import me.armar.plugins.autorank.pathbuilder.requirement.RPGMeCombatLevelRequirement;
 import me.armar.plugins.autorank.pathbuilder.requirement.RPGMeSkillLevelRequirement;
+import me.armar.plugins.autorank.pathbuilder.requirement.RecentTimeRequirement;
 import me.armar.plugins.autorank.pathbuilder.requirement.Requirement;
 import me.armar.plugins.autorank.pathbuilder.requirement.TimeRequirement;
 import me.armar.plugins.autorank.pathbuilder.requirement.TimesShearedRequirement;
@@ -83,7 +92,9 @@ import me.armar.plugins.autorank.statsmanager.StatsPlugin;
 import me.armar.plugins.autorank.statsmanager.handlers.FallbackHandler;
 import me.armar.plugins.autorank.updater.UpdateHandler;
 import me.armar.plugins.autorank.updater.Updater;
+import me.armar.plugins.autorank.util.AutorankExecutors;
 import me.armar.plugins.autorank.util.AutorankTools;
+import me.armar.plugins.autorank.util.MainThreadExecutor;
 import me.armar.plugins.autorank.util.uuid.storage.UUIDStorage;
 import me.armar.plugins.autorank.validations.ValidateHandler;
 import me.armar.plugins.autorank.warningmanager.WarningManager;
@@ -125,10 +136,15 @@ public class Autorank extends JavaPlugin {
     private PlayerChecker playerChecker;
     private PlaytimeManager playtimes;
     private DataConverter dataConverter;
+    private MainThreadExecutor mainThreadExecutor;
+    private AutorankExecutors executors;
 
     // Data connection
     private MySQLManager mysqlManager;
     private FlatFileManager flatFileManager;
+    private SQLiteDatabase sqliteDatabase;
+    private StorageProvider localStorageProvider;
+    private StorageProvider globalStorageProvider;
 
     // UUID storage
     private UUIDStorage uuidStorage;
@@ -162,8 +178,18 @@ public class Autorank extends JavaPlugin {
         // plugin which causes duplicate tasks to run.
         getServer().getScheduler().cancelTasks(this);
 
+        // Finish work on other threads: player checks first, then database
+        // queries and then files
+        this.getExecutors().shutdown();
+
+        // Perform results that are still waiting
+        this.getMainThreadExecutor().runAll();
+
         // ------------- Save files and databases -------------
 
+        // Add the time of players that are still online
+        this.getPlaytimes().getSessionTracker().endAllSessions();
+
         this.getFlatFileManager().saveFiles();
 
         getUUIDStorage().saveAllFiles();
@@ -174,6 +200,11 @@ public class Autorank extends JavaPlugin {
         // Save playerdata.yml
         this.getPlayerDataConfig().saveConfig();
 
+        // Close local database
+        if (this.getSQLiteDatabase() != null) {
+            this.getSQLiteDatabase().close();
+        }
+
         // ------------- Say bye-bye -------------
 
         getLogger().info(String.format("Autorank %s has been disabled!", getDescription().getVersion()));
@@ -199,6 +230,22 @@ public class Autorank extends JavaPlugin {
         this.getPathsConfig().createNewFile();
         this.getSettingsConfig().createNewFile();
         this.getInternalPropertiesConfig().loadFile();
+
+        // Create thread pools for work that is not done on the main thread
+        setExecutors(new AutorankExecutors(this));
+
+        // Open local database (before the data that is stored in it is loaded)
+        if (this.getSettingsConfig().useLocalDatabase()) {
+            final SQLiteDatabase database = new SQLiteDatabase(this,
+                    new File(this.getDataFolder(), "/data/Autorank.db"));
+
+            if (database.connect()) {
+                setSQLiteDatabase(database);
+            } else {
+                getLogger().warning("Could not open the local database, the YAML files will be used instead!");
+            }
+        }
+
         this.getPlayerDataConfig().createNewFile();
 
         // ------------- Initialize managers -------------
@@ -215,6 +262,20 @@ public class Autorank extends JavaPlugin {
         // Create FlatFile Manager
         setFlatFileManager(new FlatFileManager(this));
 
+        // Create storage providers for local and global time
+        if (getSettingsConfig().getLocalStorage().equals("memory")) {
+            getLogger().warning("Local play time is only kept in memory and is lost when the server stops!");
+            setLocalStorageProvider(new MemoryStorageProvider(this));
+        } else {
+            if (!getSettingsConfig().getLocalStorage().equals("flatfile")) {
+                getLogger().warning("Unknown local storage '" + getSettingsConfig().getLocalStorage()
+                        + "', using flatfile instead.");
+            }
+
+            setLocalStorageProvider(new FlatFileStorageProvider(this));
+        }
+        setGlobalStorageProvider(new MySQLStorageProvider(this));
+
         // Load AutorankDependency manager
         setDependencyManager(new DependencyManager(this));
 
@@ -251,6 +312,10 @@ public class Autorank extends JavaPlugin {
 
         // ------------- Initialize others -------------
 
+        // Create executor that performs results on the main thread
+        setMainThreadExecutor(new MainThreadExecutor(this));
+        getMainThreadExecutor().start();
+
         // Create playtime class
         setPlaytimes(new PlaytimeManager(this));
 
@@ -281,6 +346,7 @@ public class Autorank extends JavaPlugin {
 
         // Register listeners
         getServer().getPluginManager().registerEvents(new PlayerJoinListener(this), this);
+        getServer().getPluginManager().registerEvents(new PlayerQuitListener(this), this);
 
         // ------------- Schedule tasks -------------
 
@@ -299,6 +365,12 @@ public class Autorank extends JavaPlugin {
                     getLogger().severe("Could not hook into a AutorankDependency: \nCause: " + t.getMessage());
                 }
 
+                // Stop counting time as soon as a player goes AFK
+                if (getServer().getPluginManager().getPlugin("Essentials") != null) {
+                    getServer().getPluginManager().registerEvents(new EssentialsAFKListener(Autorank.this),
+                            Autorank.this);
+                }
+
                 // After dependencies, load paths
                 // Initialize paths
                 getPathManager().initialiseFromConfigs();
@@ -331,10 +403,8 @@ public class Autorank extends JavaPlugin {
                 
                 if (!getInternalPropertiesConfig().isConvertedToNewFormat()) return;
                 
-                // Remove old entries
-                int removed = getFlatFileManager().removeOldEntries();
-
-                getLogger().info("Removed " + removed + " old data entries from database!");
+                // Remove old entries, one slice at a time
+                getFlatFileManager().removeOldEntries();
             }
         }, 0, (long) AutorankTools.TICKS_PER_MINUTE*60*24);
 
@@ -417,6 +487,7 @@ public class Autorank extends JavaPlugin {
         req.registerRequirement("players killed", PlayerKillsRequirement.class);
         req.registerRequirement("global time", GlobalTimeRequirement.class);
         req.registerRequirement("total time", TotalTimeRequirement.class);
+        req.registerRequirement("recent time", RecentTimeRequirement.class);
         req.registerRequirement("world", WorldRequirement.class);
         req.registerRequirement("worldguard region", WorldGuardRegionRequirement.class);
         req.registerRequirement("mcmmo skill level", McMMOSkillLevelRequirement.class);
@@ -726,6 +797,33 @@ public class Autorank extends JavaPlugin {
         this.mysqlManager = mysqlManager;
     }
 
+    /**
+     * Get the thread pools that run tasks on other threads than the main
+     * thread.
+     * 
+     * @return the thread pools of Autorank.
+     */
+    public AutorankExecutors getExecutors() {
+        return executors;
+    }
+
+    public void setExecutors(AutorankExecutors executors) {
+        this.executors = executors;
+    }
+
+    /**
+     * Get the executor that runs tasks (such as results) on the main thread.
+     * 
+     * @return the main thread executor.
+     */
+    public MainThreadExecutor getMainThreadExecutor() {
+        return mainThreadExecutor;
+    }
+
+    public void setMainThreadExecutor(MainThreadExecutor mainThreadExecutor) {
+        this.mainThreadExecutor = mainThreadExecutor;
+    }
+
     public FlatFileManager getFlatFileManager() {
         return flatFileManager;
     }
@@ -734,6 +832,45 @@ public class Autorank extends JavaPlugin {
         this.flatFileManager = flatFileManager;
     }
 
+    /**
+     * Get the local database.
+     * 
+     * @return the local database or null if the YAML files are used instead.
+     */
+    public SQLiteDatabase getSQLiteDatabase() {
+        return sqliteDatabase;
+    }
+
+    public void setSQLiteDatabase(SQLiteDatabase sqliteDatabase) {
+        this.sqliteDatabase = sqliteDatabase;
+    }
+
+    /**
+     * Get the storage provider that stores the play time on this server.
+     * 
+     * @return the local storage provider.
+     */
+    public StorageProvider getLocalStorageProvider() {
+        return localStorageProvider;
+    }
+
+    public void setLocalStorageProvider(StorageProvider localStorageProvider) {
+        this.localStorageProvider = localStorageProvider;
+    }
+
+    /**
+     * Get the storage provider that stores the play time across all servers.
+     * 
+     * @return the global storage provider.
+     */
+    public StorageProvider getGlobalStorageProvider() {
+        return globalStorageProvider;
+    }
+
+    public void setGlobalStorageProvider(StorageProvider globalStorageProvider) {
+        this.globalStorageProvider = globalStorageProvider;
+    }
+
     public DataConverter getDataConverter() {
         return dataConverter;
     }
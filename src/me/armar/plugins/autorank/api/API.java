@@ -6,6 +6,8 @@ import java.util.UUID;
 
 import org.bukkit.entity.Player;
 
+import com.google.common.util.concurrent.ListenableFuture;
+
 import me.armar.plugins.autorank.Autorank;
 import me.armar.plugins.autorank.addons.AddOnManager;
 import me.armar.plugins.autorank.data.flatfile.FlatFileManager.TimeType;
@@ -83,6 +85,20 @@ public class API {
         return plugin.getMySQLManager().getGlobalTime(uuid);
     }
 
+    /**
+     * Get the global play time of a player without blocking the thread it's
+     * on. Unlike {@link #getGlobalPlayTime(UUID)}, this is safe to call from
+     * the main thread. Add a callback to the future to use the time when it
+     * is known.
+     * 
+     * @param uuid
+     *            UUID of the player
+     * @return play time of a player when it is known. 0 if no entry was found.
+     */
+    public ListenableFuture<Integer> getGlobalPlayTimeAsync(final UUID uuid) {
+        return plugin.getMySQLManager().getGlobalTimeAsync(uuid);
+    }
+
     /**
      * Get the local play time of this player on this server according to
      * Autorank (in minutes).<br>
@@ -94,7 +110,24 @@ public class API {
      * @return play time of this player or 0 if not found.
      */
     public int getLocalPlayTime(final UUID uuid) {
-        return plugin.getFlatFileManager().getLocalTime(TimeType.TOTAL_TIME, uuid);
+        return plugin.getLocalStorageProvider().getPlaytime(TimeType.TOTAL_TIME, uuid);
+    }
+
+    /**
+     * Get the local play time of this player on this server in the last days
+     * (in minutes), including today.<br>
+     * Autorank remembers the time played per day for the last 90 days, so
+     * larger windows will not include older days.
+     * 
+     * @param uuid
+     *            UUID of the player
+     * @param days
+     *            Number of days to look back
+     * @return play time of this player in the last days or 0 if not found,
+     *         or if the local storage does not know the time per day.
+     */
+    public int getRecentPlayTime(final UUID uuid, final int days) {
+        return plugin.getLocalStorageProvider().getRecentPlaytime(uuid, days);
     }
 
     /**
@@ -78,6 +78,10 @@ public class BackupManager {
                 if ((System.currentTimeMillis() - backupDataManager.getLatestBackup("data")) > 86400000) {
                     plugin.debugMessage(ChatColor.RED + "Making a backup of all data files!");
 
+                    // Write the journal to the data files so the backup is
+                    // complete.
+                    plugin.getFlatFileManager().saveFiles();
+
                     for (TimeType type : TimeType.values()) {
                         String path = FlatFileManager.dataTypePaths.get(type);
 
@@ -54,7 +54,7 @@ public class AddCommand extends AutorankCommand {
                 args[1] = plugin.getUUIDStorage().getRealName(uuid);
             }
 
-            plugin.getFlatFileManager().setLocalTime(TimeType.TOTAL_TIME, plugin.getFlatFileManager().getLocalTime(TimeType.TOTAL_TIME, uuid) + value, uuid);
+            plugin.getLocalStorageProvider().addPlaytime(TimeType.TOTAL_TIME, uuid, value);
             AutorankTools.sendColoredMessage(sender, Lang.PLAYTIME_CHANGED.getConfigValue(args[1], value + ""));
         } else {
             AutorankTools.sendColoredMessage(sender, Lang.INVALID_FORMAT.getConfigValue("/ar add [player] [value]"));
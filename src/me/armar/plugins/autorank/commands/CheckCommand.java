@@ -11,6 +11,9 @@ import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+
 import me.armar.plugins.autorank.Autorank;
 import me.armar.plugins.autorank.api.events.CheckCommandEvent;
 import me.armar.plugins.autorank.commands.manager.AutorankCommand;
@@ -33,6 +36,37 @@ public class CheckCommand extends AutorankCommand {
     }
 
     public void check(final CommandSender sender, final Player player) {
+        // Only look up the global time if it is shown
+        if (!plugin.getConfigHandler().getCheckCommandLayout().contains("&globaltime")) {
+            check(sender, player, 0);
+            return;
+        }
+
+        final UUID uuid = plugin.getUUIDStorage().getStoredUUID(player.getName());
+
+        // Do not let the main thread wait for the database. If the global time
+        // is cached, the check is done right away.
+        Futures.addCallback(plugin.getMySQLManager().getGlobalTimeAsync(uuid), new FutureCallback<Integer>() {
+
+            @Override
+            public void onSuccess(final Integer globalTime) {
+                if (player.isOnline()) {
+                    check(sender, player, globalTime);
+                }
+            }
+
+            @Override
+            public void onFailure(final Throwable t) {
+                t.printStackTrace();
+
+                if (player.isOnline()) {
+                    check(sender, player, plugin.getMySQLManager().getCachedGlobalTime(uuid));
+                }
+            }
+        }, plugin.getExecutors().getMainThread());
+    }
+
+    private void check(final CommandSender sender, final Player player, final int globalTime) {
         // Call event to let other plugins know that a player wants to check
         // itself.
         // Create the event here
@@ -112,8 +146,7 @@ public class CheckCommand extends AutorankCommand {
         layout = layout.replace("&p", player.getName());
         layout = layout.replace("&time", AutorankTools
                 .timeToString(plugin.getPlaytimes().getTimeOfPlayer(player.getName(), true), Time.SECONDS));
-        layout = layout.replace("&globaltime",
-                AutorankTools.timeToString(plugin.getMySQLManager().getGlobalTime(uuid), Time.MINUTES));
+        layout = layout.replace("&globaltime", AutorankTools.timeToString(globalTime, Time.MINUTES));
 
         boolean showReqs = false;
 
@@ -7,6 +7,7 @@ import org.bukkit.command.CommandSender;
 import me.armar.plugins.autorank.Autorank;
 import me.armar.plugins.autorank.commands.manager.AutorankCommand;
 import me.armar.plugins.autorank.permissions.AutorankPermission;
+import me.armar.plugins.autorank.util.AutorankExecutors.WorkType;
 
 /**
  * The command delegator for the '/ar debug' command.
@@ -28,7 +29,7 @@ public class DebugCommand extends AutorankCommand {
             return true;
         }
 
-        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
+        plugin.getExecutors().execute(WorkType.IO, new Runnable() {
             @Override
             public void run() {
                 final String fileName = plugin.getDebugger().createDebugFile();
@@ -9,6 +9,7 @@ import me.armar.plugins.autorank.Autorank;
 import me.armar.plugins.autorank.commands.manager.AutorankCommand;
 import me.armar.plugins.autorank.language.Lang;
 import me.armar.plugins.autorank.permissions.AutorankPermission;
+import me.armar.plugins.autorank.util.AutorankExecutors.WorkType;
 import me.armar.plugins.autorank.util.AutorankTools;
 import net.md_5.bungee.api.ChatColor;
 
@@ -51,7 +52,7 @@ public class GlobalAddCommand extends AutorankCommand {
             args[1] = plugin.getUUIDStorage().getRealName(uuid);
         }
 
-        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
+        plugin.getExecutors().execute(WorkType.DATABASE, new Runnable() {
 
             @Override
             public void run() {
@@ -62,10 +63,12 @@ public class GlobalAddCommand extends AutorankCommand {
                 }
 
                 if (value >= 0) {
-                    if (!plugin.getMySQLManager().setGlobalTime(uuid, plugin.getMySQLManager().getFreshGlobalTime(uuid) + value)) {
+                    if (!plugin.getMySQLManager().isMySQLEnabled()) {
                         sender.sendMessage(Lang.MYSQL_IS_NOT_ENABLED.getConfigValue());
                         return;
                     }
+
+                    plugin.getMySQLManager().addGlobalTime(uuid, value);
                     AutorankTools.sendColoredMessage(sender, Lang.PLAYTIME_CHANGED.getConfigValue(args[1], value + ""));
                 } else {
                     AutorankTools.sendColoredMessage(sender,
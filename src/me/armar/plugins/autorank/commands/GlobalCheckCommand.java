@@ -7,6 +7,9 @@ import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+
 import me.armar.plugins.autorank.Autorank;
 import me.armar.plugins.autorank.commands.manager.AutorankCommand;
 import me.armar.plugins.autorank.language.Lang;
@@ -54,23 +57,7 @@ public class GlobalCheckCommand extends AutorankCommand {
                     args[1] = plugin.getUUIDStorage().getRealName(uuid);
                 }
 
-                plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
-
-                    @Override
-                    public void run() {
-                        final int minutes = plugin.getMySQLManager().getGlobalTime(uuid);
-
-                        if (minutes < 0) {
-                            sender.sendMessage(Lang.PLAYER_IS_INVALID.getConfigValue(args[1]));
-                            return;
-                        }
-
-                        AutorankTools.sendColoredMessage(sender, args[1] + " has played for "
-                                + AutorankTools.timeToString(minutes, Time.MINUTES) + " across all servers.");
-
-                    }
-
-                });
+                sendGlobalTime(sender, uuid, args[1]);
                 return true;
 
             } else {
@@ -86,23 +73,7 @@ public class GlobalCheckCommand extends AutorankCommand {
                     return true;
                 }
 
-                plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
-
-                    @Override
-                    public void run() {
-                        final int minutes = plugin.getMySQLManager().getGlobalTime(uuid);
-
-                        if (minutes < 0) {
-                            sender.sendMessage(Lang.PLAYER_IS_INVALID.getConfigValue(args[1]));
-                            return;
-                        }
-
-                        AutorankTools.sendColoredMessage(sender, player.getName() + " has played for "
-                                + AutorankTools.timeToString(minutes, Time.MINUTES) + " across all servers.");
-
-                    }
-
-                });
+                sendGlobalTime(sender, uuid, player.getName());
             }
         } else if (sender instanceof Player) {
             if (!plugin.getCommandsManager().hasPermission(AutorankPermission.CHECK_GLOBAL, sender)) {
@@ -118,15 +89,7 @@ public class GlobalCheckCommand extends AutorankCommand {
 
             final UUID uuid = plugin.getUUIDStorage().getStoredUUID(player.getName());
 
-            plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
-                @Override
-                public void run() {
-                    AutorankTools.sendColoredMessage(sender,
-                            "You have played for " + AutorankTools
-                                    .timeToString(plugin.getMySQLManager().getGlobalTime(uuid), Time.MINUTES)
-                                    + " across all servers.");
-                }
-            });
+            sendGlobalTime(sender, uuid, null);
 
         } else {
             AutorankTools.sendColoredMessage(sender, Lang.CANNOT_CHECK_CONSOLE.getConfigValue());
@@ -134,6 +97,46 @@ public class GlobalCheckCommand extends AutorankCommand {
         return true;
     }
 
+    /**
+     * Send the global time of a player when it is known. The main thread does
+     * not wait for the database; the message is sent when the time was
+     * looked up.
+     * 
+     * @param sender
+     *            Sender to send the time to
+     * @param uuid
+     *            UUID of the player
+     * @param playerName
+     *            Name of the player, or null if the sender checks itself
+     */
+    private void sendGlobalTime(final CommandSender sender, final UUID uuid, final String playerName) {
+        Futures.addCallback(plugin.getMySQLManager().getGlobalTimeAsync(uuid), new FutureCallback<Integer>() {
+
+            @Override
+            public void onSuccess(final Integer minutes) {
+                if (playerName == null) {
+                    AutorankTools.sendColoredMessage(sender, "You have played for "
+                            + AutorankTools.timeToString(Math.max(minutes, 0), Time.MINUTES) + " across all servers.");
+                    return;
+                }
+
+                if (minutes < 0) {
+                    sender.sendMessage(Lang.PLAYER_IS_INVALID.getConfigValue(playerName));
+                    return;
+                }
+
+                AutorankTools.sendColoredMessage(sender, playerName + " has played for "
+                        + AutorankTools.timeToString(minutes, Time.MINUTES) + " across all servers.");
+            }
+
+            @Override
+            public void onFailure(final Throwable t) {
+                t.printStackTrace();
+                sender.sendMessage(ChatColor.RED + "Could not get the global time, try again later.");
+            }
+        }, plugin.getExecutors().getMainThread());
+    }
+
     @Override
     public String getDescription() {
         return "Check [player]'s global playtime.";
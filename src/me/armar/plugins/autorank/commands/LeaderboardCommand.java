@@ -8,6 +8,7 @@ import me.armar.plugins.autorank.commands.manager.AutorankCommand;
 import me.armar.plugins.autorank.data.flatfile.FlatFileManager.TimeType;
 import me.armar.plugins.autorank.language.Lang;
 import me.armar.plugins.autorank.permissions.AutorankPermission;
+import me.armar.plugins.autorank.util.AutorankExecutors.WorkType;
 import net.md_5.bungee.api.ChatColor;
 
 /**
@@ -83,7 +84,7 @@ public class LeaderboardCommand extends AutorankCommand {
             sender.sendMessage(ChatColor.GREEN + "Updating the leaderboard. This could take a while!");
             sender.sendMessage(ChatColor.GOLD + "I'll let you know when the leaderboard is updated.");
             
-            plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
+            plugin.getExecutors().execute(WorkType.CPU, new Runnable() {
                 public void run() {
                     // Update leaderboard.
                     plugin.getLeaderboardManager().updateLeaderboard(type2);
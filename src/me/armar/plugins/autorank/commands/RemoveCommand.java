@@ -69,12 +69,12 @@ public class RemoveCommand extends AutorankCommand {
             if (changeValue < 0) {
                 value = -1;
             } else {
-                value += plugin.getFlatFileManager().getLocalTime(TimeType.TOTAL_TIME, uuid) - changeValue;
+                value += plugin.getLocalStorageProvider().getPlaytime(TimeType.TOTAL_TIME, uuid) - changeValue;
             }
         }
 
         if (value >= 0) {
-            plugin.getFlatFileManager().setLocalTime(TimeType.TOTAL_TIME, value, uuid);
+            plugin.getLocalStorageProvider().setPlaytime(TimeType.TOTAL_TIME, uuid, value);
             AutorankTools.sendColoredMessage(sender, Lang.PLAYTIME_CHANGED.getConfigValue(args[1], value + ""));
         } else {
             AutorankTools.sendColoredMessage(sender, Lang.INVALID_FORMAT.getConfigValue("/ar remove [player] [value]"));
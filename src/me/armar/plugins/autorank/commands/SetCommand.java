@@ -54,7 +54,7 @@ public class SetCommand extends AutorankCommand {
                 args[1] = plugin.getUUIDStorage().getRealName(uuid);
             }
 
-            plugin.getFlatFileManager().setLocalTime(TimeType.TOTAL_TIME, value, uuid);
+            plugin.getLocalStorageProvider().setPlaytime(TimeType.TOTAL_TIME, uuid, value);
             AutorankTools.sendColoredMessage(sender,
                     Lang.PLAYTIME_CHANGED.getConfigValue(args[1], value + " " + Lang.MINUTE_PLURAL.getConfigValue()));
         } else {
@@ -1,6 +1,5 @@
 package me.armar.plugins.autorank.commands;
 
-import java.util.Map.Entry;
 import java.util.UUID;
 
 import org.bukkit.ChatColor;
@@ -10,8 +9,11 @@ import org.bukkit.command.CommandSender;
 import me.armar.plugins.autorank.Autorank;
 import me.armar.plugins.autorank.commands.manager.AutorankCommand;
 import me.armar.plugins.autorank.data.flatfile.FlatFileManager.TimeType;
+import me.armar.plugins.autorank.data.storage.PlaytimeVisitor;
+import me.armar.plugins.autorank.data.storage.StorageProvider;
 import me.armar.plugins.autorank.language.Lang;
 import me.armar.plugins.autorank.permissions.AutorankPermission;
+import me.armar.plugins.autorank.util.AutorankExecutors.WorkType;
 
 /**
  * The command delegator for the '/ar sync' command.
@@ -51,17 +53,22 @@ public class SyncCommand extends AutorankCommand {
         sender.sendMessage(ChatColor.RED + "You do not have to use this command regularly.");
 
         if (reverse) {
-            plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
+            plugin.getExecutors().execute(WorkType.DATABASE, new Runnable() {
 
                 @Override
                 public void run() {
-                    int count = 0;
+                    final StorageProvider localStorage = plugin.getLocalStorageProvider();
 
-                    // Update all data.yml records
-                    for (Entry<UUID, Integer> entry : plugin.getMySQLManager().getAllPlayersFromDatabase().entrySet()) {
-                        plugin.getFlatFileManager().setLocalTime(TimeType.TOTAL_TIME, entry.getValue(), entry.getKey());
-                        count++;
-                    }
+                    // Update all data.yml records, a page of database records at a
+                    // time. No connection is held while the times are set.
+                    final int count = plugin.getGlobalStorageProvider().forEachPlaytime(TimeType.TOTAL_TIME,
+                            new PlaytimeVisitor() {
+
+                                @Override
+                                public void visit(final UUID uuid, final int time) {
+                                    localStorage.setPlaytime(TimeType.TOTAL_TIME, uuid, time);
+                                }
+                            });
 
                     sender.sendMessage(ChatColor.GREEN + "Successfully updated Data.yml from " + count
                             + " MySQL database records!");
@@ -69,21 +76,23 @@ public class SyncCommand extends AutorankCommand {
             });
         } else {
             // Do this async as we are accessing mysql database.
-            plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
+            plugin.getExecutors().execute(WorkType.DATABASE, new Runnable() {
 
                 @Override
                 public void run() {
-                    // Update all mysql records
-                    for (final UUID uuid : plugin.getFlatFileManager().getUUIDKeys(TimeType.TOTAL_TIME)) {
-                        final int localTime = plugin.getFlatFileManager().getLocalTime(TimeType.TOTAL_TIME, uuid);
+                    final StorageProvider globalStorage = plugin.getGlobalStorageProvider();
 
-                        if (localTime <= 0)
-                            continue;
+                    // Update all mysql records, one player at a time
+                    plugin.getLocalStorageProvider().forEachPlaytime(TimeType.TOTAL_TIME, new PlaytimeVisitor() {
 
-                        final int globalTime = plugin.getMySQLManager().getGlobalTime(uuid);
+                        @Override
+                        public void visit(final UUID uuid, final int time) {
+                            if (time > 0) {
+                                globalStorage.addPlaytime(TimeType.TOTAL_TIME, uuid, time);
+                            }
+                        }
+                    });
 
-                        plugin.getMySQLManager().setGlobalTime(uuid, localTime + globalTime);
-                    }
                     sender.sendMessage(ChatColor.GREEN + "Successfully updated MySQL records!");
                 }
             });
@@ -39,7 +39,7 @@ public class SyncStatsCommand extends AutorankCommand {
         int count = 0;
 
         // Sync playtime of every player
-        for (final UUID uuid : plugin.getFlatFileManager().getUUIDKeys(TimeType.TOTAL_TIME)) {
+        for (final UUID uuid : plugin.getLocalStorageProvider().getStoredPlayers(TimeType.TOTAL_TIME)) {
 
             final OfflinePlayer p = plugin.getServer().getOfflinePlayer(uuid);
 
@@ -52,7 +52,7 @@ public class SyncStatsCommand extends AutorankCommand {
             }
 
             // Update time
-            plugin.getFlatFileManager().setLocalTime(TimeType.TOTAL_TIME, Math.round(statsPlayTime / 60), uuid);
+            plugin.getLocalStorageProvider().setPlaytime(TimeType.TOTAL_TIME, uuid, Math.round(statsPlayTime / 60));
 
             // Increment count
             count++;
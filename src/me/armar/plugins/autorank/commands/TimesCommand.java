@@ -9,6 +9,7 @@ import org.bukkit.entity.Player;
 import me.armar.plugins.autorank.Autorank;
 import me.armar.plugins.autorank.commands.manager.AutorankCommand;
 import me.armar.plugins.autorank.data.flatfile.FlatFileManager.TimeType;
+import me.armar.plugins.autorank.data.storage.StorageProvider;
 import me.armar.plugins.autorank.language.Lang;
 import me.armar.plugins.autorank.permissions.AutorankPermission;
 import me.armar.plugins.autorank.util.AutorankTools;
@@ -71,10 +72,12 @@ public class TimesCommand extends AutorankCommand {
             targetName = plugin.getUUIDStorage().getCachedPlayerName(uuid);
         }
 
-        final int daily = plugin.getFlatFileManager().getLocalTime(TimeType.DAILY_TIME, uuid);
-        final int weekly = plugin.getFlatFileManager().getLocalTime(TimeType.WEEKLY_TIME, uuid);
-        final int monthly = plugin.getFlatFileManager().getLocalTime(TimeType.MONTHLY_TIME, uuid);
-        final int total = plugin.getFlatFileManager().getLocalTime(TimeType.TOTAL_TIME, uuid);
+        final StorageProvider storage = plugin.getLocalStorageProvider();
+
+        final int daily = storage.getPlaytime(TimeType.DAILY_TIME, uuid);
+        final int weekly = storage.getPlaytime(TimeType.WEEKLY_TIME, uuid);
+        final int monthly = storage.getPlaytime(TimeType.MONTHLY_TIME, uuid);
+        final int total = storage.getPlaytime(TimeType.TOTAL_TIME, uuid);
 
         sender.sendMessage(Lang.AR_TIMES_HEADER.getConfigValue(targetName));
         sender.sendMessage(Lang.AR_TIMES_PLAYER_PLAYED.getConfigValue(targetName));
@@ -5,6 +5,7 @@ import java.util.List;
 
 import me.armar.plugins.autorank.Autorank;
 import me.armar.plugins.autorank.data.flatfile.FlatFileManager.TimeType;
+import me.armar.plugins.autorank.util.AutorankExecutors.WorkType;
 
 /**
  * This class manages the internalprops.yml file. It is used to store data that
@@ -94,7 +95,7 @@ public class InternalPropertiesConfig {
     public void hasTransferredUUIDs(final boolean value) {
         config.set("has converted uuids", value);
 
-        config.saveFile();
+        config.saveFileAsync(plugin.getExecutors().getExecutor(WorkType.IO));
     }
 
     /**
@@ -153,7 +154,7 @@ public class InternalPropertiesConfig {
     public void setCachedLeaderboard(final TimeType type, final List<String> cachedLeaderboard) {
         config.set("leaderboards." + type.toString().toLowerCase() + ".cached leaderboard", cachedLeaderboard);
 
-        config.saveFile();
+        config.saveFileAsync(plugin.getExecutors().getExecutor(WorkType.IO));
     }
 
     /**
@@ -165,7 +166,7 @@ public class InternalPropertiesConfig {
     public void setLeaderboardLastUpdateTime(final long time) {
         config.set("leaderboard last updated", time);
 
-        config.saveFile();
+        config.saveFileAsync(plugin.getExecutors().getExecutor(WorkType.IO));
     }
 
     /**
@@ -188,7 +189,7 @@ public class InternalPropertiesConfig {
             return;
         }
 
-        config.saveFile();
+        config.saveFileAsync(plugin.getExecutors().getExecutor(WorkType.IO));
     }
     
     /**
@@ -206,6 +207,6 @@ public class InternalPropertiesConfig {
     public void setConvertedToNewFormat(boolean value) {
         config.set("is converted to new format", value);
         
-        config.saveFile();
+        config.saveFileAsync(plugin.getExecutors().getExecutor(WorkType.IO));
     }
 }
@@ -1,33 +1,98 @@
 package me.armar.plugins.autorank.config;
 
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
-import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
 
 import me.armar.plugins.autorank.Autorank;
+import me.armar.plugins.autorank.data.sqlite.SQLiteDatabase;
+import me.armar.plugins.autorank.util.AutorankExecutors.WorkType;
 import me.armar.plugins.autorank.util.AutorankTools;
 
 /**
  * PlayerDataConfig stores all the properties of players. Autorank needs to
  * store which path a player has chosen and which requirements they already met.
  * 
- * PlayerDataConfig uses a file (/playerdata/Playerdata.yml) which keeps tracks
- * of these things.
+ * Every player has its own file (/playerdata/players/xx/uuid.yml), which is
+ * only loaded when the data of that player is needed. Data of online players
+ * is kept in memory, data of other players is removed from memory when it was
+ * not used recently. Older versions of Autorank stored all players in a single
+ * file (/playerdata/PlayerData.yml), which is split when Autorank starts.
+ * 
+ * When the local database is used, the data of each player is stored in
+ * the database instead. Players that still have their own file are moved to
+ * the database when their data is loaded.
+ * 
+ * Which players are exempted from the leaderboard is always kept in memory,
+ * since the leaderboard needs to know this for every player.
  * 
  * @author Staartvin
  * 
  */
 public class PlayerDataConfig {
 
-    private final Autorank plugin;
+    // Maximum number of players that is looked at when data is removed from
+    // memory after loading a player.
+    private static final int EVICTION_SCAN_LIMIT = 64;
 
-    private SimpleYamlConfiguration config;
+    // Number of players that is moved from the PlayerData.yml before the data
+    // is written, so the changed data does not pile up in memory.
+    private static final int SPLIT_BATCH_SIZE = 500;
+
+    private final Autorank plugin;
 
     private String fileName = "PlayerData.yml";
 
+    private File legacyFile;
+
+    private File playersFolder;
+
     private boolean convertingData = false;
 
+    // Data of players that is in memory, the least recently used first.
+    private final LinkedHashMap<UUID, YamlConfiguration> records = new LinkedHashMap<UUID, YamlConfiguration>(16,
+            0.75f, true);
+
+    // Players of which the data was changed but not written yet.
+    private final Set<UUID> dirtyRecords = new HashSet<UUID>();
+
+    // Players of which the data is being written. It is kept in memory until
+    // the file is written, otherwise an old file could be loaded.
+    private final Set<UUID> savingRecords = new HashSet<UUID>();
+
+    // Players of which the data is always kept in memory (online players).
+    // This does not need the lock, so joining never waits for a save.
+    private final Set<UUID> pinnedRecords = Collections.newSetFromMap(new ConcurrentHashMap<UUID, Boolean>());
+
+    // Number of times data was written, to find out whether data that was read
+    // without holding the lock may be outdated.
+    private long saveCount = 0;
+
+    // Players that are exempted from the leaderboard. These are kept in memory
+    // (and in their own file), so the leaderboard does not have to load the
+    // data of every player.
+    private final Set<UUID> leaderboardExemptions = new HashSet<UUID>();
+
+    private boolean exemptionsChanged = false;
+
+    private File exemptionsFile;
+
+    // Held while saving, so an older save never overwrites a newer one.
+    private final Object saveLock = new Object();
+
     public PlayerDataConfig(final Autorank instance) {
         this.plugin = instance;
 
@@ -42,45 +107,436 @@ public class PlayerDataConfig {
     }
 
     /**
-     * Create a new PlayerData.yml file.
+     * Prepare the player data folder. If there is a PlayerData.yml of an older
+     * version, all players in it are moved to their own file.
      */
     public void createNewFile() {
-        config = new SimpleYamlConfiguration(plugin, "/playerdata/" + fileName, fileName);
+        legacyFile = new File(plugin.getDataFolder(), "/playerdata/" + fileName);
+        playersFolder = new File(plugin.getDataFolder(), "/playerdata/players");
+        exemptionsFile = new File(plugin.getDataFolder(), "/playerdata/LeaderboardExemptions.yml");
+
+        playersFolder.mkdirs();
+
+        if (exemptionsFile.exists()) {
+            for (final String uuidString : YamlConfiguration.loadConfiguration(exemptionsFile)
+                    .getStringList("exempted players")) {
+                try {
+                    leaderboardExemptions.add(UUID.fromString(uuidString));
+                } catch (final IllegalArgumentException e) {
+                    continue;
+                }
+            }
+        }
+
+        if (legacyFile.exists()) {
+            splitLegacyFile();
+        }
+
+        plugin.getLogger().info("PlayerData loaded (" + playersFolder.getPath() + ")");
+    }
+
+    /**
+     * Move all players in the PlayerData.yml to their own file. Players that
+     * are still stored by name are kept in the PlayerData.yml until they are
+     * converted with {@link #convertNamesToUUIDs()}.
+     */
+    private void splitLegacyFile() {
+        final YamlConfiguration legacy = YamlConfiguration.loadConfiguration(legacyFile);
+
+        int moved = 0;
+        boolean hasNames = false;
+
+        for (final String key : legacy.getKeys(false)) {
+            final UUID uuid;
+
+            try {
+                uuid = UUID.fromString(key);
+            } catch (final IllegalArgumentException e) {
+                // Still stored by name.
+                hasNames = true;
+                continue;
+            }
+
+            if (!legacy.isConfigurationSection(key)) {
+                continue;
+            }
+
+            for (final Map.Entry<String, Object> entry : legacy.getConfigurationSection(key).getValues(true)
+                    .entrySet()) {
+                if (entry.getKey().equals("exempt leaderboard")) {
+                    hasLeaderboardExemption(uuid, Boolean.TRUE.equals(entry.getValue()));
+                } else if (!legacy.isConfigurationSection(key + "." + entry.getKey())) {
+                    set(uuid, entry.getKey(), entry.getValue());
+                }
+            }
+
+            legacy.set(key, null);
+            moved++;
+
+            if (moved % SPLIT_BATCH_SIZE == 0) {
+                saveConfig();
+            }
+        }
+
+        // Write the split files before touching the old file.
+        saveConfig();
+
+        try {
+            if (hasNames) {
+                SimpleYamlConfiguration.saveAtomically(legacy, legacyFile);
+            } else {
+                // Keep the old file as a backup.
+                legacyFile.renameTo(new File(legacyFile.getPath() + ".old"));
+            }
+        } catch (final IOException e) {
+            e.printStackTrace();
+        }
+
+        plugin.getLogger().info("Moved " + moved + " players from " + fileName + " to their own file");
+    }
+
+    /**
+     * Get the file that stores the data of a player.
+     * 
+     * @param uuid
+     *            UUID of the player
+     * @return file of the player.
+     */
+    private File getRecordFile(final UUID uuid) {
+        final String name = uuid.toString();
 
-        plugin.getLogger().info("PlayerData file loaded (" + fileName + ")");
+        return new File(new File(playersFolder, name.substring(0, 2)), name + ".yml");
     }
 
     /**
-     * Get the PlayerData.yml file.
+     * Get the data of a player. The data is loaded from disk if it is not in
+     * memory. The lock is not held while reading, so this should not be
+     * called while holding it.
      * 
-     * @return the PlayerData.yml
+     * @param uuid
+     *            UUID of the player
+     * @return data of the player.
+     */
+    private YamlConfiguration getRecord(final UUID uuid) {
+        while (true) {
+            final long saves;
+
+            synchronized (this) {
+                final YamlConfiguration record = records.get(uuid);
+
+                if (record != null) {
+                    return record;
+                }
+
+                saves = saveCount;
+            }
+
+            YamlConfiguration record = loadFromDatabase(uuid);
+            boolean moveToDatabase = false;
+
+            if (record == null) {
+                final File file = getRecordFile(uuid);
+
+                if (file.exists()) {
+                    record = YamlConfiguration.loadConfiguration(file);
+
+                    // Move the data to the local database.
+                    moveToDatabase = plugin.getSQLiteDatabase() != null;
+                } else {
+                    record = new YamlConfiguration();
+                }
+            }
+
+            synchronized (this) {
+                final YamlConfiguration loaded = records.get(uuid);
+
+                // Another thread loaded the data in the meantime.
+                if (loaded != null) {
+                    return loaded;
+                }
+
+                // Data was written in the meantime, so what was read may be
+                // outdated. Read it again.
+                if (saveCount != saves) {
+                    continue;
+                }
+
+                records.put(uuid, record);
+
+                if (moveToDatabase) {
+                    dirtyRecords.add(uuid);
+                }
+
+                evictRecords(EVICTION_SCAN_LIMIT);
+
+                return record;
+            }
+        }
+    }
+
+    /**
+     * Get the data of a player from the local database.
+     * 
+     * @param uuid
+     *            UUID of the player
+     * @return data of the player or null if the local database is not used or
+     *         does not have the player.
      */
-    public FileConfiguration getConfig() {
-        if (config != null) {
-            return config;
+    private YamlConfiguration loadFromDatabase(final UUID uuid) {
+        final SQLiteDatabase database = plugin.getSQLiteDatabase();
+
+        if (database == null) {
+            return null;
+        }
+
+        try {
+            final String data = database.loadPlayerData(uuid);
+
+            if (data == null) {
+                return null;
+            }
+
+            final YamlConfiguration record = new YamlConfiguration();
+
+            record.loadFromString(data);
+
+            return record;
+        } catch (final SQLException e) {
+            plugin.getLogger().warning("Could not load data of " + uuid + " from the local database: " + e.getMessage());
+        } catch (final InvalidConfigurationException e) {
+            e.printStackTrace();
         }
 
         return null;
     }
 
     /**
-     * Reload the PlayerData.yml file.
+     * Remember that the data of a player was changed and should be written.
+     * 
+     * @param uuid
+     *            UUID of the player
+     */
+    private synchronized void markChanged(final UUID uuid) {
+        dirtyRecords.add(uuid);
+    }
+
+    /**
+     * Remove the least recently used data from memory until no more than the
+     * maximum number of players is in memory. Data that was changed, is being
+     * written or belongs to an online player is kept.
+     * 
+     * @param scanLimit
+     *            Maximum number of players to look at
+     */
+    private synchronized void evictRecords(final int scanLimit) {
+        final int maxSize = plugin.getSettingsConfig().getPlayerDataCacheSize();
+
+        if (records.size() <= maxSize) {
+            return;
+        }
+
+        final Iterator<UUID> iterator = records.keySet().iterator();
+        int scanned = 0;
+
+        while (iterator.hasNext() && records.size() > maxSize && scanned++ < scanLimit) {
+            final UUID uuid = iterator.next();
+
+            if (!dirtyRecords.contains(uuid) && !savingRecords.contains(uuid) && !pinnedRecords.contains(uuid)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Keep the data of a player in memory until {@link #unloadPlayer(UUID)} is
+     * called. The data is loaded on another thread. This should be called when
+     * a player joins.
+     * 
+     * @param uuid
+     *            UUID of the player
+     */
+    public void loadPlayer(final UUID uuid) {
+        pinnedRecords.add(uuid);
+
+        plugin.getExecutors().execute(WorkType.IO, new Runnable() {
+            @Override
+            public void run() {
+                getRecord(uuid);
+            }
+        });
+    }
+
+    /**
+     * Allow the data of a player to be removed from memory when it is not used.
+     * This should be called when a player leaves.
+     * 
+     * @param uuid
+     *            UUID of the player
+     */
+    public void unloadPlayer(final UUID uuid) {
+        pinnedRecords.remove(uuid);
+    }
+
+    /**
+     * Reload the data of all players. Changes are written first.
      */
     public void reloadConfig() {
-        if (config != null) {
-            config.reloadFile();
+        saveConfig();
+
+        synchronized (this) {
+            final Iterator<UUID> iterator = records.keySet().iterator();
+
+            // Data that was changed in the meantime is kept.
+            while (iterator.hasNext()) {
+                if (!dirtyRecords.contains(iterator.next())) {
+                    iterator.remove();
+                }
+            }
         }
     }
 
     /**
-     * Save the PlayerData.yml file.
+     * Write the data of all players that was changed. Data that was not used
+     * recently is removed from memory afterwards.
      */
     public void saveConfig() {
-        if (config == null) {
+        if (playersFolder == null) {
             return;
         }
 
-        config.saveFile();
+        synchronized (saveLock) {
+            final List<UUID> uuids = new ArrayList<UUID>();
+            final List<String> data = new ArrayList<String>();
+
+            YamlConfiguration exemptions = null;
+
+            synchronized (this) {
+                if (exemptionsChanged) {
+                    final List<String> exempted = new ArrayList<String>();
+
+                    for (final UUID uuid : leaderboardExemptions) {
+                        exempted.add(uuid.toString());
+                    }
+
+                    exemptions = new YamlConfiguration();
+                    exemptions.set("exempted players", exempted);
+
+                    exemptionsChanged = false;
+                }
+
+                // Changed data is never removed from memory, so it is always there.
+                for (final UUID uuid : dirtyRecords) {
+                    uuids.add(uuid);
+                    data.add(records.get(uuid).saveToString());
+                }
+
+                savingRecords.addAll(dirtyRecords);
+                dirtyRecords.clear();
+            }
+
+            final SQLiteDatabase database = plugin.getSQLiteDatabase();
+
+            // Write the data without holding the lock.
+            if (database != null) {
+                try {
+                    database.savePlayerData(uuids, data);
+                } catch (final SQLException e) {
+                    plugin.getLogger().warning("Could not write player data to the local database: " + e.getMessage());
+
+                    // Try again next time.
+                    for (final UUID uuid : uuids) {
+                        markChanged(uuid);
+                    }
+                }
+            }
+
+            for (int i = 0; database == null && i < uuids.size(); i++) {
+                try {
+                    SimpleYamlConfiguration.saveAtomically(data.get(i), getRecordFile(uuids.get(i)));
+                } catch (final IOException e) {
+                    e.printStackTrace();
+
+                    // Try again next time.
+                    markChanged(uuids.get(i));
+                }
+            }
+
+            if (exemptions != null) {
+                try {
+                    SimpleYamlConfiguration.saveAtomically(exemptions, exemptionsFile);
+                } catch (final IOException e) {
+                    e.printStackTrace();
+
+                    synchronized (this) {
+                        exemptionsChanged = true;
+                    }
+                }
+            }
+
+            synchronized (this) {
+                savingRecords.clear();
+                saveCount++;
+            }
+        }
+
+        // All data that was not changed in the meantime can be removed now.
+        evictRecords(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Get a value of a player. The data is loaded without holding the lock,
+     * only the value itself is read while holding it.
+     */
+    private Object get(final UUID uuid, final String path) {
+        final YamlConfiguration record = getRecord(uuid);
+
+        synchronized (this) {
+            return record.get(path);
+        }
+    }
+
+    /**
+     * Set a value of a player. The data is loaded without holding the lock.
+     */
+    private void set(final UUID uuid, final String path, final Object value) {
+        while (true) {
+            final YamlConfiguration record = getRecord(uuid);
+
+            synchronized (this) {
+                // The data was removed from memory after it was loaded, so
+                // the change would be lost.
+                if (records.get(uuid) != record) {
+                    continue;
+                }
+
+                record.set(path, value);
+
+                dirtyRecords.add(uuid);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Get a list of integers of a player. The list can be changed freely.
+     */
+    private List<Integer> getIntegerList(final UUID uuid, final String path) {
+        final YamlConfiguration record = getRecord(uuid);
+
+        synchronized (this) {
+            return record.getIntegerList(path);
+        }
+    }
+
+    /**
+     * Get a list of strings of a player. The list can be changed freely.
+     */
+    private List<String> getStringList(final UUID uuid, final String path) {
+        final YamlConfiguration record = getRecord(uuid);
+
+        synchronized (this) {
+            return record.getStringList(path);
+        }
     }
 
     /**
@@ -111,7 +567,7 @@ public class PlayerDataConfig {
      *            Requirements that the player completed.
      */
     public void setCompletedRequirements(final UUID uuid, final List<Integer> requirements) {
-        config.set(uuid.toString() + ".completed requirements", requirements);
+        set(uuid, "completed requirements", requirements);
     }
 
     /**
@@ -123,7 +579,7 @@ public class PlayerDataConfig {
      * @return a list of requirements a player completed.
      */
     public List<Integer> getCompletedRequirements(final UUID uuid) {
-        return config.getIntegerList(uuid.toString() + ".completed requirements");
+        return getIntegerList(uuid, "completed requirements");
     }
 
     /**
@@ -170,7 +626,7 @@ public class PlayerDataConfig {
      *            Prerequisites that the player completed.
      */
     public void setCompletedPrerequisites(final UUID uuid, final List<Integer> prerequisites) {
-        config.set(uuid.toString() + ".completed prerequisites", prerequisites);
+        set(uuid, "completed prerequisites", prerequisites);
     }
 
     /**
@@ -182,7 +638,7 @@ public class PlayerDataConfig {
      * @return a list of prerequisites a player completed.
      */
     public List<Integer> getCompletedPrerequisites(final UUID uuid) {
-        return config.getIntegerList(uuid.toString() + ".completed prerequisites");
+        return getIntegerList(uuid, "completed prerequisites");
     }
 
     /**
@@ -236,14 +692,24 @@ public class PlayerDataConfig {
         plugin.getLogger().info("Starting to convert playerdata.yml");
 
         // Run async to prevent problems.
-        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
+        plugin.getExecutors().execute(WorkType.IO, new Runnable() {
 
             @Override
             public void run() {
+                if (!legacyFile.exists()) {
+                    plugin.getLogger().info("There is no playerdata.yml to convert");
+                    convertingData = false;
+                    return;
+                }
+
                 // Backup beforehand
-                plugin.getBackupManager().backupFile("/playerdata/playerdata.yml", null);
+                plugin.getBackupManager().backupFile("/playerdata/" + fileName, null);
+
+                final YamlConfiguration legacy = YamlConfiguration.loadConfiguration(legacyFile);
 
-                for (final String name : getConfig().getKeys(false)) {
+                int converted = 0;
+
+                for (final String name : legacy.getKeys(false)) {
 
                     // Probably UUID because names don't have dashes.
                     if (name.contains("-"))
@@ -254,17 +720,31 @@ public class PlayerDataConfig {
                     if (uuid == null)
                         continue;
 
-                    final List<Integer> progress = config.getIntegerList(name + ".progress");
-                    final String lastKnownGroup = config.getString(name + ".last group");
+                    final List<Integer> progress = legacy.getIntegerList(name + ".progress");
+                    final String lastKnownGroup = legacy.getString(name + ".last group");
 
                     // Remove name
-                    config.set(name, null);
+                    legacy.set(name, null);
 
                     // Replace name with UUID
-                    config.set(uuid.toString() + ".progress", progress);
-                    config.set(uuid.toString() + ".last group", lastKnownGroup);
+                    set(uuid, "progress", progress);
+                    set(uuid, "last group", lastKnownGroup);
+
+                    if (++converted % SPLIT_BATCH_SIZE == 0) {
+                        saveConfig();
+                    }
                 }
 
+                saveConfig();
+
+                try {
+                    SimpleYamlConfiguration.saveAtomically(legacy, legacyFile);
+                } catch (final IOException e) {
+                    e.printStackTrace();
+                }
+
+                convertingData = false;
+
                 plugin.getLogger().info("Converted playerdata.yml to UUID format");
             }
         });
@@ -279,7 +759,9 @@ public class PlayerDataConfig {
      *         not choose a path (yet).
      */
     public String getChosenPath(final UUID uuid) {
-        return config.getString(uuid.toString() + ".chosen path", "unknown");
+        final Object path = get(uuid, "chosen path");
+
+        return path != null ? path.toString() : "unknown";
     }
 
     /**
@@ -290,7 +772,7 @@ public class PlayerDataConfig {
      * @return a list of path names that the given player completed.
      */
     public List<String> getCompletedPaths(final UUID uuid) {
-        final List<String> completed = config.getStringList(uuid.toString() + ".completed paths");
+        final List<String> completed = getStringList(uuid, "completed paths");
 
         return completed;
     }
@@ -323,8 +805,8 @@ public class PlayerDataConfig {
      * @return true if the given player is not allowed to be shown on any
      *         leaderboard. False otherwise.
      */
-    public boolean hasLeaderboardExemption(final UUID uuid) {
-        return config.getBoolean(uuid.toString() + ".exempt leaderboard", false);
+    public synchronized boolean hasLeaderboardExemption(final UUID uuid) {
+        return leaderboardExemptions.contains(uuid);
     }
 
     /**
@@ -335,8 +817,22 @@ public class PlayerDataConfig {
      * @param value
      *            Value to set the exemption status to.
      */
-    public void hasLeaderboardExemption(final UUID uuid, final boolean value) {
-        config.set(uuid.toString() + ".exempt leaderboard", value);
+    public synchronized void hasLeaderboardExemption(final UUID uuid, final boolean value) {
+        final boolean changed = value ? leaderboardExemptions.add(uuid) : leaderboardExemptions.remove(uuid);
+
+        if (changed) {
+            exemptionsChanged = true;
+        }
+    }
+
+    /**
+     * Get the number of players that are exempted from appearing on any
+     * leaderboard.
+     * 
+     * @return number of exempted players.
+     */
+    public synchronized int getLeaderboardExemptionCount() {
+        return leaderboardExemptions.size();
     }
     
     /**
@@ -380,7 +876,7 @@ public class PlayerDataConfig {
      * @return a list of path names that the player started
      */
     public List<String> getStartedPaths(UUID uuid) {
-        return config.getStringList(uuid + ".started paths");
+        return getStringList(uuid, "started paths");
     }
     
     /**
@@ -389,7 +885,7 @@ public class PlayerDataConfig {
      * @param pathNames The paths the player started
      */
     public void setStartedPaths(UUID uuid, List<String> pathNames) {      
-        config.set(uuid + ".started paths", pathNames);
+        set(uuid, "started paths", pathNames);
     }
     
     /**
@@ -411,7 +907,7 @@ public class PlayerDataConfig {
      *            Name of path
      */
     public void setChosenPath(final UUID uuid, final String path) {
-        config.set(uuid.toString() + ".chosen path", path);
+        set(uuid, "chosen path", path);
     }
 
     /**
@@ -423,6 +919,6 @@ public class PlayerDataConfig {
      *            Paths that the player has completed
      */
     public void setCompletedPaths(final UUID uuid, final List<String> completedPaths) {
-        config.set(uuid.toString() + ".completed paths", completedPaths);
+        set(uuid, "completed paths", completedPaths);
     }
 }
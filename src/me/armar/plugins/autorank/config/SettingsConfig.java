@@ -288,4 +288,68 @@ public class SettingsConfig {
         return this.getConfig().getBoolean("automatically archive old data", true);
     }
 
+    /**
+     * Get the number of players of which the data in PlayerData is kept in
+     * memory. Data of online players is always kept in memory.
+     * @return maximum number of players to keep in memory.
+     */
+    public int getPlayerDataCacheSize() {
+        return this.getConfig().getInt("player data cache size", 500);
+    }
+
+    /**
+     * Check whether Autorank should store its data in a local database file
+     * instead of in YAML files.
+     * @return true if it should, false otherwise.
+     */
+    public boolean useLocalDatabase() {
+        return this.getConfig().getBoolean("use local database", false);
+    }
+
+    /**
+     * Get where Autorank stores the local play time of players: "flatfile"
+     * (the data files or the local database) or "memory" (nothing is saved).
+     * @return type of local storage, in lower case.
+     */
+    public String getLocalStorage() {
+        return this.getConfig().getString("local storage", "flatfile").toLowerCase();
+    }
+
+    /**
+     * Get the time Autorank may spend every tick on performing results
+     * (changing ranks, running commands, etc.) on the main thread.
+     * @return time in milliseconds.
+     */
+    public int getMainThreadTimeBudget() {
+        return this.getConfig().getInt("main thread time budget", 5);
+    }
+
+    /**
+     * Check whether Autorank should use virtual threads for database queries
+     * and UUID lookups. Virtual threads are only available on Java 21 and
+     * newer.
+     * @return true if it should, false otherwise.
+     */
+    public boolean useVirtualThreads() {
+        return this.getConfig().getBoolean("use virtual threads", false);
+    }
+
+    /**
+     * Get the number of connections Autorank may have open to the MySQL
+     * database at the same time.
+     * @return maximum number of connections.
+     */
+    public int getMySQLPoolSize() {
+        return this.getConfig().getInt("sql.pool size", 8);
+    }
+
+    /**
+     * Get the number of rows Autorank fetches from the MySQL database at once
+     * when it reads the times of all players.
+     * @return number of rows.
+     */
+    public int getMySQLFetchSize() {
+        return this.getConfig().getInt("sql.fetch size", 1000);
+    }
+
 }
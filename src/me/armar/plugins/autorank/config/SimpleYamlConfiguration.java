@@ -2,9 +2,21 @@ package me.armar.plugins.autorank.config;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.ConcurrentModificationException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
 
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.InvalidConfigurationException;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.plugin.java.JavaPlugin;
@@ -13,6 +25,19 @@ import org.bukkit.plugin.java.JavaPlugin;
  * This represents any YAML file that Autorank uses. <br>
  * It is used for the data.yml, playerdata.yml and daily/monthly/weekly data
  * files.
+ * <p>
+ * Saving never serializes the live configuration. A copy of the values is made
+ * first, that copy is turned into YAML and written to a temporary file that
+ * then replaces the real file. A crash while saving can therefore never leave a
+ * half-written file behind.
+ * <p>
+ * Values are read, changed and copied while holding the lock of this
+ * configuration, so a copy is never made while another thread changes a
+ * value. Sections that are changed directly are not covered by this. Making
+ * the copy takes time proportional to the size of the file, and other threads
+ * wait for it, so this class is only meant for small files such as the
+ * Settings.yml and Paths.yml. Large data (player data, play time) is kept in
+ * other structures and written with {@link #saveAtomically(String, File)}.
  * 
  * @author Staartvin
  *
@@ -21,6 +46,29 @@ public class SimpleYamlConfiguration extends YamlConfiguration {
 
     File file;
 
+    private final JavaPlugin plugin;
+
+    // Version of the latest snapshot and of the latest snapshot written to
+    // disk. Used to make sure an older snapshot never overwrites a newer one.
+    // The version of a snapshot is taken while holding the lock of this
+    // configuration, so versions are in the same order as the snapshots.
+    private long snapshotVersion = 0;
+    private long writtenVersion = 0;
+
+    /**
+     * A copy of the values of this configuration and its version.
+     */
+    private static class Snapshot {
+
+        private final YamlConfiguration values;
+        private final long version;
+
+        Snapshot(final YamlConfiguration values, final long version) {
+            this.values = values;
+            this.version = version;
+        }
+    }
+
     /**
      * Create a new YAML file.
      * 
@@ -36,6 +84,8 @@ public class SimpleYamlConfiguration extends YamlConfiguration {
          * accepts null as configDefaults -> check for resource and copies it if
          * found, makes an empty config if nothing is found
          */
+        this.plugin = plugin;
+
         final String folderPath = plugin.getDataFolder().getAbsolutePath() + File.separator;
         file = new File(folderPath + fileName);
 
@@ -100,15 +150,178 @@ public class SimpleYamlConfiguration extends YamlConfiguration {
     }
 
     /**
-     * Save the YAML file.
+     * Save the YAML file. The file is written on the calling thread.
      */
     public void saveFile() {
-        try {
-            this.save(file);
-        } catch (final ConcurrentModificationException e) {
+        writeSnapshot(createSnapshot());
+    }
+
+    /**
+     * Save the YAML file. The values are copied on the calling thread, but
+     * turning them into YAML and writing the file is done by the given
+     * executor. If the plugin is disabled, the file is written on the calling
+     * thread.
+     * 
+     * @param executor
+     *            Executor to write the file with, such as the IO pool of
+     *            Autorank
+     */
+    public void saveFileAsync(final Executor executor) {
+        if (!plugin.isEnabled()) {
             saveFile();
-        } catch (final IOException e) {
-            e.printStackTrace();
+            return;
+        }
+
+        final Snapshot snapshot = createSnapshot();
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                writeSnapshot(snapshot);
+            }
+        });
+    }
+
+    /**
+     * Create a copy of all values in this configuration and give it the next
+     * version. Other threads may keep changing the configuration while the
+     * copy is used.
+     * 
+     * @return a copy of this configuration.
+     */
+    private synchronized Snapshot createSnapshot() {
+        final YamlConfiguration values = new YamlConfiguration();
+
+        values.options().header(this.options().header());
+        values.options().indent(this.options().indent());
+
+        copySection(this, values);
+
+        return new Snapshot(values, ++snapshotVersion);
+    }
+
+    @Override
+    public synchronized void set(final String path, final Object value) {
+        super.set(path, value);
+    }
+
+    @Override
+    public synchronized Object get(final String path, final Object def) {
+        return super.get(path, def);
+    }
+
+    @Override
+    public synchronized ConfigurationSection createSection(final String path) {
+        return super.createSection(path);
+    }
+
+    @Override
+    public synchronized ConfigurationSection createSection(final String path, final Map<?, ?> map) {
+        return super.createSection(path, map);
+    }
+
+    @Override
+    public synchronized Set<String> getKeys(final boolean deep) {
+        return super.getKeys(deep);
+    }
+
+    @Override
+    public synchronized Map<String, Object> getValues(final boolean deep) {
+        return super.getValues(deep);
+    }
+
+    @Override
+    public synchronized void loadFromString(final String contents) throws InvalidConfigurationException {
+        super.loadFromString(contents);
+    }
+
+    private void writeSnapshot(final Snapshot snapshot) {
+        synchronized (file) {
+            // A newer snapshot was already written.
+            if (snapshot.version < writtenVersion) {
+                return;
+            }
+
+            try {
+                saveAtomically(snapshot.values, file);
+                writtenVersion = snapshot.version;
+            } catch (final IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Copy all values of a section to another section. Lists are copied as
+     * well, so changing them afterwards does not change the copy.
+     */
+    private static void copySection(final ConfigurationSection from, final ConfigurationSection to) {
+        for (final Map.Entry<String, Object> entry : from.getValues(false).entrySet()) {
+            final Object value = entry.getValue();
+
+            if (value instanceof ConfigurationSection) {
+                copySection((ConfigurationSection) value, to.createSection(entry.getKey()));
+            } else if (value instanceof List) {
+                to.set(entry.getKey(), new ArrayList<Object>((List<?>) value));
+            } else {
+                to.set(entry.getKey(), value);
+            }
+        }
+    }
+
+    /**
+     * Write a YAML configuration to a file. The YAML is written to a temporary
+     * file first, which then replaces the given file, so the file is never
+     * half-written.
+     * 
+     * @param config
+     *            Configuration to write. It should not be changed while it is
+     *            written.
+     * @param file
+     *            File to write to
+     * @throws IOException
+     *             when the file could not be written.
+     */
+    public static void saveAtomically(final YamlConfiguration config, final File file) throws IOException {
+        saveAtomically(config.saveToString(), file);
+    }
+
+    /**
+     * Write YAML that was already created to a file, see
+     * {@link #saveAtomically(YamlConfiguration, File)}.
+     *
+     * @param data
+     *            YAML to write
+     * @param file
+     *            File to write to
+     * @throws IOException
+     *             when the file could not be written.
+     */
+    public static void saveAtomically(final String data, final File file) throws IOException {
+        final File parent = file.getAbsoluteFile().getParentFile();
+
+        if (parent != null) {
+            parent.mkdirs();
+        }
+
+        final File tempFile = new File(parent, file.getName() + ".tmp");
+
+        final FileOutputStream stream = new FileOutputStream(tempFile);
+        final Writer writer = new OutputStreamWriter(stream, Charset.forName("UTF-8"));
+
+        try {
+            writer.write(data);
+            writer.flush();
+            stream.getFD().sync();
+        } finally {
+            writer.close();
+        }
+
+        try {
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (final AtomicMoveNotSupportedException e) {
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
         }
     }
 }
@@ -11,7 +11,6 @@ import org.bukkit.configuration.ConfigurationSection;
 
 import me.armar.plugins.autorank.Autorank;
 import me.armar.plugins.autorank.config.SimpleYamlConfiguration;
-import me.armar.plugins.autorank.data.flatfile.FlatFileManager.TimeType;
 
 public class DataConverter {
 
@@ -87,11 +86,8 @@ public class DataConverter {
 
         plugin.getInternalPropertiesConfig().setConvertedToNewFormat(true);
 
-        // Reload file
-        plugin.getFlatFileManager().getDataFile(TimeType.TOTAL_TIME).reloadFile();
-        plugin.getFlatFileManager().getDataFile(TimeType.WEEKLY_TIME).reloadFile();
-        plugin.getFlatFileManager().getDataFile(TimeType.MONTHLY_TIME).reloadFile();
-        plugin.getFlatFileManager().getDataFile(TimeType.DAILY_TIME).reloadFile();
+        // Reload files
+        plugin.getFlatFileManager().loadDataFiles();
 
         return true;
     }
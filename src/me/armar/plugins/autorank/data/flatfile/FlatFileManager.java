@@ -1,5 +1,8 @@
 package me.armar.plugins.autorank.data.flatfile;
 
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.HashMap;
@@ -8,25 +11,47 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.UUID;
 
-import org.bukkit.OfflinePlayer;
+import org.bukkit.configuration.file.YamlConfiguration;
 
 import me.armar.plugins.autorank.Autorank;
 import me.armar.plugins.autorank.config.SimpleYamlConfiguration;
 import me.armar.plugins.autorank.data.flatfile.FlatFileManager.TimeType;
 import me.armar.plugins.autorank.language.Lang;
+import me.armar.plugins.autorank.util.AutorankExecutors.WorkType;
 import me.armar.plugins.autorank.util.AutorankTools;
 import me.armar.plugins.autorank.util.uuid.UUIDManager;
 
 /**
  * This class is used for getting and setting play time data of players.
+ * <p>
+ * All play time is kept in a {@link PlaytimeTable}. Next to the total time,
+ * it stores the time every player played on each of the last
+ * {@link PlaytimeTable#HISTORY_DAYS} days. The daily, weekly and monthly time
+ * are the sum of the days since the start of the current day, week or month,
+ * so they never have to be reset. The same history is used to get the time
+ * played in the last x days (see {@link #getRecentTime(UUID, int)}).
+ * <p>
+ * Autorank also remembers when it last saw each player. This is used to remove
+ * the data of players that have not played for a while, without having to
+ * ask the server about every player (see {@link #removeOldEntries()}).
+ * <p>
+ * The total time is imported from and exported to a YAML data file. The
+ * history and last seen times are stored in a {@link PlaytimeHistoryFile}. The daily, weekly and
+ * monthly YAML files are still written, but only as a view of the history.
+ * <p>
+ * Writing all data files is expensive, so it is not done every minute.
+ * Instead, only the players whose time changed are appended to a
+ * {@link PlaytimeJournal}. Every {@link #COMPACTION_INTERVAL} minutes the data
+ * files are written completely and the journal is emptied.
+ * <p>
+ * When the local database is enabled, the play time is stored in a
+ * {@link PlaytimeDatabase} instead. The changed players are written to it
+ * every minute and the data files, history and journal are not used. When the
+ * database is still empty, the play time is imported from the files once.
  * 
  * @author "Staartvin"
  *
  */
-/**
- * Type a nice description here
- *
- */
 public class FlatFileManager {
 
     private Autorank plugin;
@@ -41,7 +66,34 @@ public class FlatFileManager {
 
     public static HashMap<TimeType, String> dataTypePaths = new HashMap<>();
 
-    private final HashMap<TimeType, SimpleYamlConfiguration> dataFiles = new HashMap<TimeType, SimpleYamlConfiguration>();
+    // Time (in minutes) between writing all data files.
+    public static final int COMPACTION_INTERVAL = 30;
+
+    private final PlaytimeTable playtimeTable = new PlaytimeTable();
+
+    private PlaytimeJournal journal;
+
+    private PlaytimeHistoryFile historyFile;
+
+    // Used instead of the files when the local database is enabled.
+    private PlaytimeDatabase database;
+
+    // When the data files were last written completely.
+    private long lastCompaction = System.currentTimeMillis();
+
+    // Set when changes could not be written to the journal.
+    private boolean forceCompaction = false;
+
+    // Number of days a player can be offline before its data is removed.
+    public static final int OLD_ENTRY_DAYS = 60;
+
+    // Maximum number of old entries that are removed at once.
+    private static final int REMOVE_SLICE_SIZE = 500;
+
+    // Key in the daily, weekly and monthly data files that stores the period
+    // the times belong to.
+    private static final String PERIOD_KEY = "period";
+
 
     public FlatFileManager(Autorank instance) {
         this.plugin = instance;
@@ -53,7 +105,11 @@ public class FlatFileManager {
     }
 
     /**
-     * Load all the data files (daily time, weekly time, etc.).
+     * Load the total time, history and last seen time of all players into the
+     * playtime table. Any time that was stored in memory before is discarded.
+     * <p>
+     * When there is no history yet, it is created from the daily, weekly and
+     * monthly data files.
      */
     public void loadDataFiles() {
 
@@ -62,42 +118,365 @@ public class FlatFileManager {
         dataTypePaths.put(TimeType.WEEKLY_TIME, "/data/Weekly_time.yml");
         dataTypePaths.put(TimeType.MONTHLY_TIME, "/data/Monthly_time.yml");
 
-        dataFiles.put(TimeType.TOTAL_TIME,
-                new SimpleYamlConfiguration(plugin, dataTypePaths.get(TimeType.TOTAL_TIME), "Total data"));
-        dataFiles.put(TimeType.DAILY_TIME,
-                new SimpleYamlConfiguration(plugin, dataTypePaths.get(TimeType.DAILY_TIME), "Daily data"));
-        dataFiles.put(TimeType.WEEKLY_TIME,
-                new SimpleYamlConfiguration(plugin, dataTypePaths.get(TimeType.WEEKLY_TIME), "Weekly data"));
-        dataFiles.put(TimeType.MONTHLY_TIME,
-                new SimpleYamlConfiguration(plugin, dataTypePaths.get(TimeType.MONTHLY_TIME), "Monthly data"));
+        journal = new PlaytimeJournal(
+                new File(plugin.getDataFolder().getAbsolutePath() + File.separator + "/data/Playtime.journal"));
+
+        historyFile = new PlaytimeHistoryFile(
+                new File(plugin.getDataFolder().getAbsolutePath() + File.separator + "/data/Playtime_history.dat"));
+
+        playtimeTable.clear();
+
+        database = null;
+
+        if (plugin.getSQLiteDatabase() != null) {
+            final PlaytimeDatabase playtimeDatabase = new PlaytimeDatabase(plugin.getSQLiteDatabase());
+
+            try {
+                playtimeDatabase.createTable();
+
+                if (!playtimeDatabase.isEmpty()) {
+                    final int players = playtimeDatabase.load(playtimeTable);
+
+                    plugin.debugMessage("Loaded play time of " + players + " players from the local database.");
+
+                    database = playtimeDatabase;
+
+                    // Loaded times don't have to be written again.
+                    playtimeTable.collectChanges();
+                    return;
+                }
+
+                plugin.getLogger().info("Importing play time from the data files into the local database.");
+
+                database = playtimeDatabase;
+            } catch (final SQLException e) {
+                plugin.getLogger().warning(
+                        "Could not load play time from the local database, using the data files: " + e.getMessage());
+
+                playtimeTable.clear();
+            }
+        }
+
+        this.importDataFile(TimeType.TOTAL_TIME);
+
+        // The data files do not store when a player was last seen.
+        boolean lastSeenKnown = false;
+
+        if (historyFile.exists()) {
+            try {
+                final int players = historyFile.load(playtimeTable);
+
+                plugin.debugMessage("Loaded play time history of " + players + " players.");
+
+                lastSeenKnown = true;
+            } catch (final IOException e) {
+                plugin.getLogger().warning("Could not load play time history: " + e.getMessage());
+            }
+        } else {
+            this.importHistory();
+
+            // Write the history file as soon as possible.
+            forceCompaction = true;
+        }
+
+        // Apply changes that were made after the data files were last written.
+        try {
+            final int records = journal.replay(playtimeTable);
+
+            plugin.debugMessage("Replayed " + records + " records of the play time journal.");
+        } catch (final IOException e) {
+            plugin.getLogger().warning("Could not replay play time journal: " + e.getMessage());
+
+            // Don't append to a journal that cannot be read.
+            journal.truncate();
+        }
+
+        // Players we have never seen are treated as if they were seen now, so
+        // they are not removed right after updating.
+        if (!lastSeenKnown && playtimeTable.loadMissingLastSeen(getCurrentMinute()) > 0) {
+            forceCompaction = true;
+        }
+
+        // Loaded times don't have to be written again.
+        playtimeTable.collectChanges();
+
+        // Put all imported times in the local database.
+        if (database != null) {
+            forceCompaction = true;
+        }
+    }
+
+    /**
+     * Read the data file of a time type and put all its values in the total
+     * time of the playtime table.
+     * 
+     * @param type
+     *            Type of time
+     */
+    private void importDataFile(final TimeType type) {
+        final SimpleYamlConfiguration data = new SimpleYamlConfiguration(plugin, dataTypePaths.get(type),
+                getDataFileName(type));
+
+        for (final String uuidString : data.getKeys(false)) {
+            UUID uuid = null;
+            try {
+                uuid = UUID.fromString(uuidString);
+            } catch (final IllegalArgumentException e) {
+                continue;
+            }
+
+            playtimeTable.setTotalTime(uuid, data.getInt(uuidString, 0));
+        }
+    }
+
+    /**
+     * Create the history of players from the daily, weekly and monthly data
+     * files. These files only know the sum of a period, so the time of the
+     * current day is put on today and whatever remains of the week and month
+     * is put on the first day of that week or month.
+     */
+    private void importHistory() {
+        final int today = getDay(Calendar.getInstance());
+
+        // Daily first, so the weekly and monthly times only add what is
+        // missing.
+        for (final TimeType type : new TimeType[] { TimeType.DAILY_TIME, TimeType.WEEKLY_TIME,
+                TimeType.MONTHLY_TIME }) {
+            final File file = new File(plugin.getDataFolder().getAbsolutePath() + File.separator
+                    + dataTypePaths.get(type));
+
+            if (!file.exists()) {
+                continue;
+            }
+
+            final SimpleYamlConfiguration data = new SimpleYamlConfiguration(plugin, dataTypePaths.get(type),
+                    getDataFileName(type));
+
+            // Times of a period that has already passed are not imported.
+            final boolean upToDate = data.isInt(PERIOD_KEY) ? data.getInt(PERIOD_KEY) == getCurrentPeriod(type)
+                    : !this.shouldResetDatafile(type);
+
+            if (!upToDate) {
+                continue;
+            }
+
+            final int firstDay = getFirstDay(type);
+
+            for (final String uuidString : data.getKeys(false)) {
+                UUID uuid = null;
+                try {
+                    uuid = UUID.fromString(uuidString);
+                } catch (final IllegalArgumentException e) {
+                    continue;
+                }
+
+                final int missing = data.getInt(uuidString, 0) - playtimeTable.getTime(uuid, firstDay, today);
+
+                if (missing > 0) {
+                    playtimeTable.addTime(uuid, firstDay, missing);
+                }
+            }
+        }
+    }
+
+    /**
+     * Write the values of a time type in the playtime table to its data file.
+     * The daily, weekly and monthly files are not read by Autorank, but are
+     * written so the times can still be seen (and backed up) per period.
+     * 
+     * @param type
+     *            Type of time
+     * @return true if the file was written, false otherwise.
+     */
+    private boolean exportDataFile(final TimeType type) {
+        final YamlConfiguration data = new YamlConfiguration();
+
+        // Total time is written for every stored player, the other types only
+        // when the player has played in the current period.
+        final List<UUID> uuids = this.getUUIDKeys(type);
+
+        if (type != TimeType.TOTAL_TIME) {
+            data.set(PERIOD_KEY, getCurrentPeriod(type));
+        }
+
+        for (final UUID uuid : uuids) {
+            data.set(uuid.toString(), this.getLocalTime(type, uuid));
+        }
+
+        try {
+            SimpleYamlConfiguration.saveAtomically(data,
+                    new File(plugin.getDataFolder().getAbsolutePath() + File.separator + dataTypePaths.get(type)));
+        } catch (final IOException e) {
+            plugin.getLogger().severe("Could not save " + getDataFileName(type) + ": " + e.getMessage());
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Get the name of a data file that is shown in the console.
+     * 
+     * @param type
+     *            Type of time
+     * @return name of the data file
+     */
+    private String getDataFileName(final TimeType type) {
+        switch (type) {
+            case DAILY_TIME:
+                return "Daily data";
+            case WEEKLY_TIME:
+                return "Weekly data";
+            case MONTHLY_TIME:
+                return "Monthly data";
+            default:
+                return "Total data";
+        }
     }
 
     /**
      * Register tasks for saving and updating time of players.
      */
     public void registerTasks() {
-        // Run save task every 30 seconds
+        // Write changes every minute
         plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, new Runnable() {
             public void run() {
-                saveFiles();
+                if (forceCompaction || (System.currentTimeMillis() - lastCompaction) / 60000 >= COMPACTION_INTERVAL) {
+                    saveFiles();
+                } else {
+                    saveChanges();
+                }
             }
         }, AutorankTools.TICKS_PER_SECOND, AutorankTools.TICKS_PER_MINUTE);
     }
 
     /**
-     * Save all data files.
+     * Append the times that changed since the last save to the journal. This
+     * is much cheaper than writing all data files.
+     */
+    public synchronized void saveChanges() {
+        final PlaytimeTable.Changes changes = playtimeTable.collectChanges();
+
+        if (changes.isEmpty()) {
+            return;
+        }
+
+        if (database != null) {
+            try {
+                database.save(changes, false);
+            } catch (final SQLException e) {
+                plugin.getLogger().warning("Could not write play time to the local database: " + e.getMessage());
+
+                // These changes are lost, so write everything.
+                forceCompaction = true;
+            }
+
+            return;
+        }
+
+        try {
+            journal.append(changes);
+        } catch (final IOException e) {
+            plugin.getLogger().warning("Could not write to play time journal: " + e.getMessage());
+
+            // These changes are lost from the journal, so write everything.
+            forceCompaction = true;
+        }
+    }
+
+    /**
+     * Save all data files and the history. After the files are written, the
+     * journal is emptied.
+     * <p>
+     * When the local database is used, only the changes are written, unless
+     * earlier changes could not be written.
+     */
+    public synchronized void saveFiles() {
+        if (database != null) {
+            this.saveDatabase();
+            return;
+        }
+
+        // Make sure the journal is up to date, so it is still valid if we
+        // crash while writing the data files.
+        if (!forceCompaction) {
+            saveChanges();
+        }
+
+        final boolean hadChanges = journal.getSize() > 0 || forceCompaction;
+
+        lastCompaction = System.currentTimeMillis();
+
+        // Nothing changed since the files were written.
+        if (!hadChanges) {
+            return;
+        }
+
+        boolean exported = true;
+
+        for (final TimeType type : TimeType.values()) {
+            exported &= this.exportDataFile(type);
+        }
+
+        // History of players that did not play in the last days is forgotten.
+        final int firstDay = getDay(Calendar.getInstance()) - PlaytimeTable.HISTORY_DAYS + 1;
+
+        try {
+            historyFile.save(playtimeTable.getRows(firstDay));
+        } catch (final IOException e) {
+            plugin.getLogger().severe("Could not save play time history: " + e.getMessage());
+            exported = false;
+        }
+
+        // The total time is read from its data file at startup, so the journal
+        // is only truncated when every file was written.
+        if (!exported) {
+            plugin.getLogger().severe("Not all play time files could be saved, keeping the journal.");
+            return;
+        }
+
+        journal.truncate();
+
+        forceCompaction = false;
+    }
+
+    /**
+     * Write the changes to the local database. If earlier changes could not be
+     * written, all players are written instead.
      */
-    public void saveFiles() {
-        for (final Entry<TimeType, SimpleYamlConfiguration> entry : dataFiles.entrySet()) {
-            entry.getValue().saveFile();
+    private void saveDatabase() {
+        if (!forceCompaction) {
+            saveChanges();
+            return;
         }
+
+        lastCompaction = System.currentTimeMillis();
+
+        // All rows are written, so the changes don't have to be.
+        playtimeTable.collectChanges();
+
+        final int firstDay = getDay(Calendar.getInstance()) - PlaytimeTable.HISTORY_DAYS + 1;
+
+        try {
+            database.save(playtimeTable.getRows(firstDay), true);
+        } catch (final SQLException e) {
+            plugin.getLogger().warning("Could not write play time to the local database: " + e.getMessage());
+
+            // Try again next time.
+            return;
+        }
+
+        forceCompaction = false;
     }
 
     /**
-     * Check whether all the data files are still correct or if they should be
-     * reset. Autorank stores what values were previously found for the day,
-     * week and month and compares these to the current values. If a new day has
-     * arrived, the daily time file has to be reset.
+     * Check whether a new day, week or month has started. Autorank stores what
+     * values were previously found for the day, week and month and compares
+     * these to the current values. If a new day has arrived, the daily
+     * leaderboard is updated and the reset is broadcast.
+     * <p>
+     * The times themselves are calculated from the history of the players, so
+     * nothing has to be written when a new period starts.
      */
     public void doCalendarCheck() {
         // Check if all data files are still up to date.
@@ -145,7 +524,7 @@ public class FlatFileManager {
                 plugin.getInternalPropertiesConfig().setLeaderboardLastUpdateTime(0);
 
                 // Update leaderboard of reset time
-                plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
+                plugin.getExecutors().execute(WorkType.CPU, new Runnable() {
                     public void run() {
                         plugin.getLeaderboardManager().updateLeaderboard(type);
                     }
@@ -154,19 +533,12 @@ public class FlatFileManager {
         }
     }
 
-    /**
-     * Get a data file for a specific time type.
-     * 
-     * @param type
-     *            Type of time
-     * @return a data file where the given time type is stored.
-     */
-    public SimpleYamlConfiguration getDataFile(final TimeType type) {
-        return dataFiles.get(type);
-    }
-
     /**
      * Set the local play time of a player.
+     * <p>
+     * The daily, weekly and monthly time are calculated from the history, so
+     * setting one of them changes the history by the difference, see
+     * {@link #addLocalTime(UUID, int, TimeType)}.
      * 
      * @param type
      *            Type of time
@@ -177,10 +549,45 @@ public class FlatFileManager {
      */
     public void setLocalTime(final TimeType type, final int value, final UUID uuid) {
         // Set time of a player of a specific type
+        if (type == TimeType.TOTAL_TIME) {
+            playtimeTable.setTotalTime(uuid, value);
+            return;
+        }
+
+        addTimeToPeriod(uuid, type, value - this.getLocalTime(type, uuid));
+    }
+
+    /**
+     * Change the daily, weekly or monthly time of a player. Time that is added
+     * goes to today. Time that is taken away is taken from today first and
+     * then from the days before it, back to the start of the period, as a day
+     * can never have less than zero minutes.
+     * 
+     * @param uuid
+     *            UUID of the player
+     * @param type
+     *            Type of time, not the total time
+     * @param difference
+     *            Time (in minutes) to add, or to take away if negative
+     */
+    private void addTimeToPeriod(final UUID uuid, final TimeType type, final int difference) {
+        final int today = getDay(Calendar.getInstance());
+
+        if (difference >= 0) {
+            playtimeTable.addTime(uuid, today, difference);
+            return;
+        }
+
+        int remaining = -difference;
 
-        final SimpleYamlConfiguration data = this.getDataFile(type);
+        for (int day = today; day >= getFirstDay(type) && remaining > 0; day--) {
+            final int taken = Math.min(remaining, playtimeTable.getTime(uuid, day, day));
 
-        data.set(uuid.toString(), value);
+            if (taken > 0) {
+                playtimeTable.addTime(uuid, day, -taken);
+                remaining -= taken;
+            }
+        }
     }
 
     /**
@@ -191,8 +598,6 @@ public class FlatFileManager {
      * @return true if Autorank should reset the file, false otherwise.
      */
     public boolean shouldResetDatafile(final TimeType type) {
-        // Should we reset a specific data file?
-        // Compare date to last date in internal properties
         final Calendar cal = Calendar.getInstance();
         cal.setFirstDayOfWeek(Calendar.MONDAY);
 
@@ -213,8 +618,76 @@ public class FlatFileManager {
         return false;
     }
 
+    /**
+     * Get the period that the current time belongs to for a specific time type.
+     * Every day, week and month has its own number, which is stored in the
+     * data file of that time type.
+     * 
+     * @param type
+     *            Type of time
+     * @return a number that identifies the current day, week or month. Always
+     *         0 for the total time.
+     */
+    public static int getCurrentPeriod(final TimeType type) {
+        final Calendar cal = Calendar.getInstance();
+        cal.setFirstDayOfWeek(Calendar.MONDAY);
+
+        switch (type) {
+            case DAILY_TIME:
+                return cal.get(Calendar.YEAR) * 1000 + cal.get(Calendar.DAY_OF_YEAR);
+            case WEEKLY_TIME:
+                return cal.getWeekYear() * 100 + cal.get(Calendar.WEEK_OF_YEAR);
+            case MONTHLY_TIME:
+                return cal.get(Calendar.YEAR) * 100 + cal.get(Calendar.MONTH);
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Get the number of days between the epoch and the date of a calendar, in
+     * the time zone of that calendar. This is the day that is used to store
+     * the history of players.
+     * 
+     * @param cal
+     *            Calendar to get the day of
+     * @return the day since the epoch.
+     */
+    public static int getDay(final Calendar cal) {
+        final long localTime = cal.getTimeInMillis() + cal.get(Calendar.ZONE_OFFSET) + cal.get(Calendar.DST_OFFSET);
+
+        return (int) (localTime / 86400000L);
+    }
+
+    /**
+     * Get the first day of the current day, week or month.
+     * 
+     * @param type
+     *            Type of time
+     * @return the day (since the epoch) the current period started on.
+     */
+    static int getFirstDay(final TimeType type) {
+        final Calendar cal = Calendar.getInstance();
+        final int today = getDay(cal);
+
+        switch (type) {
+            case WEEKLY_TIME:
+                // Weeks start on monday.
+                return today - (cal.get(Calendar.DAY_OF_WEEK) - Calendar.MONDAY + 7) % 7;
+            case MONTHLY_TIME:
+                return today - (cal.get(Calendar.DAY_OF_MONTH) - 1);
+            default:
+                return today;
+        }
+    }
+
     /**
      * Add local play time of a player to the currently stored play time.
+     * <p>
+     * The daily, weekly and monthly time all add to the time of today, so
+     * adding time to one of them changes all of them. Time that is taken away
+     * is taken from today and then from the earlier days of the period. Use
+     * {@link #addPlayedTime(UUID, int)} to add time that was just played.
      * 
      * @param uuid
      *            UUID of the player
@@ -224,14 +697,27 @@ public class FlatFileManager {
      *            Type of time
      */
     public void addLocalTime(final UUID uuid, final int timeDifference, final TimeType type) {
-
-        final int time = this.getLocalTime(type, uuid);
-
-        if (time >= 0) {
-            setLocalTime(type, time + timeDifference, uuid);
+        if (type == TimeType.TOTAL_TIME) {
+            playtimeTable.addTotalTime(uuid, timeDifference);
+        } else {
+            addTimeToPeriod(uuid, type, timeDifference);
         }
     }
 
+    /**
+     * Add time that a player has just played. This is added to the total time
+     * and to the time of today.
+     * 
+     * @param uuid
+     *            UUID of the player
+     * @param minutes
+     *            Time (in minutes) to add
+     */
+    public void addPlayedTime(final UUID uuid, final int minutes) {
+        this.addLocalTime(uuid, minutes, TimeType.TOTAL_TIME);
+        this.addLocalTime(uuid, minutes, TimeType.DAILY_TIME);
+    }
+
     /**
      * Archive old records. Records below the minimum value will be removed
      * because they are 'inactive'.
@@ -244,8 +730,6 @@ public class FlatFileManager {
         // Keep a counter of archived items
         int counter = 0;
 
-        final SimpleYamlConfiguration data = this.getDataFile(TimeType.TOTAL_TIME);
-
         for (final UUID uuid : getUUIDKeys(TimeType.TOTAL_TIME)) {
             final int time = this.getLocalTime(TimeType.TOTAL_TIME, uuid);
 
@@ -253,7 +737,7 @@ public class FlatFileManager {
             if (time < minimum) {
                 counter++;
                 // Remove record
-                data.set(uuid.toString(), null);
+                playtimeTable.remove(uuid);
             }
         }
 
@@ -262,39 +746,51 @@ public class FlatFileManager {
     }
 
     /**
-     * Remove entries from Autorank's database when the user has not been online for more than 30 days.
-     * @return number of entries that were deleted.
+     * Remove entries from Autorank's database when the user has not been online
+     * for more than {@link #OLD_ENTRY_DAYS} days. Only the players that were
+     * not seen for that long are visited. Each task removes at most
+     * {@link #REMOVE_SLICE_SIZE} players and queues the next slice as a new
+     * task, so the play time is never locked for long and other work can run
+     * in between. The number of removed entries is logged when all slices are
+     * done.
      */
-    public int removeOldEntries() {
-        int counter = 0;
-        // Remove data from users that haven't been online for a while
-        
-        int daysThreshold = 60;
-
-        final SimpleYamlConfiguration data = this.getDataFile(TimeType.TOTAL_TIME);
+    public void removeOldEntries() {
+        removeOldEntries(getCurrentMinute() - OLD_ENTRY_DAYS * 24 * 60, 0);
+    }
 
-        long currentTime = System.currentTimeMillis();
+    private void removeOldEntries(final int threshold, final int removedBefore) {
+        final int removed = playtimeTable.removeNotSeenSince(threshold, REMOVE_SLICE_SIZE);
 
-        for (final UUID uuid : getUUIDKeys(TimeType.TOTAL_TIME)) {
-            OfflinePlayer offPlayer = plugin.getServer().getOfflinePlayer(uuid);
-            
-            if (offPlayer.getName() == null) {
-                // Remove record
-                data.set(uuid.toString(), null);
-                counter++;
-                continue;
-            }
+        if (removed == REMOVE_SLICE_SIZE) {
+            plugin.getExecutors().execute(WorkType.CPU, new Runnable() {
+                public void run() {
+                    removeOldEntries(threshold, removedBefore + removed);
+                }
+            });
+            return;
+        }
 
-            long lastPlayed = offPlayer.getLastPlayed();
+        plugin.getLogger().info("Removed " + (removedBefore + removed) + " old data entries from database!");
+    }
 
-            if (lastPlayed <= 0 || (currentTime - lastPlayed) / 86400000 >= daysThreshold) {
-                // Remove record
-                data.set(uuid.toString(), null);
-                counter++;
-            }
-        }
+    /**
+     * Remember that a player is online at this moment.
+     * 
+     * @param uuid
+     *            UUID of the player
+     */
+    public void setLastSeen(final UUID uuid) {
+        playtimeTable.setLastSeen(uuid, getCurrentMinute());
+    }
 
-        return counter;
+    /**
+     * Get the current time in minutes since the epoch, as used for the last
+     * seen time of players.
+     * 
+     * @return the current minute.
+     */
+    private static int getCurrentMinute() {
+        return (int) (System.currentTimeMillis() / 60000L);
     }
 
     /**
@@ -330,9 +826,28 @@ public class FlatFileManager {
      */
     public int getLocalTime(final TimeType type, final UUID uuid) {
         // Get time of a player with specific type
-        final SimpleYamlConfiguration data = this.getDataFile(type);
+        if (type == TimeType.TOTAL_TIME) {
+            return playtimeTable.getTotalTime(uuid);
+        }
 
-        return data.getInt(uuid.toString(), 0);
+        return playtimeTable.getTime(uuid, getFirstDay(type), getDay(Calendar.getInstance()));
+    }
+
+    /**
+     * Get the time a player played on this server in the last days, including
+     * today.
+     * 
+     * @param uuid
+     *            UUID of the player
+     * @param days
+     *            Number of days to look back. At most
+     *            {@link PlaytimeTable#HISTORY_DAYS} days are remembered.
+     * @return play time (in minutes) in the last days or 0 if not found.
+     */
+    public int getRecentTime(final UUID uuid, final int days) {
+        final int today = getDay(Calendar.getInstance());
+
+        return playtimeTable.getTime(uuid, today - Math.min(days, PlaytimeTable.HISTORY_DAYS) + 1, today);
     }
 
     /**
@@ -342,33 +857,11 @@ public class FlatFileManager {
      *            Type of time
      */
     public void resetDatafile(final TimeType type) {
-        final SimpleYamlConfiguration data = this.getDataFile(type);
-
         plugin.debugMessage("Resetting data file '" + type + "'!");
 
-        // Delete file
-        final boolean deleted = data.getInternalFile().delete();
-
-        // Don't create a new file if it wasn't deleted in the first place.
-        if (!deleted) {
-            plugin.debugMessage("Tried deleting data file, but could not delete!");
-            return;
-        }
-
-        // Create a new file so it's empty
-        if (type == TimeType.DAILY_TIME) {
-            dataFiles.put(TimeType.DAILY_TIME,
-                    new SimpleYamlConfiguration(plugin, dataTypePaths.get(TimeType.DAILY_TIME), "Daily data"));
-        } else if (type == TimeType.WEEKLY_TIME) {
-            dataFiles.put(TimeType.WEEKLY_TIME,
-                    new SimpleYamlConfiguration(plugin, dataTypePaths.get(TimeType.WEEKLY_TIME), "Weekly data"));
-        } else if (type == TimeType.MONTHLY_TIME) {
-            dataFiles.put(TimeType.MONTHLY_TIME,
-                    new SimpleYamlConfiguration(plugin, dataTypePaths.get(TimeType.MONTHLY_TIME), "Monthly data"));
-        } else if (type == TimeType.TOTAL_TIME) {
-            dataFiles.put(TimeType.TOTAL_TIME,
-                    new SimpleYamlConfiguration(plugin, dataTypePaths.get(TimeType.TOTAL_TIME), "Total data"));
-        }
+        // Times only count the days of the current period, so there is nothing
+        // to clear. The file itself is overwritten the next time the files are
+        // saved.
     }
 
     /**
@@ -380,28 +873,41 @@ public class FlatFileManager {
      *         file.
      */
     public List<UUID> getUUIDKeys(final TimeType type) {
+        // All players have a total time, but only players that played in the
+        // current period have a daily, weekly or monthly time.
+        if (type == TimeType.TOTAL_TIME) {
+            return playtimeTable.getUUIDs();
+        }
 
-        final List<UUID> uuids = new ArrayList<UUID>();
-
-        final SimpleYamlConfiguration data = this.getDataFile(type);
+        return playtimeTable.getUUIDs(getFirstDay(type), getDay(Calendar.getInstance()));
+    }
 
-        for (final String uuidString : data.getKeys(false)) {
-            UUID uuid = null;
-            try {
-                uuid = UUID.fromString(uuidString);
-            } catch (final IllegalArgumentException e) {
-                continue;
-            }
+    /**
+     * Get the players with the most time of a certain type, best player first.
+     * This can only be done when the local database is used, as it sorts the
+     * times itself.
+     * 
+     * @param type
+     *            Type of time
+     * @param limit
+     *            Maximum number of players to return
+     * @return the UUIDs and times of the best players or null if the local
+     *         database is not used.
+     */
+    public Map<UUID, Integer> getTopTimes(final TimeType type, final int limit) {
+        if (database == null) {
+            return null;
+        }
 
-            // Invalid uuid
-            if (uuid == null) {
-                continue;
-            }
+        // Make sure the database knows the latest times.
+        this.saveFiles();
 
-            uuids.add(uuid);
+        try {
+            return database.getTopTimes(type, limit);
+        } catch (final SQLException e) {
+            plugin.getLogger().warning("Could not get the best players from the local database: " + e.getMessage());
+            return null;
         }
-
-        return uuids;
     }
 
     /**
@@ -409,8 +915,13 @@ public class FlatFileManager {
      * file.
      */
     public void importData() {
-        final SimpleYamlConfiguration data = this.getDataFile(TimeType.TOTAL_TIME);
-        data.reloadFile();
+        playtimeTable.clearTotalTimes();
+
+        this.importDataFile(TimeType.TOTAL_TIME);
+
+        // All total times changed, so write the files instead of the journal.
+        playtimeTable.collectChanges();
+        forceCompaction = true;
     }
 
 }
@@ -0,0 +1,324 @@
+package me.armar.plugins.autorank.data.flatfile;
+
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.Calendar;
+import java.util.LinkedHashMap;
+import java.util.UUID;
+
+import me.armar.plugins.autorank.data.flatfile.FlatFileManager.TimeType;
+import me.armar.plugins.autorank.data.sqlite.SQLiteDatabase;
+
+/**
+ * This stores the rows of a {@link PlaytimeTable} in the local
+ * {@link SQLiteDatabase}. It replaces the data files, the
+ * {@link PlaytimeHistoryFile} and the {@link PlaytimeJournal} when the local
+ * database is used.
+ * <p>
+ * Every player has a single row with the total time, when the player was last
+ * seen and the history. The daily, weekly and monthly time are stored as well,
+ * together with the period they belong to. These are only correct for the
+ * period they were written in, but that is enough to ask the database for the
+ * best players of the current period.
+ *
+ */
+public class PlaytimeDatabase {
+
+    private static final TimeType[] PERIOD_TYPES = { TimeType.DAILY_TIME, TimeType.WEEKLY_TIME,
+            TimeType.MONTHLY_TIME };
+
+    private final SQLiteDatabase database;
+
+    public PlaytimeDatabase(final SQLiteDatabase database) {
+        this.database = database;
+    }
+
+    /**
+     * Create the table and its indexes if they do not exist yet.
+     *
+     * @throws SQLException
+     *             when the table could not be created.
+     */
+    void createTable() throws SQLException {
+        synchronized (database) {
+            final Statement statement = database.getConnection().createStatement();
+
+            try {
+                statement.execute("CREATE TABLE IF NOT EXISTS playtime (uuid_most BIGINT NOT NULL, "
+                        + "uuid_least BIGINT NOT NULL, total_time INT NOT NULL, last_seen INT NOT NULL, "
+                        + "history_day INT, history BLOB, daily_period INT, daily_time INT, "
+                        + "weekly_period INT, weekly_time INT, monthly_period INT, monthly_time INT, "
+                        + "PRIMARY KEY (uuid_most, uuid_least))");
+
+                statement.execute("CREATE INDEX IF NOT EXISTS playtime_total ON playtime (total_time)");
+                statement.execute("CREATE INDEX IF NOT EXISTS playtime_last_seen ON playtime (last_seen)");
+
+                for (final TimeType type : PERIOD_TYPES) {
+                    final String prefix = getColumnPrefix(type);
+
+                    statement.execute("CREATE INDEX IF NOT EXISTS playtime_" + prefix + " ON playtime (" + prefix
+                            + "_period, " + prefix + "_time)");
+                }
+            } finally {
+                statement.close();
+            }
+        }
+    }
+
+    /**
+     * Check whether no player is stored yet.
+     *
+     * @return true if the table is empty.
+     * @throws SQLException
+     *             when the table could not be read.
+     */
+    boolean isEmpty() throws SQLException {
+        synchronized (database) {
+            final Statement statement = database.getConnection().createStatement();
+
+            try {
+                return !statement.executeQuery("SELECT 1 FROM playtime LIMIT 1").next();
+            } finally {
+                statement.close();
+            }
+        }
+    }
+
+    /**
+     * Put all stored players in the playtime table.
+     *
+     * @param table
+     *            Table to load the players into
+     * @return number of players that were loaded.
+     * @throws SQLException
+     *             when the table could not be read.
+     */
+    int load(final PlaytimeTable table) throws SQLException {
+        synchronized (database) {
+            final Statement statement = database.getConnection().createStatement();
+
+            int count = 0;
+
+            try {
+                // Oldest first, so the players are loaded in the order they
+                // were last seen.
+                final ResultSet result = statement.executeQuery("SELECT uuid_most, uuid_least, total_time, "
+                        + "last_seen, history_day, history FROM playtime ORDER BY last_seen");
+
+                final short[] history = new short[PlaytimeTable.HISTORY_DAYS];
+
+                while (result.next()) {
+                    final byte[] bytes = result.getBytes(6);
+
+                    if (bytes != null && bytes.length == 2 * history.length) {
+                        ByteBuffer.wrap(bytes).asShortBuffer().get(history);
+
+                        table.loadRow(result.getLong(1), result.getLong(2), result.getInt(3), result.getInt(4),
+                                result.getInt(5), history);
+                    } else {
+                        table.loadRow(result.getLong(1), result.getLong(2), result.getInt(3), result.getInt(4), 0,
+                                null);
+                    }
+
+                    count++;
+                }
+            } finally {
+                statement.close();
+            }
+
+            return count;
+        }
+    }
+
+    /**
+     * Write changed and removed rows of the playtime table. All changes are
+     * written in a single transaction.
+     *
+     * @param changes
+     *            Changes to write
+     * @param replace
+     *            Whether all stored rows should be replaced by the given rows
+     * @throws SQLException
+     *             when the changes could not be written. Nothing is written in
+     *             that case.
+     */
+    void save(final PlaytimeTable.Changes changes, final boolean replace) throws SQLException {
+        if (changes.isEmpty() && !replace) {
+            return;
+        }
+
+        final int today = FlatFileManager.getDay(Calendar.getInstance());
+
+        final int[] periods = new int[PERIOD_TYPES.length];
+        final int[] firstDays = new int[PERIOD_TYPES.length];
+
+        for (int i = 0; i < PERIOD_TYPES.length; i++) {
+            periods[i] = FlatFileManager.getCurrentPeriod(PERIOD_TYPES[i]);
+            firstDays[i] = FlatFileManager.getFirstDay(PERIOD_TYPES[i]);
+        }
+
+        synchronized (database) {
+            final Connection connection = database.getConnection();
+
+            final PreparedStatement delete = connection
+                    .prepareStatement("DELETE FROM playtime WHERE uuid_most = ? AND uuid_least = ?");
+            final PreparedStatement insert = connection.prepareStatement("INSERT OR REPLACE INTO playtime "
+                    + "(uuid_most, uuid_least, total_time, last_seen, history_day, history, daily_period, "
+                    + "daily_time, weekly_period, weekly_time, monthly_period, monthly_time) "
+                    + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+
+            connection.setAutoCommit(false);
+
+            try {
+                if (replace) {
+                    final Statement statement = connection.createStatement();
+
+                    try {
+                        statement.execute("DELETE FROM playtime");
+                    } finally {
+                        statement.close();
+                    }
+                }
+
+                for (int i = 0; i < changes.removedCount; i++) {
+                    delete.setLong(1, changes.removedMostSigBits[i]);
+                    delete.setLong(2, changes.removedLeastSigBits[i]);
+                    delete.addBatch();
+                }
+
+                if (changes.removedCount > 0) {
+                    delete.executeBatch();
+                }
+
+                final ByteBuffer buffer = ByteBuffer.allocate(2 * PlaytimeTable.HISTORY_DAYS);
+
+                for (int i = 0; i < changes.changedCount; i++) {
+                    final short[] history = changes.histories[i];
+
+                    insert.setLong(1, changes.mostSigBits[i]);
+                    insert.setLong(2, changes.leastSigBits[i]);
+                    insert.setInt(3, changes.totalTimes[i]);
+                    insert.setInt(4, changes.lastSeen[i]);
+
+                    if (history != null) {
+                        buffer.clear();
+                        buffer.asShortBuffer().put(history);
+
+                        insert.setInt(5, changes.historyDays[i]);
+                        insert.setBytes(6, buffer.array().clone());
+                    } else {
+                        insert.setNull(5, Types.INTEGER);
+                        insert.setNull(6, Types.BLOB);
+                    }
+
+                    for (int type = 0; type < PERIOD_TYPES.length; type++) {
+                        insert.setInt(7 + 2 * type, periods[type]);
+                        insert.setInt(8 + 2 * type, history == null ? 0
+                                : getTime(history, changes.historyDays[i], firstDays[type], today));
+                    }
+
+                    insert.addBatch();
+                }
+
+                if (changes.changedCount > 0) {
+                    insert.executeBatch();
+                }
+
+                connection.commit();
+            } catch (final SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                delete.close();
+                insert.close();
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Get the players with the most time of a time type, best player first.
+     * Only the rows that were written are used, so changes that are not
+     * written yet are not taken into account.
+     *
+     * @param type
+     *            Type of time
+     * @param limit
+     *            Maximum number of players to return
+     * @return the UUIDs and times of the best players.
+     * @throws SQLException
+     *             when the table could not be read.
+     */
+    LinkedHashMap<UUID, Integer> getTopTimes(final TimeType type, final int limit) throws SQLException {
+        final String sql;
+
+        if (type == TimeType.TOTAL_TIME) {
+            sql = "SELECT uuid_most, uuid_least, total_time FROM playtime ORDER BY total_time DESC LIMIT ?";
+        } else {
+            final String prefix = getColumnPrefix(type);
+
+            sql = "SELECT uuid_most, uuid_least, " + prefix + "_time FROM playtime WHERE " + prefix
+                    + "_period = ? AND " + prefix + "_time > 0 ORDER BY " + prefix + "_time DESC LIMIT ?";
+        }
+
+        final LinkedHashMap<UUID, Integer> times = new LinkedHashMap<UUID, Integer>();
+
+        synchronized (database) {
+            final PreparedStatement statement = database.getConnection().prepareStatement(sql);
+
+            try {
+                if (type == TimeType.TOTAL_TIME) {
+                    statement.setInt(1, limit);
+                } else {
+                    statement.setInt(1, FlatFileManager.getCurrentPeriod(type));
+                    statement.setInt(2, limit);
+                }
+
+                final ResultSet result = statement.executeQuery();
+
+                while (result.next()) {
+                    times.put(new UUID(result.getLong(1), result.getLong(2)), result.getInt(3));
+                }
+            } finally {
+                statement.close();
+            }
+        }
+
+        return times;
+    }
+
+    /**
+     * Get the sum of the days of a history between two days.
+     */
+    private static int getTime(final short[] history, final int historyDay, final int firstDay,
+            final int lastDay) {
+        final int from = Math.max(firstDay, historyDay - PlaytimeTable.HISTORY_DAYS + 1);
+        final int to = Math.min(lastDay, historyDay);
+
+        int time = 0;
+
+        for (int day = from; day <= to; day++) {
+            time += history[PlaytimeTable.getHistorySlot(day)];
+        }
+
+        return time;
+    }
+
+    private static String getColumnPrefix(final TimeType type) {
+        switch (type) {
+            case DAILY_TIME:
+                return "daily";
+            case WEEKLY_TIME:
+                return "weekly";
+            case MONTHLY_TIME:
+                return "monthly";
+            default:
+                return "total";
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package me.armar.plugins.autorank.data.flatfile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * This file stores when every player was last seen and the history (time
+ * played per day) of all players that played recently. It is written
+ * completely when the data files are written, changes in between are kept in
+ * the {@link PlaytimeJournal}.
+ * <p>
+ * The file starts with a header, followed by the two longs of the UUID, the
+ * last seen time and (if the player played recently) the most recent day and
+ * the minutes of every day of each player. Players are written in the order
+ * they were last seen, so they can be loaded in that order.
+ *
+ */
+public class PlaytimeHistoryFile {
+
+    private static final int MAGIC = 0x41524831;
+
+    private final File file;
+
+    public PlaytimeHistoryFile(final File file) {
+        this.file = file;
+    }
+
+    /**
+     * Check whether the history file exists.
+     *
+     * @return true if it exists, false otherwise.
+     */
+    public boolean exists() {
+        return file.exists();
+    }
+
+    /**
+     * Put the last seen time and history of all players in this file in the
+     * playtime table.
+     *
+     * @param table
+     *            Table to load the players into
+     * @return number of players that were loaded.
+     * @throws IOException
+     *             when the file could not be read.
+     */
+    synchronized int load(final PlaytimeTable table) throws IOException {
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file.getName() + " is not a valid play time history");
+            }
+
+            final int days = in.readInt();
+
+            if (days != PlaytimeTable.HISTORY_DAYS) {
+                throw new IOException(file.getName() + " stores " + days + " days instead of "
+                        + PlaytimeTable.HISTORY_DAYS);
+            }
+
+            final int count = in.readInt();
+            final short[] history = new short[days];
+
+            for (int i = 0; i < count; i++) {
+                final long most = in.readLong();
+                final long least = in.readLong();
+
+                table.loadLastSeen(most, least, in.readInt());
+
+                // Player did not play recently.
+                if (!in.readBoolean()) {
+                    continue;
+                }
+
+                final int historyDay = in.readInt();
+
+                for (int day = 0; day < days; day++) {
+                    history[day] = in.readShort();
+                }
+
+                table.loadHistory(most, least, historyDay, history);
+            }
+
+            return count;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Write the last seen time and history of players to this file. The file is
+     * first written to a temporary file and then moved, so it is never left
+     * half written.
+     *
+     * @param histories
+     *            Rows to write, see {@link PlaytimeTable#getRows(int)}
+     * @throws IOException
+     *             when the file could not be written.
+     */
+    synchronized void save(final PlaytimeTable.Changes histories) throws IOException {
+        file.getParentFile().mkdirs();
+
+        final File tempFile = new File(file.getPath() + ".tmp");
+        final FileOutputStream fileStream = new FileOutputStream(tempFile);
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileStream));
+
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(PlaytimeTable.HISTORY_DAYS);
+            out.writeInt(histories.changedCount);
+
+            for (int i = 0; i < histories.changedCount; i++) {
+                out.writeLong(histories.mostSigBits[i]);
+                out.writeLong(histories.leastSigBits[i]);
+                out.writeInt(histories.lastSeen[i]);
+
+                final short[] history = histories.histories[i];
+
+                out.writeBoolean(history != null);
+
+                if (history == null) {
+                    continue;
+                }
+
+                out.writeInt(histories.historyDays[i]);
+
+                for (final short minutes : history) {
+                    out.writeShort(minutes);
+                }
+            }
+
+            out.flush();
+            fileStream.getFD().sync();
+        } finally {
+            out.close();
+        }
+
+        try {
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (final AtomicMoveNotSupportedException e) {
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
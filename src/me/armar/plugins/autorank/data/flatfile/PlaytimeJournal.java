@@ -0,0 +1,218 @@
+package me.armar.plugins.autorank.data.flatfile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * The journal stores the changes of a {@link PlaytimeTable} that were made
+ * after the data files were last written. <br>
+ * Instead of writing all data files every time, only the changed rows are
+ * appended to this file. When Autorank starts, the data files are loaded first
+ * and then the journal is replayed on top of them.
+ * <p>
+ * Each record is a single byte that tells whether a row was changed or
+ * removed, followed by the two longs of the UUID. A changed row also stores
+ * the total time, when the player was last seen and, if the player has one,
+ * the history of the last {@link PlaytimeTable#HISTORY_DAYS} days.
+ *
+ */
+public class PlaytimeJournal {
+
+    // Written at the start of the file so we never replay a journal that was
+    // written with a different layout.
+    private static final int MAGIC = 0x41524a31;
+
+    private static final byte RECORD_CHANGED = 0;
+    private static final byte RECORD_REMOVED = 1;
+
+    private final File file;
+
+    public PlaytimeJournal(final File file) {
+        this.file = file;
+    }
+
+    /**
+     * Append changes of the playtime table to the journal.
+     *
+     * @param changes
+     *            Changes to write
+     * @throws IOException
+     *             when the journal could not be written.
+     */
+    synchronized void append(final PlaytimeTable.Changes changes) throws IOException {
+        if (changes.isEmpty()) {
+            return;
+        }
+
+        final boolean writeHeader = !file.exists() || file.length() == 0;
+
+        if (writeHeader) {
+            file.getParentFile().mkdirs();
+        }
+
+        final FileOutputStream fileStream = new FileOutputStream(file, true);
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileStream));
+
+        try {
+            if (writeHeader) {
+                out.writeInt(MAGIC);
+                out.writeInt(PlaytimeTable.HISTORY_DAYS);
+            }
+
+            // Removals first, a player that was removed and added again ends
+            // up as a changed row.
+            for (int i = 0; i < changes.removedCount; i++) {
+                out.writeByte(RECORD_REMOVED);
+                out.writeLong(changes.removedMostSigBits[i]);
+                out.writeLong(changes.removedLeastSigBits[i]);
+            }
+
+            for (int i = 0; i < changes.changedCount; i++) {
+                out.writeByte(RECORD_CHANGED);
+                out.writeLong(changes.mostSigBits[i]);
+                out.writeLong(changes.leastSigBits[i]);
+                out.writeInt(changes.totalTimes[i]);
+                out.writeInt(changes.lastSeen[i]);
+
+                final short[] history = changes.histories[i];
+
+                out.writeBoolean(history != null);
+
+                if (history != null) {
+                    out.writeInt(changes.historyDays[i]);
+
+                    for (final short minutes : history) {
+                        out.writeShort(minutes);
+                    }
+                }
+            }
+
+            out.flush();
+            fileStream.getFD().sync();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Apply all records of the journal to a playtime table. A record that was
+     * only partially written (for instance because the server crashed) is
+     * ignored and cut off, so new records can be appended safely.
+     *
+     * @param table
+     *            Table to apply the records to
+     * @return number of records that were applied.
+     * @throws IOException
+     *             when the journal could not be read.
+     */
+    synchronized int replay(final PlaytimeTable table) throws IOException {
+        if (!file.exists() || file.length() == 0) {
+            return 0;
+        }
+
+        int records = 0;
+
+        // Length of the journal up to the last record that was fully read.
+        long validLength = 0;
+
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Journal " + file.getName() + " is not a valid play time journal");
+            }
+
+            final int days = in.readInt();
+
+            if (days != PlaytimeTable.HISTORY_DAYS) {
+                throw new IOException("Journal " + file.getName() + " stores " + days + " days instead of "
+                        + PlaytimeTable.HISTORY_DAYS);
+            }
+
+            final short[] history = new short[PlaytimeTable.HISTORY_DAYS];
+
+            validLength = 8;
+
+            while (true) {
+                final byte type = in.readByte();
+                final long most = in.readLong();
+                final long least = in.readLong();
+
+                if (type == RECORD_REMOVED) {
+                    table.unloadRow(most, least);
+                    validLength += 17;
+                } else {
+                    final int totalTime = in.readInt();
+                    final int lastSeen = in.readInt();
+
+                    int recordLength = 17 + 9;
+
+                    if (in.readBoolean()) {
+                        final int historyDay = in.readInt();
+
+                        for (int i = 0; i < history.length; i++) {
+                            history[i] = in.readShort();
+                        }
+
+                        table.loadRow(most, least, totalTime, lastSeen, historyDay, history);
+                        recordLength += 4 + 2 * history.length;
+                    } else {
+                        table.loadRow(most, least, totalTime, lastSeen, 0, null);
+                    }
+
+                    validLength += recordLength;
+                }
+
+                records++;
+            }
+        } catch (final EOFException e) {
+            // End of journal (or a record that was not fully written).
+        } finally {
+            in.close();
+        }
+
+        if (validLength < file.length()) {
+            final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+
+            try {
+                raf.setLength(validLength);
+            } finally {
+                raf.close();
+            }
+        }
+
+        return records;
+    }
+
+    /**
+     * Remove all records from the journal. This should only be done after all
+     * data files were written.
+     */
+    synchronized void truncate() {
+        if (file.exists() && !file.delete()) {
+            // Could not delete it, so empty it instead.
+            try {
+                new FileOutputStream(file, false).close();
+            } catch (final IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Get the size of the journal on disk.
+     *
+     * @return size in bytes or 0 if there is no journal.
+     */
+    public long getSize() {
+        return file.length();
+    }
+}
@@ -0,0 +1,964 @@
+package me.armar.plugins.autorank.data.flatfile;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * This class stores the play time of all players in memory. <br>
+ * Every player has a row that is identified by the two longs of its UUID. The
+ * total time of all players is stored in a column of ints, so no objects are
+ * created per player and no strings have to be built to look up a value.
+ * <p>
+ * Rows are looked up via an open addressing (linear probing) hash index. The id
+ * of a row does not change as long as the player is stored in the table.
+ * <p>
+ * A player that played in the last {@link #HISTORY_DAYS} days also has a ring
+ * of shorts that holds the minutes played on each of those days. Days are
+ * counted since the epoch (see {@link FlatFileManager#getDay(java.util.Calendar)}).
+ * The time played in any window of recent days (such as the current week) is
+ * the sum of a few slots of this ring, see {@link #getTime(UUID, int, int)}.
+ * <p>
+ * Every row also stores when the player was last seen (in minutes since the
+ * epoch). The rows are linked in the order of this time, oldest first, so the
+ * players that were not seen for a while can be found without looking at any
+ * other row, see {@link #removeNotSeenSince(int, int)}. A player that is
+ * added to the table counts as seen at that moment.
+ * <p>
+ * The table keeps track of which rows were changed or removed, so only those
+ * have to be written to disk. See {@link #collectChanges()}.
+ *
+ */
+public class PlaytimeTable {
+
+    /**
+     * Number of days of which the play time of each day is remembered.
+     */
+    public static final int HISTORY_DAYS = 90;
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    // Resize the hash index when it is more than 75% full.
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private static final int NO_ROW = -1;
+
+    // Hash index: each slot holds a row id or NO_ROW.
+    private int[] slots;
+    private int mask;
+
+    // Columns that make up the rows
+    private long[] mostSigBits;
+    private long[] leastSigBits;
+    private boolean[] usedRows;
+    private int[] totalTimes;
+
+    // Minutes played per day, indexed by day % HISTORY_DAYS. Null for players
+    // that have no history.
+    private short[][] histories;
+    // Most recent day that is stored in the history of a row.
+    private int[] historyDays;
+
+    // When a player was last seen (0 if unknown). Rows are linked from the
+    // oldest to the most recent time.
+    private int[] lastSeen;
+    private int[] seenPrevious;
+    private int[] seenNext;
+    private int seenHead = NO_ROW;
+    private int seenTail = NO_ROW;
+
+    // Highest row id that was handed out + 1.
+    private int rowCount = 0;
+
+    // Rows that were removed and can be used again.
+    private int[] freeRows = new int[16];
+    private int freeCount = 0;
+
+    private int size = 0;
+
+    // Rows that were changed since the changes were last collected.
+    private boolean[] dirtyRows;
+    private int[] dirtyList = new int[16];
+    private int dirtyCount = 0;
+
+    // Players that were removed since the changes were last collected.
+    private long[] removedMostSigBits = new long[16];
+    private long[] removedLeastSigBits = new long[16];
+    private int removedCount = 0;
+
+    public PlaytimeTable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a new table that can store the given number of players before it
+     * has to grow.
+     *
+     * @param expectedSize
+     *            Expected number of players
+     */
+    public PlaytimeTable(final int expectedSize) {
+        int capacity = 16;
+
+        while (capacity * LOAD_FACTOR < expectedSize) {
+            capacity <<= 1;
+        }
+
+        slots = new int[capacity];
+        Arrays.fill(slots, NO_ROW);
+        mask = capacity - 1;
+
+        final int rows = Math.max(16, expectedSize);
+
+        mostSigBits = new long[rows];
+        leastSigBits = new long[rows];
+        usedRows = new boolean[rows];
+        dirtyRows = new boolean[rows];
+        totalTimes = new int[rows];
+        histories = new short[rows][];
+        historyDays = new int[rows];
+        lastSeen = new int[rows];
+        seenPrevious = new int[rows];
+        seenNext = new int[rows];
+    }
+
+    /**
+     * Get the total time of a player.
+     *
+     * @param uuid
+     *            UUID of the player
+     * @return the stored time or 0 if the player is not stored.
+     */
+    public synchronized int getTotalTime(final UUID uuid) {
+        final int row = findRow(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+
+        if (row == NO_ROW) {
+            return 0;
+        }
+
+        return totalTimes[row];
+    }
+
+    /**
+     * Set the total time of a player. A new row is created if the player is not
+     * stored yet, which counts as seen now.
+     *
+     * @param uuid
+     *            UUID of the player
+     * @param value
+     *            Value to set the time to.
+     */
+    public synchronized void setTotalTime(final UUID uuid, final int value) {
+        final int row = getOrCreateSeenRow(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+
+        totalTimes[row] = value;
+        markDirty(row);
+    }
+
+    /**
+     * Add time to the total time of a player. A new row is created if the
+     * player is not stored yet, which counts as seen now.
+     *
+     * @param uuid
+     *            UUID of the player
+     * @param difference
+     *            Time to add
+     * @return the new total time of the player.
+     */
+    public synchronized int addTotalTime(final UUID uuid, final int difference) {
+        final int row = getOrCreateSeenRow(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+
+        totalTimes[row] += difference;
+        markDirty(row);
+
+        return totalTimes[row];
+    }
+
+    /**
+     * Get the time a player played between two days (both inclusive). Days
+     * that are older than {@link #HISTORY_DAYS} days before the last day the
+     * player played on are not remembered and count as zero.
+     *
+     * @param uuid
+     *            UUID of the player
+     * @param firstDay
+     *            First day of the window
+     * @param lastDay
+     *            Last day of the window
+     * @return the time played in the window or 0 if the player is not stored.
+     */
+    public synchronized int getTime(final UUID uuid, final int firstDay, final int lastDay) {
+        final int row = findRow(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+
+        if (row == NO_ROW) {
+            return 0;
+        }
+
+        return getTime(row, firstDay, lastDay);
+    }
+
+    /**
+     * Add time to the time a player played on a specific day. A new row is
+     * created if the player is not stored yet, which counts as seen now.
+     * <p>
+     * Time can only be added to the last {@link #HISTORY_DAYS} days before the
+     * most recent day the player played on. The time of a single day is never
+     * below zero or above {@link Short#MAX_VALUE}.
+     *
+     * @param uuid
+     *            UUID of the player
+     * @param day
+     *            Day to add the time to
+     * @param difference
+     *            Time to add
+     * @return the new time of the player on that day.
+     */
+    public synchronized int addTime(final UUID uuid, final int day, final int difference) {
+        final int row = getOrCreateSeenRow(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+
+        short[] history = histories[row];
+
+        if (history == null) {
+            history = histories[row] = new short[HISTORY_DAYS];
+            historyDays[row] = day;
+        } else if (day > historyDays[row]) {
+            // Slots of the days in between belonged to days that are now too
+            // old.
+            final int passed = Math.min(day - historyDays[row], HISTORY_DAYS);
+
+            for (int i = 1; i <= passed; i++) {
+                history[getHistorySlot(historyDays[row] + i)] = 0;
+            }
+
+            historyDays[row] = day;
+        } else if (day <= historyDays[row] - HISTORY_DAYS) {
+            // Too old to remember.
+            return 0;
+        }
+
+        final int slot = getHistorySlot(day);
+
+        history[slot] = (short) Math.max(0, Math.min(Short.MAX_VALUE, history[slot] + difference));
+        markDirty(row);
+
+        return history[slot];
+    }
+
+    /**
+     * Get when a player was last seen.
+     *
+     * @param uuid
+     *            UUID of the player
+     * @return time in minutes since the epoch or 0 if it is not known.
+     */
+    public synchronized int getLastSeen(final UUID uuid) {
+        final int row = findRow(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+
+        if (row == NO_ROW) {
+            return 0;
+        }
+
+        return lastSeen[row];
+    }
+
+    /**
+     * Set when a player was last seen. A new row is created if the player is
+     * not stored yet.
+     * <p>
+     * This is cheap when the time is later than the time of all other players,
+     * which is the case when it is the current time.
+     *
+     * @param uuid
+     *            UUID of the player
+     * @param minute
+     *            Time in minutes since the epoch
+     */
+    public synchronized void setLastSeen(final UUID uuid, final int minute) {
+        final int row = getOrCreateRow(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+
+        if (lastSeen[row] == minute) {
+            return;
+        }
+
+        lastSeen[row] = minute;
+        placeByLastSeen(row);
+        markDirty(row);
+    }
+
+    /**
+     * Remove players that were not seen since the given time, starting with
+     * the player that was not seen for the longest time. At most the given
+     * number of players is removed, so the table is not locked for long.
+     * Players of which it is not known when they were last seen are kept.
+     *
+     * @param minute
+     *            Time in minutes since the epoch
+     * @param limit
+     *            Maximum number of players to remove
+     * @return number of players that were removed.
+     */
+    public synchronized int removeNotSeenSince(final int minute, final int limit) {
+        int removed = 0;
+        int row = seenHead;
+
+        // Unknown times are 0, so they are at the start of the list.
+        while (row != NO_ROW && lastSeen[row] == 0) {
+            row = seenNext[row];
+        }
+
+        while (removed < limit && row != NO_ROW && lastSeen[row] < minute) {
+            final int next = seenNext[row];
+
+            remove(new UUID(mostSigBits[row], leastSigBits[row]));
+            removed++;
+            row = next;
+        }
+
+        return removed;
+    }
+
+    /**
+     * Check whether a player is stored in this table.
+     *
+     * @param uuid
+     *            UUID of the player
+     * @return true if there is a row for this player, false otherwise.
+     */
+    public synchronized boolean contains(final UUID uuid) {
+        return findRow(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()) != NO_ROW;
+    }
+
+    /**
+     * Remove all times of a player.
+     *
+     * @param uuid
+     *            UUID of the player
+     * @return true if the player was stored, false otherwise.
+     */
+    public synchronized boolean remove(final UUID uuid) {
+        final long most = uuid.getMostSignificantBits();
+        final long least = uuid.getLeastSignificantBits();
+
+        int slot = hash(most, least) & mask;
+
+        while (slots[slot] != NO_ROW) {
+            final int row = slots[slot];
+
+            if (mostSigBits[row] == most && leastSigBits[row] == least) {
+                deleteSlot(slot);
+                freeRow(row);
+                markRemoved(most, least);
+                return true;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        return false;
+    }
+
+    /**
+     * Set the total time of every player to zero.
+     */
+    public synchronized void clearTotalTimes() {
+        for (int row = 0; row < rowCount; row++) {
+            if (totalTimes[row] != 0) {
+                totalTimes[row] = 0;
+                markDirty(row);
+            }
+        }
+    }
+
+    /**
+     * Remove all players from this table. This is not recorded as a change.
+     */
+    public synchronized void clear() {
+        Arrays.fill(slots, NO_ROW);
+        Arrays.fill(usedRows, 0, rowCount, false);
+        Arrays.fill(dirtyRows, 0, rowCount, false);
+        Arrays.fill(totalTimes, 0, rowCount, 0);
+        Arrays.fill(histories, 0, rowCount, null);
+        Arrays.fill(historyDays, 0, rowCount, 0);
+        Arrays.fill(lastSeen, 0, rowCount, 0);
+
+        seenHead = NO_ROW;
+        seenTail = NO_ROW;
+        rowCount = 0;
+        freeCount = 0;
+        size = 0;
+        dirtyCount = 0;
+        removedCount = 0;
+    }
+
+    /**
+     * Get the number of players that are stored.
+     *
+     * @return number of rows in this table.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Get the UUIDs of all players that are stored in this table.
+     *
+     * @return a list of UUIDs.
+     */
+    public synchronized List<UUID> getUUIDs() {
+        final List<UUID> uuids = new ArrayList<UUID>(size);
+
+        for (int row = 0; row < rowCount; row++) {
+            if (usedRows[row]) {
+                uuids.add(new UUID(mostSigBits[row], leastSigBits[row]));
+            }
+        }
+
+        return uuids;
+    }
+
+    /**
+     * Get the UUIDs of all players that played between two days (both
+     * inclusive).
+     *
+     * @param firstDay
+     *            First day of the window
+     * @param lastDay
+     *            Last day of the window
+     * @return a list of UUIDs.
+     */
+    public synchronized List<UUID> getUUIDs(final int firstDay, final int lastDay) {
+        final List<UUID> uuids = new ArrayList<UUID>();
+
+        for (int row = 0; row < rowCount; row++) {
+            if (usedRows[row] && getTime(row, firstDay, lastDay) != 0) {
+                uuids.add(new UUID(mostSigBits[row], leastSigBits[row]));
+            }
+        }
+
+        return uuids;
+    }
+
+    /**
+     * Check whether there are changes that have not been collected yet.
+     *
+     * @return true if any row was changed or removed since the last call to
+     *         {@link #collectChanges()}.
+     */
+    public synchronized boolean hasChanges() {
+        return dirtyCount > 0 || removedCount > 0;
+    }
+
+    /**
+     * Get all rows that were changed or removed since the last time this
+     * method was called. The changes are copied, so they can be written to
+     * disk without holding on to the table.
+     *
+     * @return the changes of this table.
+     */
+    synchronized Changes collectChanges() {
+        final Changes changes = new Changes(removedCount, dirtyCount);
+
+        System.arraycopy(removedMostSigBits, 0, changes.removedMostSigBits, 0, removedCount);
+        System.arraycopy(removedLeastSigBits, 0, changes.removedLeastSigBits, 0, removedCount);
+
+        for (int i = 0; i < dirtyCount; i++) {
+            final int row = dirtyList[i];
+
+            dirtyRows[row] = false;
+
+            // Row was removed after it was changed, the removal is recorded.
+            if (!usedRows[row]) {
+                continue;
+            }
+
+            copyRow(row, changes);
+        }
+
+        dirtyCount = 0;
+        removedCount = 0;
+
+        return changes;
+    }
+
+    /**
+     * Get a copy of all rows, ordered by when the players were last seen. The
+     * history is only included for players that played on or after the given
+     * day. Nothing is recorded or reset. The rows are returned as
+     * {@link Changes}, so they can be written in the same way.
+     *
+     * @param firstDay
+     *            Oldest day a player must have played on to include its
+     *            history
+     * @return the rows of all players.
+     */
+    synchronized Changes getRows(final int firstDay) {
+        final Changes changes = new Changes(0, size);
+
+        for (int row = seenHead; row != NO_ROW; row = seenNext[row]) {
+            copyRow(row, changes);
+
+            if (historyDays[row] < firstDay) {
+                changes.histories[changes.changedCount - 1] = null;
+            }
+        }
+
+        return changes;
+    }
+
+    /**
+     * Set the total time and history of a player at once. This is used when
+     * replaying changes that were written to disk, so it is not recorded as a
+     * change.
+     *
+     * @param most
+     *            Most significant bits of the UUID
+     * @param least
+     *            Least significant bits of the UUID
+     * @param totalTime
+     *            Total time of the player
+     * @param minute
+     *            When the player was last seen
+     * @param historyDay
+     *            Most recent day in the history
+     * @param history
+     *            Minutes played per day (indexed by day % HISTORY_DAYS) or
+     *            null if the player has no history.
+     */
+    synchronized void loadRow(final long most, final long least, final int totalTime, final int minute,
+            final int historyDay, final short[] history) {
+        final int row = getOrCreateRow(most, least);
+
+        totalTimes[row] = totalTime;
+        loadHistory(row, historyDay, history);
+
+        if (lastSeen[row] != minute) {
+            lastSeen[row] = minute;
+            placeByLastSeen(row);
+        }
+    }
+
+    /**
+     * Set the total time of a player without recording it as a change.
+     *
+     * @param most
+     *            Most significant bits of the UUID
+     * @param least
+     *            Least significant bits of the UUID
+     * @param totalTime
+     *            Total time of the player
+     */
+    synchronized void loadTotalTime(final long most, final long least, final int totalTime) {
+        totalTimes[getOrCreateRow(most, least)] = totalTime;
+    }
+
+    /**
+     * Set the history of a player without recording it as a change.
+     *
+     * @param most
+     *            Most significant bits of the UUID
+     * @param least
+     *            Least significant bits of the UUID
+     * @param historyDay
+     *            Most recent day in the history
+     * @param history
+     *            Minutes played per day (indexed by day % HISTORY_DAYS)
+     */
+    synchronized void loadHistory(final long most, final long least, final int historyDay, final short[] history) {
+        loadHistory(getOrCreateRow(most, least), historyDay, history);
+    }
+
+    /**
+     * Set when a player was last seen without recording it as a change.
+     *
+     * @param most
+     *            Most significant bits of the UUID
+     * @param least
+     *            Least significant bits of the UUID
+     * @param minute
+     *            Time in minutes since the epoch
+     */
+    synchronized void loadLastSeen(final long most, final long least, final int minute) {
+        final int row = getOrCreateRow(most, least);
+
+        if (lastSeen[row] != minute) {
+            lastSeen[row] = minute;
+            placeByLastSeen(row);
+        }
+    }
+
+    /**
+     * Set the last seen time of all players of which it is not known when they
+     * were last seen. This is not recorded as a change.
+     *
+     * @param minute
+     *            Time in minutes since the epoch
+     * @return number of players that were changed.
+     */
+    synchronized int loadMissingLastSeen(final int minute) {
+        int changed = 0;
+
+        // Unknown times are 0, so they are at the start of the list.
+        while (seenHead != NO_ROW && lastSeen[seenHead] == 0) {
+            final int row = seenHead;
+
+            lastSeen[row] = minute;
+            placeByLastSeen(row);
+            changed++;
+        }
+
+        return changed;
+    }
+
+    /**
+     * Remove a player without recording it as a change.
+     *
+     * @param most
+     *            Most significant bits of the UUID
+     * @param least
+     *            Least significant bits of the UUID
+     */
+    synchronized void unloadRow(final long most, final long least) {
+        if (remove(new UUID(most, least))) {
+            removedCount--;
+        }
+    }
+
+    /**
+     * Get the slot in a history that belongs to a day.
+     *
+     * @param day
+     *            Day since the epoch
+     * @return index in the history ring.
+     */
+    static int getHistorySlot(final int day) {
+        final int slot = day % HISTORY_DAYS;
+
+        return slot < 0 ? slot + HISTORY_DAYS : slot;
+    }
+
+    private int getTime(final int row, final int firstDay, final int lastDay) {
+        final short[] history = histories[row];
+
+        if (history == null) {
+            return 0;
+        }
+
+        final int from = Math.max(firstDay, historyDays[row] - HISTORY_DAYS + 1);
+        final int to = Math.min(lastDay, historyDays[row]);
+
+        int time = 0;
+
+        for (int day = from; day <= to; day++) {
+            time += history[getHistorySlot(day)];
+        }
+
+        return time;
+    }
+
+    private void loadHistory(final int row, final int historyDay, final short[] history) {
+        histories[row] = (history == null ? null : Arrays.copyOf(history, HISTORY_DAYS));
+        historyDays[row] = historyDay;
+    }
+
+    private void copyRow(final int row, final Changes changes) {
+        final int index = changes.changedCount++;
+
+        changes.mostSigBits[index] = mostSigBits[row];
+        changes.leastSigBits[index] = leastSigBits[row];
+        changes.totalTimes[index] = totalTimes[row];
+        changes.historyDays[index] = historyDays[row];
+        changes.lastSeen[index] = lastSeen[row];
+
+        if (histories[row] != null) {
+            changes.histories[index] = histories[row].clone();
+        }
+    }
+
+    private void markDirty(final int row) {
+        if (dirtyRows[row]) {
+            return;
+        }
+
+        dirtyRows[row] = true;
+
+        if (dirtyCount == dirtyList.length) {
+            dirtyList = Arrays.copyOf(dirtyList, dirtyCount << 1);
+        }
+
+        dirtyList[dirtyCount++] = row;
+    }
+
+    private void markRemoved(final long most, final long least) {
+        if (removedCount == removedMostSigBits.length) {
+            removedMostSigBits = Arrays.copyOf(removedMostSigBits, removedCount << 1);
+            removedLeastSigBits = Arrays.copyOf(removedLeastSigBits, removedCount << 1);
+        }
+
+        removedMostSigBits[removedCount] = most;
+        removedLeastSigBits[removedCount] = least;
+        removedCount++;
+    }
+
+    /**
+     * Move a row to its place in the list of last seen times. The list is
+     * searched from the most recent end, so this is fast for recent times.
+     */
+    private void placeByLastSeen(final int row) {
+        unlinkLastSeen(row);
+
+        int previous = seenTail;
+
+        while (previous != NO_ROW && lastSeen[previous] > lastSeen[row]) {
+            previous = seenPrevious[previous];
+        }
+
+        final int next = (previous == NO_ROW ? seenHead : seenNext[previous]);
+
+        seenPrevious[row] = previous;
+        seenNext[row] = next;
+
+        if (previous == NO_ROW) {
+            seenHead = row;
+        } else {
+            seenNext[previous] = row;
+        }
+
+        if (next == NO_ROW) {
+            seenTail = row;
+        } else {
+            seenPrevious[next] = row;
+        }
+    }
+
+    private void unlinkLastSeen(final int row) {
+        final int previous = seenPrevious[row];
+        final int next = seenNext[row];
+
+        if (previous == NO_ROW) {
+            seenHead = next;
+        } else {
+            seenNext[previous] = next;
+        }
+
+        if (next == NO_ROW) {
+            seenTail = previous;
+        } else {
+            seenPrevious[next] = previous;
+        }
+
+        seenPrevious[row] = NO_ROW;
+        seenNext[row] = NO_ROW;
+    }
+
+    private static int hash(final long most, final long least) {
+        // Finalizer of MurmurHash3, spreads the bits of both longs.
+        long h = most ^ least;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    private int findRow(final long most, final long least) {
+        int slot = hash(most, least) & mask;
+
+        while (slots[slot] != NO_ROW) {
+            final int row = slots[slot];
+
+            if (mostSigBits[row] == most && leastSigBits[row] == least) {
+                return row;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        return NO_ROW;
+    }
+
+    private int getOrCreateRow(final long most, final long least) {
+        int slot = hash(most, least) & mask;
+
+        while (slots[slot] != NO_ROW) {
+            final int row = slots[slot];
+
+            if (mostSigBits[row] == most && leastSigBits[row] == least) {
+                return row;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        final int row = allocateRow();
+
+        mostSigBits[row] = most;
+        leastSigBits[row] = least;
+        usedRows[row] = true;
+        slots[slot] = row;
+        size++;
+
+        // Not seen yet, so it belongs at the start of the list.
+        lastSeen[row] = 0;
+        seenPrevious[row] = NO_ROW;
+        seenNext[row] = seenHead;
+
+        if (seenHead == NO_ROW) {
+            seenTail = row;
+        } else {
+            seenPrevious[seenHead] = row;
+        }
+
+        seenHead = row;
+
+        if (size > slots.length * LOAD_FACTOR) {
+            rehash(slots.length << 1);
+        }
+
+        return row;
+    }
+
+    /**
+     * Get the row of a player, or create it if the player is not stored yet.
+     * A new row is stamped with the current minute as last seen time, so a
+     * player that was added (for example by an import or a command) is not
+     * removed as an old entry right away.
+     */
+    private int getOrCreateSeenRow(final long most, final long least) {
+        final int oldSize = size;
+        final int row = getOrCreateRow(most, least);
+
+        if (size != oldSize) {
+            lastSeen[row] = (int) (System.currentTimeMillis() / 60000L);
+            placeByLastSeen(row);
+        }
+
+        return row;
+    }
+
+    private int allocateRow() {
+        if (freeCount > 0) {
+            return freeRows[--freeCount];
+        }
+
+        if (rowCount == mostSigBits.length) {
+            final int newLength = mostSigBits.length << 1;
+
+            mostSigBits = Arrays.copyOf(mostSigBits, newLength);
+            leastSigBits = Arrays.copyOf(leastSigBits, newLength);
+            usedRows = Arrays.copyOf(usedRows, newLength);
+            dirtyRows = Arrays.copyOf(dirtyRows, newLength);
+            totalTimes = Arrays.copyOf(totalTimes, newLength);
+            histories = Arrays.copyOf(histories, newLength);
+            historyDays = Arrays.copyOf(historyDays, newLength);
+            lastSeen = Arrays.copyOf(lastSeen, newLength);
+            seenPrevious = Arrays.copyOf(seenPrevious, newLength);
+            seenNext = Arrays.copyOf(seenNext, newLength);
+        }
+
+        return rowCount++;
+    }
+
+    private void freeRow(final int row) {
+        unlinkLastSeen(row);
+
+        usedRows[row] = false;
+        lastSeen[row] = 0;
+        totalTimes[row] = 0;
+        histories[row] = null;
+        historyDays[row] = 0;
+
+        if (freeCount == freeRows.length) {
+            freeRows = Arrays.copyOf(freeRows, freeCount << 1);
+        }
+
+        freeRows[freeCount++] = row;
+        size--;
+    }
+
+    /**
+     * Remove a slot from the hash index. Entries after the slot are shifted
+     * back so that lookups never run into a gap.
+     */
+    private void deleteSlot(int hole) {
+        int next = (hole + 1) & mask;
+
+        while (slots[next] != NO_ROW) {
+            final int row = slots[next];
+            final int ideal = hash(mostSigBits[row], leastSigBits[row]) & mask;
+
+            // Only move the entry if the hole lies between its ideal slot and
+            // its current slot.
+            if (((next - ideal) & mask) >= ((next - hole) & mask)) {
+                slots[hole] = row;
+                hole = next;
+            }
+
+            next = (next + 1) & mask;
+        }
+
+        slots[hole] = NO_ROW;
+    }
+
+    private void rehash(final int capacity) {
+        slots = new int[capacity];
+        Arrays.fill(slots, NO_ROW);
+        mask = capacity - 1;
+
+        for (int row = 0; row < rowCount; row++) {
+            if (!usedRows[row]) {
+                continue;
+            }
+
+            int slot = hash(mostSigBits[row], leastSigBits[row]) & mask;
+
+            while (slots[slot] != NO_ROW) {
+                slot = (slot + 1) & mask;
+            }
+
+            slots[slot] = row;
+        }
+    }
+
+    /**
+     * Rows of a {@link PlaytimeTable} that were changed or removed.
+     */
+    static class Changes {
+
+        final long[] removedMostSigBits;
+        final long[] removedLeastSigBits;
+        final int removedCount;
+
+        final long[] mostSigBits;
+        final long[] leastSigBits;
+        final int[] totalTimes;
+        final int[] historyDays;
+        final int[] lastSeen;
+        // Null for rows without history.
+        final short[][] histories;
+        int changedCount = 0;
+
+        Changes(final int removed, final int changed) {
+            removedMostSigBits = new long[removed];
+            removedLeastSigBits = new long[removed];
+            removedCount = removed;
+
+            mostSigBits = new long[changed];
+            leastSigBits = new long[changed];
+            totalTimes = new int[changed];
+            historyDays = new int[changed];
+            lastSeen = new int[changed];
+            histories = new short[changed][];
+        }
+
+        /**
+         * Check whether there are no changes at all.
+         *
+         * @return true if no row was changed or removed.
+         */
+        boolean isEmpty() {
+            return removedCount == 0 && changedCount == 0;
+        }
+    }
+}
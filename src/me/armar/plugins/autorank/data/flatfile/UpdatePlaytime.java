@@ -1,68 +1,197 @@
 package me.armar.plugins.autorank.data.flatfile;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.bukkit.entity.Player;
 
 import me.armar.plugins.autorank.Autorank;
-import me.armar.plugins.autorank.data.flatfile.FlatFileManager.TimeType;
-import me.armar.plugins.autorank.hooks.DependencyManager;
-import me.armar.plugins.autorank.permissions.AutorankPermission;
+import me.armar.plugins.autorank.playerchecker.PlayerEvaluation;
+import me.armar.plugins.autorank.playerchecker.PlayerSnapshot;
 import me.armar.plugins.autorank.playtimes.PlaytimeManager;
-import me.armar.plugins.autorank.util.AutorankTools;
+import me.armar.plugins.autorank.util.AutorankExecutors.WorkType;
 
 /*
  * UpdatePlaytime does an update on all online players
- * every 5 minutes
+ * every 5 minutes. The time played since the last update
+ * is added by the SessionTracker.
+ * 
+ * Players are not all updated at the same moment. Every player is put
+ * in a slot of a timer wheel that has one slot per second of the interval.
+ * This task runs every second and only updates the players in the current
+ * slot, so the updates are spread over the whole interval. At most a limited
+ * number of players is updated per run; the rest is updated in the next runs.
+ * 
+ * An update has three stages:
+ * 1. A snapshot of the player is taken on the main thread.
+ * 2. The time is added and the requirements are checked on another thread,
+ *    using the snapshot.
+ * 3. The next run applies the outcome (completed requirements, paths and
+ *    their results) on the main thread, for all players at once.
+ * 
+ * This task runs on the main thread.
  * 
  */
 public class UpdatePlaytime implements Runnable {
 
+    // Minimum number of players that are updated per run.
+    private static final int MIN_UPDATES_PER_RUN = 10;
+
     private final Autorank plugin;
     private FlatFileManager flatFileManager;
 
+    // Players in each slot of the wheel.
+    private final List<Set<UUID>> slots = new ArrayList<Set<UUID>>();
+
+    // Slot each player is in.
+    private final Map<UUID, Integer> playerSlots = new HashMap<UUID, Integer>();
+
+    // Players that should have been updated, but were not because there were
+    // too many players in a slot.
+    private final Deque<UUID> dueUpdates = new ArrayDeque<UUID>();
+
+    // Players that were checked on another thread, and should be ranked up on
+    // the main thread.
+    private final Queue<PlayerEvaluation> evaluations = new ConcurrentLinkedQueue<PlayerEvaluation>();
+
+    private int currentSlot = 0;
+
     public UpdatePlaytime(final FlatFileManager flatFileManager, final Autorank plugin) {
         this.plugin = plugin;
         this.flatFileManager = flatFileManager;
+
+        final int slotCount = Math.max(1, PlaytimeManager.INTERVAL_MINUTES * 60);
+
+        for (int i = 0; i < slotCount; i++) {
+            slots.add(new HashSet<UUID>());
+        }
+
+        // Spread players that are already online (after a reload).
+        int slot = 0;
+
+        for (final Player player : plugin.getServer().getOnlinePlayers()) {
+            addPlayer(player.getUniqueId(), slot);
+
+            slot = (slot + 1) % slotCount;
+        }
     }
 
-    @Override
-    public void run() {
-        updateMinutesPlayed();
+    /**
+     * Start updating a player. The player is updated every interval, counted
+     * from now.
+     * 
+     * @param uuid
+     *            UUID of the player
+     */
+    public void addPlayer(final UUID uuid) {
+        // The current slot was already taken, so the first update is a full
+        // interval from now.
+        addPlayer(uuid, currentSlot);
+    }
+
+    private void addPlayer(final UUID uuid, final int slot) {
+        removePlayer(uuid);
+
+        slots.get(slot).add(uuid);
+        playerSlots.put(uuid, slot);
     }
 
     /**
-     * Called every x minutes
+     * Stop updating a player.
+     * 
+     * @param uuid
+     *            UUID of the player
      */
-    private void updateMinutesPlayed() {
-        plugin.debugMessage("Checking players for automatic ranking");
+    public void removePlayer(final UUID uuid) {
+        final Integer slot = playerSlots.remove(uuid);
 
-        plugin.getServer().getScheduler().runTask(plugin, new Runnable() {
-            public void run() {
-                // Check whether the files are still up to date - Do this
-                // synchronously
-                flatFileManager.doCalendarCheck();
-            }
-        });
+        if (slot != null) {
+            slots.get(slot).remove(uuid);
+        }
+    }
 
-        for (final Player player : plugin.getServer().getOnlinePlayers()) {
+    @Override
+    public void run() {
+        // Apply the checks that were done since the last run.
+        applyEvaluations();
+
+        final List<UUID> uuids = takeDueUpdates();
 
-            if (player.getPlayer() == null) {
-                plugin.debugMessage("Could not update play time of " + player.getName() + " as (s)he is not online!");
+        if (uuids.isEmpty()) {
+            return;
+        }
+
+        final Set<String> permissions = plugin.getPlayerChecker().getPermissionsOfInterest();
+        final Set<PlayerSnapshot.NeededItem> items = plugin.getPlayerChecker().getItemsOfInterest();
+
+        for (final UUID uuid : uuids) {
+            final Player player = plugin.getServer().getPlayer(uuid);
+
+            if (player == null) {
                 continue;
             }
 
-            updateMinutesPlayed(player);
+            updateMinutesPlayed(player, permissions, items);
+        }
+    }
+
+    /**
+     * Move the wheel to the next slot and get the players that should be
+     * updated in this run.
+     * 
+     * @return UUIDs of the players to update.
+     */
+    private List<UUID> takeDueUpdates() {
+        currentSlot = (currentSlot + 1) % slots.size();
+
+        // A new interval has started
+        if (currentSlot == 0) {
+            plugin.debugMessage("Checking players for automatic ranking");
+
+            // Check whether the files are still up to date
+            flatFileManager.doCalendarCheck();
+        }
+
+        dueUpdates.addAll(slots.get(currentSlot));
+
+        // Enough to update every player once per interval.
+        final int budget = Math.max(MIN_UPDATES_PER_RUN, 2 * (playerSlots.size() / slots.size() + 1));
+
+        final List<UUID> uuids = new ArrayList<UUID>();
+
+        while (uuids.size() < budget && !dueUpdates.isEmpty()) {
+            final UUID uuid = dueUpdates.poll();
+
+            // Player left in the meantime
+            if (playerSlots.containsKey(uuid)) {
+                uuids.add(uuid);
+            }
         }
+
+        return uuids;
     }
 
     /**
-     * Check whether a user is now allowed to complete the path
+     * Take a snapshot of a player and check the player on another thread.
      * 
      * @param player
      *            Player to check
+     * @param permissions
+     *            Permissions the requirements check
+     * @param items
+     *            Items the requirements look for
      */
-    private void updateMinutesPlayed(final Player player) {
+    private void updateMinutesPlayed(final Player player, final Set<String> permissions,
+            final Set<PlayerSnapshot.NeededItem> items) {
         // Changed this so it is readable ;)
         // OP's should also get time added.
         // When a player has a wildcard permission ('*') it should still update.
@@ -71,38 +200,54 @@ public class UpdatePlaytime implements Runnable {
         // leaderboard exemption
         plugin.getPlayerChecker().doLeaderboardExemptCheck(player);
 
-        if (AutorankTools.isExcludedFromRanking(player)
-                || player.hasPermission(AutorankPermission.EXCLUDE_FROM_TIME_UPDATES)) {
-            return;
+        // Player is online, so remember that we have seen it. Its time is
+        // stored under the UUID that Autorank has cached, which may not be
+        // known yet.
+        final UUID storedUUID = plugin.getUUIDStorage().getStoredUUID(player.getName());
+
+        if (storedUUID != null) {
+            flatFileManager.setLastSeen(storedUUID);
         }
 
-        final DependencyManager depManager = plugin.getDependencyManager();
+        final PlayerSnapshot snapshot = new PlayerSnapshot(player, permissions, items,
+                plugin.getDependencyManager().isAFK(player));
 
-        // Check to see if player is afk
-        if (depManager.isAFK(player)) {
-            return;
-        }
+        plugin.getExecutors().execute(WorkType.CPU, new Runnable() {
+            public void run() {
+                // Add the time that was played since the last update. Players
+                // that are AFK or excluded are not checked.
+                if (!plugin.getPlaytimes().getSessionTracker().update(snapshot)) {
+                    return;
+                }
+
+                evaluations.add(plugin.getPlayerChecker().evaluate(snapshot));
+            }
+        });
+    }
 
-        final UUID uuid = plugin.getUUIDStorage().getStoredUUID(player.getName());
+    /**
+     * Assign paths and complete requirements of players that were checked on
+     * another thread.
+     */
+    private void applyEvaluations() {
+        PlayerEvaluation evaluation;
 
-        // Modify local time
-        for (final TimeType type : TimeType.values()) {
-            flatFileManager.addLocalTime(uuid, PlaytimeManager.INTERVAL_MINUTES, type);
-        }
+        while ((evaluation = evaluations.poll()) != null) {
+            final Player player = plugin.getServer().getPlayer(evaluation.getSnapshot().getUniqueId());
 
-        // Modify global time
-        if (plugin.getMySQLManager().isMySQLEnabled()) {
-            plugin.getMySQLManager().addGlobalTime(uuid, PlaytimeManager.INTERVAL_MINUTES);
-        }
+            // Player left in the meantime
+            if (player == null || !player.isOnline()) {
+                continue;
+            }
 
-        // Auto assign path (if possible)
-        plugin.getPathManager().autoAssignPath(player);
+            // Auto assign path (if possible)
+            plugin.getPathManager().autoAssignPath(player, evaluation);
 
-        // Only check a player if it is not disabled in the Settings.yml
-        if (!plugin.getConfigHandler().isAutomaticPathDisabled()) {
-            // Check if player meets requirements
-            plugin.getPlayerChecker().checkPlayer(player);
+            // Only check a player if it is not disabled in the Settings.yml
+            if (!plugin.getConfigHandler().isAutomaticPathDisabled()) {
+                // Check if player meets requirements
+                plugin.getPlayerChecker().checkPlayer(player, evaluation);
+            }
         }
-
     }
 }
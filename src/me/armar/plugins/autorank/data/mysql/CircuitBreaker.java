@@ -0,0 +1,188 @@
+package me.armar.plugins.autorank.data.mysql;
+
+/**
+ * Keeps track of whether the MySQL database can be reached, so Autorank does
+ * not keep waiting for a database that is down.
+ * <p>
+ * The breaker is closed while the database works. After a number of failures
+ * in a row, it opens: requests are refused right away until the retry delay
+ * is over. Then a single request is let through to try the database again
+ * (half open). If it works, the breaker closes again. If it fails, the breaker
+ * opens again and the retry delay is doubled, up to a maximum.
+ * <p>
+ * All methods can be called from any thread.
+ *
+ */
+public class CircuitBreaker {
+
+    /**
+     * The state of a breaker.
+     */
+    public enum State {
+        /**
+         * The database works, all requests are let through.
+         */
+        CLOSED,
+
+        /**
+         * The database can not be reached, requests are refused.
+         */
+        OPEN,
+
+        /**
+         * One request is trying whether the database can be reached again.
+         */
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+
+    private final long initialDelay, maximumDelay;
+
+    private State state = State.CLOSED;
+
+    // Failures in a row
+    private int failures = 0;
+
+    // Time to wait before trying again, doubled after every failed try
+    private long retryDelay;
+
+    private long openedAt = 0;
+
+    private long totalFailures = 0, rejections = 0, timesOpened = 0;
+
+    private String lastError = null;
+
+    /**
+     * Create a new breaker.
+     *
+     * @param failureThreshold
+     *            Failures in a row after which the breaker opens
+     * @param initialDelay
+     *            Time in milliseconds to wait before the first retry
+     * @param maximumDelay
+     *            Maximum time in milliseconds to wait before a retry
+     */
+    public CircuitBreaker(final int failureThreshold, final long initialDelay, final long maximumDelay) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.initialDelay = initialDelay;
+        this.maximumDelay = Math.max(initialDelay, maximumDelay);
+        this.retryDelay = initialDelay;
+    }
+
+    /**
+     * Check whether a request may be sent to the database. When the retry
+     * delay is over, this lets one request through to try the database again.
+     * The result of that request must be reported with
+     * {@link #recordSuccess()} or {@link #recordFailure(String)}.
+     *
+     * @return true if the request may be sent.
+     */
+    public synchronized boolean allowRequest() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+
+        // Another try is let through if the last try did not report back
+        if (System.currentTimeMillis() - openedAt >= retryDelay) {
+            state = State.HALF_OPEN;
+            openedAt = System.currentTimeMillis();
+            return true;
+        }
+
+        rejections++;
+        return false;
+    }
+
+    /**
+     * Report that a request to the database worked.
+     *
+     * @return true if the database could not be reached before.
+     */
+    public synchronized boolean recordSuccess() {
+        final boolean restored = state != State.CLOSED;
+
+        state = State.CLOSED;
+        failures = 0;
+        retryDelay = initialDelay;
+
+        return restored;
+    }
+
+    /**
+     * Report that the database could not be reached.
+     *
+     * @param error
+     *            Description of what went wrong
+     * @return true if the breaker was closed and is now open.
+     */
+    public synchronized boolean recordFailure(final String error) {
+        failures++;
+        totalFailures++;
+        lastError = error;
+
+        if (state == State.CLOSED) {
+            if (failures < failureThreshold) {
+                return false;
+            }
+
+            open();
+            return true;
+        }
+
+        // Trying again did not work, so wait longer the next time
+        if (state == State.HALF_OPEN) {
+            retryDelay = Math.min(retryDelay * 2, maximumDelay);
+            open();
+        }
+
+        return false;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Get the time to wait before the database is tried again.
+     *
+     * @return time in milliseconds.
+     */
+    public synchronized long getRetryDelay() {
+        return retryDelay;
+    }
+
+    /**
+     * Get the state of the breaker, the number of failures and refused
+     * requests and when the database is tried again.
+     *
+     * @return a description of the state of the breaker.
+     */
+    public synchronized String getStatus() {
+        final StringBuilder status = new StringBuilder(state.toString().toLowerCase());
+
+        if (state == State.OPEN) {
+            final long retryIn = Math.max(0, openedAt + retryDelay - System.currentTimeMillis());
+
+            status.append(" (next try in ").append(retryIn / 1000).append(" s)");
+        }
+
+        status.append(", ").append(totalFailures).append(" failures, ").append(rejections)
+                .append(" refused requests, opened ").append(timesOpened).append(" times");
+
+        if (lastError != null) {
+            status.append(", last error: ").append(lastError);
+        }
+
+        return status.toString();
+    }
+
+    private void open() {
+        if (state == State.CLOSED) {
+            timesOpened++;
+        }
+
+        state = State.OPEN;
+        openedAt = System.currentTimeMillis();
+    }
+}
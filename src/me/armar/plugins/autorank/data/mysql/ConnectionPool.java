@@ -0,0 +1,310 @@
+package me.armar.plugins.autorank.data.mysql;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A small pool of connections to the MySQL database, so multiple queries can
+ * run at the same time.
+ * <p>
+ * A connection is borrowed with {@link #getConnection()} and given back by
+ * closing it. Before a connection is handed out, it is checked:
+ * <ul>
+ * <li>Connections that are older than the maximum lifetime are replaced, so
+ * the database server does not close them on us.</li>
+ * <li>Connections that have not been used for a while are validated.</li>
+ * <li>Connections that failed with a connection error are thrown away.</li>
+ * </ul>
+ * Connections that are not given back in time are reported as a leak, with
+ * the place where they were borrowed.
+ *
+ */
+public class ConnectionPool {
+
+    // Connections that are older than this are replaced
+    private static final long MAX_LIFETIME = TimeUnit.MINUTES.toMillis(30);
+
+    // Connections that were not used for this long are validated first
+    private static final long VALIDATION_INTERVAL = TimeUnit.SECONDS.toMillis(30);
+
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    // Time to wait for a free connection
+    private static final long BORROW_TIMEOUT = TimeUnit.SECONDS.toMillis(10);
+
+    // Connections that are borrowed for longer than this are reported
+    private static final long LEAK_THRESHOLD = TimeUnit.SECONDS.toMillis(30);
+
+    private final String url, username, password;
+
+    private final int maxSize;
+
+    private final Logger logger;
+
+    // Limits the number of connections that are borrowed at the same time
+    private final Semaphore permits;
+
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<PooledConnection>();
+
+    private final Map<PooledConnection, Exception> borrowed = new ConcurrentHashMap<PooledConnection, Exception>();
+
+    private final AtomicLong created = new AtomicLong(), leaks = new AtomicLong();
+
+    private volatile boolean closed = false;
+
+    public ConnectionPool(final String url, final String username, final String password, final int maxSize,
+            final Logger logger) {
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.maxSize = Math.max(1, maxSize);
+        this.logger = logger;
+        this.permits = new Semaphore(this.maxSize, true);
+    }
+
+    /**
+     * Borrow a connection. The connection must be closed when it is not
+     * needed anymore, which gives it back to the pool.
+     *
+     * @return a connection to the database.
+     * @throws SQLException
+     *             when no connection could be made or no connection was free
+     *             in time.
+     */
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("The connection pool is closed");
+        }
+
+        detectLeaks();
+
+        try {
+            if (!permits.tryAcquire(BORROW_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("No database connection was free within " + BORROW_TIMEOUT + " ms ("
+                        + getStatus() + ")");
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection");
+        }
+
+        try {
+            final PooledConnection connection = takeValidConnection();
+
+            // Set before the connection is published, so detectLeaks never
+            // sees an old borrow time
+            connection.borrowedAt = System.currentTimeMillis();
+            connection.leakReported = false;
+
+            borrowed.put(connection, new Exception("Connection was borrowed here"));
+
+            return connection.createProxy();
+        } catch (final SQLException e) {
+            permits.release();
+            throw e;
+        } catch (final RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Close all connections. Connections that are borrowed are closed when
+     * they are given back.
+     */
+    public void close() {
+        closed = true;
+
+        PooledConnection connection;
+
+        while ((connection = idle.poll()) != null) {
+            connection.closeQuietly();
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Get the number of connections that are borrowed, idle and that threads
+     * are waiting for, and how many connections were created and leaked.
+     *
+     * @return a description of the state of the pool.
+     */
+    public String getStatus() {
+        return borrowed.size() + "/" + maxSize + " active, " + idle.size() + " idle, " + permits.getQueueLength()
+                + " waiting, " + created.get() + " created, " + leaks.get() + " leaked";
+    }
+
+    private PooledConnection takeValidConnection() throws SQLException {
+        PooledConnection connection;
+
+        while ((connection = idle.pollFirst()) != null) {
+            final long now = System.currentTimeMillis();
+
+            if (now - connection.createdAt > MAX_LIFETIME) {
+                connection.closeQuietly();
+                continue;
+            }
+
+            if (now - connection.lastUsed > VALIDATION_INTERVAL
+                    && !connection.connection.isValid(VALIDATION_TIMEOUT_SECONDS)) {
+                connection.closeQuietly();
+                continue;
+            }
+
+            return connection;
+        }
+
+        // No usable idle connection, so make a new one
+        final PooledConnection newConnection = new PooledConnection(
+                DriverManager.getConnection(url, username, password));
+
+        created.incrementAndGet();
+
+        return newConnection;
+    }
+
+    private void release(final PooledConnection connection) {
+        borrowed.remove(connection);
+
+        connection.lastUsed = System.currentTimeMillis();
+
+        try {
+            if (closed || connection.broken || connection.connection.isClosed()) {
+                connection.closeQuietly();
+            } else {
+                // Do not leave a transaction open for the next user
+                if (!connection.connection.getAutoCommit()) {
+                    connection.connection.rollback();
+                    connection.connection.setAutoCommit(true);
+                }
+
+                // Most recently used first, so unused connections can expire
+                idle.offerFirst(connection);
+            }
+        } catch (final SQLException e) {
+            connection.closeQuietly();
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Report connections that are borrowed for too long.
+     */
+    private void detectLeaks() {
+        final long now = System.currentTimeMillis();
+
+        for (final Map.Entry<PooledConnection, Exception> entry : borrowed.entrySet()) {
+            final PooledConnection connection = entry.getKey();
+
+            if (!connection.leakReported && now - connection.borrowedAt > LEAK_THRESHOLD) {
+                connection.leakReported = true;
+                leaks.incrementAndGet();
+
+                logger.log(Level.WARNING, "A database connection was not given back for "
+                        + (now - connection.borrowedAt) + " ms, it may have leaked:", entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * A real connection with the information the pool needs.
+     */
+    private class PooledConnection {
+
+        private final Connection connection;
+
+        private final long createdAt = System.currentTimeMillis();
+
+        private volatile long lastUsed = createdAt, borrowedAt;
+
+        private volatile boolean broken = false, leakReported = false;
+
+        PooledConnection(final Connection connection) {
+            this.connection = connection;
+        }
+
+        /**
+         * Create a connection that gives this connection back to the pool
+         * when it is closed.
+         */
+        Connection createProxy() {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[] { Connection.class }, new BorrowedConnection(this));
+        }
+
+        void closeQuietly() {
+            try {
+                connection.close();
+            } catch (final SQLException e) {
+                // Nothing we can do
+            }
+        }
+    }
+
+    /**
+     * Passes calls on to a pooled connection until it is closed by the
+     * borrower.
+     */
+    private class BorrowedConnection implements InvocationHandler {
+
+        private final PooledConnection pooled;
+
+        private volatile boolean returned = false;
+
+        BorrowedConnection(final PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+            final String name = method.getName();
+
+            if (name.equals("close")) {
+                if (!returned) {
+                    returned = true;
+                    release(pooled);
+                }
+
+                return null;
+            } else if (name.equals("isClosed")) {
+                return returned || pooled.connection.isClosed();
+            } else if (returned) {
+                throw new SQLException("Connection was given back to the pool already");
+            }
+
+            try {
+                return method.invoke(pooled.connection, args);
+            } catch (final InvocationTargetException e) {
+                final Throwable cause = e.getCause();
+
+                // SQL states starting with 08 are connection errors
+                if (cause instanceof SQLException) {
+                    final String state = ((SQLException) cause).getSQLState();
+
+                    if (state != null && state.startsWith("08")) {
+                        pooled.broken = true;
+                    }
+                }
+
+                throw cause;
+            }
+        }
+    }
+}
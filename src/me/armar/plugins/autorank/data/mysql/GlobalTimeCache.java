@@ -0,0 +1,288 @@
+package me.armar.plugins.autorank.data.mysql;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the global times that were read from the database, so the
+ * database does not have to be asked every time. It can be used from any
+ * thread.
+ * <p>
+ * A time is fresh for a while after it was loaded (the time to live). Times
+ * that are almost expired should be refreshed ahead of time, see
+ * {@link #needsRefresh(UUID)}, so players that are online always have a fresh
+ * time. The cache holds a limited number of times; when it is full, the times
+ * that were not used for the longest time are removed.
+ * <p>
+ * The number of hits, misses and the time it took to load times are counted,
+ * see {@link #getStatus()}.
+ *
+ */
+public class GlobalTimeCache {
+
+    // Times are refreshed ahead when this part of their time to live is over
+    private static final double REFRESH_AHEAD_FACTOR = 0.8;
+
+    // Part of the times that is removed at once when the cache is full
+    private static final double EVICTION_FACTOR = 0.1;
+
+    private final long timeToLive;
+
+    private final int maximumSize;
+
+    private final ConcurrentMap<UUID, Entry> entries = new ConcurrentHashMap<UUID, Entry>();
+
+    private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong(), evictions = new AtomicLong(),
+            loads = new AtomicLong(), loadNanos = new AtomicLong();
+
+    /**
+     * Create a new cache.
+     *
+     * @param timeToLive
+     *            Time in milliseconds a time stays fresh
+     * @param maximumSize
+     *            Maximum number of times to hold
+     */
+    public GlobalTimeCache(final long timeToLive, final int maximumSize) {
+        this.timeToLive = timeToLive;
+        this.maximumSize = Math.max(1, maximumSize);
+    }
+
+    /**
+     * Get the time of a player if it is fresh. This counts as a hit or a
+     * miss.
+     *
+     * @param uuid
+     *            UUID of the player
+     * @return the cached time, or null if it is not cached or not fresh.
+     */
+    public Integer get(final UUID uuid) {
+        final Entry entry = entries.get(uuid);
+
+        if (entry == null || entry.isExpired(System.currentTimeMillis())) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        entry.lastAccess = System.currentTimeMillis();
+
+        return entry.time;
+    }
+
+    /**
+     * Get the time of a player, even if it is not fresh anymore. This does
+     * not count as a hit or a miss.
+     *
+     * @param uuid
+     *            UUID of the player
+     * @return the cached time, or null if it is not cached.
+     */
+    public Integer peek(final UUID uuid) {
+        final Entry entry = entries.get(uuid);
+
+        return entry == null ? null : entry.time;
+    }
+
+    /**
+     * Check whether the time of a player is cached and fresh.
+     *
+     * @param uuid
+     *            UUID of the player
+     * @return true if the time is fresh.
+     */
+    public boolean isFresh(final UUID uuid) {
+        final Entry entry = entries.get(uuid);
+
+        return entry != null && !entry.isExpired(System.currentTimeMillis());
+    }
+
+    /**
+     * Check whether the time of a player should be loaded again: it is not
+     * cached or it will expire soon.
+     *
+     * @param uuid
+     *            UUID of the player
+     * @return true if the time should be refreshed.
+     */
+    public boolean needsRefresh(final UUID uuid) {
+        final Entry entry = entries.get(uuid);
+
+        return entry == null
+                || System.currentTimeMillis() - entry.loadedAt >= (long) (timeToLive * REFRESH_AHEAD_FACTOR);
+    }
+
+    /**
+     * Store a time that was loaded or written.
+     *
+     * @param uuid
+     *            UUID of the player
+     * @param time
+     *            Global time of the player
+     */
+    public void put(final UUID uuid, final int time) {
+        entries.put(uuid, new Entry(time, System.currentTimeMillis()));
+
+        if (entries.size() > maximumSize) {
+            evict();
+        }
+    }
+
+    /**
+     * Add minutes to the cached time of a player. Nothing happens if the time
+     * is not cached. The time does not become fresher by this.
+     *
+     * @param uuid
+     *            UUID of the player
+     * @param minutes
+     *            Minutes to add
+     */
+    public void add(final UUID uuid, final int minutes) {
+        while (true) {
+            final Entry entry = entries.get(uuid);
+
+            if (entry == null) {
+                return;
+            }
+
+            final Entry updated = new Entry(Math.max(entry.time, 0) + minutes, entry.loadedAt);
+
+            if (entries.replace(uuid, entry, updated)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Remember how long it took to load times from the database.
+     *
+     * @param nanos
+     *            Time it took in nanoseconds
+     */
+    public void recordLoad(final long nanos) {
+        loads.incrementAndGet();
+        loadNanos.addAndGet(nanos);
+    }
+
+    /**
+     * Remove all times that are not fresh anymore.
+     */
+    public void removeExpired() {
+        final long now = System.currentTimeMillis();
+
+        for (final Map.Entry<UUID, Entry> entry : entries.entrySet()) {
+            if (entry.getValue().isExpired(now) && entries.remove(entry.getKey(), entry.getValue())) {
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Get the number of cached times, hits, misses, evictions and the average
+     * time it took to load times.
+     *
+     * @return a description of the state of the cache.
+     */
+    public String getStatus() {
+        final long hitCount = hits.get(), missCount = misses.get(), loadCount = loads.get();
+        final long requests = hitCount + missCount;
+
+        return entries.size() + "/" + maximumSize + " cached, " + hitCount + " hits, " + missCount + " misses ("
+                + (requests == 0 ? 0 : hitCount * 100 / requests) + "% hit rate), " + evictions.get()
+                + " evicted, " + (loadCount == 0 ? 0 : loadNanos.get() / loadCount / 1000000)
+                + " ms average load time";
+    }
+
+    /**
+     * Remove expired times and then the times that were not used for the
+     * longest time, until there is room again.
+     */
+    private synchronized void evict() {
+        if (entries.size() <= maximumSize) {
+            return;
+        }
+
+        removeExpired();
+
+        if (entries.size() <= maximumSize) {
+            return;
+        }
+
+        // Take the access times first, as they can change while sorting
+        final List<Candidate> candidates = new ArrayList<Candidate>();
+
+        for (final Map.Entry<UUID, Entry> entry : entries.entrySet()) {
+            candidates.add(new Candidate(entry.getKey(), entry.getValue()));
+        }
+
+        Collections.sort(candidates, new Comparator<Candidate>() {
+
+            @Override
+            public int compare(final Candidate first, final Candidate second) {
+                return Long.compare(first.lastAccess, second.lastAccess);
+            }
+        });
+
+        // Make some room, so the next times do not have to sort again
+        final int toRemove = entries.size() - maximumSize + (int) (maximumSize * EVICTION_FACTOR);
+
+        for (int i = 0; i < toRemove && i < candidates.size(); i++) {
+            final Candidate candidate = candidates.get(i);
+
+            if (entries.remove(candidate.uuid, candidate.entry)) {
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * A cached time.
+     */
+    private class Entry {
+
+        private final int time;
+
+        private final long loadedAt;
+
+        private volatile long lastAccess;
+
+        Entry(final int time, final long loadedAt) {
+            this.time = time;
+            this.loadedAt = loadedAt;
+            this.lastAccess = System.currentTimeMillis();
+        }
+
+        boolean isExpired(final long now) {
+            return now - loadedAt >= timeToLive;
+        }
+    }
+
+    /**
+     * A cached time that may be removed.
+     */
+    private static class Candidate {
+
+        private final UUID uuid;
+
+        private final Entry entry;
+
+        private final long lastAccess;
+
+        Candidate(final UUID uuid, final Entry entry) {
+            this.uuid = uuid;
+            this.entry = entry;
+            this.lastAccess = entry.lastAccess;
+        }
+    }
+}
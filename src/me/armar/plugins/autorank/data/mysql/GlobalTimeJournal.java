@@ -0,0 +1,386 @@
+package me.armar.plugins.autorank.data.mysql;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+/**
+ * A file that keeps the changes to global times that could not be written to
+ * the MySQL database, so they are not lost when the database is down or the
+ * server stops. Changes are only added to the end of the file. When the
+ * database can be reached again, the changes are read in the order they were
+ * made and written to the database, see {@link #read(int, long)}.
+ * <p>
+ * The first line holds the id of the journal: "journal &lt;id&gt;". Every
+ * other line is a change with a sequence number: "&lt;sequence&gt; add
+ * &lt;uuid&gt; &lt;minutes&gt;" or "&lt;sequence&gt; set &lt;uuid&gt;
+ * &lt;time&gt;". The database remembers the last sequence number of a journal
+ * that was written, so changes are never written twice, even when the journal
+ * could not be changed afterwards. A new id is chosen every time the file is
+ * created.
+ *
+ */
+class GlobalTimeJournal {
+
+    private static final String HEADER = "journal", ADD = "add", SET = "set";
+
+    private final File file;
+
+    private final Logger logger;
+
+    // Id of the journal, or null if there is no file
+    private String id;
+
+    // Sequence number of the last change in the file
+    private long lastSequence;
+
+    // Number of changes in the file
+    private int entries;
+
+    /**
+     * Changes of the journal that are written to the database at once.
+     */
+    static class Batch {
+
+        private final PendingTimeChanges changes = new PendingTimeChanges();
+
+        private long sequence;
+
+        public PendingTimeChanges getChanges() {
+            return changes;
+        }
+
+        /**
+         * Get the sequence number of the last change in this batch.
+         *
+         * @return the sequence number.
+         */
+        public long getSequence() {
+            return sequence;
+        }
+    }
+
+    /**
+     * Open a journal. The file is created when the first change is added.
+     *
+     * @param file
+     *            File to keep the changes in
+     * @param logger
+     *            Logger to report errors to
+     */
+    public GlobalTimeJournal(final File file, final Logger logger) {
+        this.file = file;
+        this.logger = logger;
+
+        scan();
+    }
+
+    /**
+     * Add changes to the end of the journal. The file is forced to disk before
+     * this returns.
+     *
+     * @param changes
+     *            Changes that were taken with {@link PendingTimeChanges#drain()}
+     * @return true if the changes were written to the file.
+     */
+    public synchronized boolean append(final PendingTimeChanges changes) {
+        if (changes.isEmpty()) {
+            return true;
+        }
+
+        final File folder = file.getParentFile();
+
+        if (folder != null && !folder.exists()) {
+            folder.mkdirs();
+        }
+
+        final String journalId = id != null ? id : UUID.randomUUID().toString();
+        final long length = file.length();
+        long sequence = lastSequence;
+
+        try (FileOutputStream stream = new FileOutputStream(file, true);
+                Writer writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8))) {
+            if (id == null) {
+                writer.write(HEADER + " " + journalId + "\n");
+            }
+
+            sequence = write(writer, changes, sequence);
+
+            writer.flush();
+            stream.getChannel().force(true);
+        } catch (final IOException e) {
+            logger.severe("Could not write global times to " + file.getName() + ": " + e.getMessage());
+
+            // The changes are kept in memory, so remove what was written
+            truncate(length);
+            return false;
+        }
+
+        id = journalId;
+        lastSequence = sequence;
+        entries += changes.size();
+        return true;
+    }
+
+    /**
+     * Read the changes in the journal that were not written to the database
+     * yet, in the order they were made. The changes are split up in batches
+     * that should be written one after another. Lines that can not be read are
+     * skipped.
+     *
+     * @param batchSize
+     *            Maximum number of players in a batch
+     * @param writtenSequence
+     *            Sequence number of the last change that was written to the
+     *            database
+     * @return the batches of changes, or null if the file could not be read.
+     */
+    public synchronized List<Batch> read(final int batchSize, final long writtenSequence) {
+        final List<Batch> batches = new ArrayList<Batch>();
+
+        if (!file.exists()) {
+            return batches;
+        }
+
+        Batch batch = new Batch();
+
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                final String[] parts = line.trim().split(" ");
+
+                if (line.trim().isEmpty() || parts[0].equals(HEADER)) {
+                    continue;
+                }
+
+                final long sequence = getSequence(parts);
+
+                // Written to the database already
+                if (sequence >= 0 && sequence <= writtenSequence) {
+                    continue;
+                }
+
+                if (sequence < 0 || !readChange(parts, batch.changes)) {
+                    logger.warning("Skipping invalid line in " + file.getName() + ": " + line);
+                    continue;
+                }
+
+                batch.sequence = sequence;
+
+                if (batch.changes.size() >= batchSize) {
+                    batches.add(batch);
+                    batch = new Batch();
+                }
+            }
+        } catch (final IOException e) {
+            logger.severe("Could not read global times from " + file.getName() + ": " + e.getMessage());
+            return null;
+        }
+
+        if (!batch.changes.isEmpty()) {
+            batches.add(batch);
+        }
+
+        return batches;
+    }
+
+    /**
+     * Remove the changes that were written to the database from the journal.
+     * The journal is replaced at once, so a crash never leaves half of it
+     * behind.
+     *
+     * @param writtenSequence
+     *            Sequence number of the last change that was written
+     * @return true if the journal was replaced.
+     */
+    public synchronized boolean rewrite(final long writtenSequence) {
+        final File temp = new File(file.getPath() + ".tmp");
+        int count = 0;
+
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+                FileOutputStream stream = new FileOutputStream(temp);
+                Writer writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8))) {
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                final String[] parts = line.trim().split(" ");
+
+                if (parts[0].equals(HEADER)) {
+                    writer.write(line + "\n");
+                } else if (getSequence(parts) > writtenSequence) {
+                    writer.write(line + "\n");
+                    count++;
+                }
+            }
+
+            writer.flush();
+            stream.getChannel().force(true);
+        } catch (final IOException e) {
+            logger.severe("Could not write global times to " + temp.getName() + ": " + e.getMessage());
+            return false;
+        }
+
+        try {
+            try {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (final AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (final IOException e) {
+            logger.severe("Could not replace " + file.getName() + ": " + e.getMessage());
+            return false;
+        }
+
+        entries = count;
+        return true;
+    }
+
+    /**
+     * Remove all changes, after they were written to the database.
+     *
+     * @return true if the file was removed.
+     */
+    public synchronized boolean clear() {
+        if (file.exists() && !file.delete()) {
+            logger.severe("Could not delete " + file.getName() + ", it is kept until it can be deleted.");
+            return false;
+        }
+
+        id = null;
+        lastSequence = 0;
+        entries = 0;
+        return true;
+    }
+
+    /**
+     * Get the id of the journal, which the database uses to remember which
+     * changes were written.
+     *
+     * @return the id, or null if there are no changes.
+     */
+    public synchronized String getId() {
+        return id;
+    }
+
+    public synchronized boolean isEmpty() {
+        return entries == 0;
+    }
+
+    public synchronized int size() {
+        return entries;
+    }
+
+    private static long write(final Writer writer, final PendingTimeChanges changes, long sequence)
+            throws IOException {
+        // A player has either a new time or minutes to add, so the order of
+        // the players does not matter.
+        for (final Map.Entry<UUID, Integer> entry : changes.getTimes().entrySet()) {
+            writer.write(++sequence + " " + SET + " " + entry.getKey() + " " + entry.getValue() + "\n");
+        }
+
+        for (final Map.Entry<UUID, Integer> entry : changes.getDeltas().entrySet()) {
+            writer.write(++sequence + " " + ADD + " " + entry.getKey() + " " + entry.getValue() + "\n");
+        }
+
+        return sequence;
+    }
+
+    /**
+     * Get the sequence number of a change.
+     *
+     * @return the sequence number, or -1 if the line is not a change.
+     */
+    private static long getSequence(final String[] parts) {
+        if (parts.length != 4) {
+            return -1;
+        }
+
+        try {
+            return Long.parseLong(parts[0]);
+        } catch (final NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static boolean readChange(final String[] parts, final PendingTimeChanges batch) {
+        final UUID uuid;
+        final int value;
+
+        try {
+            uuid = UUID.fromString(parts[2]);
+            value = Integer.parseInt(parts[3]);
+        } catch (final IllegalArgumentException e) {
+            return false;
+        }
+
+        if (parts[1].equals(SET)) {
+            batch.setTime(uuid, value);
+        } else if (parts[1].equals(ADD)) {
+            batch.addTime(uuid, value);
+        } else {
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Read the id, the last sequence number and the number of changes from
+     * the file.
+     */
+    private void scan() {
+        if (!file.exists()) {
+            return;
+        }
+
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                final String[] parts = line.trim().split(" ");
+
+                if (parts.length == 2 && parts[0].equals(HEADER)) {
+                    id = parts[1];
+                    continue;
+                }
+
+                final long sequence = getSequence(parts);
+
+                if (sequence >= 0) {
+                    lastSequence = Math.max(lastSequence, sequence);
+                    entries++;
+                }
+            }
+        } catch (final IOException e) {
+            logger.severe("Could not read global times from " + file.getName() + ": " + e.getMessage());
+        }
+    }
+
+    private void truncate(final long length) {
+        try (FileOutputStream stream = new FileOutputStream(file, true)) {
+            stream.getChannel().truncate(length);
+        } catch (final IOException e) {
+            logger.severe("Could not undo a partial write to " + file.getName() + ": " + e.getMessage());
+        }
+    }
+}
@@ -2,28 +2,39 @@ package me.armar.plugins.autorank.data.mysql;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.Callable;
 
+import me.armar.plugins.autorank.data.storage.PlaytimeVisitor;
+
 /**
  * This will get all database times. <br>
  * <br>
- * We have to wait for the thread to finish before we can get the results. <br>
+ * The rows are read from the database a page at a time, sorted by UUID. Every
+ * page is read with its own query, which starts after the last UUID of the
+ * previous page, and the connection is given back to the pool before the rows
+ * are handed to a {@link PlaytimeVisitor} one by one. The table does not have
+ * to fit in memory and no connection is held while the visitor works. <br>
  * Every database lookup will have to have its own thread.
  * 
  * @author Staartvin
  * 
  */
-public class GrabAllTimesTask implements Callable<HashMap<UUID, Integer>> {
+public class GrabAllTimesTask implements Callable<Integer> {
 
     private final SQLDataStorage mysql;
-    private final String table;
-    private HashMap<UUID, Integer> times = new HashMap<>();
+    private final MySQLSchema schema;
+    private final int pageSize;
+    private final PlaytimeVisitor visitor;
 
-    public GrabAllTimesTask(final SQLDataStorage mysql, final String table) {
+    public GrabAllTimesTask(final SQLDataStorage mysql, final MySQLSchema schema, final int pageSize,
+            final PlaytimeVisitor visitor) {
         this.mysql = mysql;
-        this.table = table;
+        this.schema = schema;
+        this.pageSize = Math.max(1, pageSize);
+        this.visitor = visitor;
     }
 
     /*
@@ -32,27 +43,75 @@ public class GrabAllTimesTask implements Callable<HashMap<UUID, Integer>> {
      * @see java.util.concurrent.Callable#call()
      */
     @Override
-    public HashMap<UUID, Integer> call() throws Exception {
+    public Integer call() throws Exception {
         if (mysql == null)
-            return times;
+            return -1;
 
-        final String statement = "SELECT * FROM " + table;
-        final ResultSet rs = mysql.executeQuery(statement);
+        int count = 0;
 
-        if (rs == null)
-            return times;
+        // Players that were not migrated yet are read from the old table
+        for (final MySQLSchema.Table table : schema.getReadTables()) {
+            final int rows = readTable(table);
 
-        try {
-            while (rs.next()) {
-                times.put(UUID.fromString(rs.getString(1)), rs.getInt(2));
-            }
-        } catch (final SQLException e) {
-            System.out.println("SQLException: " + e.getMessage());
-            System.out.println("SQLState: " + e.getSQLState());
-            System.out.println("VendorError: " + e.getErrorCode());
+            if (rows < 0)
+                return -1;
+
+            count += rows;
         }
 
-        return times;
+        return count;
+    }
+
+    private int readTable(final MySQLSchema.Table table) {
+        final List<UUID> uuids = new ArrayList<UUID>(pageSize);
+        final int[] times = new int[pageSize];
+
+        // UUID of the last row of the previous page, as it is stored
+        final Object[] lastKey = new Object[1];
+        int count = 0;
+
+        while (true) {
+            final boolean first = lastKey[0] == null;
+
+            uuids.clear();
+
+            final Boolean fullPage = mysql.query(schema.getPageStatement(table, first),
+                    new SQLDataStorage.ResultHandler<Boolean>() {
+
+                        @Override
+                        public Boolean handle(final ResultSet rs) throws SQLException {
+                            int rows = 0;
+
+                            while (rs.next()) {
+                                lastKey[0] = rs.getObject(1);
+                                rows++;
+
+                                try {
+                                    times[uuids.size()] = rs.getInt(2);
+                                    uuids.add(table.getUUID(rs, 1));
+                                } catch (final IllegalArgumentException e) {
+                                    System.out.println(
+                                            "Skipping invalid UUID in " + table.getName() + ": " + lastKey[0]);
+                                }
+                            }
+
+                            return rows == pageSize;
+                        }
+                    }, first ? new Object[] { pageSize } : new Object[] { lastKey[0], pageSize });
+
+            if (fullPage == null)
+                return -1;
+
+            // The connection was given back already
+            for (int i = 0; i < uuids.size(); i++) {
+                visitor.visit(uuids.get(i), times[i]);
+            }
+
+            count += uuids.size();
+
+            if (!fullPage)
+                return count;
+        }
     }
 
 }
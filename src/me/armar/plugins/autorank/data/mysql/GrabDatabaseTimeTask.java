@@ -9,7 +9,9 @@ import java.util.concurrent.Callable;
  * This will get the database time. <br>
  * <br>
  * We have to wait for the thread to finish before we can get the results. <br>
- * Every database lookup will have to have its own thread.
+ * Every database lookup will have to have its own thread. The time is -1 if
+ * the player is not in the database, and null if the database could not be
+ * reached.
  * 
  * @author Staartvin
  * 
@@ -17,13 +19,13 @@ import java.util.concurrent.Callable;
 public class GrabDatabaseTimeTask implements Callable<Integer> {
 
     private final SQLDataStorage mysql;
-    private final String table;
+    private final MySQLSchema schema;
     private final UUID uuid;
 
-    public GrabDatabaseTimeTask(final SQLDataStorage mysql, final UUID uuid, final String table) {
+    public GrabDatabaseTimeTask(final SQLDataStorage mysql, final UUID uuid, final MySQLSchema schema) {
         this.mysql = mysql;
         this.uuid = uuid;
-        this.table = table;
+        this.schema = schema;
     }
 
     /*
@@ -36,28 +38,30 @@ public class GrabDatabaseTimeTask implements Callable<Integer> {
         if (mysql == null)
             return -1;
 
-        int time = -1;
+        // Look in the old table if the player was not migrated yet
+        for (final MySQLSchema.Table table : schema.getReadTables()) {
+            final String statement = "SELECT time FROM " + table.getName() + " WHERE uuid=?";
+            final Integer time = mysql.query(statement, new SQLDataStorage.ResultHandler<Integer>() {
 
-        final String statement = "SELECT * FROM " + table + " WHERE uuid='" + uuid.toString() + "'";
-        final ResultSet rs = mysql.executeQuery(statement);
+                @Override
+                public Integer handle(final ResultSet rs) throws SQLException {
+                    if (rs.next()) {
+                        return rs.getInt(1);
+                    }
 
-        if (rs == null)
-            return time;
+                    return -1;
+                }
+            }, table.toParameter(uuid));
 
-        try {
-            if (rs.next()) {
-                time = rs.getInt(2);
-            } else {
-                return time;
-            }
+            // Could not reach the database
+            if (time == null)
+                return null;
 
-        } catch (final SQLException e) {
-            System.out.println("SQLException: " + e.getMessage());
-            System.out.println("SQLState: " + e.getSQLState());
-            System.out.println("VendorError: " + e.getErrorCode());
+            if (time >= 0)
+                return time;
         }
 
-        return time;
+        return -1;
     }
 
 }
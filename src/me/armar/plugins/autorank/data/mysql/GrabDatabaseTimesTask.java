@@ -0,0 +1,96 @@
+package me.armar.plugins.autorank.data.mysql;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+
+/**
+ * This will get the database times of many players at once. The players are
+ * looked up in chunks, so a single query does not get too large. Players that
+ * are not in the database are left out.
+ *
+ */
+public class GrabDatabaseTimesTask implements Callable<HashMap<UUID, Integer>> {
+
+    // Maximum number of players that are looked up with one query
+    private static final int CHUNK_SIZE = 500;
+
+    private final SQLDataStorage mysql;
+    private final MySQLSchema schema;
+    private final List<UUID> uuids;
+
+    public GrabDatabaseTimesTask(final SQLDataStorage mysql, final List<UUID> uuids, final MySQLSchema schema) {
+        this.mysql = mysql;
+        this.uuids = uuids;
+        this.schema = schema;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.util.concurrent.Callable#call()
+     */
+    @Override
+    public HashMap<UUID, Integer> call() throws Exception {
+        final HashMap<UUID, Integer> times = new HashMap<>();
+
+        if (mysql == null)
+            return times;
+
+        // Players that were not migrated yet are looked up in the old table
+        List<UUID> remaining = uuids;
+
+        for (final MySQLSchema.Table table : schema.getReadTables()) {
+            if (!lookUp(table, remaining, times))
+                return null;
+
+            remaining = new ArrayList<UUID>();
+
+            for (final UUID uuid : uuids) {
+                if (!times.containsKey(uuid)) {
+                    remaining.add(uuid);
+                }
+            }
+        }
+
+        return times;
+    }
+
+    private boolean lookUp(final MySQLSchema.Table table, final List<UUID> players,
+            final HashMap<UUID, Integer> times) {
+        for (int start = 0; start < players.size(); start += CHUNK_SIZE) {
+            final List<UUID> chunk = players.subList(start, Math.min(start + CHUNK_SIZE, players.size()));
+            final List<Object> parameters = new ArrayList<Object>();
+
+            for (final UUID uuid : chunk) {
+                parameters.add(table.toParameter(uuid));
+            }
+
+            final String statement = "SELECT uuid, time FROM " + table.getName() + " WHERE uuid IN ("
+                    + SQLDataStorage.placeholders(chunk.size()) + ")";
+
+            final Boolean found = mysql.query(statement, new SQLDataStorage.ResultHandler<Boolean>() {
+
+                @Override
+                public Boolean handle(final ResultSet rs) throws SQLException {
+                    while (rs.next()) {
+                        times.put(table.getUUID(rs, 1), rs.getInt(2));
+                    }
+
+                    return true;
+                }
+            }, parameters.toArray());
+
+            // Could not reach the database, so don't try the other chunks
+            if (found == null)
+                return false;
+        }
+
+        return true;
+    }
+
+}
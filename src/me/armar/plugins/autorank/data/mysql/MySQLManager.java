@@ -1,22 +1,37 @@
 package me.armar.plugins.autorank.data.mysql;
 
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import org.bukkit.ChatColor;
 import org.bukkit.entity.Player;
 
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+
 import me.armar.plugins.autorank.Autorank;
 import me.armar.plugins.autorank.config.SettingsConfig;
 import me.armar.plugins.autorank.config.SettingsConfig.MySQLCredentials;
+import me.armar.plugins.autorank.data.storage.PlaytimeVisitor;
 import me.armar.plugins.autorank.playtimes.PlaytimeManager;
+import me.armar.plugins.autorank.util.AutorankExecutors;
+import me.armar.plugins.autorank.util.AutorankExecutors.WorkType;
 import me.armar.plugins.autorank.util.AutorankTools;
 
 /**
@@ -31,13 +46,45 @@ import me.armar.plugins.autorank.util.AutorankTools;
  */
 public class MySQLManager {
 
-    // Thread pool for saving and retrieving data.
-    private ExecutorService executor = Executors.newSingleThreadExecutor();
+    // Table names can not be passed as a parameter, so only allow safe names
+    private static final String VALID_TABLE_NAME = "[A-Za-z0-9_]+";
+
+    // Time between writing the global times that were changed
+    private static final long FLUSH_INTERVAL = AutorankTools.TICKS_PER_SECOND * 10;
+
+    // Maximum number of global times that are cached
+    private static final int CACHE_SIZE = 10000;
+
+    // Number of changed times after which they are written right away
+    private static final int MAX_PENDING_CHANGES = 5000;
+
+    // Number of players that are written at once when the journal is written
+    private static final int REPLAY_BATCH_SIZE = 1000;
+
+    // File in the plugin folder that keeps the changed times while the
+    // database can not be reached
+    private static final String JOURNAL_FILE = "global_times.journal";
+
     String hostname, username, password, database, table;
-    // Keeps track of when a call to the database was for this player
-    private final HashMap<UUID, Long> lastChecked = new HashMap<UUID, Long>();
-    // Stores the last received global time for a player
-    private final HashMap<UUID, Integer> lastReceivedTime = new HashMap<UUID, Integer>();
+
+    private MySQLSchema schema;
+
+    // Global times that still have to be written to the database
+    private final PendingTimeChanges pendingChanges = new PendingTimeChanges();
+    // Global times that were received from the database, fresh for one
+    // interval
+    private final GlobalTimeCache cache = new GlobalTimeCache(
+            TimeUnit.MINUTES.toMillis(PlaytimeManager.INTERVAL_MINUTES), CACHE_SIZE);
+    // Lookups of single global times that are not done yet
+    private final ConcurrentMap<UUID, ListenableFuture<Integer>> loadingTimes =
+            new ConcurrentHashMap<UUID, ListenableFuture<Integer>>();
+
+    // Changed global times that could not be written to the database
+    private GlobalTimeJournal journal;
+
+    // Whether the table was set up, which is done when the database can be
+    // reached
+    private volatile boolean tableReady = false;
 
     private SQLDataStorage mysql;
     private final Autorank plugin;
@@ -49,59 +96,414 @@ public class MySQLManager {
     }
 
     /**
-     * Disconnect from database manually.
+     * Disconnect from database manually. Queries that are still running
+     * should be finished first, see {@link AutorankExecutors#shutdown()}.
      */
     public void disconnectDatabase() {
-        executor.shutdown();
-        plugin.debugMessage(ChatColor.RED + "Awaiting termination of MySQL thread...");
-        try {
-            executor.awaitTermination(10, TimeUnit.MINUTES);
-        } catch (InterruptedException e) {
-            plugin.getLogger().warning("Failed to await termination of thread pool. Interrupted.");
-        }
-
         if (mysql != null) {
+            flushGlobalTimes();
             mysql.closeConnection();
         }
     }
 
     /**
-     * Get all the times of the players in the MySQL database
+     * Write all global times that were changed since the last write to the
+     * database. Changes that were kept in the journal while the database could
+     * not be reached are written first, in batches, so they are written in the
+     * order they were made. If the database can not be reached, the changes
+     * are added to the journal, so they are not lost when the server stops.
+     * <p>
+     * This also connects to the database again when the connection was lost.
+     * This blocks the thread it's on.
+     */
+    public synchronized void flushGlobalTimes() {
+        if (!isMySQLEnabled() || (pendingChanges.isEmpty() && journal.isEmpty() && tableReady))
+            return;
+
+        if (!connectAgain() || !replayJournal()) {
+            // Newer changes must come after the changes in the journal
+            journalChanges();
+            return;
+        }
+
+        if (pendingChanges.isEmpty())
+            return;
+
+        final PendingTimeChanges changes = pendingChanges.drain();
+
+        if (!writeChanges(changes, null, 0)) {
+            if (!journal.append(changes)) {
+                pendingChanges.restore(changes);
+            }
+
+            // Only complain when the database could be reached
+            if (mysql.isReachable()) {
+                plugin.getLogger().warning(
+                        "Could not write " + changes.size() + " global times, trying again later.");
+
+                // Another server may have finished migrating the table
+                schema.load();
+            }
+
+            return;
+        }
+
+        plugin.debugMessage("Wrote " + changes.size() + " global times to the database");
+    }
+
+    /**
+     * Write changes to the database, in one transaction. Times that were set
+     * are written as they are; minutes that were added are added to the time
+     * in the database, so other servers can add minutes at the same time. The
+     * cached times are then updated with the times in the database.
+     * <p>
+     * Changes that come from the journal also store the sequence number of
+     * the last change in the same transaction, so they are never written
+     * twice.
+     * 
+     * @param changes
+     *            Changes to write
+     * @param journalId
+     *            Id of the journal the changes come from, or null
+     * @param sequence
+     *            Sequence number of the last change in the journal
+     * @return true if the changes were written.
+     */
+    private boolean writeChanges(final PendingTimeChanges changes, final String journalId, final long sequence) {
+        final MySQLSchema.Table writeTable = schema.getWriteTable();
+
+        // The table is not set up yet
+        if (writeTable == null)
+            return false;
+
+        final List<Object[]> setRows = new ArrayList<Object[]>();
+        final List<Object[]> addRows = new ArrayList<Object[]>();
+        final List<Object[]> copyRows = new ArrayList<Object[]>();
+        final List<Object> changedPlayers = new ArrayList<Object>();
+
+        for (final Map.Entry<UUID, Integer> entry : changes.getTimes().entrySet()) {
+            setRows.add(new Object[] { writeTable.toParameter(entry.getKey()), entry.getValue() });
+            changedPlayers.add(writeTable.toParameter(entry.getKey()));
+        }
+
+        for (final Map.Entry<UUID, Integer> entry : changes.getDeltas().entrySet()) {
+            addRows.add(new Object[] { writeTable.toParameter(entry.getKey()), entry.getValue() });
+            changedPlayers.add(writeTable.toParameter(entry.getKey()));
+            copyRows.add(new Object[] { entry.getKey().toString() });
+        }
+
+        final String setStatement = "INSERT INTO " + writeTable.getName()
+                + " (uuid, time) VALUES (?, ?) ON DUPLICATE KEY UPDATE time=VALUES(time)";
+        final String addStatement = "INSERT INTO " + writeTable.getName()
+                + " (uuid, time) VALUES (?, ?) ON DUPLICATE KEY UPDATE time=time+VALUES(time)";
+        final String readStatement = "SELECT uuid, time FROM " + writeTable.getName() + " WHERE uuid IN ("
+                + SQLDataStorage.placeholders(changedPlayers.size()) + ")";
+
+        // While the table is migrated, players are copied to the new table
+        // before minutes are added to their time.
+        final String copyStatement = schema.getCopyStatement(1);
+
+        final String journalStatement = "INSERT INTO " + MySQLSchema.JOURNAL_TABLE
+                + " (journal_id, sequence) VALUES (?, ?) ON DUPLICATE KEY UPDATE sequence=VALUES(sequence)";
+        final List<Object[]> journalRows = new ArrayList<Object[]>();
+
+        if (journalId != null) {
+            journalRows.add(new Object[] { journalId, sequence });
+        }
+
+        final Map<UUID, Integer> storedTimes = mysql
+                .transaction(new SQLDataStorage.TransactionHandler<Map<UUID, Integer>>() {
+
+                    @Override
+                    public Map<UUID, Integer> handle(final Connection conn) throws SQLException {
+                        if (copyStatement != null) {
+                            SQLDataStorage.executeBatch(conn, copyStatement, copyRows);
+                        }
+
+                        SQLDataStorage.executeBatch(conn, setStatement, setRows);
+                        SQLDataStorage.executeBatch(conn, addStatement, addRows);
+                        SQLDataStorage.executeBatch(conn, journalStatement, journalRows);
+
+                        // Read the new times in the same transaction, so they
+                        // include the minutes other servers added
+                        final Map<UUID, Integer> times = new HashMap<UUID, Integer>();
+
+                        try (PreparedStatement stmt = conn.prepareStatement(readStatement)) {
+                            for (int i = 0; i < changedPlayers.size(); i++) {
+                                stmt.setObject(i + 1, changedPlayers.get(i));
+                            }
+
+                            try (ResultSet rs = stmt.executeQuery()) {
+                                while (rs.next()) {
+                                    times.put(writeTable.getUUID(rs, 1), rs.getInt(2));
+                                }
+                            }
+                        }
+
+                        return times;
+                    }
+                });
+
+        if (storedTimes == null)
+            return false;
+
+        for (final Map.Entry<UUID, Integer> entry : storedTimes.entrySet()) {
+            // Include changes that were made while writing
+            cache.put(entry.getKey(), pendingChanges.apply(entry.getKey(), entry.getValue()));
+        }
+
+        return true;
+    }
+
+    /**
+     * Write the changes in the journal to the database, in batches. Changes
+     * that the database already has are skipped. Batches that could not be
+     * written stay in the journal.
+     * 
+     * @return true if the journal is empty now.
+     */
+    private boolean replayJournal() {
+        if (journal.isEmpty())
+            return true;
+
+        final String journalId = journal.getId();
+        final Long writtenSequence = getWrittenSequence(journalId);
+
+        if (writtenSequence == null)
+            return false;
+
+        final List<GlobalTimeJournal.Batch> batches = journal.read(REPLAY_BATCH_SIZE, writtenSequence);
+
+        if (batches == null)
+            return false;
+
+        int written = 0;
+        long lastWritten = writtenSequence;
+
+        for (final GlobalTimeJournal.Batch batch : batches) {
+            if (!writeChanges(batch.getChanges(), journalId, batch.getSequence())) {
+                if (lastWritten > writtenSequence) {
+                    journal.rewrite(lastWritten);
+                }
+
+                return false;
+            }
+
+            written += batch.getChanges().size();
+            lastWritten = batch.getSequence();
+        }
+
+        // The sequence number is only forgotten when the journal is gone, so
+        // the changes can not be written again.
+        if (journal.clear() && journalId != null) {
+            mysql.execute("DELETE FROM " + MySQLSchema.JOURNAL_TABLE + " WHERE journal_id = ?", journalId);
+        }
+
+        plugin.getLogger().info("Wrote " + written
+                + " global times that were changed while the MySQL database could not be reached.");
+
+        return true;
+    }
+
+    /**
+     * Get the sequence number of the last change of a journal that was written
+     * to the database.
+     * 
+     * @param journalId
+     *            Id of the journal, or null
+     * @return the sequence number, 0 if no change was written or null if the
+     *         database could not be read.
+     */
+    private Long getWrittenSequence(final String journalId) {
+        if (journalId == null)
+            return 0L;
+
+        return mysql.query("SELECT sequence FROM " + MySQLSchema.JOURNAL_TABLE + " WHERE journal_id = ?",
+                new SQLDataStorage.ResultHandler<Long>() {
+
+                    @Override
+                    public Long handle(final ResultSet rs) throws SQLException {
+                        return rs.next() ? rs.getLong(1) : 0L;
+                    }
+                }, journalId);
+    }
+
+    /**
+     * Move the changed global times to the journal, so they are not lost when
+     * the server stops before the database can be reached again.
+     */
+    private void journalChanges() {
+        if (pendingChanges.isEmpty())
+            return;
+
+        final PendingTimeChanges changes = pendingChanges.drain();
+
+        if (journal.append(changes)) {
+            plugin.debugMessage("Kept " + changes.size() + " global times in the journal");
+        } else {
+            pendingChanges.restore(changes);
+        }
+    }
+
+    /**
+     * Connect to the database and set up the table if this was not done yet.
+     * How often this is tried depends on how long the database could not be
+     * reached, see {@link CircuitBreaker}.
+     * 
+     * @return true if the database can be used.
+     */
+    private boolean connectAgain() {
+        if (tableReady && !mysql.isClosed())
+            return true;
+
+        if (mysql.isClosed() && !mysql.connect())
+            return false;
+
+        if (!tableReady) {
+            setupTable();
+        }
+
+        return tableReady;
+    }
+
+    /**
+     * Get all the times of the players in the MySQL database. This keeps the
+     * whole table in memory; use {@link #forEachGlobalTime(PlaytimeVisitor)}
+     * to go through a large table.
      * 
      * @return A hashmap containing all uuids that are in the database, or an
      *         empty one if MySQL is disabled
      */
     public HashMap<UUID, Integer> getAllPlayersFromDatabase() {
-        HashMap<UUID, Integer> times = new HashMap<>();
+        final HashMap<UUID, Integer> times = new HashMap<>();
+
+        if (!this.isMySQLEnabled())
+            return times;
+
+        streamAllTimes(new PlaytimeVisitor() {
+
+            @Override
+            public void visit(final UUID uuid, final int time) {
+                times.put(uuid, time);
+            }
+        });
+
+        // Include changes that were not written yet
+        pendingChanges.applyAll(times);
+
+        return times;
+    }
 
+    /**
+     * Go through the times of all players in the MySQL database, one player at
+     * a time. The players are read a page at a time (see
+     * {@link SettingsConfig#getMySQLFetchSize()}) and the connection is given
+     * back before the visitor is called, so this can be used on tables with
+     * millions of players. Changed times are written first.
+     * <p>
+     * This blocks the thread it's on, so run this async.
+     * 
+     * @param visitor
+     *            Is called for every player in the database
+     * @return the number of players, or -1 if the database could not be read.
+     */
+    public int forEachGlobalTime(final PlaytimeVisitor visitor) {
         if (!this.isMySQLEnabled())
+            return -1;
+
+        flushGlobalTimes();
+
+        // Only when the changes could not be written
+        final boolean applyChanges = !pendingChanges.isEmpty();
+
+        return streamAllTimes(new PlaytimeVisitor() {
+
+            @Override
+            public void visit(final UUID uuid, final int time) {
+                visitor.visit(uuid, applyChanges ? pendingChanges.apply(uuid, time) : time);
+            }
+        });
+    }
+
+    /**
+     * Get the players with the most global time, of all servers that use the
+     * database. The database sorts the times with the index on the time, so
+     * only the best players are read. Changed times are written first.
+     * <p>
+     * This blocks the thread it's on, so run this async.
+     * 
+     * @param limit
+     *            Maximum number of players to get
+     * @return the UUIDs and times of the best players, not sorted, or null if
+     *         the database could not be read.
+     */
+    public Map<UUID, Integer> getTopGlobalTimes(final int limit) {
+        if (!isMySQLEnabled() || !tableReady)
+            return null;
+
+        flushGlobalTimes();
+
+        final Map<UUID, Integer> times = new HashMap<UUID, Integer>();
+
+        if (limit <= 0)
             return times;
 
-        // Check if connection is still alive
-        if (mysql.isClosed()) {
-            mysql.connect();
+        final long start = System.nanoTime();
+
+        // While the table is migrated, the best players can be in either table
+        for (final MySQLSchema.Table table : schema.getReadTables()) {
+            final Boolean read = mysql.query(schema.getSelectAllStatement(table) + " ORDER BY time DESC LIMIT ?",
+                    new SQLDataStorage.ResultHandler<Boolean>() {
+
+                        @Override
+                        public Boolean handle(final ResultSet rs) throws SQLException {
+                            while (rs.next()) {
+                                times.put(table.getUUID(rs, 1), rs.getInt(2));
+                            }
+
+                            return true;
+                        }
+                    }, limit);
+
+            if (read == null)
+                return null;
+        }
+
+        // Include changes that could not be written
+        for (final Map.Entry<UUID, Integer> entry : times.entrySet()) {
+            entry.setValue(pendingChanges.apply(entry.getKey(), entry.getValue()));
         }
 
-        // Retrieve database time
+        plugin.debugMessage("Obtained " + times.size() + " best global times in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+
+        return times;
+    }
+
+    private int streamAllTimes(final PlaytimeVisitor visitor) {
+        // The database could not be reached yet
+        if (!tableReady)
+            return -1;
 
         // Initialise new callable class
-        final Callable<HashMap<UUID, Integer>> callable = new GrabAllTimesTask(mysql, table);
+        final Callable<Integer> callable = new GrabAllTimesTask(mysql, schema,
+                plugin.getSettingsConfig().getMySQLFetchSize(), visitor);
 
         // Sumbit callable
-        final Future<HashMap<UUID, Integer>> futureValue = executor.submit(callable);
+        final Future<Integer> futureValue = plugin.getExecutors().submit(WorkType.BLOCKING, callable);
 
         try {
             plugin.debugMessage("Fresh AllCheck performed "
                     + (Thread.currentThread().getName().contains("Server thread") ? "not ASYNC" : "ASYNC") + " ("
                     + Thread.currentThread().getName() + ")");
-            times = futureValue.get();
+            return futureValue.get();
         } catch (final InterruptedException e) {
             e.printStackTrace();
         } catch (final ExecutionException e) {
             e.printStackTrace();
         }
 
-        return times;
+        return -1;
     }
 
     /**
@@ -112,18 +514,53 @@ public class MySQLManager {
      * @return cached global time or 0 if nothing was cached.
      */
     public Integer getCachedGlobalTime(final UUID uuid) {
-        if (!lastReceivedTime.containsKey(uuid)) {
+        final Integer cached = cache.peek(uuid);
+
+        // Not cached or weird cached
+        if (cached == null || cached <= 0) {
             return 0;
         }
 
-        final int cached = lastReceivedTime.get(uuid);
+        return cached;
+    }
 
-        // Weird cached
-        if (cached <= 0) {
-            return 0;
+    /**
+     * Get the state of the cache of global times, see
+     * {@link GlobalTimeCache#getStatus()}.
+     * 
+     * @return a description of the cache.
+     */
+    public String getCacheStatus() {
+        return cache.getStatus();
+    }
+
+    /**
+     * Get the state of the pool of connections to the MySQL database.
+     * 
+     * @return a description of the connection pool.
+     */
+    public String getConnectionPoolStatus() {
+        if (!isMySQLEnabled()) {
+            return "MySQL is not enabled";
         }
 
-        return cached;
+        return mysql.getStatus();
+    }
+
+    /**
+     * Get the health of the connection to the MySQL database: whether it can
+     * be reached, how often it could not be and how many changed global times
+     * wait in the journal.
+     * 
+     * @return a description of the health of the connection.
+     */
+    public String getConnectionHealth() {
+        if (!isMySQLEnabled()) {
+            return "MySQL is not enabled";
+        }
+
+        return mysql.getHealth() + ", " + journal.size() + " changes in journal, " + pendingChanges.size()
+                + " changes pending";
     }
 
     /**
@@ -136,7 +573,9 @@ public class MySQLManager {
     }
 
     /**
-     * Add minutes to the global time of a player.
+     * Add minutes to the global time of a player. The minutes are added to the
+     * time in the database with the next batch of changed times, so minutes
+     * that other servers add at the same time are not lost.
      * 
      * @param uuid
      *            UUID of the player
@@ -156,14 +595,19 @@ public class MySQLManager {
             }
         }
 
-        final int time = getFreshGlobalTime(uuid);
+        plugin.debugMessage("Adding " + timeDifference + " minutes to global time of '" + uuid.toString() + "'");
 
-        if (time >= 0) {
-            setGlobalTime(uuid, time + timeDifference);
-        } else {
-            setGlobalTime(uuid, timeDifference);
+        // Added to the time in the database with the next batch, see
+        // flushGlobalTimes()
+        pendingChanges.addTime(uuid, timeDifference);
+
+        // Do not let a large sync fill up memory
+        if (pendingChanges.size() >= MAX_PENDING_CHANGES && !plugin.getServer().isPrimaryThread()) {
+            flushGlobalTimes();
         }
 
+        // Update cache records, they are corrected when the batch is written
+        cache.add(uuid, timeDifference);
     }
 
     /**
@@ -210,9 +654,11 @@ public class MySQLManager {
 
         // Do not make a call to the database every time.
         // Instead, only call once every 5 minutes.
-        if (!isOutOfDate(uuid)) {
+        final Integer cached = cache.get(uuid);
+
+        if (cached != null) {
 
-            int cachedTime = getCachedGlobalTime(uuid);
+            int cachedTime = Math.max(cached, 0);
             plugin.debugMessage("Obtained cached global time of '" + uuid.toString() + "' with value " + cachedTime);
 
             return cachedTime;
@@ -235,47 +681,244 @@ public class MySQLManager {
      * @return Fresh value of database time for UUID.
      */
     public int getFreshDatabaseTime(final UUID uuid) {
-        plugin.debugMessage("Obtaining fresh global time of '" + uuid.toString() + "'");
-
         // Mysql is not enabled
         if (!isMySQLEnabled())
             return 0;
 
-        // Check if connection is still alive
-        if (mysql.isClosed()) {
-            mysql.connect();
+        plugin.debugMessage("Fresh Gcheck performed "
+                + (Thread.currentThread().getName().contains("Server thread") ? "not ASYNC" : "ASYNC") + " ("
+                + Thread.currentThread().getName() + ")");
+
+        // Grab value (will block thread, use getFreshGlobalTimeAsync() to
+        // wait without blocking)
+        try {
+            return getFreshGlobalTimeAsync(uuid).get();
+        } catch (final InterruptedException e) {
+            e.printStackTrace();
+        } catch (final ExecutionException e) {
+            e.printStackTrace();
         }
 
-        // Retrieve database time
+        return 0;
+    }
 
-        // Initialise new callable class
-        final Callable<Integer> callable = new GrabDatabaseTimeTask(mysql, uuid, table);
+    /**
+     * Get the total playtime across all servers without blocking the thread
+     * it's on. If the cached time is fresh, the returned future is already
+     * done. Otherwise, the time is looked up on another thread, see
+     * {@link #getFreshGlobalTimeAsync(UUID)}.
+     * 
+     * @param uuid
+     *            UUID of the player
+     * @return the global time of the player when it is known, 0 if no time
+     *         was found.
+     */
+    public ListenableFuture<Integer> getGlobalTimeAsync(final UUID uuid) {
+        if (uuid == null || !isMySQLEnabled())
+            return Futures.immediateFuture(0);
 
-        // Sumbit callable
-        final Future<Integer> futureValue = executor.submit(callable);
+        final Integer cached = cache.get(uuid);
+
+        if (cached != null) {
+            return Futures.immediateFuture(Math.max(cached, 0));
+        }
+
+        return getFreshGlobalTimeAsync(uuid);
+    }
+
+    /**
+     * Look up the global time of a player in the database on another thread.
+     * When the time of a player is already being looked up, the same lookup
+     * is returned, so a player is never looked up twice at the same time.
+     * <p>
+     * Callbacks of the future are run on the thread of the lookup, unless
+     * another executor is given, such as
+     * {@link AutorankExecutors#getMainThread()}.
+     * 
+     * @param uuid
+     *            UUID of the player
+     * @return the fresh global time of the player when it is known.
+     */
+    public ListenableFuture<Integer> getFreshGlobalTimeAsync(final UUID uuid) {
+        if (uuid == null || !isMySQLEnabled())
+            return Futures.immediateFuture(0);
+
+        final ListenableFuture<Integer> running = loadingTimes.get(uuid);
+
+        if (running != null)
+            return running;
+
+        final ListenableFutureTask<Integer> task = ListenableFutureTask.create(new Callable<Integer>() {
+
+            @Override
+            public Integer call() throws Exception {
+                try {
+                    return loadDatabaseTime(uuid);
+                } finally {
+                    // Only the task that was added runs, so it can be removed
+                    // by the UUID
+                    loadingTimes.remove(uuid);
+                }
+            }
+        });
+
+        final ListenableFuture<Integer> other = loadingTimes.putIfAbsent(uuid, task);
+
+        // Another thread started a lookup in the meantime
+        if (other != null)
+            return other;
+
+        plugin.getExecutors().execute(WorkType.BLOCKING, task);
+
+        return task;
+    }
+
+    /**
+     * Look up the global time of a player and store it in the cache. This
+     * blocks the thread it's on.
+     * 
+     * @param uuid
+     *            UUID of the player
+     * @return Fresh value of database time for UUID.
+     */
+    private int loadDatabaseTime(final UUID uuid) throws Exception {
+        plugin.debugMessage("Obtaining fresh global time of '" + uuid.toString() + "'");
+
+        // A time that was not written yet is newer than the one in the database
+        final Integer pendingTime = pendingChanges.getTime(uuid);
+
+        if (pendingTime != null) {
+            cache.put(uuid, pendingTime);
+
+            return pendingTime;
+        }
+
+        // The database could not be reached yet
+        if (!tableReady)
+            return getCachedGlobalTime(uuid);
+
+        final long start = System.nanoTime();
+
+        final Integer stored = new GrabDatabaseTimeTask(mysql, uuid, schema).call();
+
+        cache.recordLoad(System.nanoTime() - start);
+
+        // Keep using the cached time until the database can be reached again
+        if (stored == null)
+            return getCachedGlobalTime(uuid);
+
+        // Include minutes that were not added to the database yet
+        final int value = pendingChanges.apply(uuid, stored);
+
+        // Store last received value
+        cache.put(uuid, value);
+
+        plugin.debugMessage("Obtained fresh global time of '" + uuid.toString() + "' with value " + value);
+
+        return value;
+    }
+
+    /**
+     * Get the database times of many players at once. Only players whose
+     * cached time is out of date are looked up, see
+     * {@link #getFreshDatabaseTimes(Collection)}.
+     * <p>
+     * This blocks the thread it's on, so run this async.
+     * 
+     * @param uuids
+     *            UUIDs of the players
+     * @return the global time of every given player, 0 if no time was found.
+     */
+    public Map<UUID, Integer> getGlobalTimes(final Collection<UUID> uuids) {
+        final Map<UUID, Integer> times = new HashMap<UUID, Integer>();
+        final List<UUID> outOfDate = new ArrayList<UUID>();
+
+        for (final UUID uuid : uuids) {
+            final Integer cached = cache.get(uuid);
+
+            if (cached == null) {
+                outOfDate.add(uuid);
+            } else {
+                times.put(uuid, Math.max(cached, 0));
+            }
+        }
 
-        // Grab value (will block thread, but there is no other way)
-        // That's why you need to run this async.
-        int value = 0;
+        times.putAll(getFreshDatabaseTimes(outOfDate));
+
+        return times;
+    }
+
+    /**
+     * Get the database times of many players with a few queries instead of
+     * one query per player. The cached times of the players are updated.
+     * <p>
+     * A new request will always be made to get the values, therefore this
+     * should be run async.
+     * 
+     * @param uuids
+     *            UUIDs of the players
+     * @return the fresh global time of every given player, 0 if no time was
+     *         found. If the database could not be reached, the cached times
+     *         are returned.
+     */
+    public Map<UUID, Integer> getFreshDatabaseTimes(final Collection<UUID> uuids) {
+        final Map<UUID, Integer> times = new HashMap<UUID, Integer>();
+
+        if (!isMySQLEnabled() || uuids.isEmpty())
+            return times;
+
+        plugin.debugMessage("Obtaining fresh global times of " + uuids.size() + " players");
+
+        // The database could not be reached yet
+        if (!tableReady) {
+            for (final UUID uuid : uuids) {
+                times.put(uuid, getCachedGlobalTime(uuid));
+            }
+
+            return times;
+        }
+
+        final Callable<HashMap<UUID, Integer>> callable = new GrabDatabaseTimesTask(mysql,
+                new ArrayList<UUID>(uuids), schema);
+
+        final Future<HashMap<UUID, Integer>> futureValue = plugin.getExecutors().submit(WorkType.BLOCKING, callable);
+
+        HashMap<UUID, Integer> storedTimes = null;
+
+        final long start = System.nanoTime();
 
         try {
-            plugin.debugMessage("Fresh Gcheck performed "
-                    + (Thread.currentThread().getName().contains("Server thread") ? "not ASYNC" : "ASYNC") + " ("
-                    + Thread.currentThread().getName() + ")");
-            value = futureValue.get();
+            storedTimes = futureValue.get();
         } catch (final InterruptedException e) {
             e.printStackTrace();
         } catch (final ExecutionException e) {
             e.printStackTrace();
         }
 
-        // Store last received time and last received value
-        lastChecked.put(uuid, System.currentTimeMillis());
-        lastReceivedTime.put(uuid, value);
+        cache.recordLoad(System.nanoTime() - start);
 
-        plugin.debugMessage("Obtained fresh global time of '" + uuid.toString() + "' with value " + value);
+        if (storedTimes == null) {
+            for (final UUID uuid : uuids) {
+                times.put(uuid, getCachedGlobalTime(uuid));
+            }
 
-        return value;
+            return times;
+        }
+
+        // Fill the cache in one pass
+        for (final UUID uuid : uuids) {
+            final Integer stored = storedTimes.get(uuid);
+
+            // Include minutes that were not added to the database yet
+            final int value = Math.max(pendingChanges.apply(uuid, stored == null ? 0 : stored), 0);
+
+            cache.put(uuid, value);
+            times.put(uuid, value);
+        }
+
+        plugin.debugMessage("Obtained fresh global times of " + uuids.size() + " players");
+
+        return times;
     }
 
     /**
@@ -297,34 +940,12 @@ public class MySQLManager {
      *         False otherwise.
      */
     public boolean isOutOfDate(final UUID uuid) {
-        // Checks whether the last check was five minutes ago.
-        // When the last check was more than five minutes ago,
-        // the database time is 'outdated'
-
-        // Never checked
-        if (!lastChecked.containsKey(uuid)) {
-            return true;
-        }
-
-        final long currentTime = System.currentTimeMillis();
-
-        final long lastCheckedTime = lastChecked.get(uuid);
-
-        // Weird time received.
-        if (lastCheckedTime <= 0) {
-            return true;
-        }
-
-        // Get the difference in minutes
-        if ((currentTime - lastCheckedTime) / 60000 >= PlaytimeManager.INTERVAL_MINUTES) {
-            return true;
-        } else {
-            return false;
-        }
+        return !cache.isFresh(uuid);
     }
 
     /**
-     * Refresh the global time of all players that are online on the server.
+     * Keep the global time of all players that are online on the server fresh,
+     * by refreshing it before it expires.
      */
     public void refreshGlobalTime() {
 
@@ -332,23 +953,41 @@ public class MySQLManager {
         if (!this.isMySQLEnabled())
             return;
 
-        // Spawn an async thread that will update all the times every x minutes.
-        plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, new Runnable() {
+        // Every minute, refresh the times of online players that will expire
+        // soon, so their cached time is always fresh. The online players are
+        // collected on the main thread and looked up together.
+        plugin.getServer().getScheduler().runTaskTimer(plugin, new Runnable() {
 
             @Override
             public void run() {
+                final List<UUID> uuids = new ArrayList<UUID>();
+
                 for (Player p : plugin.getServer().getOnlinePlayers()) {
-                    // Update fresh database time.
-                    getFreshDatabaseTime(p.getUniqueId());
+                    if (cache.needsRefresh(p.getUniqueId())) {
+                        uuids.add(p.getUniqueId());
+                    }
                 }
+
+                plugin.getExecutors().execute(WorkType.DATABASE, new Runnable() {
+
+                    @Override
+                    public void run() {
+                        // Times of players that left are not needed anymore
+                        cache.removeExpired();
+
+                        // Update fresh database times.
+                        getFreshDatabaseTimes(uuids);
+                    }
+                });
             }
 
-        }, AutorankTools.TICKS_PER_SECOND, AutorankTools.TICKS_PER_MINUTE * PlaytimeManager.INTERVAL_MINUTES);
+        }, AutorankTools.TICKS_PER_SECOND, AutorankTools.TICKS_PER_MINUTE);
 
     }
 
     /**
-     * Set the global time of a player
+     * Set the global time of a player. The time is written to the database
+     * with the next batch of changed times.
      * 
      * @param uuid
      *            UUID of the player
@@ -362,51 +1001,60 @@ public class MySQLManager {
         if (!isMySQLEnabled())
             return false;
 
-        // Check if connection is still alive
-        if (mysql.isClosed()) {
-            mysql.connect();
-        }
+        // Written with the next batch, see flushGlobalTimes()
+        pendingChanges.setTime(uuid, time);
 
-        final String statement = "INSERT INTO " + table + " VALUES ('" + uuid.toString() + "', " + time
-                + ", CURRENT_TIMESTAMP) " + "ON DUPLICATE KEY UPDATE " + "time=" + time;
+        // Update cache records
+        cache.put(uuid, time);
+
+        return true;
+    }
 
-        // Run async to prevent load issues.
-        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
+    /**
+     * Write changed global times to the database every few seconds.
+     */
+    private void startFlushing() {
+        plugin.getServer().getScheduler().runTaskTimer(plugin, new Runnable() {
 
             @Override
             public void run() {
-                mysql.execute(statement);
-            }
-        });
+                if (pendingChanges.isEmpty() && journal.isEmpty() && tableReady)
+                    return;
 
-        // Update cache records
-        this.lastChecked.put(uuid, System.currentTimeMillis());
-        this.lastReceivedTime.put(uuid, time);
+                plugin.getExecutors().execute(WorkType.DATABASE, new Runnable() {
 
-        return true;
+                    @Override
+                    public void run() {
+                        flushGlobalTimes();
+                    }
+                });
+            }
+
+        }, FLUSH_INTERVAL, FLUSH_INTERVAL);
     }
 
     /**
-     * Initialise the tables for the MySQL database.
+     * Initialise the tables for the MySQL database. Tables of older versions
+     * of Autorank are migrated on another thread, see {@link MySQLSchema}.
+     * This blocks the thread it's on.
      */
     public void setupTable() {
-        // Check if connection is still alive
-        if (mysql.isClosed()) {
-            mysql.connect();
+        if (!schema.load()) {
+            plugin.getLogger().severe("Could not set up MySQL table " + table + ", trying again later.");
+            return;
         }
 
-        final String statement = "CREATE TABLE  IF NOT EXISTS " + table + " " + "(uuid VARCHAR(255) not NULL, "
-                + " time INTEGER not NULL, " + " modified TIMESTAMP not NULL, " + " PRIMARY KEY ( uuid ))";
+        tableReady = true;
 
-        // Run async to prevent load issues.
-        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
-
-            @Override
-            public void run() {
-                mysql.execute(statement);
-            }
-        });
+        if (schema.isMigrating()) {
+            plugin.getExecutors().execute(WorkType.DATABASE, new Runnable() {
 
+                @Override
+                public void run() {
+                    schema.migrate();
+                }
+            });
+        }
     }
 
     /**
@@ -431,23 +1079,37 @@ public class MySQLManager {
             database = configHandler.getMySQLCredentials(MySQLCredentials.DATABASE);
             table = configHandler.getMySQLCredentials(MySQLCredentials.TABLE);
 
-            mysql = new SQLDataStorage(hostname, username, password, database);
+            if (table == null || !table.matches(VALID_TABLE_NAME)) {
+                plugin.getLogger().severe("The MySQL table name '" + table
+                        + "' may only contain letters, numbers and underscores. MySQL is disabled!");
+                return;
+            }
+
+            mysql = new SQLDataStorage(hostname, username, password, database, configHandler.getMySQLPoolSize(),
+                    plugin.getLogger());
+            schema = new MySQLSchema(plugin, mysql, table);
+            journal = new GlobalTimeJournal(new File(plugin.getDataFolder(), JOURNAL_FILE), plugin.getLogger());
 
-            plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
+            if (!journal.isEmpty()) {
+                plugin.getLogger().info(journal.size()
+                        + " changed global times were not written to the database yet, writing them later.");
+            }
+
+            plugin.getExecutors().execute(WorkType.DATABASE, new Runnable() {
 
                 @Override
                 public void run() {
+                    // Global times are kept in the journal until the database
+                    // can be reached, see flushGlobalTimes()
                     if (!mysql.connect()) {
-                        mysql = null;
-                        plugin.getLogger().severe("Could not connect to " + hostname);
+                        plugin.getLogger().severe("Could not connect to " + hostname + ", trying again later.");
                         plugin.debugMessage(ChatColor.RED + "Could not connect to MYSQL!");
                     } else {
                         plugin.debugMessage(ChatColor.RED + "Successfully established connection to " + hostname);
-                    }
-
-                    if (mysql != null) {
                         setupTable();
                     }
+
+                    startFlushing();
                 }
             });
         }
@@ -0,0 +1,493 @@
+package me.armar.plugins.autorank.data.mysql;
+
+import java.nio.ByteBuffer;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import me.armar.plugins.autorank.Autorank;
+
+/**
+ * Keeps track of the layout of the MySQL table that holds the global times.
+ * <p>
+ * Older versions of Autorank stored UUIDs as text (VARCHAR(255)), which makes
+ * the primary key large and slow. Newer tables store UUIDs as 16 bytes
+ * (BINARY(16)) and have an index on the time (for leaderboards) and on the
+ * time a row was modified (for incremental syncs). The version of every table
+ * is stored in the {@link #SCHEMA_TABLE}.
+ * <p>
+ * An old table is migrated while Autorank is running: a new table is filled a
+ * chunk of rows at a time and then takes the place of the old table, which is
+ * kept as a backup. While this happens, times are read from the new table
+ * first and from the old table if a player was not copied yet. A player is
+ * copied right before their time is changed, so no time is lost.
+ *
+ */
+public class MySQLSchema {
+
+    /**
+     * Table that holds the schema version of every table of Autorank.
+     */
+    public static final String SCHEMA_TABLE = "autorank_schema";
+
+    /**
+     * Table that holds the sequence number of the last change of every
+     * journal that was written, see {@link GlobalTimeJournal}.
+     */
+    public static final String JOURNAL_TABLE = "autorank_journal";
+
+    /**
+     * UUIDs are stored as text.
+     */
+    public static final int VARCHAR_VERSION = 1;
+
+    /**
+     * UUIDs are stored as 16 bytes and the table has indexes on time and
+     * modified.
+     */
+    public static final int BINARY_VERSION = 2;
+
+    // Number of rows that are copied at once while migrating
+    private static final int MIGRATION_CHUNK_SIZE = 5000;
+
+    // Time to wait between two chunks, so other queries are not held up
+    private static final long MIGRATION_PAUSE_MILLIS = 100;
+
+    // Converts a text UUID of the old table to the binary form
+    private static final String LEGACY_UUID_TO_BINARY = "UNHEX(REPLACE(uuid, '-', ''))";
+
+    // Whether a text UUID of the old table can be converted
+    private static final String VALID_LEGACY_UUID = "REPLACE(uuid, '-', '') REGEXP '^[0-9a-fA-F]{32}$'";
+
+    private final Autorank plugin;
+    private final Logger logger;
+    private final SQLDataStorage mysql;
+
+    // Name of the table as it is in the Settings.yml
+    private final String name;
+
+    // Table that times are written to
+    private volatile Table writeTable = null;
+
+    // Old table that is being migrated, or null if there is none
+    private volatile Table legacyTable = null;
+
+    public MySQLSchema(final Autorank plugin, final SQLDataStorage mysql, final String name) {
+        this(plugin, plugin.getLogger(), mysql, name);
+    }
+
+    MySQLSchema(final Autorank plugin, final Logger logger, final SQLDataStorage mysql, final String name) {
+        this.plugin = plugin;
+        this.logger = logger;
+        this.mysql = mysql;
+        this.name = name;
+    }
+
+    /**
+     * Find out the layout of the table and create the tables that are
+     * missing. This blocks the thread it's on.
+     *
+     * @return true if the layout is known, false if the database could not be
+     *         read.
+     */
+    public synchronized boolean load() {
+        if (!mysql.execute("CREATE TABLE IF NOT EXISTS " + SCHEMA_TABLE + " (table_name VARCHAR(64) NOT NULL, "
+                + "version INT NOT NULL, PRIMARY KEY (table_name))")) {
+            return false;
+        }
+
+        if (!mysql.execute("CREATE TABLE IF NOT EXISTS " + JOURNAL_TABLE + " (journal_id CHAR(36) NOT NULL, "
+                + "sequence BIGINT NOT NULL, PRIMARY KEY (journal_id))")) {
+            return false;
+        }
+
+        final String uuidType = getUUIDType(name);
+
+        if (uuidType == null) {
+            return false;
+        }
+
+        // A new table or an old table that was migrated already
+        if (uuidType.isEmpty() || uuidType.equalsIgnoreCase("binary")) {
+            if (!createBinaryTable(name) || !setVersion(BINARY_VERSION)) {
+                return false;
+            }
+
+            writeTable = new Table(name, true);
+            legacyTable = null;
+
+            return true;
+        }
+
+        // An old table that still has to be migrated
+        mysql.execute("INSERT IGNORE INTO " + SCHEMA_TABLE + " (table_name, version) VALUES (?, ?)", name,
+                VARCHAR_VERSION);
+
+        if (!createBinaryTable(getMigrationName())) {
+            return false;
+        }
+
+        writeTable = new Table(getMigrationName(), true);
+        legacyTable = new Table(name, false);
+
+        return true;
+    }
+
+    /**
+     * Check whether the old table is still being migrated.
+     *
+     * @return true if times are in two tables.
+     */
+    public boolean isMigrating() {
+        return legacyTable != null;
+    }
+
+    /**
+     * Copy all rows of the old table to the new table and let the new table
+     * take its place. Rows are copied a chunk at a time, so the database is
+     * not locked for long. More servers can migrate the same table at the
+     * same time. Rows of which the UUID is not 32 hexadecimal characters are
+     * not copied; they are logged and stay in the backup of the old table.
+     * This blocks the thread it's on for a while.
+     */
+    public void migrate() {
+        final Table legacy = legacyTable;
+        final Table target = writeTable;
+
+        if (legacy == null) {
+            return;
+        }
+
+        logger.info("Migrating MySQL table " + name + " to binary UUIDs, this may take a while.");
+
+        String lastUUID = "";
+        int copied = 0, skipped = 0;
+
+        while (true) {
+            // Find the last UUID of the next chunk
+            final String chunkEnd = mysql.query(
+                    "SELECT MAX(uuid) FROM (SELECT uuid FROM " + legacy.getName()
+                            + " WHERE uuid > ? ORDER BY uuid LIMIT " + MIGRATION_CHUNK_SIZE + ") AS chunk",
+                    new SQLDataStorage.ResultHandler<String>() {
+
+                        @Override
+                        public String handle(final ResultSet rs) throws SQLException {
+                            final String last = rs.next() ? rs.getString(1) : null;
+
+                            // No rows left
+                            return last == null ? "" : last;
+                        }
+                    }, lastUUID);
+
+            if (chunkEnd == null) {
+                stopMigration();
+                return;
+            }
+
+            if (chunkEnd.isEmpty()) {
+                break;
+            }
+
+            // Rows of which the UUID can not be converted are not copied
+            final Integer skippedRows = mysql.query("SELECT uuid FROM " + legacy.getName()
+                    + " WHERE uuid > ? AND uuid <= ? AND NOT (" + VALID_LEGACY_UUID + ")",
+                    new SQLDataStorage.ResultHandler<Integer>() {
+
+                        @Override
+                        public Integer handle(final ResultSet rs) throws SQLException {
+                            int count = 0;
+
+                            while (rs.next()) {
+                                logger.warning("Not migrating row of MySQL table " + name
+                                        + " with invalid UUID '" + rs.getString(1) + "'");
+                                count++;
+                            }
+
+                            return count;
+                        }
+                    }, lastUUID, chunkEnd);
+
+            if (skippedRows == null) {
+                stopMigration();
+                return;
+            }
+
+            // Rows that were copied already (because they were changed) are
+            // newer, so they are ignored.
+            if (!mysql.execute("INSERT IGNORE INTO " + target.getName() + " (uuid, time, modified) SELECT "
+                    + LEGACY_UUID_TO_BINARY + ", time, modified FROM " + legacy.getName()
+                    + " WHERE uuid > ? AND uuid <= ? AND " + VALID_LEGACY_UUID, lastUUID, chunkEnd)) {
+                stopMigration();
+                return;
+            }
+
+            skipped += skippedRows;
+
+            lastUUID = chunkEnd;
+            copied += MIGRATION_CHUNK_SIZE;
+
+            plugin.debugMessage("Migrated about " + copied + " rows of MySQL table " + name);
+
+            try {
+                Thread.sleep(MIGRATION_PAUSE_MILLIS);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+
+        // Let the new table take the place of the old one. This fails if
+        // another server did it first.
+        if (!mysql.execute("RENAME TABLE " + legacy.getName() + " TO " + quote(getBackupName()) + ", "
+                + target.getName() + " TO " + legacy.getName())) {
+            load();
+            return;
+        }
+
+        setVersion(BINARY_VERSION);
+
+        synchronized (this) {
+            writeTable = new Table(name, true);
+            legacyTable = null;
+        }
+
+        if (skipped > 0) {
+            logger.warning(skipped + " rows of MySQL table " + name + " had an invalid UUID and were not migrated."
+                    + " They are kept in " + getBackupName() + ".");
+        }
+
+        logger.info("Migrated MySQL table " + name + ". The old table is kept as " + getBackupName()
+                + " and can be removed.");
+    }
+
+    private void stopMigration() {
+        logger.warning("Migration of MySQL table " + name + " stopped, it is resumed when Autorank is started again.");
+        load();
+    }
+
+    /**
+     * Get the table that times are written to.
+     *
+     * @return the table, or null if the layout is not known yet.
+     */
+    public Table getWriteTable() {
+        return writeTable;
+    }
+
+    /**
+     * Get the tables that times should be read from, in order. A player that
+     * is found in a table does not have to be looked up in the next.
+     *
+     * @return the tables to read from.
+     */
+    public synchronized List<Table> getReadTables() {
+        if (writeTable == null) {
+            return Collections.emptyList();
+        }
+
+        if (legacyTable == null) {
+            return Collections.singletonList(writeTable);
+        }
+
+        return Arrays.asList(writeTable, legacyTable);
+    }
+
+    /**
+     * Get a query that returns the UUID and time of every player in a table
+     * that is read from. Players of the old table that are in the new table
+     * already are left out.
+     *
+     * @param table
+     *            One of the tables of {@link #getReadTables()}
+     * @return the query.
+     */
+    public String getSelectAllStatement(final Table table) {
+        final Table target = writeTable;
+
+        if (table.isBinary() || target == null) {
+            return "SELECT uuid, time FROM " + table.getName();
+        }
+
+        return "SELECT uuid, time FROM " + table.getName() + " AS legacy WHERE NOT EXISTS (SELECT 1 FROM "
+                + target.getName() + " AS migrated WHERE migrated.uuid = UNHEX(REPLACE(legacy.uuid, '-', '')))";
+    }
+
+    /**
+     * Get a query that returns the next page of players of a table that is
+     * read from, sorted by UUID. The UUID of the last player of the previous
+     * page (as it is stored) and the size of the page are the parameters of
+     * the query. For the first page, only the size is a parameter.
+     *
+     * @param table
+     *            One of the tables of {@link #getReadTables()}
+     * @param first
+     *            Whether the first page is read
+     * @return the query.
+     */
+    public String getPageStatement(final Table table, final boolean first) {
+        final String select = getSelectAllStatement(table);
+        final String column = (table.isBinary() || writeTable == null) ? "uuid" : "legacy.uuid";
+
+        if (first) {
+            return select + " ORDER BY " + column + " LIMIT ?";
+        }
+
+        return select + (select.contains(" WHERE ") ? " AND " : " WHERE ") + column + " > ? ORDER BY " + column
+                + " LIMIT ?";
+    }
+
+    /**
+     * Get a statement that copies players from the old table to the new
+     * table, so their time can be changed in the new table. The UUIDs of the
+     * players are the parameters of the statement, as text.
+     *
+     * @param count
+     *            Number of players to copy
+     * @return the statement, or null if there is no old table.
+     */
+    public String getCopyStatement(final int count) {
+        final Table legacy = legacyTable;
+        final Table target = writeTable;
+
+        if (legacy == null || target == null) {
+            return null;
+        }
+
+        return "INSERT IGNORE INTO " + target.getName() + " (uuid, time, modified) SELECT " + LEGACY_UUID_TO_BINARY
+                + ", time, modified FROM " + legacy.getName() + " WHERE uuid IN ("
+                + SQLDataStorage.placeholders(count) + ")";
+    }
+
+    private String getMigrationName() {
+        return name + "_binary";
+    }
+
+    private String getBackupName() {
+        return name + "_varchar";
+    }
+
+    /**
+     * Get the type of the uuid column of a table.
+     *
+     * @return the type, an empty string if the table does not exist or null
+     *         if the database could not be read.
+     */
+    private String getUUIDType(final String table) {
+        return mysql.query("SELECT DATA_TYPE FROM information_schema.COLUMNS WHERE TABLE_SCHEMA = DATABASE() "
+                + "AND TABLE_NAME = ? AND COLUMN_NAME = 'uuid'", new SQLDataStorage.ResultHandler<String>() {
+
+                    @Override
+                    public String handle(final ResultSet rs) throws SQLException {
+                        return rs.next() ? rs.getString(1) : "";
+                    }
+                }, table);
+    }
+
+    private boolean createBinaryTable(final String table) {
+        return mysql.execute("CREATE TABLE IF NOT EXISTS " + quote(table) + " (uuid BINARY(16) NOT NULL, "
+                + "time INT NOT NULL, "
+                + "modified TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP, "
+                + "PRIMARY KEY (uuid), INDEX idx_time (time DESC), INDEX idx_modified (modified))");
+    }
+
+    private boolean setVersion(final int version) {
+        return mysql.execute("INSERT INTO " + SCHEMA_TABLE
+                + " (table_name, version) VALUES (?, ?) ON DUPLICATE KEY UPDATE version = VALUES(version)", name,
+                version);
+    }
+
+    /**
+     * Quote a name of a table. Names are checked before, see
+     * {@link MySQLManager#sqlSetup()}.
+     */
+    private static String quote(final String table) {
+        return "`" + table + "`";
+    }
+
+    /**
+     * Convert a UUID to the 16 bytes that are stored in the database.
+     *
+     * @param uuid
+     *            UUID to convert
+     * @return the bytes of the UUID.
+     */
+    public static byte[] toBytes(final UUID uuid) {
+        return ByteBuffer.allocate(16).putLong(uuid.getMostSignificantBits())
+                .putLong(uuid.getLeastSignificantBits()).array();
+    }
+
+    /**
+     * Convert 16 bytes that were stored in the database to a UUID.
+     *
+     * @param bytes
+     *            Bytes to convert
+     * @return the UUID.
+     */
+    public static UUID fromBytes(final byte[] bytes) {
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+
+    /**
+     * A table with global times.
+     */
+    public static class Table {
+
+        private final String name;
+        private final boolean binary;
+
+        Table(final String name, final boolean binary) {
+            this.name = quote(name);
+            this.binary = binary;
+        }
+
+        /**
+         * Get the name of the table, ready to be used in a query.
+         *
+         * @return the quoted name.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Check whether UUIDs are stored as 16 bytes in this table.
+         *
+         * @return true if UUIDs are binary, false if they are text.
+         */
+        public boolean isBinary() {
+            return binary;
+        }
+
+        /**
+         * Get the value to pass as parameter for a UUID in this table.
+         *
+         * @param uuid
+         *            UUID of the player
+         * @return the UUID as it is stored in this table.
+         */
+        public Object toParameter(final UUID uuid) {
+            return binary ? toBytes(uuid) : uuid.toString();
+        }
+
+        /**
+         * Read a UUID from a result of a query on this table.
+         *
+         * @param rs
+         *            Result to read from
+         * @param column
+         *            Column of the UUID
+         * @return the UUID.
+         * @throws SQLException
+         *             when the column could not be read.
+         */
+        public UUID getUUID(final ResultSet rs, final int column) throws SQLException {
+            return binary ? fromBytes(rs.getBytes(column)) : UUID.fromString(rs.getString(column));
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package me.armar.plugins.autorank.data.mysql;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Changes to global times that still have to be written to the database. A
+ * player either has a new time (when the time was set) or a number of minutes
+ * that should be added to the time in the database. Minutes that are added
+ * for the same player are summed, so only one change per player is written.
+ * <p>
+ * All methods can be called from any thread.
+ *
+ */
+class PendingTimeChanges {
+
+    // New global time, by player
+    private final Map<UUID, Integer> times = new HashMap<UUID, Integer>();
+
+    // Minutes to add to the global time, by player
+    private final Map<UUID, Integer> deltas = new HashMap<UUID, Integer>();
+
+    /**
+     * Set the global time of a player. Minutes that were added before are
+     * forgotten.
+     *
+     * @param uuid
+     *            UUID of the player
+     * @param time
+     *            New global time
+     */
+    public synchronized void setTime(final UUID uuid, final int time) {
+        deltas.remove(uuid);
+        times.put(uuid, time);
+    }
+
+    /**
+     * Add minutes to the global time of a player.
+     *
+     * @param uuid
+     *            UUID of the player
+     * @param minutes
+     *            Minutes to add
+     */
+    public synchronized void addTime(final UUID uuid, final int minutes) {
+        final Integer time = times.get(uuid);
+
+        if (time != null) {
+            times.put(uuid, time + minutes);
+            return;
+        }
+
+        final Integer delta = deltas.get(uuid);
+
+        deltas.put(uuid, (delta == null ? 0 : delta) + minutes);
+    }
+
+    /**
+     * Get the time a player's global time was set to, if it was not written
+     * yet.
+     *
+     * @param uuid
+     *            UUID of the player
+     * @return the new global time, or null if it was not set.
+     */
+    public synchronized Integer getTime(final UUID uuid) {
+        return times.get(uuid);
+    }
+
+    /**
+     * Apply the changes of a player to the global time that was read from the
+     * database.
+     *
+     * @param uuid
+     *            UUID of the player
+     * @param storedTime
+     *            Time in the database, or a negative number if there is none
+     * @return the global time with the changes that were not written yet.
+     */
+    public synchronized int apply(final UUID uuid, final int storedTime) {
+        final Integer time = times.get(uuid);
+
+        if (time != null) {
+            return time;
+        }
+
+        final Integer delta = deltas.get(uuid);
+
+        if (delta == null) {
+            return storedTime;
+        }
+
+        return Math.max(storedTime, 0) + delta;
+    }
+
+    /**
+     * Apply the changes to the global times that were read from the database.
+     *
+     * @param storedTimes
+     *            Times in the database, by player
+     */
+    public synchronized void applyAll(final Map<UUID, Integer> storedTimes) {
+        for (final Map.Entry<UUID, Integer> entry : deltas.entrySet()) {
+            final Integer stored = storedTimes.get(entry.getKey());
+
+            storedTimes.put(entry.getKey(), (stored == null ? 0 : stored) + entry.getValue());
+        }
+
+        storedTimes.putAll(times);
+    }
+
+    public synchronized boolean isEmpty() {
+        return times.isEmpty() && deltas.isEmpty();
+    }
+
+    /**
+     * Take all changes, so they can be written. Changes that are made after
+     * this are kept for the next write.
+     *
+     * @return the changes that should be written.
+     */
+    public synchronized PendingTimeChanges drain() {
+        final PendingTimeChanges drained = new PendingTimeChanges();
+
+        drained.times.putAll(times);
+        drained.deltas.putAll(deltas);
+
+        times.clear();
+        deltas.clear();
+
+        return drained;
+    }
+
+    /**
+     * Put back changes that could not be written. Changes that were made in
+     * the meantime are newer and are kept.
+     *
+     * @param failed
+     *            Changes that were taken with {@link #drain()}
+     */
+    public synchronized void restore(final PendingTimeChanges failed) {
+        for (final Map.Entry<UUID, Integer> entry : failed.deltas.entrySet()) {
+            // The time was set after these minutes were added
+            if (times.containsKey(entry.getKey())) {
+                continue;
+            }
+
+            final Integer delta = deltas.get(entry.getKey());
+
+            deltas.put(entry.getKey(), (delta == null ? 0 : delta) + entry.getValue());
+        }
+
+        for (final Map.Entry<UUID, Integer> entry : failed.times.entrySet()) {
+            final UUID uuid = entry.getKey();
+
+            if (times.containsKey(uuid)) {
+                continue;
+            }
+
+            // Minutes were added after the time was set
+            final Integer delta = deltas.remove(uuid);
+
+            times.put(uuid, entry.getValue() + (delta == null ? 0 : delta));
+        }
+    }
+
+    /**
+     * Get the new global times, by player. Only use this on changes that were
+     * taken with {@link #drain()}.
+     *
+     * @return new global times.
+     */
+    public Map<UUID, Integer> getTimes() {
+        return times;
+    }
+
+    /**
+     * Get the minutes to add to the global times, by player. Only use this on
+     * changes that were taken with {@link #drain()}.
+     *
+     * @return minutes to add.
+     */
+    public Map<UUID, Integer> getDeltas() {
+        return deltas;
+    }
+
+    public synchronized int size() {
+        return times.size() + deltas.size();
+    }
+}
@@ -1,27 +1,79 @@
 package me.armar.plugins.autorank.data.mysql;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.sql.SQLTimeoutException;
+import java.sql.SQLTransientConnectionException;
+import java.util.List;
+import java.util.logging.Logger;
 
 /**
  * This class is used to create a connection between the MySQL database and
- * Autorank.
+ * Autorank. Connections are taken from a {@link ConnectionPool}, so multiple
+ * queries can run at the same time.
  * 
  * @author Staartvin
  *
  */
 public class SQLDataStorage {
 
-    private Connection conn = null;
+    // Let the driver cache prepared statements on every connection, send a
+    // batch of inserts as a single statement and fetch large results in parts.
+    private static final String CONNECTION_PROPERTIES = "?cachePrepStmts=true&prepStmtCacheSize=64"
+            + "&useServerPrepStmts=true&rewriteBatchedStatements=true&useCursorFetch=true";
+
+    // Failures in a row after which the database is not asked for a while
+    private static final int FAILURE_THRESHOLD = 3;
+
+    // Time to wait before the database is tried again, doubled after every
+    // failed try
+    private static final long RETRY_DELAY = 5000, MAX_RETRY_DELAY = 300000;
+
+    /**
+     * Reads the result of a query. The result set is closed after it has been
+     * read.
+     *
+     * @param <T>
+     *            Type of the value that is read
+     */
+    public interface ResultHandler<T> {
+
+        T handle(ResultSet rs) throws SQLException;
+    }
+
+    /**
+     * Reads one row of a result.
+     */
+    public interface RowHandler {
+
+        void handle(ResultSet rs) throws SQLException;
+    }
+
+    /**
+     * Does work with a connection inside a transaction.
+     *
+     * @param <T>
+     *            Type of the value that is returned
+     */
+    public interface TransactionHandler<T> {
+
+        T handle(Connection conn) throws SQLException;
+    }
+
+    private volatile ConnectionPool pool = null;
     private final String database;
     private final String hostname;
     private final String password;
 
     private final String username;
 
+    private final int poolSize;
+    private final Logger logger;
+
+    private final CircuitBreaker breaker = new CircuitBreaker(FAILURE_THRESHOLD, RETRY_DELAY, MAX_RETRY_DELAY);
+
     /**
      * Create a new MySQL Connection
      * 
@@ -33,51 +85,70 @@ public class SQLDataStorage {
      *            Password
      * @param database
      *            Database
+     * @param poolSize
+     *            Maximum number of connections that are open at the same time
+     * @param logger
+     *            Logger to report leaked connections to
      */
-    public SQLDataStorage(final String hostname, final String username, final String password, final String database) {
+    public SQLDataStorage(final String hostname, final String username, final String password, final String database,
+            final int poolSize, final Logger logger) {
         this.hostname = hostname;
         this.username = username;
         this.password = password;
         this.database = database;
+        this.poolSize = poolSize;
+        this.logger = logger;
     }
 
     /**
-     * Tries to close the MySQL connection. If already closed, nothing will
-     * happen.
+     * Closes all MySQL connections. If already closed, nothing will happen.
      */
     public void closeConnection() {
-        try {
-            if (conn != null) {
-                conn.close();
-            }
-        } catch (final SQLException e) {
-            e.printStackTrace();
+        if (pool != null) {
+            pool.close();
         }
     }
 
     /**
-     * Open a new MySQL connection
+     * Set up the connection pool and check that a connection can be made. If
+     * the database could not be reached recently, this does nothing until the
+     * retry delay is over, see {@link CircuitBreaker}.
      * 
      * @return true if connection was successfully set up.
      */
     public boolean connect() {
-        try {
-            final String url = "jdbc:mysql://" + hostname + "/" + database;
+        if (!breaker.allowRequest()) {
+            return false;
+        }
 
-            conn = DriverManager.getConnection(url, username, password);
+        final String url = "jdbc:mysql://" + hostname + "/" + database + CONNECTION_PROPERTIES;
 
+        final ConnectionPool newPool = new ConnectionPool(url, username, password, poolSize, logger);
+
+        // Try a connection, so we know whether the credentials are correct
+        Connection conn = null;
+
+        try {
+            conn = newPool.getConnection();
         } catch (final SQLException ex) {
             System.out.println("SQLDataStorage.connect");
-            System.out.println("SQLException: " + ex.getMessage());
-            System.out.println("SQLState: " + ex.getSQLState());
-            System.out.println("VendorError: " + ex.getErrorCode());
+            printException(ex);
 
-            return false;
-        } catch (final Exception e) {
+            // Wrong credentials are a failure as well
+            if (breaker.recordFailure(ex.getMessage()) || breaker.getState() == CircuitBreaker.State.OPEN) {
+                logger.warning("Could not connect to the MySQL database, trying again in "
+                        + breaker.getRetryDelay() / 1000 + " seconds.");
+            }
 
-            e.printStackTrace();
+            newPool.close();
+            return false;
+        } finally {
+            closeQuietly(conn);
         }
-        return conn != null;
+
+        pool = newPool;
+        recordSuccess();
+        return true;
     }
 
     /**
@@ -85,63 +156,313 @@ public class SQLDataStorage {
      * anything. (Good for updating tables)
      * 
      * @param sql
-     *            Query to execute
+     *            Query to execute, with a ? for every parameter
+     * @param parameters
+     *            Values of the parameters of the query
+     * @return true if the query was executed, false if an error occured.
+     */
+    public boolean execute(final String sql, final Object... parameters) {
+        if (pool == null || !breaker.allowRequest()) {
+            return false;
+        }
+
+        Connection conn = null;
+        PreparedStatement stmt = null;
+
+        try {
+            conn = pool.getConnection();
+            stmt = conn.prepareStatement(sql);
+
+            setParameters(stmt, parameters);
+
+            stmt.execute();
+
+            recordSuccess();
+            return true;
+        } catch (final SQLException ex) {
+            System.out.println("SQLDataStorage.execute");
+            printException(ex);
+            recordError(ex);
+
+            return false;
+        } finally {
+            closeQuietly(stmt);
+            closeQuietly(conn);
+        }
+    }
+
+    /**
+     * Execute the same statement for a list of parameters in one batch and
+     * one transaction. Either all rows are written or none are.
+     * 
+     * @param sql
+     *            Statement to execute, with a ? for every parameter
+     * @param rows
+     *            Parameters of every execution of the statement
+     * @return true if the batch was written, false if an error occured.
+     */
+    public boolean executeBatch(final String sql, final List<Object[]> rows) {
+        if (rows.isEmpty()) {
+            return true;
+        }
+
+        return transaction(new TransactionHandler<Boolean>() {
+
+            @Override
+            public Boolean handle(final Connection conn) throws SQLException {
+                executeBatch(conn, sql, rows);
+                return true;
+            }
+        }) != null;
+    }
+
+    /**
+     * Do work with a connection in one transaction. The transaction is
+     * committed when the handler is done, and rolled back when it fails.
+     * 
+     * @param handler
+     *            Work to do
+     * @return value returned by the handler, or null if an error occured.
+     */
+    public <T> T transaction(final TransactionHandler<T> handler) {
+        if (pool == null || !breaker.allowRequest()) {
+            return null;
+        }
+
+        Connection conn = null;
+
+        try {
+            conn = pool.getConnection();
+            conn.setAutoCommit(false);
+
+            final T value = handler.handle(conn);
+
+            conn.commit();
+
+            recordSuccess();
+            return value;
+        } catch (final SQLException ex) {
+            System.out.println("SQLDataStorage.transaction");
+            printException(ex);
+            recordError(ex);
+
+            // The pool rolls back what is left of the transaction
+            return null;
+        } finally {
+            closeQuietly(conn);
+        }
+    }
+
+    /**
+     * Execute the same statement for a list of parameters in one batch on a
+     * connection.
+     * 
+     * @param conn
+     *            Connection to use
+     * @param sql
+     *            Statement to execute, with a ? for every parameter
+     * @param rows
+     *            Parameters of every execution of the statement
+     * @throws SQLException
+     *             when the batch could not be executed.
      */
-    public void execute(final String sql) {
-        Statement stmt = null;
+    public static void executeBatch(final Connection conn, final String sql, final List<Object[]> rows)
+            throws SQLException {
+        if (rows.isEmpty()) {
+            return;
+        }
+
+        PreparedStatement stmt = null;
 
-        if (conn != null) {
-            try {
+        try {
+            stmt = conn.prepareStatement(sql);
 
-                stmt = conn.createStatement();
-                stmt.execute(sql);
+            for (final Object[] row : rows) {
+                setParameters(stmt, row);
+                stmt.addBatch();
+            }
 
-            } catch (final SQLException ex) {
-                System.out.println("SQLDataStorage.execute");
-                System.out.println("SQLException: " + ex.getMessage());
-                System.out.println("SQLState: " + ex.getSQLState());
-                System.out.println("VendorError: " + ex.getErrorCode());
-            } finally {
+            stmt.executeBatch();
+        } finally {
+            closeQuietly(stmt);
+        }
+    }
 
-                if (stmt != null) {
-                    try {
-                        stmt.close();
-                    } catch (final SQLException sqlEx) {
-                    }
+    /**
+     * Create a list of parameters for an IN (...) clause.
+     * 
+     * @param count
+     *            Number of parameters
+     * @return a string like "?, ?, ?".
+     */
+    public static String placeholders(final int count) {
+        final StringBuilder builder = new StringBuilder();
 
-                    stmt = null;
-                }
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                builder.append(", ");
             }
+
+            builder.append('?');
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * Execute a query and read its result. Query cannot be null. The
+     * connection is given back to the pool when the result has been read.
+     * 
+     * @param sql
+     *            Query to execute, with a ? for every parameter
+     * @param handler
+     *            Reads the result of the query
+     * @param parameters
+     *            Values of the parameters of the query
+     * @return value read by the handler, or null if an error occured.
+     */
+    public <T> T query(final String sql, final ResultHandler<T> handler, final Object... parameters) {
+        if (pool == null || !breaker.allowRequest()) {
+            return null;
         }
 
+        Connection conn = null;
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+
+        try {
+            conn = pool.getConnection();
+            stmt = conn.prepareStatement(sql);
+
+            setParameters(stmt, parameters);
+
+            rs = stmt.executeQuery();
+
+            final T value = handler.handle(rs);
+
+            recordSuccess();
+            return value;
+        } catch (final SQLException ex) {
+            System.out.println("SQLDataStorage.query");
+            printException(ex);
+            recordError(ex);
+
+            return null;
+        } finally {
+            closeQuietly(rs);
+            closeQuietly(stmt);
+            closeQuietly(conn);
+        }
     }
 
     /**
-     * Execute a query and returns a ResultSet. Query cannot be null.
+     * Execute a query and read its result one row at a time. Only a few rows
+     * are fetched from the database at once, so large tables can be read
+     * without keeping them in memory.
      * 
      * @param sql
-     *            Query to execute
-     * @return ResultSet if successfully performed, null if an error occured.
+     *            Query to execute, with a ? for every parameter
+     * @param fetchSize
+     *            Number of rows to fetch from the database at once
+     * @param handler
+     *            Reads every row of the result
+     * @param parameters
+     *            Values of the parameters of the query
+     * @return the number of rows that were read, or -1 if an error occured.
      */
-    public ResultSet executeQuery(final String sql) {
-        Statement stmt = null;
+    public int stream(final String sql, final int fetchSize, final RowHandler handler, final Object... parameters) {
+        if (pool == null || !breaker.allowRequest()) {
+            return -1;
+        }
+
+        Connection conn = null;
+        PreparedStatement stmt = null;
         ResultSet rs = null;
 
-        if (conn != null) {
-            try {
+        try {
+            conn = pool.getConnection();
+            stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            stmt.setFetchSize(fetchSize);
+
+            setParameters(stmt, parameters);
 
-                stmt = conn.createStatement();
-                rs = stmt.executeQuery(sql);
+            rs = stmt.executeQuery();
 
-            } catch (final SQLException ex) {
-                System.out.println("SQLDataStorage.executeQuery");
-                System.out.println("SQLException: " + ex.getMessage());
-                System.out.println("SQLState: " + ex.getSQLState());
-                System.out.println("VendorError: " + ex.getErrorCode());
+            int rows = 0;
 
+            while (rs.next()) {
+                handler.handle(rs);
+                rows++;
             }
+
+            recordSuccess();
+            return rows;
+        } catch (final SQLException ex) {
+            System.out.println("SQLDataStorage.stream");
+            printException(ex);
+            recordError(ex);
+
+            return -1;
+        } finally {
+            closeQuietly(rs);
+            closeQuietly(stmt);
+            closeQuietly(conn);
+        }
+    }
+
+    /**
+     * Borrow a connection from the pool. The connection must be closed when
+     * it is not needed anymore.
+     * 
+     * @return a connection to the database.
+     * @throws SQLException
+     *             when no connection could be made.
+     */
+    public Connection getConnection() throws SQLException {
+        if (pool == null) {
+            throw new SQLException("Not connected to the MySQL database");
+        }
+
+        if (!breaker.allowRequest()) {
+            throw new SQLException("The MySQL database can not be reached, trying again later", "08001");
+        }
+
+        return pool.getConnection();
+    }
+
+    /**
+     * Get the state of the connection pool, see
+     * {@link ConnectionPool#getStatus()}.
+     * 
+     * @return a description of the connection pool.
+     */
+    public String getStatus() {
+        if (pool == null) {
+            return "not connected";
         }
-        return rs;
+
+        return pool.getStatus();
+    }
+
+    /**
+     * Get the state of the connection to the database: whether it can be
+     * reached and how often it could not be, see
+     * {@link CircuitBreaker#getStatus()}.
+     * 
+     * @return a description of the health of the connection.
+     */
+    public String getHealth() {
+        return breaker.getStatus();
+    }
+
+    /**
+     * Check whether the database could be reached the last time it was
+     * asked. If not, requests are refused until it is tried again.
+     * 
+     * @return true if the database is reachable.
+     */
+    public boolean isReachable() {
+        return breaker.getState() == CircuitBreaker.State.CLOSED;
     }
 
     /**
@@ -150,15 +471,58 @@ public class SQLDataStorage {
      * @return true if closed, false if open.
      */
     public boolean isClosed() {
+        return pool == null || pool.isClosed();
+    }
 
-        if (conn == null)
-            return true;
+    private static void setParameters(final PreparedStatement stmt, final Object[] parameters)
+            throws SQLException {
+        for (int i = 0; i < parameters.length; i++) {
+            stmt.setObject(i + 1, parameters[i]);
+        }
+    }
+
+    private void recordSuccess() {
+        if (breaker.recordSuccess()) {
+            logger.info("The connection to the MySQL database is restored.");
+        }
+    }
+
+    /**
+     * Report an error to the circuit breaker. Only errors that mean the
+     * database could not be reached count; the database is fine when a query
+     * is wrong.
+     */
+    private void recordError(final SQLException ex) {
+        final String state = ex.getSQLState();
+
+        // Errors of the pool have no state
+        if (state != null && !state.startsWith("08") && !(ex instanceof SQLTimeoutException)
+                && !(ex instanceof SQLTransientConnectionException)) {
+            recordSuccess();
+            return;
+        }
+
+        if (breaker.recordFailure(ex.getMessage())) {
+            logger.warning("Lost the connection to the MySQL database, trying again in "
+                    + breaker.getRetryDelay() / 1000 + " seconds.");
+        }
+    }
+
+    private static void printException(final SQLException ex) {
+        System.out.println("SQLException: " + ex.getMessage());
+        System.out.println("SQLState: " + ex.getSQLState());
+        System.out.println("VendorError: " + ex.getErrorCode());
+    }
+
+    private static void closeQuietly(final AutoCloseable closeable) {
+        if (closeable == null) {
+            return;
+        }
 
         try {
-            return conn.isClosed();
-        } catch (final SQLException e) {
-            e.printStackTrace();
-            return true;
+            closeable.close();
+        } catch (final Exception e) {
+            // Nothing we can do
         }
     }
 
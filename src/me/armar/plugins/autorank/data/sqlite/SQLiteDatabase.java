@@ -0,0 +1,178 @@
+package me.armar.plugins.autorank.data.sqlite;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.UUID;
+
+import me.armar.plugins.autorank.Autorank;
+
+/**
+ * This class is used to store data of Autorank in a local SQLite database
+ * instead of in YAML files. The database is a single file that lives in the
+ * data folder of Autorank, so no database server is needed.
+ * <p>
+ * The database stores the data of {@link me.armar.plugins.autorank.config.PlayerDataConfig}
+ * and the play time of the
+ * {@link me.armar.plugins.autorank.data.flatfile.FlatFileManager}. Only one
+ * thread can use the connection at a time, so all users of the connection
+ * should synchronize on this object.
+ *
+ */
+public class SQLiteDatabase {
+
+    private final Autorank plugin;
+
+    private final File file;
+
+    private Connection connection = null;
+
+    public SQLiteDatabase(final Autorank instance, final File file) {
+        this.plugin = instance;
+        this.file = file;
+    }
+
+    /**
+     * Open the database and create the tables that do not exist yet.
+     *
+     * @return true if the database could be opened, false otherwise.
+     */
+    public synchronized boolean connect() {
+        try {
+            Class.forName("org.sqlite.JDBC");
+        } catch (final ClassNotFoundException e) {
+            plugin.getLogger().warning("Could not find the SQLite driver, the local database cannot be used.");
+            return false;
+        }
+
+        file.getParentFile().mkdirs();
+
+        try {
+            connection = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath());
+
+            final Statement statement = connection.createStatement();
+
+            try {
+                // Readers don't block the writer and a commit does not have to
+                // wait for the disk twice.
+                statement.execute("PRAGMA journal_mode=WAL");
+                statement.execute("PRAGMA synchronous=NORMAL");
+
+                statement.execute("CREATE TABLE IF NOT EXISTS player_data (uuid CHAR(36) PRIMARY KEY, data TEXT)");
+            } finally {
+                statement.close();
+            }
+        } catch (final SQLException e) {
+            plugin.getLogger().warning("Could not open local database: " + e.getMessage());
+
+            close();
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Close the database. If it is already closed, nothing will happen.
+     */
+    public synchronized void close() {
+        if (connection == null) {
+            return;
+        }
+
+        try {
+            connection.close();
+        } catch (final SQLException e) {
+            e.printStackTrace();
+        }
+
+        connection = null;
+    }
+
+    /**
+     * Get the connection to the database. The caller should synchronize on
+     * this object while it uses the connection.
+     *
+     * @return the connection.
+     * @throws SQLException
+     *             when the database is not open.
+     */
+    public Connection getConnection() throws SQLException {
+        if (connection == null) {
+            throw new SQLException("Local database is not open");
+        }
+
+        return connection;
+    }
+
+    /**
+     * Get the data of a player.
+     *
+     * @param uuid
+     *            UUID of the player
+     * @return the data of the player as YAML, or null if it is not stored.
+     * @throws SQLException
+     *             when the data could not be read.
+     */
+    public synchronized String loadPlayerData(final UUID uuid) throws SQLException {
+        final PreparedStatement statement = getConnection()
+                .prepareStatement("SELECT data FROM player_data WHERE uuid = ?");
+
+        try {
+            statement.setString(1, uuid.toString());
+
+            final ResultSet result = statement.executeQuery();
+
+            return result.next() ? result.getString(1) : null;
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Store the data of players. All players are written in a single
+     * transaction.
+     *
+     * @param uuids
+     *            UUIDs of the players
+     * @param data
+     *            Data of each player as YAML
+     * @throws SQLException
+     *             when the data could not be written. Nothing is written in
+     *             that case.
+     */
+    public synchronized void savePlayerData(final List<UUID> uuids, final List<String> data) throws SQLException {
+        if (uuids.isEmpty()) {
+            return;
+        }
+
+        final Connection connection = getConnection();
+
+        final PreparedStatement statement = connection
+                .prepareStatement("INSERT OR REPLACE INTO player_data (uuid, data) VALUES (?, ?)");
+
+        connection.setAutoCommit(false);
+
+        try {
+            for (int i = 0; i < uuids.size(); i++) {
+                statement.setString(1, uuids.get(i).toString());
+                statement.setString(2, data.get(i));
+                statement.addBatch();
+            }
+
+            statement.executeBatch();
+            connection.commit();
+        } catch (final SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            statement.close();
+            connection.setAutoCommit(true);
+        }
+    }
+}
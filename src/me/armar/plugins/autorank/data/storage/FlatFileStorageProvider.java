@@ -0,0 +1,96 @@
+package me.armar.plugins.autorank.data.storage;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import me.armar.plugins.autorank.Autorank;
+import me.armar.plugins.autorank.data.flatfile.FlatFileManager;
+import me.armar.plugins.autorank.data.flatfile.FlatFileManager.TimeType;
+
+/**
+ * Stores the local play time of players with the {@link FlatFileManager}. All
+ * times are kept in memory, so calls never block.
+ *
+ */
+public class FlatFileStorageProvider extends StorageProvider {
+
+    public FlatFileStorageProvider(final Autorank instance) {
+        super(instance);
+    }
+
+    @Override
+    public String getName() {
+        return "Flat file";
+    }
+
+    @Override
+    public boolean isTimeTypeSupported(final TimeType type) {
+        return true;
+    }
+
+    @Override
+    public boolean isBlocking() {
+        return false;
+    }
+
+    @Override
+    public int getPlaytime(final TimeType type, final UUID uuid) {
+        return plugin.getFlatFileManager().getLocalTime(type, uuid);
+    }
+
+    @Override
+    public void setPlaytime(final TimeType type, final UUID uuid, final int time) {
+        plugin.getFlatFileManager().setLocalTime(type, time, uuid);
+    }
+
+    @Override
+    public void addPlaytime(final TimeType type, final UUID uuid, final int time) {
+        plugin.getFlatFileManager().addLocalTime(uuid, time, type);
+    }
+
+    @Override
+    public void addPlayedTime(final UUID uuid, final int minutes) {
+        // The weekly and monthly time are counted from the daily times.
+        plugin.getFlatFileManager().addPlayedTime(uuid, minutes);
+    }
+
+    @Override
+    public boolean isRecentTimeSupported() {
+        return true;
+    }
+
+    @Override
+    public int getRecentPlaytime(final UUID uuid, final int days) {
+        return plugin.getFlatFileManager().getRecentTime(uuid, days);
+    }
+
+    @Override
+    public List<UUID> getStoredPlayers(final TimeType type) {
+        return plugin.getFlatFileManager().getUUIDKeys(type);
+    }
+
+    @Override
+    public Map<UUID, Integer> getTopPlaytimes(final TimeType type, final int limit) {
+        // The local database can sort the times itself.
+        final Map<UUID, Integer> top = plugin.getFlatFileManager().getTopTimes(type, limit);
+
+        if (top != null) {
+            return top;
+        }
+
+        return super.getTopPlaytimes(type, limit);
+    }
+
+    @Override
+    public int forEachPlaytime(final TimeType type, final PlaytimeVisitor visitor) {
+        // Times are looked up one by one instead of collecting them first.
+        final List<UUID> uuids = getStoredPlayers(type);
+
+        for (final UUID uuid : uuids) {
+            visitor.visit(uuid, getPlaytime(type, uuid));
+        }
+
+        return uuids.size();
+    }
+}
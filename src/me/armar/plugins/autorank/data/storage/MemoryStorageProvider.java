@@ -0,0 +1,75 @@
+package me.armar.plugins.autorank.data.storage;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import me.armar.plugins.autorank.Autorank;
+import me.armar.plugins.autorank.data.flatfile.FlatFileManager.TimeType;
+
+/**
+ * Stores play time in memory only. Nothing is written to disk, so all times
+ * are lost when the server stops. This is useful for testing and to compare
+ * other storage providers against. It is used when "local storage" is set
+ * to "memory" in the Settings.yml.
+ *
+ */
+public class MemoryStorageProvider extends StorageProvider {
+
+    private final EnumMap<TimeType, ConcurrentHashMap<UUID, Integer>> times = new EnumMap<>(TimeType.class);
+
+    public MemoryStorageProvider(final Autorank instance) {
+        super(instance);
+
+        for (final TimeType type : TimeType.values()) {
+            times.put(type, new ConcurrentHashMap<UUID, Integer>());
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "Memory";
+    }
+
+    @Override
+    public boolean isTimeTypeSupported(final TimeType type) {
+        return true;
+    }
+
+    @Override
+    public boolean isBlocking() {
+        return false;
+    }
+
+    @Override
+    public int getPlaytime(final TimeType type, final UUID uuid) {
+        final Integer time = times.get(type).get(uuid);
+
+        return time == null ? 0 : time;
+    }
+
+    @Override
+    public void setPlaytime(final TimeType type, final UUID uuid, final int time) {
+        times.get(type).put(uuid, time);
+    }
+
+    @Override
+    public void addPlaytime(final TimeType type, final UUID uuid, final int time) {
+        final ConcurrentHashMap<UUID, Integer> typeTimes = times.get(type);
+
+        while (true) {
+            final Integer current = typeTimes.putIfAbsent(uuid, time);
+
+            if (current == null || typeTimes.replace(uuid, current, current + time)) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public List<UUID> getStoredPlayers(final TimeType type) {
+        return new ArrayList<UUID>(times.get(type).keySet());
+    }
+}
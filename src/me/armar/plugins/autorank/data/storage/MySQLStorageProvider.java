@@ -0,0 +1,124 @@
+package me.armar.plugins.autorank.data.storage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import me.armar.plugins.autorank.Autorank;
+import me.armar.plugins.autorank.data.flatfile.FlatFileManager.TimeType;
+import me.armar.plugins.autorank.data.mysql.MySQLManager;
+
+/**
+ * Stores the global play time of players in the MySQL database of the
+ * {@link MySQLManager}. Only the total time is stored. Lookups can go to the
+ * database, so they should be done on another thread.
+ *
+ */
+public class MySQLStorageProvider extends StorageProvider {
+
+    public MySQLStorageProvider(final Autorank instance) {
+        super(instance);
+    }
+
+    @Override
+    public String getName() {
+        return "MySQL";
+    }
+
+    @Override
+    public boolean isTimeTypeSupported(final TimeType type) {
+        return type == TimeType.TOTAL_TIME;
+    }
+
+    @Override
+    public boolean isBlocking() {
+        return true;
+    }
+
+    @Override
+    public int getPlaytime(final TimeType type, final UUID uuid) {
+        if (!isTimeTypeSupported(type)) {
+            return 0;
+        }
+
+        return plugin.getMySQLManager().getGlobalTime(uuid);
+    }
+
+    @Override
+    public void setPlaytime(final TimeType type, final UUID uuid, final int time) {
+        if (!isTimeTypeSupported(type)) {
+            return;
+        }
+
+        plugin.getMySQLManager().setGlobalTime(uuid, time);
+    }
+
+    @Override
+    public void addPlaytime(final TimeType type, final UUID uuid, final int time) {
+        if (!isTimeTypeSupported(type)) {
+            return;
+        }
+
+        plugin.getMySQLManager().addGlobalTime(uuid, time);
+    }
+
+    @Override
+    public List<UUID> getStoredPlayers(final TimeType type) {
+        if (!isTimeTypeSupported(type)) {
+            return new ArrayList<UUID>();
+        }
+
+        return new ArrayList<UUID>(plugin.getMySQLManager().getAllPlayersFromDatabase().keySet());
+    }
+
+    @Override
+    public Map<UUID, Integer> getPlaytimes(final TimeType type, final Collection<UUID> uuids) {
+        if (!isTimeTypeSupported(type)) {
+            return new HashMap<UUID, Integer>();
+        }
+
+        // Players are looked up with a few queries instead of one per player.
+        return plugin.getMySQLManager().getGlobalTimes(uuids);
+    }
+
+    @Override
+    public Map<UUID, Integer> getAllPlaytimes(final TimeType type) {
+        if (!isTimeTypeSupported(type)) {
+            return new HashMap<UUID, Integer>();
+        }
+
+        // All times are retrieved at once instead of per player.
+        return plugin.getMySQLManager().getAllPlayersFromDatabase();
+    }
+
+    @Override
+    public Map<UUID, Integer> getTopPlaytimes(final TimeType type, final int limit) {
+        if (!isTimeTypeSupported(type)) {
+            return new LinkedHashMap<UUID, Integer>();
+        }
+
+        // The database sorts the times itself, so only the best players are
+        // read.
+        final Map<UUID, Integer> top = plugin.getMySQLManager().getTopGlobalTimes(limit);
+
+        if (top == null) {
+            return new LinkedHashMap<UUID, Integer>();
+        }
+
+        return getTop(top, limit);
+    }
+
+    @Override
+    public int forEachPlaytime(final TimeType type, final PlaytimeVisitor visitor) {
+        if (!isTimeTypeSupported(type)) {
+            return 0;
+        }
+
+        // The table is read a few rows at a time.
+        return Math.max(plugin.getMySQLManager().forEachGlobalTime(visitor), 0);
+    }
+}
@@ -0,0 +1,22 @@
+package me.armar.plugins.autorank.data.storage;
+
+import java.util.UUID;
+
+/**
+ * Is called for every player when the times of all players are read one by
+ * one, see {@link StorageProvider#forEachPlaytime(me.armar.plugins.autorank.data.flatfile.FlatFileManager.TimeType, PlaytimeVisitor)}.
+ * The time is passed as an int, so nothing has to be stored per player.
+ *
+ */
+public interface PlaytimeVisitor {
+
+    /**
+     * Handle the time of a player.
+     *
+     * @param uuid
+     *            UUID of the player
+     * @param time
+     *            Time of the player in minutes
+     */
+    void visit(UUID uuid, int time);
+}
@@ -0,0 +1,352 @@
+package me.armar.plugins.autorank.data.storage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+import me.armar.plugins.autorank.Autorank;
+import me.armar.plugins.autorank.data.flatfile.FlatFileManager.TimeType;
+import me.armar.plugins.autorank.util.AutorankExecutors.WorkType;
+
+/**
+ * A storage provider stores the play time of players. Autorank can store time
+ * in different places (the local files, a MySQL database, etc.), which all
+ * implement this class so the rest of Autorank does not have to know where the
+ * time is stored.
+ * <p>
+ * All methods that do not end with <i>Async</i> may block the thread they are
+ * called on (for instance when a database has to be queried), so they should
+ * not be called on the main thread unless {@link #isBlocking()} returns false.
+ * The <i>Async</i> methods do the same work on another thread.
+ * <p>
+ * All times are in minutes.
+ *
+ */
+public abstract class StorageProvider {
+
+    protected final Autorank plugin;
+
+    public StorageProvider(final Autorank instance) {
+        this.plugin = instance;
+    }
+
+    /**
+     * Get the name of this storage provider, which is shown in the console.
+     *
+     * @return name of the storage provider.
+     */
+    public abstract String getName();
+
+    /**
+     * Check whether this storage provider stores a certain type of time.
+     *
+     * @param type
+     *            Type of time
+     * @return true if the time type is stored, false otherwise.
+     */
+    public abstract boolean isTimeTypeSupported(TimeType type);
+
+    /**
+     * Check whether calls to this storage provider can block the calling
+     * thread for a while.
+     *
+     * @return true if it can block, false if all values are in memory.
+     */
+    public abstract boolean isBlocking();
+
+    /**
+     * Get the time of a player.
+     *
+     * @param type
+     *            Type of time
+     * @param uuid
+     *            UUID of the player
+     * @return time of the player or 0 if the player is not stored.
+     */
+    public abstract int getPlaytime(TimeType type, UUID uuid);
+
+    /**
+     * Set the time of a player.
+     *
+     * @param type
+     *            Type of time
+     * @param uuid
+     *            UUID of the player
+     * @param time
+     *            Time to set
+     */
+    public abstract void setPlaytime(TimeType type, UUID uuid, int time);
+
+    /**
+     * Add time to the time of a player.
+     *
+     * @param type
+     *            Type of time
+     * @param uuid
+     *            UUID of the player
+     * @param time
+     *            Time to add
+     */
+    public abstract void addPlaytime(TimeType type, UUID uuid, int time);
+
+    /**
+     * Add time a player has just played to every type of time this storage
+     * provider stores. Storage providers that derive some types of time from
+     * others should override this.
+     *
+     * @param uuid
+     *            UUID of the player
+     * @param minutes
+     *            Time that was played
+     */
+    public void addPlayedTime(final UUID uuid, final int minutes) {
+        for (final TimeType type : TimeType.values()) {
+            if (isTimeTypeSupported(type)) {
+                addPlaytime(type, uuid, minutes);
+            }
+        }
+    }
+
+    /**
+     * Check whether this storage provider knows how long players played in
+     * any number of recent days, see {@link #getRecentPlaytime(UUID, int)}.
+     *
+     * @return true if the time of recent days is stored, false otherwise.
+     */
+    public boolean isRecentTimeSupported() {
+        return false;
+    }
+
+    /**
+     * Get the time a player played in the last days, including today.
+     * Storage providers that store the time per day should override this and
+     * {@link #isRecentTimeSupported()}.
+     *
+     * @param uuid
+     *            UUID of the player
+     * @param days
+     *            Number of days to look back
+     * @return time of the player in the last days, or 0 if the player is not
+     *         stored or the time of recent days is not supported.
+     */
+    public int getRecentPlaytime(final UUID uuid, final int days) {
+        return 0;
+    }
+
+    /**
+     * Get the UUIDs of all players that have a time of the given type.
+     *
+     * @param type
+     *            Type of time
+     * @return UUIDs of stored players.
+     */
+    public abstract List<UUID> getStoredPlayers(TimeType type);
+
+    /**
+     * Get the time of many players at once. Storage providers that can look up
+     * several players at the same time should override this.
+     *
+     * @param type
+     *            Type of time
+     * @param uuids
+     *            UUIDs of the players
+     * @return the time of every given player that is stored.
+     */
+    public Map<UUID, Integer> getPlaytimes(final TimeType type, final Collection<UUID> uuids) {
+        final Map<UUID, Integer> times = new HashMap<UUID, Integer>();
+
+        for (final UUID uuid : uuids) {
+            times.put(uuid, getPlaytime(type, uuid));
+        }
+
+        return times;
+    }
+
+    /**
+     * Get the time of all stored players. Storage providers that can look up
+     * all players at the same time should override this.
+     *
+     * @param type
+     *            Type of time
+     * @return the time of every stored player.
+     */
+    public Map<UUID, Integer> getAllPlaytimes(final TimeType type) {
+        return getPlaytimes(type, getStoredPlayers(type));
+    }
+
+    /**
+     * Go through the time of all stored players, one player at a time. Storage
+     * providers that can read their players without keeping all of them in
+     * memory should override this.
+     *
+     * @param type
+     *            Type of time
+     * @param visitor
+     *            Is called for every stored player
+     * @return the number of players that were visited.
+     */
+    public int forEachPlaytime(final TimeType type, final PlaytimeVisitor visitor) {
+        int count = 0;
+
+        for (final Entry<UUID, Integer> entry : getAllPlaytimes(type).entrySet()) {
+            visitor.visit(entry.getKey(), entry.getValue());
+            count++;
+        }
+
+        return count;
+    }
+
+    /**
+     * Add time to the time of many players at once. Storage providers that can
+     * change several players at the same time should override this.
+     *
+     * @param type
+     *            Type of time
+     * @param times
+     *            Time to add for each player
+     */
+    public void addPlaytimes(final TimeType type, final Map<UUID, Integer> times) {
+        for (final Entry<UUID, Integer> entry : times.entrySet()) {
+            addPlaytime(type, entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Get the players with the most time, best player first. Storage providers
+     * that can sort the times themselves should override this.
+     *
+     * @param type
+     *            Type of time
+     * @param limit
+     *            Maximum number of players to return
+     * @return the UUIDs and times of the best players, in order.
+     */
+    public Map<UUID, Integer> getTopPlaytimes(final TimeType type, final int limit) {
+        return getTop(getAllPlaytimes(type), limit);
+    }
+
+    /**
+     * Get the time of a player on another thread.
+     *
+     * @see #getPlaytime(TimeType, UUID)
+     */
+    public Future<Integer> getPlaytimeAsync(final TimeType type, final UUID uuid) {
+        return runAsync(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return getPlaytime(type, uuid);
+            }
+        });
+    }
+
+    /**
+     * Get the time of many players on another thread.
+     *
+     * @see #getPlaytimes(TimeType, Collection)
+     */
+    public Future<Map<UUID, Integer>> getPlaytimesAsync(final TimeType type, final Collection<UUID> uuids) {
+        return runAsync(new Callable<Map<UUID, Integer>>() {
+            @Override
+            public Map<UUID, Integer> call() {
+                return getPlaytimes(type, uuids);
+            }
+        });
+    }
+
+    /**
+     * Add time to the time of many players on another thread.
+     *
+     * @see #addPlaytimes(TimeType, Map)
+     */
+    public Future<Void> addPlaytimesAsync(final TimeType type, final Map<UUID, Integer> times) {
+        return runAsync(new Callable<Void>() {
+            @Override
+            public Void call() {
+                addPlaytimes(type, times);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Get the players with the most time on another thread.
+     *
+     * @see #getTopPlaytimes(TimeType, int)
+     */
+    public Future<Map<UUID, Integer>> getTopPlaytimesAsync(final TimeType type, final int limit) {
+        return runAsync(new Callable<Map<UUID, Integer>>() {
+            @Override
+            public Map<UUID, Integer> call() {
+                return getTopPlaytimes(type, limit);
+            }
+        });
+    }
+
+    /**
+     * Run a task on another thread.
+     *
+     * @param callable
+     *            Task to run
+     * @return the result of the task when it is done.
+     */
+    protected <T> Future<T> runAsync(final Callable<T> callable) {
+        return plugin.getExecutors().submit(WorkType.DATABASE, callable);
+    }
+
+    /**
+     * Get the entries with the highest values, without sorting all entries.
+     *
+     * @param times
+     *            Time of each player
+     * @param limit
+     *            Maximum number of entries to return
+     * @return the entries with the highest values, highest first.
+     */
+    public static Map<UUID, Integer> getTop(final Map<UUID, Integer> times, final int limit) {
+        final Map<UUID, Integer> top = new LinkedHashMap<UUID, Integer>();
+
+        if (limit <= 0) {
+            return top;
+        }
+
+        final Comparator<Entry<UUID, Integer>> comparator = new Comparator<Entry<UUID, Integer>>() {
+            @Override
+            public int compare(final Entry<UUID, Integer> first, final Entry<UUID, Integer> second) {
+                return first.getValue().compareTo(second.getValue());
+            }
+        };
+
+        // Lowest of the best entries first, so it can be replaced quickly.
+        final PriorityQueue<Entry<UUID, Integer>> best = new PriorityQueue<Entry<UUID, Integer>>(limit, comparator);
+
+        for (final Entry<UUID, Integer> entry : times.entrySet()) {
+            if (best.size() < limit) {
+                best.add(entry);
+            } else if (comparator.compare(entry, best.peek()) > 0) {
+                best.poll();
+                best.add(entry);
+            }
+        }
+
+        final List<Entry<UUID, Integer>> ascending = new ArrayList<Entry<UUID, Integer>>(best.size());
+
+        while (!best.isEmpty()) {
+            ascending.add(best.poll());
+        }
+
+        for (int i = ascending.size() - 1; i >= 0; i--) {
+            top.put(ascending.get(i).getKey(), ascending.get(i).getValue());
+        }
+
+        return top;
+    }
+}
@@ -109,6 +109,29 @@ public class Debugger {
 
             out.write("Using MySQL: " + plugin.getConfigHandler().useMySQL());
             out.newLine();
+            out.write("MySQL connections: " + plugin.getMySQLManager().getConnectionPoolStatus());
+            out.newLine();
+            out.write("MySQL health: " + plugin.getMySQLManager().getConnectionHealth());
+            out.newLine();
+            out.write("Global time cache: " + plugin.getMySQLManager().getCacheStatus());
+            out.newLine();
+            out.write("");
+            out.newLine();
+
+            out.write("Queued results: " + plugin.getMainThreadExecutor().getQueueSize() + " (peak: "
+                    + plugin.getMainThreadExecutor().getPeakQueueSize() + ")");
+            out.newLine();
+            out.write("");
+            out.newLine();
+
+            out.write("Thread pools: ");
+            out.newLine();
+
+            for (final String status : plugin.getExecutors().getStatus()) {
+                out.write("    " + status);
+                out.newLine();
+            }
+
             out.write("");
             out.newLine();
 
@@ -342,6 +342,10 @@ public enum Lang {
      * and now completed his path.
      */
     COMPLETED_PATH_NOW("completed-path-now", " and now completed his path."),
+    /**
+     * Play for at least {0} in the last {1} days
+     */
+    RECENT_TIME_REQUIREMENT("recent-time-requirement", "Play for at least {0} in the last {1} days"),
     /**
      * Progress of requirement {0}:
      */
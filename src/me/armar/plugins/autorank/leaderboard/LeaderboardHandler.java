@@ -18,9 +18,12 @@ import org.bukkit.command.CommandSender;
 
 import me.armar.plugins.autorank.Autorank;
 import me.armar.plugins.autorank.data.flatfile.FlatFileManager.TimeType;
+import me.armar.plugins.autorank.data.storage.StorageProvider;
 import me.armar.plugins.autorank.hooks.DependencyManager.AutorankDependency;
 import me.armar.plugins.autorank.language.Lang;
+import me.armar.plugins.autorank.util.AutorankExecutors.WorkType;
 import me.armar.plugins.autorank.util.AutorankTools;
+import me.armar.plugins.autorank.util.uuid.UUIDManager;
 
 /**
  * This class is used to handle all leaderboard things. <br>
@@ -81,7 +84,7 @@ public class LeaderboardHandler {
         if (shouldUpdateLeaderboard(type)) {
             // Update leaderboard because it is not valid anymore.
             // Run async because it uses UUID lookup
-            plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
+            plugin.getExecutors().execute(WorkType.CPU, new Runnable() {
                 @Override
                 public void run() {
                     updateLeaderboard(type);
@@ -111,7 +114,30 @@ public class LeaderboardHandler {
      */
     private Map<UUID, Integer> getSortedPlaytimesByUUID(final TimeType type) {
 
-        final List<UUID> uuids = plugin.getFlatFileManager().getUUIDKeys(type);
+        // Autorank's own times and the global times can be sorted by the
+        // storage provider, so only the best players have to be retrieved.
+        // Global times include players of all servers, not only the players
+        // that were on this server.
+        if (type != TimeType.TOTAL_TIME || isGlobalLeaderboard(type)
+                || plugin.getPlaytimes().getUsedTimePlugin().equals(AutorankDependency.AUTORANK)) {
+            final StorageProvider provider = isGlobalLeaderboard(type) ? plugin.getGlobalStorageProvider()
+                    : plugin.getLocalStorageProvider();
+
+            final Map<UUID, Integer> topTimes = provider.getTopPlaytimes(type,
+                    leaderboardLength + plugin.getPlayerDataConfig().getLeaderboardExemptionCount());
+
+            final Iterator<UUID> iterator = topTimes.keySet().iterator();
+
+            while (iterator.hasNext()) {
+                if (plugin.getPlayerDataConfig().hasLeaderboardExemption(iterator.next())) {
+                    iterator.remove();
+                }
+            }
+
+            return topTimes;
+        }
+
+        final List<UUID> uuids = plugin.getLocalStorageProvider().getStoredPlayers(type);
 
         final HashMap<UUID, Integer> times = new HashMap<UUID, Integer>();
 
@@ -146,28 +172,17 @@ public class LeaderboardHandler {
             // Use cache on .getTimeOfPlayer() so that we don't refresh all
             // uuids in existence.
             if (type == TimeType.TOTAL_TIME) {
+                // Get the cached value of this uuid
+                final String playerName = plugin.getUUIDStorage().getCachedPlayerName(uuid);
 
-                if (plugin.getConfigHandler().useGlobalTimeInLeaderboard()) {
-                    times.put(uuid, plugin.getMySQLManager().getGlobalTime(uuid));
-                } else {
-
-                    // If we are using Autorank, we do not need the player name.
-                    if (plugin.getPlaytimes().getUsedTimePlugin().equals(AutorankDependency.AUTORANK)) {
-                        times.put(uuid, plugin.getFlatFileManager().getLocalTime(type, uuid));
-                    } else {
-                        // Get the cached value of this uuid
-                        final String playerName = plugin.getUUIDStorage().getCachedPlayerName(uuid);
-
-                        if (playerName == null) {
-                            plugin.debugMessage("Could not get cached player name of uuid '" + uuid + "'!");
-                            continue;
-                        }
-
-                        times.put(uuid, (plugin.getPlaytimes().getTimeOfPlayer(playerName, true) / 60));
-                    }
+                if (playerName == null) {
+                    plugin.debugMessage("Could not get cached player name of uuid '" + uuid + "'!");
+                    continue;
                 }
+
+                times.put(uuid, (plugin.getPlaytimes().getTimeOfPlayer(playerName, true) / 60));
             } else {
-                times.put(uuid, plugin.getFlatFileManager().getLocalTime(type, uuid));
+                times.put(uuid, plugin.getLocalStorageProvider().getPlaytime(type, uuid));
             }
         }
 
@@ -220,19 +235,15 @@ public class LeaderboardHandler {
             // uuids in existence.
             if (type == TimeType.TOTAL_TIME) {
 
-                if (plugin.getConfigHandler().useGlobalTimeInLeaderboard()) {
-                    times.put(playerName, plugin.getMySQLManager().getGlobalTime(uuid));
+                // If we are using Autorank, we do not need the player name.
+                // Global times are never sorted here, see updateLeaderboard().
+                if (plugin.getPlaytimes().getUsedTimePlugin().equals(AutorankDependency.AUTORANK)) {
+                    times.put(playerName, plugin.getLocalStorageProvider().getPlaytime(type, uuid));
                 } else {
-
-                    // If we are using Autorank, we do not need the player name.
-                    if (plugin.getPlaytimes().getUsedTimePlugin().equals(AutorankDependency.AUTORANK)) {
-                        times.put(playerName, plugin.getFlatFileManager().getLocalTime(type, uuid));
-                    } else {
-                        times.put(playerName, (plugin.getPlaytimes().getTimeOfPlayer(playerName, true) / 60));
-                    }
+                    times.put(playerName, (plugin.getPlaytimes().getTimeOfPlayer(playerName, true) / 60));
                 }
             } else {
-                times.put(playerName, plugin.getFlatFileManager().getLocalTime(type, uuid));
+                times.put(playerName, plugin.getLocalStorageProvider().getPlaytime(type, uuid));
             }
         }
 
@@ -244,6 +255,18 @@ public class LeaderboardHandler {
         return sortedMap;
     }
 
+    /**
+     * Check whether a leaderboard shows the global times of all servers,
+     * instead of the times of this server.
+     * 
+     * @param type
+     *            Type of leaderboard
+     * @return true if the global times are shown.
+     */
+    private boolean isGlobalLeaderboard(final TimeType type) {
+        return type == TimeType.TOTAL_TIME && plugin.getConfigHandler().useGlobalTimeInLeaderboard();
+    }
+
     /**
      * Send the leaderboard to a {@linkplain CommandSender}.
      * 
@@ -256,7 +279,7 @@ public class LeaderboardHandler {
         if (shouldUpdateLeaderboard(type)) {
             // Update leaderboard because it is not valid anymore.
             // Run async because it uses UUID lookup
-            plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
+            plugin.getExecutors().execute(WorkType.CPU, new Runnable() {
                 @Override
                 public void run() {
                     updateLeaderboard(type);
@@ -308,7 +331,7 @@ public class LeaderboardHandler {
      */
     public void updateAllLeaderboards() {
 
-        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
+        plugin.getExecutors().execute(WorkType.CPU, new Runnable() {
             @Override
             public void run() {
                 for (final TimeType type : TimeType.values()) {
@@ -338,13 +361,18 @@ public class LeaderboardHandler {
 
         // If we are using Autorank as timekeeper, we can ask all UUIDs in the uuids file and sort the playtime
         // After we sorted the playtime, we collect the playernames of the top x (leaderboard length variable).
-        if (plugin.getSettingsConfig().useTimeOf().equals(AutorankDependency.AUTORANK)) {
+        // Global times are sorted by the database, whatever the timekeeper is.
+        if (plugin.getSettingsConfig().useTimeOf().equals(AutorankDependency.AUTORANK) || isGlobalLeaderboard(type)) {
             final Map<UUID, Integer> sortedPlaytimes = getSortedPlaytimesByUUID(type);
 
             Iterator<Entry<UUID, Integer>> itr = sortedPlaytimes.entrySet().iterator();
 
             plugin.debugMessage("Size leaderboard: " + sortedPlaytimes.size());
 
+            final Map<UUID, String> names = new HashMap<UUID, String>();
+            final List<UUID> unknownNames = new ArrayList<UUID>();
+            final List<Entry<UUID, Integer>> entries = new ArrayList<Entry<UUID, Integer>>();
+
             for (int i = 0; i < leaderboardLength && itr.hasNext(); i++) {
                 final Entry<UUID, Integer> entry = itr.next();
 
@@ -355,14 +383,34 @@ public class LeaderboardHandler {
                 // Get the cached value of this uuid to improve performance
                 String name = plugin.getUUIDStorage().getRealName(uuid);
 
-                // UUIDManager.getPlayerFromUUID(uuid);
-
                 // There was no real name found, use cached player name
                 if (name == null) {
                     name = plugin.getUUIDStorage().getCachedPlayerName(uuid);
                 }
 
-                // No cached name found, don't use this name.
+                if (name != null) {
+                    names.put(uuid, name);
+                } else {
+                    unknownNames.add(uuid);
+                }
+
+                entries.add(entry);
+            }
+
+            // Players of other servers may never have been on this server, so
+            // look up their names all at once.
+            if (isGlobalLeaderboard(type) && !unknownNames.isEmpty()) {
+                final Map<UUID, String> foundNames = UUIDManager.getPlayers(unknownNames);
+
+                if (foundNames != null) {
+                    names.putAll(foundNames);
+                }
+            }
+
+            for (final Entry<UUID, Integer> entry : entries) {
+                final String name = names.get(entry.getKey());
+
+                // No name found, don't use this name.
                 if (name == null)
                     continue;
 
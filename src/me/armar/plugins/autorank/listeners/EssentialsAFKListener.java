@@ -0,0 +1,32 @@
+package me.armar.plugins.autorank.listeners;
+
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+
+import me.armar.plugins.autorank.Autorank;
+import net.ess3.api.events.AfkStatusChangeEvent;
+
+/**
+ * This listener will listen to players becoming AFK (or no longer AFK) in
+ * Essentials, so their time stops (or starts) counting at that moment. It
+ * should only be registered when Essentials is installed.
+ * 
+ */
+public class EssentialsAFKListener implements Listener {
+
+    private final Autorank plugin;
+
+    public EssentialsAFKListener(final Autorank instance) {
+        plugin = instance;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onAFKStatusChange(final AfkStatusChangeEvent event) {
+        if (!plugin.getConfigHandler().useAFKIntegration() || event.getAffected().getBase() == null) {
+            return;
+        }
+
+        plugin.getPlaytimes().getSessionTracker().setAFK(event.getAffected().getBase(), event.getValue());
+    }
+}
@@ -9,6 +9,7 @@ import org.bukkit.event.player.PlayerJoinEvent;
 
 import me.armar.plugins.autorank.Autorank;
 import me.armar.plugins.autorank.permissions.AutorankPermission;
+import me.armar.plugins.autorank.util.AutorankExecutors.WorkType;
 
 /**
  * This listener will listen to players joining and send them a message when an
@@ -36,6 +37,19 @@ public class PlayerJoinListener implements Listener {
             plugin.getUUIDStorage().storeUUID(player.getName(), player.getUniqueId(), player.getName());
         }
 
+        // Remember when the player was last seen
+        plugin.getFlatFileManager().setLastSeen(player.getUniqueId());
+
+        // Keep the data of the player in memory while they are online, it is
+        // loaded on another thread
+        plugin.getPlayerDataConfig().loadPlayer(player.getUniqueId());
+
+        // Start counting the time of the player
+        plugin.getPlaytimes().getSessionTracker().startSession(player);
+
+        // Update the player every interval, counted from now
+        plugin.getPlaytimes().getUpdateTask().addPlayer(player.getUniqueId());
+
         // Cannot check player at this moment. -> try at next automatic task
         if (plugin.getPlayerChecker() == null) {
             plugin.getLogger()
@@ -46,7 +60,7 @@ public class PlayerJoinListener implements Listener {
         // Do leaderboard exemption check
         plugin.getPlayerChecker().doLeaderboardExemptCheck(player);
 
-        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
+        plugin.getExecutors().execute(WorkType.CPU, new Runnable() {
             public void run() {
                 
                 // Try to auto assign path to a player
@@ -61,7 +75,7 @@ public class PlayerJoinListener implements Listener {
         if (player.hasPermission(AutorankPermission.NOTICE_ON_UPDATE_AVAILABLE)) {
 
             // Run check async so server doesn't lag.
-            plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
+            plugin.getExecutors().execute(WorkType.IO, new Runnable() {
 
                 @Override
                 public void run() {
@@ -0,0 +1,35 @@
+package me.armar.plugins.autorank.listeners;
+
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+import me.armar.plugins.autorank.Autorank;
+
+/**
+ * This listener will listen to players leaving, remember when they were last
+ * seen, add the time they played and allow their data to be removed from
+ * memory.
+ * 
+ */
+public class PlayerQuitListener implements Listener {
+
+    private final Autorank plugin;
+
+    public PlayerQuitListener(final Autorank instance) {
+        plugin = instance;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(final PlayerQuitEvent event) {
+        plugin.getFlatFileManager().setLastSeen(event.getPlayer().getUniqueId());
+
+        // Add the time that was played since the last update
+        plugin.getPlaytimes().getSessionTracker().endSession(event.getPlayer());
+
+        plugin.getPlaytimes().getUpdateTask().removePlayer(event.getPlayer().getUniqueId());
+
+        plugin.getPlayerDataConfig().unloadPlayer(event.getPlayer().getUniqueId());
+    }
+}
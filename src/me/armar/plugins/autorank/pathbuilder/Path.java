@@ -9,6 +9,7 @@ import org.bukkit.entity.Player;
 import me.armar.plugins.autorank.Autorank;
 import me.armar.plugins.autorank.pathbuilder.holders.RequirementsHolder;
 import me.armar.plugins.autorank.pathbuilder.result.Result;
+import me.armar.plugins.autorank.playerchecker.PlayerEvaluation;
 
 /**
  * Represents a path that a player can take, including all requirements and
@@ -53,9 +54,24 @@ public class Path {
     }
 
     public boolean applyChange(final Player player) {
+        return applyChange(player, null);
+    }
+
+    /**
+     * Complete this path for a player if the player meets all requirements.
+     * 
+     * @param player
+     *            Player to complete the path for
+     * @param evaluation
+     *            Requirements that were checked already, or null to check all
+     *            requirements now.
+     * @return true if the path was completed. The results are performed
+     *         later, see {@link Result#applyResults}.
+     */
+    public boolean applyChange(final Player player, final PlayerEvaluation evaluation) {
         boolean result = true;
 
-        if (meetRequirements(player)) {
+        if (meetRequirements(player, evaluation)) {
 
             final UUID uuid = plugin.getUUIDStorage().getStoredUUID(player.getName());
 
@@ -79,22 +95,19 @@ public class Path {
             // Remove path from started paths if it's completed.
             plugin.getPlayerDataConfig().removeStartedPath(uuid, currentPath.getInternalName());
 
-            for (final Result r : this.getResults()) {
-                if (r != null) {
-                    if (!r.applyResult(player)) {
-                        result = false;
-                    }
-                }
-            }
+            // Results are performed on the main thread. After getting results,
+            // the chosen path is reset.
+            Result.applyResults(plugin, player, this.getResults(), new Runnable() {
+                public void run() {
+                    plugin.getPlayerDataConfig().setChosenPath(uuid, null);
 
-            // After getting results, chosen path is reset.
-            plugin.getPlayerDataConfig().setChosenPath(uuid, null);
+                    // Reset progress
+                    plugin.getPlayerDataConfig().setCompletedRequirements(uuid, null);
 
-            // Reset progress
-            plugin.getPlayerDataConfig().setCompletedRequirements(uuid, null);
-            
-            // Try to assign a new path to a player
-            plugin.getPathManager().autoAssignPath(player);
+                    // Try to assign a new path to a player
+                    plugin.getPathManager().autoAssignPath(player, evaluation);
+                }
+            });
 
         } else {
             result = false;
@@ -133,6 +146,10 @@ public class Path {
     }
 
     public boolean meetRequirements(final Player player) {
+        return meetRequirements(player, null);
+    }
+
+    public boolean meetRequirements(final Player player, final PlayerEvaluation evaluation) {
 
         UUID uuid = player.getUniqueId();
         
@@ -155,7 +172,7 @@ public class Path {
             // We don't do partial completion so we only need to check if a
             // player passes all requirements holders.
             if (!plugin.getConfigHandler().usePartialCompletion()) {
-                if (!holder.meetsRequirement(player, uuid, false)) {
+                if (!holder.meetsRequirement(player, uuid, false, evaluation)) {
                     return false;
                 } else {
                     continue;
@@ -164,7 +181,7 @@ public class Path {
 
             // Holder does not meet requirements, so not all requirements are
             // met!
-            if (!holder.meetsRequirement(player, uuid, false)) {
+            if (!holder.meetsRequirement(player, uuid, false, evaluation)) {
                 return false;
             }
 
@@ -175,11 +192,15 @@ public class Path {
     }
 
     public boolean meetsPrerequisites(Player player) {
+        return meetsPrerequisites(player, null);
+    }
+
+    public boolean meetsPrerequisites(Player player, PlayerEvaluation evaluation) {
 
         List<RequirementsHolder> preRequisites = this.getPrerequisites();
 
         for (RequirementsHolder preRequisite : preRequisites) {
-            if (!preRequisite.meetsRequirement(player, player.getUniqueId(), false)) {
+            if (!preRequisite.meetsRequirement(player, player.getUniqueId(), false, evaluation)) {
                 // If one of the prerequisites does not hold, a player does not
                 // meet all the prerequisites.
                 return false;
@@ -190,20 +211,15 @@ public class Path {
     }
     
     /**
-     * Perform the results upon choosing this path.
+     * Perform the results upon choosing this path. They are performed on the
+     * main thread, see {@link Result#applyResults}.
      * @param player Player to perform them for.
-     * @return true if all results were performed succesfully, false otherwise.
+     * @return true if the results will be performed.
      */
     public boolean performResultsUponChoosing(Player player) {
-        boolean success = true;
-        
-        for (Result r: this.getResultsUponChoosing()) {
-            if (!r.applyResult(player)) {
-                success = false;
-            }
-        }
-        
-        return success;
+        Result.applyResults(plugin, player, this.getResultsUponChoosing(), null);
+
+        return true;
     }
 
     public void setDisplayName(String displayName) {
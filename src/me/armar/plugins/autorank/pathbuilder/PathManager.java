@@ -11,6 +11,7 @@ import me.armar.plugins.autorank.Autorank;
 import me.armar.plugins.autorank.language.Lang;
 import me.armar.plugins.autorank.pathbuilder.holders.RequirementsHolder;
 import me.armar.plugins.autorank.pathbuilder.result.Result;
+import me.armar.plugins.autorank.playerchecker.PlayerEvaluation;
 import me.armar.plugins.autorank.util.AutorankTools;
 
 /**
@@ -131,11 +132,25 @@ public class PathManager {
      * @return List of paths that a player can choose.
      */
     public List<Path> getPossiblePaths(Player player) {
+        return getPossiblePaths(player, null);
+    }
+
+    /**
+     * See {@link #getPossiblePaths(Player)}.
+     * 
+     * @param player
+     *            Player
+     * @param evaluation
+     *            Prerequisites that were checked already, or null to check
+     *            all prerequisites now.
+     * @return List of paths that a player can choose.
+     */
+    public List<Path> getPossiblePaths(Player player, PlayerEvaluation evaluation) {
         List<Path> possibilities = new ArrayList<>();
 
         for (Path path : this.getPaths()) {
             // Add path to possibilities, if player meets all prerequisites
-            if (path.meetsPrerequisites(player)) {
+            if (path.meetsPrerequisites(player, evaluation)) {
                 possibilities.add(path);
             }
         }
@@ -264,6 +279,21 @@ public class PathManager {
      *         if none was assigned.
      */
     public Path autoAssignPath(Player player) {
+        return autoAssignPath(player, null);
+    }
+
+    /**
+     * See {@link #autoAssignPath(Player)}.
+     * 
+     * @param player
+     *            Player to assign a path to
+     * @param evaluation
+     *            Prerequisites that were checked already, or null to check
+     *            all prerequisites now.
+     * @return Path that has been automatically assigned to the player or null
+     *         if none was assigned.
+     */
+    public Path autoAssignPath(Player player, PlayerEvaluation evaluation) {
 
         // Player has already chosen a path, so we don't assign a new path
         if (plugin.getPathManager().getCurrentPath(player.getUniqueId()) != null) {
@@ -271,7 +301,7 @@ public class PathManager {
         }
 
         // Get all paths that the player currently is able to choose.
-        List<Path> possiblePaths = plugin.getPathManager().getPossiblePaths(player);
+        List<Path> possiblePaths = plugin.getPathManager().getPossiblePaths(player, evaluation);
 
         // There is no path to choose.
         if (possiblePaths.size() < 1) {
@@ -12,6 +12,7 @@ import me.armar.plugins.autorank.api.events.RequirementCompleteEvent;
 import me.armar.plugins.autorank.language.Lang;
 import me.armar.plugins.autorank.pathbuilder.requirement.Requirement;
 import me.armar.plugins.autorank.pathbuilder.result.Result;
+import me.armar.plugins.autorank.playerchecker.PlayerEvaluation;
 
 /**
  * Since a requirement in Autorank's config can have multiple real requirements,
@@ -215,6 +216,26 @@ public class RequirementsHolder {
     // If any of the requirements is true, you can return true since were using
     // OR logic.
     public boolean meetsRequirement(final Player player, final UUID uuid, boolean forceCommand) {
+        return meetsRequirement(player, uuid, forceCommand, null);
+    }
+
+    /**
+     * See {@link #meetsRequirement(Player, UUID, boolean)}. Requirements that
+     * were checked already on another thread are not checked again.
+     * 
+     * @param player
+     *            Player to check
+     * @param uuid
+     *            UUID of the player
+     * @param forceCommand
+     *            Whether the requirement is completed via /ar complete
+     * @param evaluation
+     *            Requirements that were checked already, or null to check all
+     *            requirements now.
+     * @return true if the player meets any of the requirements.
+     */
+    public boolean meetsRequirement(final Player player, final UUID uuid, boolean forceCommand,
+            final PlayerEvaluation evaluation) {
 
         boolean result = false;
 
@@ -263,7 +284,10 @@ public class RequirementsHolder {
                 }
             }
 
-            if (!r.meetsRequirement(player)) {
+            final boolean meetsRequirement = (evaluation == null) ? r.meetsRequirement(player)
+                    : evaluation.meetsRequirement(r, player);
+
+            if (!meetsRequirement) {
                 continue;
             } else {
                 // Player meets requirement, thus perform results of
@@ -284,15 +308,10 @@ public class RequirementsHolder {
                     player.sendMessage(Lang.COMPLETED_REQUIREMENT.getConfigValue(r.getReqId() + 1, r.getDescription()));
                 }
 
-                boolean noErrors = true;
-                for (final Result realResult : results) {
+                // Results are performed on the main thread
+                Result.applyResults(plugin, player, results, null);
 
-                    if (!realResult.applyResult(player)) {
-                        noErrors = false;
-                    }
-                }
-
-                result = noErrors;
+                result = true;
                 break; // We performed results for a requirement, so we should
                        // stop now.
             }
@@ -331,9 +350,7 @@ public class RequirementsHolder {
             return;
 
         // Apply result
-        for (final Result realResult : this.getResults()) {
-            realResult.applyResult(player);
-        }
+        Result.applyResults(plugin, player, this.getResults(), null);
     }
 
     /**
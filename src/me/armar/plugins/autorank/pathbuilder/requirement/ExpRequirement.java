@@ -3,6 +3,7 @@ package me.armar.plugins.autorank.pathbuilder.requirement;
 import org.bukkit.entity.Player;
 
 import me.armar.plugins.autorank.language.Lang;
+import me.armar.plugins.autorank.playerchecker.PlayerSnapshot;
 import me.armar.plugins.autorank.util.AutorankTools;
 
 public class ExpRequirement extends Requirement {
@@ -44,6 +45,24 @@ public class ExpRequirement extends Requirement {
         return expLevel >= minExp;
     }
 
+    @Override
+    public boolean supportsSnapshot() {
+        return true;
+    }
+
+    @Override
+    public boolean meetsRequirement(final PlayerSnapshot snapshot) {
+
+        // Check if this requirement is world-specific
+        if (this.isWorldSpecific()) {
+            // Is player in the same world as specified
+            if (!this.getWorld().equals(snapshot.getWorldName()))
+                return false;
+        }
+
+        return snapshot.getLevel() >= minExp;
+    }
+
     @Override
     public boolean setOptions(final String[] options) {
 
@@ -3,6 +3,7 @@ package me.armar.plugins.autorank.pathbuilder.requirement;
 import org.bukkit.entity.Player;
 
 import me.armar.plugins.autorank.language.Lang;
+import me.armar.plugins.autorank.playerchecker.PlayerSnapshot;
 import me.armar.plugins.autorank.util.AutorankTools;
 
 public class GamemodeRequirement extends Requirement {
@@ -47,6 +48,24 @@ public class GamemodeRequirement extends Requirement {
         return gamemode == gameMode;
     }
 
+    @Override
+    public boolean supportsSnapshot() {
+        return true;
+    }
+
+    @Override
+    public boolean meetsRequirement(final PlayerSnapshot snapshot) {
+
+        // Check if this requirement is world-specific
+        if (this.isWorldSpecific()) {
+            // Is player in the same world as specified
+            if (!this.getWorld().equals(snapshot.getWorldName()))
+                return false;
+        }
+
+        return snapshot.getGameMode() == gameMode;
+    }
+
     @Override
     public boolean setOptions(final String[] options) {
 
@@ -1,9 +1,13 @@
 package me.armar.plugins.autorank.pathbuilder.requirement;
 
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
 
 import org.bukkit.entity.Player;
 
+import com.google.common.util.concurrent.ListenableFuture;
+
+import me.armar.plugins.autorank.data.mysql.MySQLManager;
 import me.armar.plugins.autorank.language.Lang;
 import me.armar.plugins.autorank.util.AutorankTools;
 import me.armar.plugins.autorank.util.AutorankTools.Time;
@@ -27,7 +31,7 @@ public class GlobalTimeRequirement extends Requirement {
     @Override
     public String getProgress(final Player player) {
 
-        final int playtime = getAutorank().getMySQLManager().getGlobalTime(player.getUniqueId());
+        final int playtime = getGlobalTime(player.getUniqueId());
 
         return playtime + "/" + globalTime;
     }
@@ -36,11 +40,35 @@ public class GlobalTimeRequirement extends Requirement {
     public boolean meetsRequirement(final Player player) {
         final UUID uuid = player.getUniqueId();
 
-        final double playtime = this.getAutorank().getMySQLManager().getGlobalTime(uuid);
+        final double playtime = getGlobalTime(uuid);
 
         return globalTime != -1 && playtime >= globalTime;
     }
 
+    /**
+     * Get the global time of a player without waiting for the database. If
+     * the cached time is out of date, it is looked up in the background and
+     * the cached time is used until the next check.
+     * 
+     * @param uuid
+     *            UUID of the player
+     * @return global time of the player, 0 if it is not known yet.
+     */
+    private int getGlobalTime(final UUID uuid) {
+        final MySQLManager mysql = getAutorank().getMySQLManager();
+        final ListenableFuture<Integer> time = mysql.getGlobalTimeAsync(uuid);
+
+        if (time.isDone()) {
+            try {
+                return time.get();
+            } catch (final InterruptedException | ExecutionException e) {
+                e.printStackTrace();
+            }
+        }
+
+        return mysql.getCachedGlobalTime(uuid);
+    }
+
     @Override
     public boolean setOptions(final String[] options) {
 
@@ -1,9 +1,13 @@
 package me.armar.plugins.autorank.pathbuilder.requirement;
 
+import java.util.Collection;
+import java.util.Collections;
+
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
 
 import me.armar.plugins.autorank.language.Lang;
+import me.armar.plugins.autorank.playerchecker.PlayerSnapshot;
 import me.armar.plugins.autorank.util.AutorankTools;
 
 public class HasItemRequirement extends Requirement {
@@ -39,6 +43,16 @@ public class HasItemRequirement extends Requirement {
         return lang;
     }
 
+    @Override
+    public Collection<PlayerSnapshot.NeededItem> getItems() {
+        if (neededItem == null || neededItem.getItem() == null) {
+            return Collections.emptyList();
+        }
+
+        return Collections.singletonList(new PlayerSnapshot.NeededItem(neededItem.getItem(),
+                neededItem.useDisplayName() ? neededItem.getDisplayName() : null));
+    }
+
     @Override
     public String getProgress(final Player player) {
 
@@ -77,6 +91,34 @@ public class HasItemRequirement extends Requirement {
         }
     }
 
+    @Override
+    public boolean supportsSnapshot() {
+        return true;
+    }
+
+    @Override
+    public boolean meetsRequirement(final PlayerSnapshot snapshot) {
+
+        // Check if this requirement is world-specific
+        if (this.isWorldSpecific()) {
+            // Is player in the same world as specified
+            if (!this.getWorld().equals(snapshot.getWorldName()))
+                return false;
+        }
+
+        final ItemStack item = neededItem.getItem();
+
+        if (item == null)
+            return false;
+
+        if (!neededItem.useDisplayName()) {
+            return snapshot.containsAtLeast(item, item.getAmount());
+        } else {
+            // Check if player has items WITH proper displayname
+            return snapshot.containsAtLeast(item, item.getAmount(), neededItem.getDisplayName());
+        }
+    }
+
     @SuppressWarnings("deprecation")
     @Override
     public boolean setOptions(final String[] options) {
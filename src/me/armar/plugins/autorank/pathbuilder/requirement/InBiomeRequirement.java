@@ -4,6 +4,7 @@ import org.bukkit.Location;
 import org.bukkit.entity.Player;
 
 import me.armar.plugins.autorank.language.Lang;
+import me.armar.plugins.autorank.playerchecker.PlayerSnapshot;
 
 public class InBiomeRequirement extends Requirement {
 
@@ -43,6 +44,24 @@ public class InBiomeRequirement extends Requirement {
         return pLocation.getBlock().getBiome().toString().equals(biome);
     }
 
+    @Override
+    public boolean supportsSnapshot() {
+        return true;
+    }
+
+    @Override
+    public boolean meetsRequirement(final PlayerSnapshot snapshot) {
+
+        // Check if this requirement is world-specific
+        if (this.isWorldSpecific()) {
+            // Is player in the same world as specified
+            if (!this.getWorld().equals(snapshot.getWorldName()))
+                return false;
+        }
+
+        return snapshot.getBiome().equals(biome);
+    }
+
     @Override
     public boolean setOptions(final String[] options) {
 
@@ -6,6 +6,7 @@ import org.bukkit.World;
 import org.bukkit.entity.Player;
 
 import me.armar.plugins.autorank.language.Lang;
+import me.armar.plugins.autorank.playerchecker.PlayerSnapshot;
 
 public class LocationRequirement extends Requirement {
 
@@ -77,6 +78,30 @@ public class LocationRequirement extends Requirement {
         return false;
     }
 
+    @Override
+    public boolean supportsSnapshot() {
+        return true;
+    }
+
+    @Override
+    public boolean meetsRequirement(final PlayerSnapshot snapshot) {
+        // Player is not in the correct world (world names are not case
+        // sensitive)
+        if (world == null || !world.equalsIgnoreCase(snapshot.getWorldName()))
+            return false;
+
+        // Check if a player is within the radius
+        if (snapshot.getBlockX() >= xRadiusN && snapshot.getBlockX() <= xRadiusP) {
+            if (snapshot.getBlockY() >= yRadiusN && snapshot.getBlockY() <= yRadiusP) {
+                if (snapshot.getBlockZ() >= zRadiusN && snapshot.getBlockZ() <= zRadiusP) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
     @Override
     public boolean setOptions(final String[] options) {
 
@@ -1,8 +1,12 @@
 package me.armar.plugins.autorank.pathbuilder.requirement;
 
+import java.util.Collection;
+import java.util.Collections;
+
 import org.bukkit.entity.Player;
 
 import me.armar.plugins.autorank.language.Lang;
+import me.armar.plugins.autorank.playerchecker.PlayerSnapshot;
 
 public class PermissionRequirement extends Requirement {
 
@@ -40,6 +44,29 @@ public class PermissionRequirement extends Requirement {
         return player.hasPermission(permission);
     }
 
+    @Override
+    public boolean supportsSnapshot() {
+        return true;
+    }
+
+    @Override
+    public boolean meetsRequirement(final PlayerSnapshot snapshot) {
+
+        // Check if this requirement is world-specific
+        if (this.isWorldSpecific()) {
+            // Is player in the same world as specified
+            if (!this.getWorld().equals(snapshot.getWorldName()))
+                return false;
+        }
+
+        return snapshot.hasPermission(permission);
+    }
+
+    @Override
+    public Collection<String> getPermissions() {
+        return Collections.singletonList(permission);
+    }
+
     @Override
     public boolean setOptions(final String[] options) {
 
@@ -0,0 +1,72 @@
+package me.armar.plugins.autorank.pathbuilder.requirement;
+
+import java.util.UUID;
+
+import org.bukkit.entity.Player;
+
+import me.armar.plugins.autorank.data.flatfile.PlaytimeTable;
+import me.armar.plugins.autorank.data.storage.StorageProvider;
+import me.armar.plugins.autorank.language.Lang;
+import me.armar.plugins.autorank.util.AutorankTools;
+import me.armar.plugins.autorank.util.AutorankTools.Time;
+
+/**
+ * This requirement checks for the local play time in the last x days, for
+ * example 10 hours in the last 7 days.
+ * <p>
+ * The time is read from the local storage. If that does not store the time
+ * per day (see {@link StorageProvider#isRecentTimeSupported()}), the time
+ * always counts as 0.
+ *
+ */
+public class RecentTimeRequirement extends Requirement {
+
+    int timeNeeded = -1;
+    int days = -1;
+
+    @Override
+    public String getDescription() {
+        return Lang.RECENT_TIME_REQUIREMENT.getConfigValue(AutorankTools.timeToString(timeNeeded, Time.MINUTES),
+                days + "");
+    }
+
+    @Override
+    public String getProgress(final Player player) {
+
+        final int playtime = getRecentTime(player);
+
+        return playtime + " min/" + timeNeeded + " min";
+    }
+
+    @Override
+    public boolean meetsRequirement(final Player player) {
+        return timeNeeded != -1 && getRecentTime(player) >= timeNeeded;
+    }
+
+    @Override
+    public boolean setOptions(final String[] options) {
+        if (options.length > 0) {
+            timeNeeded = AutorankTools.stringToTime(options[0], Time.MINUTES);
+        }
+        if (options.length > 1) {
+            try {
+                days = Integer.parseInt(options[1].trim());
+            } catch (final NumberFormatException e) {
+                days = -1;
+            }
+        }
+
+        return timeNeeded != -1 && days > 0 && days <= PlaytimeTable.HISTORY_DAYS;
+    }
+
+    private int getRecentTime(final Player player) {
+        // Time is stored under the UUID that Autorank has cached.
+        final UUID uuid = this.getAutorank().getUUIDStorage().getStoredUUID(player.getName());
+
+        if (uuid == null) {
+            return 0;
+        }
+
+        return this.getAutorank().getLocalStorageProvider().getRecentPlaytime(uuid, days);
+    }
+}
@@ -1,6 +1,8 @@
 package me.armar.plugins.autorank.pathbuilder.requirement;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
 
@@ -9,6 +11,7 @@ import org.bukkit.entity.Player;
 import me.armar.plugins.autorank.Autorank;
 import me.armar.plugins.autorank.hooks.DependencyManager;
 import me.armar.plugins.autorank.pathbuilder.result.Result;
+import me.armar.plugins.autorank.playerchecker.PlayerSnapshot;
 import me.armar.plugins.autorank.statsmanager.StatsPlugin;
 
 /**
@@ -60,6 +63,28 @@ public abstract class Requirement {
      */
     public abstract String getProgress(Player player);
 
+    /**
+     * Get the permissions this requirement checks. These are stored in a
+     * {@link PlayerSnapshot}, so {@link #meetsRequirement(PlayerSnapshot)} can
+     * check them.
+     * 
+     * @return the permissions that are checked by this requirement.
+     */
+    public Collection<String> getPermissions() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Get the items this requirement looks for in the inventory. Their
+     * amounts are stored in a {@link PlayerSnapshot}, so
+     * {@link #meetsRequirement(PlayerSnapshot)} can check them.
+     * 
+     * @return the items that are checked by this requirement.
+     */
+    public Collection<PlayerSnapshot.NeededItem> getItems() {
+        return Collections.emptyList();
+    }
+
     /**
      * Get the id of this requirement. This should get assigned automatically at
      * setOptions(). The id should always be dynamic.
@@ -138,6 +163,32 @@ public abstract class Requirement {
      */
     public abstract boolean meetsRequirement(Player player);
 
+    /**
+     * Check whether a player meets this requirement, using a snapshot of the
+     * player. This is called on another thread than the main thread, and only
+     * if {@link #supportsSnapshot()} returns true. Other requirements are
+     * checked with {@link #meetsRequirement(Player)} on the main thread.
+     * 
+     * @param snapshot
+     *            Snapshot of the player to check for
+     * @return true if it meets the requirements; false otherwise
+     */
+    public boolean meetsRequirement(final PlayerSnapshot snapshot) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " can not be checked with a snapshot");
+    }
+
+    /**
+     * Check whether this requirement can be checked with
+     * {@link #meetsRequirement(PlayerSnapshot)} on another thread. This
+     * should only return true if that method does not use Bukkit or other
+     * plugins, which are only safe to use on the main thread.
+     * 
+     * @return true if a snapshot is enough to check this requirement.
+     */
+    public boolean supportsSnapshot() {
+        return false;
+    }
+
     /**
      * Set whether this requirement auto completes itself
      * 
@@ -3,6 +3,7 @@ package me.armar.plugins.autorank.pathbuilder.requirement;
 import org.bukkit.entity.Player;
 
 import me.armar.plugins.autorank.language.Lang;
+import me.armar.plugins.autorank.playerchecker.PlayerSnapshot;
 
 public class WorldRequirement extends Requirement {
 
@@ -27,6 +28,16 @@ public class WorldRequirement extends Requirement {
         return (worldName != null && world.equals(worldName));
     }
 
+    @Override
+    public boolean supportsSnapshot() {
+        return true;
+    }
+
+    @Override
+    public boolean meetsRequirement(final PlayerSnapshot snapshot) {
+        return (worldName != null && snapshot.getWorldName().equals(worldName));
+    }
+
     @Override
     public boolean setOptions(final String[] options) {
 
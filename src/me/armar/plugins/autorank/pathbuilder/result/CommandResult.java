@@ -16,17 +16,27 @@ public class CommandResult extends Result {
 
     @Override
     public boolean applyResult(final Player player) {
-        if (server != null) {
-            this.getAutorank().getServer().getScheduler().runTask(this.getAutorank(), new Runnable() {
-                public void run() {
-                    for (final String command : commands) {
-                        final String cmd = command.replace("&p", player.getName());
-                        server.dispatchCommand(server.getConsoleSender(), cmd);
-                    }
+        if (server == null) {
+            return false;
+        }
+
+        final Runnable dispatch = new Runnable() {
+            public void run() {
+                for (final String command : commands) {
+                    final String cmd = command.replace("&p", player.getName());
+                    server.dispatchCommand(server.getConsoleSender(), cmd);
                 }
-            });
+            }
+        };
+
+        // Results are normally applied on the main thread already.
+        if (server.isPrimaryThread()) {
+            dispatch.run();
+        } else {
+            this.getAutorank().getMainThreadExecutor().execute(getPriority(), dispatch);
         }
-        return server != null;
+
+        return true;
     }
 
     /*
@@ -4,12 +4,18 @@ import org.bukkit.Effect;
 import org.bukkit.entity.Player;
 
 import me.armar.plugins.autorank.language.Lang;
+import me.armar.plugins.autorank.util.MainThreadExecutor.Priority;
 
 public class EffectResult extends Result {
 
     private int data;
     private Effect effect;
 
+    @Override
+    public Priority getPriority() {
+        return Priority.LOW;
+    }
+
     @Override
     public boolean applyResult(final Player player) {
         if (effect != null) {
@@ -3,11 +3,17 @@ package me.armar.plugins.autorank.pathbuilder.result;
 import org.bukkit.entity.Player;
 
 import me.armar.plugins.autorank.language.Lang;
+import me.armar.plugins.autorank.util.MainThreadExecutor.Priority;
 
 public class MessageResult extends Result {
 
     String msg = null;
 
+    @Override
+    public Priority getPriority() {
+        return Priority.LOW;
+    }
+
     @Override
     public boolean applyResult(final Player player) {
         if (player == null) {
@@ -4,12 +4,18 @@ import org.bukkit.entity.Player;
 
 import me.armar.plugins.autorank.hooks.vaultapi.VaultHandler;
 import me.armar.plugins.autorank.language.Lang;
+import me.armar.plugins.autorank.util.MainThreadExecutor.Priority;
 import net.milkbowl.vault.economy.EconomyResponse;
 
 public class MoneyResult extends Result {
 
     private long money = -1;
 
+    @Override
+    public Priority getPriority() {
+        return Priority.HIGH;
+    }
+
     @Override
     public boolean applyResult(final Player player) {
       EconomyResponse res =  VaultHandler.economy.depositPlayer(player, money);
@@ -8,6 +8,7 @@ import org.bukkit.entity.Player;
 
 import me.armar.plugins.autorank.api.events.PlayerPromoteEvent;
 import me.armar.plugins.autorank.language.Lang;
+import me.armar.plugins.autorank.util.MainThreadExecutor.Priority;
 
 public class RankChangeResult extends Result {
 
@@ -15,6 +16,11 @@ public class RankChangeResult extends Result {
     String to = null;
     String world = null;
 
+    @Override
+    public Priority getPriority() {
+        return Priority.HIGH;
+    }
+
     @Override
     public boolean applyResult(final Player player) {
         
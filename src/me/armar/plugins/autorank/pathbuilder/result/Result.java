@@ -1,8 +1,14 @@
 package me.armar.plugins.autorank.pathbuilder.result;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.bukkit.entity.Player;
 
 import me.armar.plugins.autorank.Autorank;
+import me.armar.plugins.autorank.util.MainThreadExecutor;
+import me.armar.plugins.autorank.util.MainThreadExecutor.Priority;
 
 public abstract class Result {
 
@@ -19,6 +25,16 @@ public abstract class Result {
         return plugin;
     }
 
+    /**
+     * Get the priority of this result. When a lot of results have to be
+     * performed, results with a higher priority are performed first. See
+     * {@link MainThreadExecutor}.
+     * @return priority of this result
+     */
+    public Priority getPriority() {
+        return Priority.NORMAL;
+    }
+
     /**
      * Get the description of this result
      * @return
@@ -41,4 +57,53 @@ public abstract class Result {
         return this.getClass().getSimpleName();
     }
 
+    /**
+     * Apply results to a player on the main thread. This can be called from
+     * any thread. Every result is queued with its own priority, so results
+     * with a higher priority are performed first and each result counts
+     * against the time budget of a tick on its own.
+     * @param plugin Autorank
+     * @param player Player to apply the results to
+     * @param results Results to apply
+     * @param afterwards Task to run after all results are applied, or null
+     */
+    public static void applyResults(final Autorank plugin, final Player player, final List<Result> results,
+            final Runnable afterwards) {
+        final List<Result> toApply = new ArrayList<Result>();
+
+        for (final Result result : results) {
+            if (result != null) {
+                toApply.add(result);
+            }
+        }
+
+        if (toApply.isEmpty()) {
+            if (afterwards != null) {
+                plugin.getMainThreadExecutor().execute(Priority.LOW, afterwards);
+            }
+
+            return;
+        }
+
+        // Results can be performed in another order than they are queued, so
+        // the last one to finish runs the task afterwards.
+        final AtomicInteger remaining = new AtomicInteger(toApply.size());
+
+        for (final Result result : toApply) {
+            plugin.getMainThreadExecutor().execute(result.getPriority(), new Runnable() {
+                public void run() {
+                    try {
+                        if (!result.applyResult(player)) {
+                            plugin.debugMessage("Result " + result + " could not be applied to " + player.getName());
+                        }
+                    } finally {
+                        if (remaining.decrementAndGet() == 0 && afterwards != null) {
+                            afterwards.run();
+                        }
+                    }
+                }
+            });
+        }
+    }
+
 }
@@ -10,6 +10,7 @@ import org.bukkit.entity.Player;
 import org.bukkit.inventory.meta.FireworkMeta;
 
 import me.armar.plugins.autorank.language.Lang;
+import me.armar.plugins.autorank.util.MainThreadExecutor.Priority;
 
 
 public class SpawnFireworkResult extends Result {
@@ -20,6 +21,11 @@ public class SpawnFireworkResult extends Result {
     private String target = "player";
     private Type type = Type.BALL;
 
+    @Override
+    public Priority getPriority() {
+        return Priority.LOW;
+    }
+
     @Override
     public boolean applyResult(final Player player) {
         if (player == null)
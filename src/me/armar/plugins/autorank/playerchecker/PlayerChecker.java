@@ -1,7 +1,10 @@
 package me.armar.plugins.autorank.playerchecker;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.UUID;
 
 import org.bukkit.ChatColor;
 import org.bukkit.entity.Player;
@@ -10,6 +13,7 @@ import me.armar.plugins.autorank.Autorank;
 import me.armar.plugins.autorank.language.Lang;
 import me.armar.plugins.autorank.pathbuilder.Path;
 import me.armar.plugins.autorank.pathbuilder.holders.RequirementsHolder;
+import me.armar.plugins.autorank.pathbuilder.requirement.Requirement;
 import me.armar.plugins.autorank.pathbuilder.result.Result;
 import me.armar.plugins.autorank.permissions.AutorankPermission;
 import me.armar.plugins.autorank.util.AutorankTools;
@@ -34,6 +38,21 @@ public class PlayerChecker {
     }
 
     public boolean checkPlayer(final Player player) {
+        return checkPlayer(player, null);
+    }
+
+    /**
+     * Check whether a player completed its path. This should be called on the
+     * main thread.
+     * 
+     * @param player
+     *            Player to check
+     * @param evaluation
+     *            Requirements that were checked already, or null to check all
+     *            requirements now.
+     * @return true if the path was completed.
+     */
+    public boolean checkPlayer(final Player player, final PlayerEvaluation evaluation) {
 
         // Do not rank a player when he is excluded
         if (AutorankTools.isExcludedFromRanking(player))
@@ -45,7 +64,125 @@ public class PlayerChecker {
         if (chosenPath == null)
             return false;
 
-        return chosenPath.applyChange(player);
+        return chosenPath.applyChange(player, evaluation);
+    }
+
+    /**
+     * Check the requirements of a player using a snapshot. This can be done
+     * on any thread. The requirements of the current path are checked, or the
+     * prerequisites of all paths if the player has not chosen a path yet.
+     * 
+     * @param snapshot
+     *            Snapshot of the player
+     * @return the requirements that were checked.
+     */
+    public PlayerEvaluation evaluate(final PlayerSnapshot snapshot) {
+        final PlayerEvaluation evaluation = new PlayerEvaluation(snapshot);
+
+        if (snapshot.isExcludedFromRanking()) {
+            return evaluation;
+        }
+
+        final Path chosenPath = plugin.getPathManager().getCurrentPath(snapshot.getUniqueId());
+
+        if (chosenPath == null) {
+            // Prerequisites are needed to assign a path
+            for (final Path path : plugin.getPathManager().getPaths()) {
+                evaluate(evaluation, path.getPrerequisites());
+            }
+        } else if (!plugin.getConfigHandler().isAutomaticPathDisabled()) {
+            evaluate(evaluation, chosenPath.getRequirements());
+        }
+
+        return evaluation;
+    }
+
+    private void evaluate(final PlayerEvaluation evaluation, final List<RequirementsHolder> holders) {
+        final UUID uuid = evaluation.getSnapshot().getUniqueId();
+
+        for (final RequirementsHolder holder : holders) {
+            if (holder == null) {
+                continue;
+            }
+
+            for (final Requirement requirement : holder.getRequirements()) {
+                // Optional requirements and requirements that do not complete
+                // automatically are never checked.
+                if (requirement.isOptional() || !requirement.useAutoCompletion()) {
+                    continue;
+                }
+
+                // Requirements that need the player itself are checked on the
+                // main thread when they are needed.
+                if (!requirement.supportsSnapshot()) {
+                    continue;
+                }
+
+                // Requirements that are completed already are not checked
+                // again.
+                final boolean completed = holder.isPrerequisite()
+                        ? plugin.getPlayerDataConfig().hasCompletedPrerequisite(requirement.getReqId(), uuid)
+                        : plugin.getPlayerDataConfig().hasCompletedRequirement(requirement.getReqId(), uuid);
+
+                if (completed) {
+                    continue;
+                }
+
+                evaluation.evaluate(requirement);
+            }
+        }
+    }
+
+    /**
+     * Get the permissions that the requirements and prerequisites of all paths
+     * check. These should be stored in a {@link PlayerSnapshot}.
+     * 
+     * @return the permissions that are checked by requirements.
+     */
+    public Set<String> getPermissionsOfInterest() {
+        final Set<String> permissions = new HashSet<String>();
+
+        for (final Requirement requirement : getAllRequirements()) {
+            permissions.addAll(requirement.getPermissions());
+        }
+
+        return permissions;
+    }
+
+    /**
+     * Get the items that the requirements and prerequisites of all paths look
+     * for in the inventory. These should be counted in a
+     * {@link PlayerSnapshot}.
+     * 
+     * @return the items that are checked by requirements.
+     */
+    public Set<PlayerSnapshot.NeededItem> getItemsOfInterest() {
+        final Set<PlayerSnapshot.NeededItem> items = new HashSet<PlayerSnapshot.NeededItem>();
+
+        for (final Requirement requirement : getAllRequirements()) {
+            items.addAll(requirement.getItems());
+        }
+
+        return items;
+    }
+
+    private List<Requirement> getAllRequirements() {
+        final List<Requirement> requirements = new ArrayList<Requirement>();
+
+        for (final Path path : plugin.getPathManager().getPaths()) {
+            final List<RequirementsHolder> holders = new ArrayList<RequirementsHolder>(path.getPrerequisites());
+            holders.addAll(path.getRequirements());
+
+            for (final RequirementsHolder holder : holders) {
+                if (holder == null) {
+                    continue;
+                }
+
+                requirements.addAll(holder.getRequirements());
+            }
+        }
+
+        return requirements;
     }
 
     public void doLeaderboardExemptCheck(final Player player) {
@@ -0,0 +1,71 @@
+package me.armar.plugins.autorank.playerchecker;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.bukkit.entity.Player;
+
+import me.armar.plugins.autorank.pathbuilder.requirement.Requirement;
+
+/**
+ * The outcome of checking the requirements of a player on another thread. It
+ * is made from a {@link PlayerSnapshot} by
+ * {@link PlayerChecker#evaluate(PlayerSnapshot)} and is used on the main
+ * thread to complete requirements and paths, so the requirements do not have
+ * to be checked on the main thread again.
+ * <p>
+ * Requirements that were not checked (for example because they can not be
+ * checked with a snapshot, or because the path of the player changed in the
+ * meantime) are checked on the main thread when they are needed.
+ *
+ */
+public class PlayerEvaluation {
+
+    private final PlayerSnapshot snapshot;
+
+    // Whether a requirement is met, by requirement.
+    private final Map<Requirement, Boolean> metRequirements = new IdentityHashMap<Requirement, Boolean>();
+
+    public PlayerEvaluation(final PlayerSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Check a requirement using the snapshot and remember the outcome.
+     *
+     * @param requirement
+     *            Requirement to check
+     */
+    public void evaluate(final Requirement requirement) {
+        if (metRequirements.containsKey(requirement)) {
+            return;
+        }
+
+        metRequirements.put(requirement, requirement.meetsRequirement(snapshot));
+    }
+
+    public PlayerSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Check whether a player meets a requirement. The outcome of
+     * {@link #evaluate(Requirement)} is used if the requirement was checked
+     * already.
+     *
+     * @param requirement
+     *            Requirement to check
+     * @param player
+     *            Player to check the requirement for if it was not checked
+     * @return true if the player meets the requirement.
+     */
+    public boolean meetsRequirement(final Requirement requirement, final Player player) {
+        final Boolean met = metRequirements.get(requirement);
+
+        if (met == null) {
+            return requirement.meetsRequirement(player);
+        }
+
+        return met;
+    }
+}
@@ -0,0 +1,290 @@
+package me.armar.plugins.autorank.playerchecker;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+
+import me.armar.plugins.autorank.permissions.AutorankPermission;
+import me.armar.plugins.autorank.util.AutorankTools;
+
+/**
+ * A snapshot holds the state of a player at one moment. Most Bukkit methods
+ * (permissions, locations, inventories) may only be used on the main thread.
+ * A snapshot is taken on the main thread and can then be read from any
+ * thread, so requirements can be checked on another thread.
+ * <p>
+ * Only the permissions and items that were asked for when the snapshot was
+ * taken are stored. See {@link PlayerChecker#getPermissionsOfInterest()} and
+ * {@link PlayerChecker#getItemsOfInterest()}.
+ *
+ */
+public class PlayerSnapshot {
+
+    private final Player player;
+
+    private final UUID uuid;
+    private final String name;
+
+    private final String worldName;
+    private final int blockX, blockY, blockZ;
+    private final String biome;
+
+    private final int gameMode;
+    private final int level;
+
+    private final boolean afk;
+    private final boolean excludedFromRanking;
+
+    private final Map<String, Boolean> permissions;
+
+    // Amount in the inventory of each item that was asked for
+    private final Map<NeededItem, Integer> items;
+
+    /**
+     * An item that a requirement looks for in the inventory of a player.
+     */
+    public static final class NeededItem {
+
+        private final ItemStack item;
+        private final String displayName;
+
+        /**
+         * @param item
+         *            Item to look for
+         * @param displayName
+         *            Display name the item should have, or null if it does
+         *            not matter
+         */
+        public NeededItem(final ItemStack item, final String displayName) {
+            this.item = item;
+            this.displayName = displayName;
+        }
+
+        public ItemStack getItem() {
+            return item;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (!(other instanceof NeededItem)) {
+                return false;
+            }
+
+            final NeededItem needed = (NeededItem) other;
+
+            return item.equals(needed.item) && Objects.equals(displayName, needed.displayName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(item, displayName);
+        }
+    }
+
+    /**
+     * Take a snapshot of a player. This may only be called on the main
+     * thread.
+     *
+     * @param player
+     *            Player to take a snapshot of
+     * @param permissions
+     *            Permissions that should be stored
+     * @param neededItems
+     *            Items of which the amount in the inventory should be stored
+     * @param afk
+     *            Whether the player is AFK
+     */
+    @SuppressWarnings("deprecation")
+    public PlayerSnapshot(final Player player, final Collection<String> permissions,
+            final Collection<NeededItem> neededItems, final boolean afk) {
+        this.player = player;
+        this.uuid = player.getUniqueId();
+        this.name = player.getName();
+
+        final Location location = player.getLocation();
+
+        this.worldName = location.getWorld().getName();
+        this.blockX = location.getBlockX();
+        this.blockY = location.getBlockY();
+        this.blockZ = location.getBlockZ();
+        this.biome = location.getBlock().getBiome().toString();
+
+        this.gameMode = player.getGameMode().getValue();
+        this.level = player.getLevel();
+
+        this.afk = afk;
+        this.excludedFromRanking = AutorankTools.isExcludedFromRanking(player);
+
+        final Map<String, Boolean> permissionValues = new HashMap<String, Boolean>();
+
+        for (final String permission : permissions) {
+            permissionValues.put(permission, player.hasPermission(permission));
+        }
+
+        permissionValues.put(AutorankPermission.EXCLUDE_FROM_TIME_UPDATES,
+                player.hasPermission(AutorankPermission.EXCLUDE_FROM_TIME_UPDATES));
+
+        this.permissions = Collections.unmodifiableMap(permissionValues);
+
+        final Map<NeededItem, Integer> amounts = new HashMap<NeededItem, Integer>();
+
+        if (!neededItems.isEmpty()) {
+            final ItemStack[] contents = player.getInventory().getContents();
+
+            for (final NeededItem needed : neededItems) {
+                amounts.put(needed, AutorankTools.countItems(contents, needed.getItem(), needed.getDisplayName()));
+            }
+        }
+
+        this.items = Collections.unmodifiableMap(amounts);
+    }
+
+    /**
+     * Check whether the inventory of the player contains at least the given
+     * amount of an item. See
+     * {@link org.bukkit.inventory.Inventory#containsAtLeast(ItemStack, int)}.
+     * Only items that were asked for when the snapshot was taken are known.
+     *
+     * @param item
+     *            Item to look for
+     * @param amount
+     *            Amount that is needed
+     * @return true if the player has enough of the item, false if not or if
+     *         the item is unknown.
+     */
+    public boolean containsAtLeast(final ItemStack item, final int amount) {
+        return containsAtLeast(item, amount, null);
+    }
+
+    /**
+     * Check whether the inventory of the player contains at least the given
+     * amount of an item with a display name. See
+     * {@link AutorankTools#containsAtLeast(Player, ItemStack, int, String)}.
+     * Only items that were asked for when the snapshot was taken are known.
+     *
+     * @param item
+     *            Item to look for
+     * @param amount
+     *            Amount that is needed
+     * @param displayName
+     *            Display name the item should have, or null if it does not
+     *            matter
+     * @return true if the player has enough of the item, false if not or if
+     *         the item is unknown.
+     */
+    public boolean containsAtLeast(final ItemStack item, final int amount, final String displayName) {
+        final Integer count = items.get(new NeededItem(item, displayName));
+
+        return count != null && count >= amount;
+    }
+
+    /**
+     * Get the biome the player was in.
+     *
+     * @return name of the biome
+     */
+    public String getBiome() {
+        return biome;
+    }
+
+    public int getBlockX() {
+        return blockX;
+    }
+
+    public int getBlockY() {
+        return blockY;
+    }
+
+    public int getBlockZ() {
+        return blockZ;
+    }
+
+    /**
+     * Get the value of the game mode of the player.
+     *
+     * @return game mode value
+     */
+    public int getGameMode() {
+        return gameMode;
+    }
+
+    /**
+     * Get the experience level of the player.
+     *
+     * @return experience level
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the player of this snapshot. Only use this for things that are safe
+     * to do on another thread, such as looking up statistics.
+     *
+     * @return the player
+     */
+    public Player getPlayer() {
+        return player;
+    }
+
+    public UUID getUniqueId() {
+        return uuid;
+    }
+
+    /**
+     * Get the name of the world the player was in.
+     *
+     * @return name of the world
+     */
+    public String getWorldName() {
+        return worldName;
+    }
+
+    /**
+     * Check whether the player had a permission. Only permissions that were
+     * asked for when the snapshot was taken are known.
+     *
+     * @param permission
+     *            Permission to check
+     * @return true if the player had the permission, false if not or if the
+     *         permission is unknown.
+     */
+    public boolean hasPermission(final String permission) {
+        final Boolean value = permissions.get(permission);
+
+        return value != null && value;
+    }
+
+    /**
+     * Check whether the player was AFK.
+     *
+     * @return true if the player was AFK.
+     */
+    public boolean isAFK() {
+        return afk;
+    }
+
+    /**
+     * See {@link AutorankTools#isExcludedFromRanking(Player)}.
+     *
+     * @return true if the player was excluded from ranking.
+     */
+    public boolean isExcludedFromRanking() {
+        return excludedFromRanking;
+    }
+}
@@ -29,15 +29,24 @@ public class PlaytimeManager {
     // What plugin should Autorank use to check time?
     private final AutorankDependency timePlugin;
 
+    private final SessionTracker sessionTracker;
+
+    private final UpdatePlaytime updateTask;
+
     public PlaytimeManager(final Autorank plugin) {
         this.plugin = plugin;
 
+        this.sessionTracker = new SessionTracker(plugin);
+
         INTERVAL_MINUTES = plugin.getConfigHandler().getIntervalTime();
 
         plugin.getLogger().info("Interval check every " + INTERVAL_MINUTES + " minutes.");
         
-        plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, new UpdatePlaytime(plugin.getFlatFileManager(), plugin),
-                PlaytimeManager.INTERVAL_MINUTES * AutorankTools.TICKS_PER_MINUTE, PlaytimeManager.INTERVAL_MINUTES * AutorankTools.TICKS_PER_MINUTE);
+        this.updateTask = new UpdatePlaytime(plugin.getFlatFileManager(), plugin);
+
+        // Runs every second, but every player is only updated once per interval.
+        plugin.getServer().getScheduler().runTaskTimer(plugin, updateTask,
+                AutorankTools.TICKS_PER_SECOND, AutorankTools.TICKS_PER_SECOND);
 
         timePlugin = plugin.getConfigHandler().useTimeOf();
     }
@@ -80,7 +89,7 @@ public class PlaytimeManager {
                     return playTime;
 
                 // Stats not found, using Autorank's system.
-                playTime = plugin.getFlatFileManager().getLocalTime(TimeType.TOTAL_TIME, uuid) * 60;
+                playTime = plugin.getLocalStorageProvider().getPlaytime(TimeType.TOTAL_TIME, uuid) * 60;
             }
         } else if (timePlugin.equals(AutorankDependency.ONTIME)) {
             playTime = ((OnTimeHandler) plugin.getDependencyManager().getDependencyHandler(Dependency.ON_TIME))
@@ -97,7 +106,7 @@ public class PlaytimeManager {
                 return playTime;
 
             // Use internal system of Autorank.
-            playTime = plugin.getFlatFileManager().getLocalTime(TimeType.TOTAL_TIME, uuid) * 60;
+            playTime = plugin.getLocalStorageProvider().getPlaytime(TimeType.TOTAL_TIME, uuid) * 60;
         }
 
         return playTime;
@@ -111,4 +120,20 @@ public class PlaytimeManager {
         return timePlugin;
     }
 
+    /**
+     * Get the session tracker that counts the time of online players.
+     * @return the session tracker
+     */
+    public SessionTracker getSessionTracker() {
+        return sessionTracker;
+    }
+
+    /**
+     * Get the task that updates the time of online players.
+     * @return the update task
+     */
+    public UpdatePlaytime getUpdateTask() {
+        return updateTask;
+    }
+
 }
@@ -0,0 +1,309 @@
+package me.armar.plugins.autorank.playtimes;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.bukkit.entity.Player;
+
+import me.armar.plugins.autorank.Autorank;
+import me.armar.plugins.autorank.data.flatfile.FlatFileManager.TimeType;
+import me.armar.plugins.autorank.permissions.AutorankPermission;
+import me.armar.plugins.autorank.playerchecker.PlayerSnapshot;
+import me.armar.plugins.autorank.util.AutorankExecutors.WorkType;
+import me.armar.plugins.autorank.util.AutorankTools;
+
+/**
+ * The session tracker keeps track of how long players have been online. A
+ * session starts when a player joins and ends when the player leaves. Time is
+ * only counted while a player is not AFK and not excluded from time updates.
+ * <p>
+ * Time is measured in milliseconds and only whole minutes are added to the
+ * stored play time. What remains of a minute is kept for the next time, so
+ * no time is lost when a player leaves in between two updates. When a player
+ * leaves, the session is removed and the rest of the minute is kept for a
+ * while, in case the player joins again soon. The time is
+ * added when a player leaves, when {@link #update(PlayerSnapshot)} is called (every
+ * {@link PlaytimeManager#INTERVAL_MINUTES} minutes) and when Autorank is
+ * disabled.
+ *
+ */
+public class SessionTracker {
+
+    private static final long MILLIS_PER_MINUTE = 60000L;
+
+    // Time the rest of a minute is kept after a player left
+    private static final long REMAINDER_TIMEOUT_MILLIS = 10 * MILLIS_PER_MINUTE;
+
+    private final Autorank plugin;
+
+    // Sessions of online players, by the UUID of the player.
+    private final Map<UUID, Session> sessions = new HashMap<UUID, Session>();
+
+    // Rest of a minute of players that left, the oldest first.
+    private final LinkedHashMap<UUID, Remainder> remainders = new LinkedHashMap<UUID, Remainder>();
+
+    public SessionTracker(final Autorank instance) {
+        this.plugin = instance;
+    }
+
+    /**
+     * Start the session of a player. This should be called when a player
+     * joins.
+     *
+     * @param player
+     *            Player that joined
+     */
+    public void startSession(final Player player) {
+        final boolean counting = shouldCount(player);
+
+        synchronized (this) {
+            final long now = System.currentTimeMillis();
+
+            removeOldRemainders(now);
+
+            Session session = sessions.get(player.getUniqueId());
+
+            if (session == null) {
+                session = new Session();
+
+                final Remainder remainder = remainders.remove(player.getUniqueId());
+
+                if (remainder != null) {
+                    session.playedMillis = remainder.millis;
+                }
+
+                sessions.put(player.getUniqueId(), session);
+            }
+
+            session.setCounting(counting, now);
+        }
+    }
+
+    /**
+     * End the session of a player and add the time that was played. This
+     * should be called when a player leaves.
+     *
+     * @param player
+     *            Player that left
+     */
+    public void endSession(final Player player) {
+        final int minutes;
+
+        synchronized (this) {
+            final Session session = sessions.remove(player.getUniqueId());
+
+            if (session == null) {
+                return;
+            }
+
+            final long now = System.currentTimeMillis();
+
+            session.setCounting(false, now);
+
+            minutes = session.takeMinutes();
+
+            // The part of a minute that was not added is kept for the next
+            // session.
+            if (session.playedMillis > 0) {
+                remainders.put(player.getUniqueId(), new Remainder(session.playedMillis, now));
+            }
+
+            removeOldRemainders(now);
+        }
+
+        addPlayedTime(player.getName(), minutes, plugin.isEnabled());
+    }
+
+    /**
+     * Stop or start counting the time of a player when the player becomes AFK
+     * or is no longer AFK.
+     *
+     * @param player
+     *            Player of which the AFK state changed
+     * @param afk
+     *            Whether the player is AFK from now on
+     */
+    public void setAFK(final Player player, final boolean afk) {
+        final boolean counting = !afk && !isExcluded(player);
+
+        synchronized (this) {
+            final Session session = sessions.get(player.getUniqueId());
+
+            if (session != null) {
+                session.setCounting(counting, System.currentTimeMillis());
+            }
+        }
+    }
+
+    /**
+     * Check again whether the time of a player should be counted and add the
+     * time the player has played since the last update. This can be called on
+     * any thread.
+     *
+     * @param snapshot
+     *            Snapshot of the player to update
+     * @return true if the time of the player is counted, false if the player
+     *         is AFK or excluded.
+     */
+    public boolean update(final PlayerSnapshot snapshot) {
+        final boolean counting = !snapshot.isExcludedFromRanking()
+                && !snapshot.hasPermission(AutorankPermission.EXCLUDE_FROM_TIME_UPDATES) && !snapshot.isAFK();
+        final int minutes;
+
+        synchronized (this) {
+            final Session session = sessions.get(snapshot.getUniqueId());
+
+            // Player left while we were checking.
+            if (session == null) {
+                return false;
+            }
+
+            // Time until now is counted (or not) by the previous state.
+            session.setCounting(counting, System.currentTimeMillis());
+
+            minutes = session.takeMinutes();
+        }
+
+        // Runs on another thread already.
+        addPlayedTime(snapshot.getName(), minutes, false);
+
+        return counting;
+    }
+
+    /**
+     * Add the time of all online players. This should be called when Autorank
+     * is disabled.
+     */
+    public void endAllSessions() {
+        for (final Player player : plugin.getServer().getOnlinePlayers()) {
+            endSession(player);
+        }
+    }
+
+    /**
+     * Check whether the time of a player should be counted.
+     *
+     * @param player
+     *            Player to check
+     * @return true if the player is not excluded and not AFK.
+     */
+    private boolean shouldCount(final Player player) {
+        return !isExcluded(player) && !plugin.getDependencyManager().isAFK(player);
+    }
+
+    private static boolean isExcluded(final Player player) {
+        return AutorankTools.isExcludedFromRanking(player)
+                || player.hasPermission(AutorankPermission.EXCLUDE_FROM_TIME_UPDATES);
+    }
+
+    /**
+     * Forget the rest of a minute of players that left too long ago.
+     */
+    private void removeOldRemainders(final long now) {
+        final Iterator<Remainder> iterator = remainders.values().iterator();
+
+        while (iterator.hasNext()) {
+            if (now - iterator.next().endedAt < REMAINDER_TIMEOUT_MILLIS) {
+                break;
+            }
+
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Add played time to the local and global time of a player.
+     *
+     * @param playerName
+     *            Name of the player that played
+     * @param minutes
+     *            Minutes that were played
+     * @param async
+     *            Whether the global time should be changed on another thread
+     */
+    private void addPlayedTime(final String playerName, final int minutes, final boolean async) {
+        if (minutes <= 0) {
+            return;
+        }
+
+        final UUID uuid = plugin.getUUIDStorage().getStoredUUID(playerName);
+
+        if (uuid == null) {
+            return;
+        }
+
+        // Modify local time
+        plugin.getLocalStorageProvider().addPlayedTime(uuid, minutes);
+
+        // Modify global time
+        if (!plugin.getMySQLManager().isMySQLEnabled()) {
+            return;
+        }
+
+        if (!async) {
+            plugin.getGlobalStorageProvider().addPlaytime(TimeType.TOTAL_TIME, uuid, minutes);
+            return;
+        }
+
+        plugin.getExecutors().execute(WorkType.DATABASE, new Runnable() {
+            @Override
+            public void run() {
+                plugin.getGlobalStorageProvider().addPlaytime(TimeType.TOTAL_TIME, uuid, minutes);
+            }
+        });
+    }
+
+    /**
+     * Time a player played that was not added yet.
+     */
+    private static class Session {
+
+        // When we started counting, or -1 if we are not counting.
+        private long countingSince = -1;
+
+        // Time that was counted but not added yet.
+        private long playedMillis = 0;
+
+        /**
+         * Stop or start counting. Time until now is counted if we were
+         * counting.
+         */
+        void setCounting(final boolean counting, final long now) {
+            if (countingSince >= 0) {
+                playedMillis += Math.max(0, now - countingSince);
+            }
+
+            countingSince = counting ? now : -1;
+        }
+
+        /**
+         * Take the whole minutes of the counted time. The rest is kept.
+         */
+        int takeMinutes() {
+            final int minutes = (int) (playedMillis / MILLIS_PER_MINUTE);
+
+            playedMillis -= minutes * MILLIS_PER_MINUTE;
+
+            return minutes;
+        }
+    }
+
+    /**
+     * The rest of a minute of a player that left.
+     */
+    private static class Remainder {
+
+        private final long millis;
+
+        // When the player left
+        private final long endedAt;
+
+        Remainder(final long millis, final long endedAt) {
+            this.millis = millis;
+            this.endedAt = endedAt;
+        }
+    }
+}
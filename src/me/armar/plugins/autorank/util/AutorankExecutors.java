@@ -0,0 +1,484 @@
+package me.armar.plugins.autorank.util;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+
+import me.armar.plugins.autorank.Autorank;
+
+/**
+ * The thread pools Autorank uses for work that should not be done on the main
+ * thread. There is a separate pool for every type of work, so slow database
+ * queries do not hold up saving files or checking players.
+ * <p>
+ * Every pool has a fixed number of threads and a bounded queue. When a queue
+ * is full, a task that is added from a thread of the same pool is run right
+ * away on that thread, as waiting for room could wait forever. A task that is
+ * added from another thread waits a short while for room and is then run on
+ * the calling thread. A task that is added from the main thread is never
+ * blocked on; it is put in a bounded overflow queue of the pool instead, which
+ * the threads of the pool move back into the queue when there is room. When
+ * the overflow queue is full as well, the task is dropped. The number of times
+ * a queue was full and the number of dropped tasks are counted, see
+ * {@link #getStatus()}.
+ * <p>
+ * Blocking tasks (see {@link WorkType#BLOCKING}) can run on virtual threads
+ * instead, when this is turned on in the Settings.yml and Java supports it.
+ *
+ */
+public class AutorankExecutors {
+
+    /**
+     * The type of work a task does.
+     */
+    public enum WorkType {
+        /**
+         * Reading and writing files.
+         */
+        IO(2, 500),
+
+        /**
+         * Queries to the MySQL or local database.
+         */
+        DATABASE(4, 1000),
+
+        /**
+         * Checking players and building leaderboards.
+         */
+        CPU(Math.max(2, Runtime.getRuntime().availableProcessors() - 1), 1000),
+
+        /**
+         * Database queries and web lookups that another thread waits for.
+         * These tasks should not wait for other blocking tasks. They run on
+         * virtual threads if these are turned on and available.
+         */
+        BLOCKING(8, 1000);
+
+        private final int threads, queueSize;
+
+        WorkType(final int threads, final int queueSize) {
+            this.threads = threads;
+            this.queueSize = queueSize;
+        }
+    }
+
+    // Time to wait for all pools to finish their tasks when Autorank is
+    // disabled
+    private static final int SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+    // Time a task waits for room in a full queue before it is run on the
+    // thread that added it
+    private static final int QUEUE_WAIT_MILLIS = 500;
+
+    private final Autorank plugin;
+
+    private final Map<WorkType, ThreadPoolExecutor> pools = new EnumMap<WorkType, ThreadPoolExecutor>(
+            WorkType.class);
+
+    private final Map<WorkType, AtomicLong> rejections = new EnumMap<WorkType, AtomicLong>(WorkType.class);
+
+    // Tasks of the main thread that did not fit in the queue of a pool
+    private final Map<WorkType, Overflow> overflows = new EnumMap<WorkType, Overflow>(WorkType.class);
+
+    // Runs blocking tasks on virtual threads, or null if they are not used
+    private final ExecutorService virtualThreads;
+
+    private final Executor mainThread = new Executor() {
+
+        @Override
+        public void execute(final Runnable task) {
+            if (plugin.getServer().isPrimaryThread()) {
+                task.run();
+            } else {
+                plugin.getServer().getScheduler().runTask(plugin, task);
+            }
+        }
+    };
+
+    public AutorankExecutors(final Autorank plugin) {
+        this.plugin = plugin;
+
+        if (plugin.getConfigHandler().useVirtualThreads()) {
+            virtualThreads = createVirtualThreadExecutor();
+
+            if (virtualThreads == null) {
+                plugin.getLogger().warning("Virtual threads are not available on Java "
+                        + System.getProperty("java.version") + ", normal threads will be used instead.");
+            } else {
+                plugin.getLogger().info("Using virtual threads for blocking tasks.");
+            }
+        } else {
+            virtualThreads = null;
+        }
+
+        for (final WorkType type : WorkType.values()) {
+            final Overflow overflow = new Overflow(type.queueSize);
+
+            final ThreadPoolExecutor pool = new ThreadPoolExecutor(type.threads, type.threads, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<Runnable>(type.queueSize), new WorkerThreadFactory(type),
+                    new QueueFullHandler(type)) {
+
+                @Override
+                protected void afterExecute(final Runnable task, final Throwable error) {
+                    // There may be room in the queue now
+                    overflow.moveTo(this);
+                }
+            };
+
+            // Do not keep threads around when there is nothing to do
+            pool.allowCoreThreadTimeOut(true);
+
+            pools.put(type, pool);
+            rejections.put(type, new AtomicLong());
+            overflows.put(type, overflow);
+        }
+    }
+
+    /**
+     * Run a task on another thread.
+     *
+     * @param type
+     *            Type of work the task does
+     * @param task
+     *            Task to run
+     */
+    public void execute(final WorkType type, final Runnable task) {
+        if (type == WorkType.BLOCKING && virtualThreads != null) {
+            try {
+                virtualThreads.execute(task);
+                return;
+            } catch (final RejectedExecutionException e) {
+                // Autorank is being disabled, so just do it now.
+                task.run();
+                return;
+            }
+        }
+
+        pools.get(type).execute(task);
+    }
+
+    /**
+     * Run a task on another thread.
+     *
+     * @param type
+     *            Type of work the task does
+     * @param callable
+     *            Task to run
+     * @return the result of the task when it is done. Callbacks can be added
+     *         to it, so there is no need to wait for it.
+     */
+    public <T> ListenableFuture<T> submit(final WorkType type, final Callable<T> callable) {
+        final ListenableFutureTask<T> task = ListenableFutureTask.create(callable);
+
+        execute(type, task);
+
+        return task;
+    }
+
+    /**
+     * Get an executor that runs tasks on the pool of a type of work, see
+     * {@link #execute(WorkType, Runnable)}.
+     *
+     * @param type
+     *            Type of work the tasks do
+     * @return an executor for the pool.
+     */
+    public Executor getExecutor(final WorkType type) {
+        return new Executor() {
+
+            @Override
+            public void execute(final Runnable task) {
+                AutorankExecutors.this.execute(type, task);
+            }
+        };
+    }
+
+    /**
+     * Get an executor that runs tasks on the main thread. Use this for
+     * callbacks of {@link #submit(WorkType, Callable)} that use Bukkit. A task
+     * that is added from the main thread is run right away.
+     *
+     * @return an executor for the main thread.
+     */
+    public Executor getMainThread() {
+        return mainThread;
+    }
+
+    /**
+     * Get the status of every pool: the number of running and queued tasks,
+     * the number of finished tasks, how often the queue was full and how many
+     * tasks were dropped.
+     *
+     * @return a line for every pool.
+     */
+    public List<String> getStatus() {
+        final List<String> status = new ArrayList<String>();
+
+        for (final WorkType type : WorkType.values()) {
+            final ThreadPoolExecutor pool = pools.get(type);
+
+            if (type == WorkType.BLOCKING && virtualThreads != null) {
+                status.add(type + ": virtual threads");
+                continue;
+            }
+
+            status.add(type + ": " + pool.getActiveCount() + "/" + type.threads + " active, "
+                    + pool.getQueue().size() + " queued, " + pool.getCompletedTaskCount() + " completed, "
+                    + rejections.get(type).get() + " times full, " + overflows.get(type).size.get()
+                    + " overflowing, " + overflows.get(type).dropped.get() + " dropped");
+        }
+
+        return status;
+    }
+
+    /**
+     * Stop all pools. Players are checked first, so the checks can still write
+     * to the database. The database is stopped before the files, so queries
+     * can still lead to files being written. Tasks that are added after a
+     * pool has stopped are run on the calling thread. All pools together get
+     * {@value #SHUTDOWN_TIMEOUT_SECONDS} seconds to finish.
+     */
+    public void shutdown() {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(SHUTDOWN_TIMEOUT_SECONDS);
+
+        for (final WorkType type : new WorkType[] { WorkType.CPU, WorkType.DATABASE, WorkType.BLOCKING,
+                WorkType.IO }) {
+            final ExecutorService pool = (type == WorkType.BLOCKING && virtualThreads != null) ? virtualThreads
+                    : pools.get(type);
+
+            pool.shutdown();
+
+            try {
+                if (!pool.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                    plugin.getLogger().warning("Could not finish all " + type + " tasks in time, "
+                            + (pool.shutdownNow().size() + overflows.get(type).takeAll().size())
+                            + " tasks were cancelled!");
+                    continue;
+                }
+
+                // Tasks that were still waiting for room in the queue
+                for (final Runnable task : overflows.get(type).takeAll()) {
+                    task.run();
+                }
+            } catch (final InterruptedException e) {
+                pool.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Create an executor that starts a virtual thread for every task. Virtual
+     * threads are only available on Java 21 and newer, so the method is looked
+     * up when Autorank is started.
+     *
+     * @return the executor, or null if virtual threads are not available.
+     */
+    private static ExecutorService createVirtualThreadExecutor() {
+        try {
+            final Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+
+            return (ExecutorService) method.invoke(null);
+        } catch (final Exception e) {
+            // Older version of Java, or virtual threads are a preview feature
+            return null;
+        }
+    }
+
+    /**
+     * Handles tasks that do not fit in the queue of a pool.
+     */
+    private class QueueFullHandler implements RejectedExecutionHandler {
+
+        private final WorkType type;
+
+        QueueFullHandler(final WorkType type) {
+            this.type = type;
+        }
+
+        @Override
+        public void rejectedExecution(final Runnable task, final ThreadPoolExecutor pool) {
+            // Autorank is being disabled, so just do it now.
+            if (pool.isShutdown()) {
+                task.run();
+                return;
+            }
+
+            rejections.get(type).incrementAndGet();
+
+            // Never let the main thread wait.
+            if (plugin.getServer().isPrimaryThread()) {
+                final Overflow overflow = overflows.get(type);
+
+                if (!overflow.add(task)) {
+                    plugin.debugMessage("The " + type + " queue is full, a task was dropped");
+                    overflow.dropped.incrementAndGet();
+
+                    // Let whoever waits for the task know it did not run
+                    if (task instanceof Future) {
+                        ((Future<?>) task).cancel(false);
+                    }
+
+                    return;
+                }
+
+                // The pool may have emptied its queue in the meantime
+                overflow.moveTo(pool);
+                return;
+            }
+
+            // Waiting for room would wait for this thread itself.
+            if (isWorkerOf(type)) {
+                task.run();
+                return;
+            }
+
+            // Wait a while for room in the queue, otherwise do it now.
+            try {
+                if (!pool.getQueue().offer(task, QUEUE_WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+                    task.run();
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+
+                // Let whoever waits for the task know it did not run
+                if (task instanceof Future) {
+                    ((Future<?>) task).cancel(false);
+                } else {
+                    task.run();
+                }
+            }
+        }
+
+        private boolean isWorkerOf(final WorkType type) {
+            final Thread thread = Thread.currentThread();
+
+            return thread instanceof WorkerThread && ((WorkerThread) thread).type == type;
+        }
+    }
+
+    /**
+     * Tasks that did not fit in the queue of a pool and wait for room. At most
+     * a fixed number of tasks is kept.
+     */
+    private static class Overflow {
+
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+
+        private final int capacity;
+
+        private final AtomicInteger size = new AtomicInteger();
+
+        private final AtomicLong dropped = new AtomicLong();
+
+        Overflow(final int capacity) {
+            this.capacity = capacity;
+        }
+
+        /**
+         * Take all tasks that are still waiting.
+         */
+        synchronized List<Runnable> takeAll() {
+            final List<Runnable> taken = new ArrayList<Runnable>();
+            Runnable task;
+
+            while ((task = tasks.poll()) != null) {
+                taken.add(task);
+                size.decrementAndGet();
+            }
+
+            return taken;
+        }
+
+        /**
+         * Add a task if there is room for it.
+         *
+         * @return true if the task was added.
+         */
+        boolean add(final Runnable task) {
+            if (size.incrementAndGet() > capacity) {
+                size.decrementAndGet();
+                return false;
+            }
+
+            tasks.add(task);
+            return true;
+        }
+
+        /**
+         * Move tasks to the queue of a pool for as long as there is room.
+         */
+        synchronized void moveTo(final ThreadPoolExecutor pool) {
+            Runnable task;
+
+            while ((task = tasks.peek()) != null) {
+                if (!pool.getQueue().offer(task)) {
+                    return;
+                }
+
+                tasks.poll();
+                size.decrementAndGet();
+
+                // Tasks in the queue are only run if the pool has a thread
+                pool.prestartCoreThread();
+            }
+        }
+    }
+
+    /**
+     * Creates named threads, so they can be recognised in thread dumps.
+     */
+    private static class WorkerThreadFactory implements ThreadFactory {
+
+        private final WorkType type;
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        WorkerThreadFactory(final WorkType type) {
+            this.type = type;
+        }
+
+        @Override
+        public Thread newThread(final Runnable task) {
+            final Thread thread = new WorkerThread(task, type,
+                    "Autorank-" + type.toString().toLowerCase() + "-" + count.incrementAndGet());
+
+            thread.setDaemon(true);
+
+            return thread;
+        }
+    }
+
+    /**
+     * A thread of a pool, which knows the type of work of its pool.
+     */
+    private static class WorkerThread extends Thread {
+
+        private final WorkType type;
+
+        WorkerThread(final Runnable task, final WorkType type, final String name) {
+            super(task, name);
+            this.type = type;
+        }
+    }
+}
@@ -35,20 +35,45 @@ public class AutorankTools {
     private static List<String> resTypes = new ArrayList<String>();
 
     public static boolean containsAtLeast(final Player player, final ItemStack item, final int amount,
-            String displayName) {
+            final String displayName) {
         // Check if player has at least the x of an item WITH proper displayname
+        return countItems(player.getInventory().getContents(), item, displayName) >= amount;
+    }
 
+    /**
+     * Count how many of an item are in the given slots.
+     * 
+     * @param contents
+     *            Contents of an inventory
+     * @param item
+     *            Item to look for
+     * @param displayName
+     *            Display name the item should have, or null if only the item
+     *            itself should match (see {@link ItemStack#isSimilar(ItemStack)})
+     * @return the total amount of the item.
+     */
+    public static int countItems(final ItemStack[] contents, final ItemStack item, String displayName) {
         int count = 0;
 
         // Otherwise we'll not find any colour codes
-        displayName = displayName.replace("&", "§");
+        if (displayName != null) {
+            displayName = displayName.replace("&", "§");
+        }
 
         // Check every slot
-        for (final ItemStack itemFound : player.getInventory().getContents()) {
+        for (final ItemStack itemFound : contents) {
 
             if (itemFound == null)
                 continue;
 
+            if (displayName == null) {
+                if (itemFound.isSimilar(item)) {
+                    count += itemFound.getAmount();
+                }
+
+                continue;
+            }
+
             // Not the same item
             if (!itemFound.getType().equals(item.getType()))
                 continue;
@@ -62,7 +87,7 @@ public class AutorankTools {
             }
         }
 
-        return count >= amount;
+        return count;
     }
 
     public static String createStringFromList(final Collection<?> c) {
@@ -0,0 +1,144 @@
+package me.armar.plugins.autorank.util;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import me.armar.plugins.autorank.Autorank;
+
+/**
+ * Runs tasks on the main thread, without spending too much time in a single
+ * tick. Tasks can be added from any thread. Every tick, queued tasks are run
+ * until the time budget of that tick is used up; the rest is run in the next
+ * ticks. At least one task is run every tick.
+ * <p>
+ * Tasks with a higher priority are run first, so a player is ranked up before
+ * fireworks are shown and messages are sent.
+ *
+ */
+public class MainThreadExecutor implements Runnable {
+
+    /**
+     * The priority of a task. Tasks with priority {@link #HIGH} are run first.
+     */
+    public enum Priority {
+        HIGH, NORMAL, LOW
+    }
+
+    private final Autorank plugin;
+
+    private final Map<Priority, Queue<Runnable>> queues = new EnumMap<Priority, Queue<Runnable>>(Priority.class);
+
+    private final AtomicInteger queueSize = new AtomicInteger();
+
+    // Largest number of queued tasks since Autorank was enabled
+    private volatile int peakQueueSize = 0;
+
+    public MainThreadExecutor(final Autorank plugin) {
+        this.plugin = plugin;
+
+        for (final Priority priority : Priority.values()) {
+            queues.put(priority, new ConcurrentLinkedQueue<Runnable>());
+        }
+    }
+
+    /**
+     * Start running queued tasks every tick.
+     */
+    public void start() {
+        plugin.getServer().getScheduler().runTaskTimer(plugin, this, 1, 1);
+    }
+
+    /**
+     * Run a task on the main thread.
+     *
+     * @param priority
+     *            Priority of the task
+     * @param task
+     *            Task to run
+     */
+    public void execute(final Priority priority, final Runnable task) {
+        queues.get(priority).add(task);
+
+        final int size = queueSize.incrementAndGet();
+
+        if (size > peakQueueSize) {
+            peakQueueSize = size;
+        }
+    }
+
+    /**
+     * Get the number of tasks that are waiting to be run.
+     *
+     * @return number of queued tasks.
+     */
+    public int getQueueSize() {
+        return queueSize.get();
+    }
+
+    /**
+     * Get the largest number of tasks that were waiting at the same time.
+     *
+     * @return peak number of queued tasks.
+     */
+    public int getPeakQueueSize() {
+        return peakQueueSize;
+    }
+
+    @Override
+    public void run() {
+        final long budget = plugin.getConfigHandler().getMainThreadTimeBudget() * 1000000L;
+        final long start = System.nanoTime();
+
+        Runnable task;
+
+        while ((task = poll()) != null) {
+            runTask(task);
+
+            if (System.nanoTime() - start >= budget) {
+                break;
+            }
+        }
+
+        if (queueSize.get() > 0) {
+            plugin.debugMessage("Main thread budget used up, " + queueSize.get() + " tasks left for the next tick");
+        }
+    }
+
+    /**
+     * Run all queued tasks now, without a time budget. This should be called
+     * when Autorank is disabled.
+     */
+    public void runAll() {
+        Runnable task;
+
+        while ((task = poll()) != null) {
+            runTask(task);
+        }
+    }
+
+    private Runnable poll() {
+        for (final Priority priority : Priority.values()) {
+            final Runnable task = queues.get(priority).poll();
+
+            if (task != null) {
+                queueSize.decrementAndGet();
+                return task;
+            }
+        }
+
+        return null;
+    }
+
+    private void runTask(final Runnable task) {
+        try {
+            task.run();
+        } catch (final Exception e) {
+            // One broken task should not stop the others
+            plugin.getLogger().warning("A task of Autorank could not be run: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+}
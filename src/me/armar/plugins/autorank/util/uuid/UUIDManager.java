@@ -7,10 +7,14 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import org.bukkit.Bukkit;
 
 import me.armar.plugins.autorank.Autorank;
+import me.armar.plugins.autorank.util.AutorankExecutors.WorkType;
 
 /**
  * This class allows developers to easily get UUIDs from names <br>
@@ -26,10 +30,6 @@ import me.armar.plugins.autorank.Autorank;
  */
 public class UUIDManager {
 
-    private static Map<UUID, String> foundPlayers = new HashMap<UUID, String>();
-
-    private static Map<String, UUID> foundUUIDs = new HashMap<String, UUID>();
-
     private static Autorank plugin;
 
     // Whether to use cache or not
@@ -92,9 +92,6 @@ public class UUIDManager {
      * @return A map containing every player name per UUID.
      */
     public static Map<UUID, String> getPlayers(final List<UUID> uuids) {
-        // Clear names first
-        foundPlayers.clear();
-
         // A new map to store cached values
         final HashMap<UUID, String> players = new HashMap<UUID, String>();
 
@@ -149,39 +146,7 @@ public class UUIDManager {
 
         // Now we need to lookup the other players
 
-        final Thread fetcherThread = new Thread(new Runnable() {
-
-            @Override
-            public void run() {
-                final NameFetcher fetcher = new NameFetcher(uuids);
-
-                Map<UUID, String> response = null;
-
-                try {
-                    response = fetcher.call();
-                } catch (final Exception e) {
-                    if (e instanceof IOException) {
-                        Bukkit.getLogger().warning("Tried to contact Mojang page for UUID lookup but failed.");
-                        return;
-                    }
-                    e.printStackTrace();
-                }
-
-                if (response != null) {
-                    foundPlayers = response;
-                }
-            }
-        });
-
-        fetcherThread.start();
-
-        if (fetcherThread.isAlive()) {
-            try {
-                fetcherThread.join();
-            } catch (final InterruptedException e) {
-                e.printStackTrace();
-            }
-        }
+        final Map<UUID, String> foundPlayers = lookup(new NameFetcher(uuids));
 
         // Update cached entries
         for (final Entry<UUID, String> entry : foundPlayers.entrySet()) {
@@ -200,7 +165,7 @@ public class UUIDManager {
             }
         }
 
-        // Thread stopped now, collect results
+        // Lookup is done now, collect results
         return players;
     }
 
@@ -250,9 +215,6 @@ public class UUIDManager {
      */
     public static Map<String, UUID> getUUIDs(final List<String> names) {
 
-        // Clear maps first
-        foundUUIDs.clear();
-
         // A new map to store cached values
         final HashMap<String, UUID> uuids = new HashMap<String, UUID>();
 
@@ -297,39 +259,7 @@ public class UUIDManager {
 
         // Now we need to lookup the other players
 
-        final Thread fetcherThread = new Thread(new Runnable() {
-
-            @Override
-            public void run() {
-                final UUIDFetcher fetcher = new UUIDFetcher(names);
-
-                Map<String, UUID> response = null;
-
-                try {
-                    response = fetcher.call();
-                } catch (final Exception e) {
-                    if (e instanceof IOException) {
-                        Bukkit.getLogger().warning("Tried to contact Mojang page for UUID lookup but failed.");
-                        return;
-                    }
-                    e.printStackTrace();
-                }
-
-                if (response != null) {
-                    foundUUIDs = response;
-                }
-            }
-        });
-
-        fetcherThread.start();
-
-        if (fetcherThread.isAlive()) {
-            try {
-                fetcherThread.join();
-            } catch (final InterruptedException e) {
-                e.printStackTrace();
-            }
-        }
+        final Map<String, UUID> foundUUIDs = lookup(new UUIDFetcher(names));
 
         // Update cached entries
         for (final Entry<String, UUID> entry : foundUUIDs.entrySet()) {
@@ -348,9 +278,38 @@ public class UUIDManager {
             }
         }
 
-        // Thread stopped now, collect results
+        // Lookup is done now, collect results
         return uuids;
     }
-    
- 
+
+    /**
+     * Do a lookup on the Mojang API and wait for it. The lookup is done on a
+     * thread for blocking work, see {@link WorkType#BLOCKING}.
+     * 
+     * @param fetcher
+     *            Fetcher that does the lookup
+     * @return the response of the Mojang API, or an empty map if the lookup
+     *         failed.
+     */
+    private static <K, V> Map<K, V> lookup(final Callable<Map<K, V>> fetcher) {
+        final Future<Map<K, V>> future = plugin.getExecutors().submit(WorkType.BLOCKING, fetcher);
+
+        try {
+            final Map<K, V> response = future.get();
+
+            if (response != null) {
+                return response;
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                Bukkit.getLogger().warning("Tried to contact Mojang page for UUID lookup but failed.");
+            } else {
+                e.printStackTrace();
+            }
+        }
+
+        return new HashMap<K, V>();
+    }
 }
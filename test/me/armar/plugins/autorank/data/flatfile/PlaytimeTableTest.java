@@ -0,0 +1,166 @@
+package me.armar.plugins.autorank.data.flatfile;
+
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test for {@link PlaytimeTable}.
+ */
+public class PlaytimeTableTest {
+
+    @Test
+    public void shouldReturnZeroForUnknownPlayer() {
+        // given
+        PlaytimeTable table = new PlaytimeTable();
+
+        // when / then
+        assertThat(table.getTotalTime(UUID.randomUUID()), equalTo(0));
+        assertThat(table.getTime(UUID.randomUUID(), 0, 100), equalTo(0));
+        assertThat(table.size(), equalTo(0));
+    }
+
+    @Test
+    public void shouldKeepTotalTimeAndHistorySeparate() {
+        // given
+        PlaytimeTable table = new PlaytimeTable();
+        UUID uuid = UUID.randomUUID();
+
+        // when
+        table.setTotalTime(uuid, 120);
+        table.addTime(uuid, 1000, 5);
+        table.addTime(uuid, 1000, 5);
+
+        // then
+        assertThat(table.getTotalTime(uuid), equalTo(120));
+        assertThat(table.getTime(uuid, 1000, 1000), equalTo(10));
+        assertThat(table.getTime(uuid, 1001, 1010), equalTo(0));
+        assertThat(table.size(), equalTo(1));
+    }
+
+    @Test
+    public void shouldFindPlayersAfterGrowingAndRemoving() {
+        // given
+        PlaytimeTable table = new PlaytimeTable(4);
+        UUID[] uuids = new UUID[5000];
+
+        for (int i = 0; i < uuids.length; i++) {
+            // Keys that only differ slightly to force collisions.
+            uuids[i] = new UUID(i % 7, i);
+            table.setTotalTime(uuids[i], i);
+        }
+
+        // when
+        for (int i = 0; i < uuids.length; i += 2) {
+            table.remove(uuids[i]);
+        }
+
+        // then
+        assertThat(table.size(), equalTo(uuids.length / 2));
+
+        for (int i = 0; i < uuids.length; i++) {
+            int expected = (i % 2 == 0) ? 0 : i;
+            assertThat(table.getTotalTime(uuids[i]), equalTo(expected));
+        }
+    }
+
+    @Test
+    public void shouldOnlyListPlayersThatPlayedInWindow() {
+        // given
+        PlaytimeTable table = new PlaytimeTable();
+        UUID played = UUID.randomUUID();
+        UUID notPlayed = UUID.randomUUID();
+
+        table.setTotalTime(played, 10);
+        table.addTime(played, 500, 10);
+        table.setTotalTime(notPlayed, 10);
+        table.addTime(notPlayed, 490, 10);
+
+        // when
+        table.clearTotalTimes();
+
+        // then
+        assertThat(table.getUUIDs(), containsInAnyOrder(played, notPlayed));
+        assertThat(table.getUUIDs(494, 500), containsInAnyOrder(played));
+        assertThat(table.getTotalTime(played), equalTo(0));
+    }
+
+    @Test
+    public void shouldSumDaysInWindow() {
+        // given
+        PlaytimeTable table = new PlaytimeTable();
+        UUID uuid = UUID.randomUUID();
+
+        for (int day = 100; day < 110; day++) {
+            table.addTime(uuid, day, day - 99);
+        }
+
+        // when / then
+        assertThat(table.getTime(uuid, 109, 109), equalTo(10));
+        assertThat(table.getTime(uuid, 103, 109), equalTo(4 + 5 + 6 + 7 + 8 + 9 + 10));
+        assertThat(table.getTime(uuid, 0, 200), equalTo(55));
+    }
+
+    @Test
+    public void shouldForgetDaysOutsideOfHistory() {
+        // given
+        PlaytimeTable table = new PlaytimeTable();
+        UUID uuid = UUID.randomUUID();
+
+        table.addTime(uuid, 100, 30);
+        table.addTime(uuid, 150, 20);
+
+        // when
+        table.addTime(uuid, 100 + PlaytimeTable.HISTORY_DAYS, 5);
+
+        // then
+        assertThat(table.getTime(uuid, 0, 1000), equalTo(25));
+        assertThat(table.getTime(uuid, 100, 100), equalTo(0));
+        assertThat(table.addTime(uuid, 100, 10), equalTo(0));
+    }
+
+    @Test
+    public void shouldOnlyRemovePlayersNotSeenSince() {
+        // given
+        PlaytimeTable table = new PlaytimeTable();
+        UUID old = UUID.randomUUID();
+        UUID older = UUID.randomUUID();
+        UUID recent = UUID.randomUUID();
+        UUID unknown = UUID.randomUUID();
+
+        table.setLastSeen(recent, 500);
+        table.setLastSeen(old, 100);
+        table.setLastSeen(older, 50);
+        table.loadTotalTime(unknown.getMostSignificantBits(), unknown.getLeastSignificantBits(), 10);
+
+        // when
+        int removed = table.removeNotSeenSince(200, 1);
+        removed += table.removeNotSeenSince(200, 10);
+
+        // then
+        assertThat(removed, equalTo(2));
+        assertThat(table.getUUIDs(), containsInAnyOrder(recent, unknown));
+        assertThat(table.getLastSeen(recent), equalTo(500));
+    }
+
+    @Test
+    public void shouldCountAddedPlayerAsSeenNow() {
+        // given
+        PlaytimeTable table = new PlaytimeTable();
+        UUID uuid = UUID.randomUUID();
+        int minute = (int) (System.currentTimeMillis() / 60000L);
+
+        // when
+        table.setTotalTime(uuid, 10);
+
+        // then
+        assertThat(table.getLastSeen(uuid), greaterThanOrEqualTo(minute));
+        assertThat(table.removeNotSeenSince(minute, 10), equalTo(0));
+        assertThat(table.contains(uuid), equalTo(true));
+    }
+}
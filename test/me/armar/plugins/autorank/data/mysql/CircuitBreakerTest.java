@@ -0,0 +1,77 @@
+package me.armar.plugins.autorank.data.mysql;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test for {@link CircuitBreaker}.
+ */
+public class CircuitBreakerTest {
+
+    @Test
+    public void shouldOpenAfterFailuresInARow() {
+        // given
+        CircuitBreaker breaker = new CircuitBreaker(3, 60000, 600000);
+
+        // when
+        breaker.recordFailure("first");
+        breaker.recordFailure("second");
+        boolean opened = breaker.recordFailure("third");
+
+        // then
+        assertThat(opened, equalTo(true));
+        assertThat(breaker.getState(), equalTo(CircuitBreaker.State.OPEN));
+        assertThat(breaker.allowRequest(), equalTo(false));
+    }
+
+    @Test
+    public void shouldStayClosedWhenFailuresAreNotInARow() {
+        // given
+        CircuitBreaker breaker = new CircuitBreaker(2, 60000, 600000);
+
+        // when
+        breaker.recordFailure("first");
+        breaker.recordSuccess();
+        breaker.recordFailure("second");
+
+        // then
+        assertThat(breaker.getState(), equalTo(CircuitBreaker.State.CLOSED));
+        assertThat(breaker.allowRequest(), equalTo(true));
+    }
+
+    @Test
+    public void shouldCloseWhenRetryWorks() {
+        // given
+        CircuitBreaker breaker = new CircuitBreaker(1, 0, 0);
+        breaker.recordFailure("down");
+
+        // when
+        boolean allowed = breaker.allowRequest();
+        boolean restored = breaker.recordSuccess();
+
+        // then
+        assertThat(allowed, equalTo(true));
+        assertThat(restored, equalTo(true));
+        assertThat(breaker.getState(), equalTo(CircuitBreaker.State.CLOSED));
+    }
+
+    @Test
+    public void shouldWaitLongerAfterEveryFailedRetry() throws InterruptedException {
+        // given
+        CircuitBreaker breaker = new CircuitBreaker(1, 1, 4);
+        breaker.recordFailure("down");
+
+        // when
+        for (int i = 0; i < 3; i++) {
+            Thread.sleep(10);
+            assertThat(breaker.allowRequest(), equalTo(true));
+            breaker.recordFailure("still down");
+        }
+
+        // then
+        assertThat(breaker.getRetryDelay(), equalTo(4L));
+        assertThat(breaker.getState(), equalTo(CircuitBreaker.State.OPEN));
+    }
+}
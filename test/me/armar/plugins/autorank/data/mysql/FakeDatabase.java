@@ -0,0 +1,310 @@
+package me.armar.plugins.autorank.data.mysql;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * A JDBC driver that pretends to be a MySQL database, so SQL code can be tested
+ * without a database. It remembers every statement that is executed, with its
+ * parameters, and answers queries with rows that were given beforehand.
+ * <p>
+ * Connect to it with {@link SQLDataStorage} and {@link #HOST} as host name.
+ */
+class FakeDatabase implements Driver {
+
+    static final String HOST = "fake-autorank-database";
+
+    private final List<String> statements = Collections.synchronizedList(new ArrayList<String>());
+
+    private final List<Object[]> parameters = Collections.synchronizedList(new ArrayList<Object[]>());
+
+    // Rows to answer queries with, in the order they were given
+    private final List<Answer> answers = new LinkedList<Answer>();
+
+    private final List<String> failures = new ArrayList<String>();
+
+    private static class Answer {
+
+        private final String sqlPart;
+        private final List<Object[]> rows;
+
+        Answer(final String sqlPart, final List<Object[]> rows) {
+            this.sqlPart = sqlPart;
+            this.rows = rows;
+        }
+    }
+
+    void register() throws SQLException {
+        DriverManager.registerDriver(this);
+    }
+
+    void deregister() throws SQLException {
+        DriverManager.deregisterDriver(this);
+    }
+
+    /**
+     * Answer the next query that contains the given part with the given rows.
+     */
+    synchronized void answer(final String sqlPart, final Object[]... rows) {
+        answers.add(new Answer(sqlPart, Arrays.asList(rows)));
+    }
+
+    /**
+     * Let statements that contain the given part fail.
+     */
+    synchronized void fail(final String sqlPart) {
+        failures.add(sqlPart);
+    }
+
+    /**
+     * Get all statements that were executed, in order.
+     */
+    List<String> getStatements() {
+        synchronized (statements) {
+            return new ArrayList<String>(statements);
+        }
+    }
+
+    /**
+     * Get the statements that were executed and contain the given part.
+     */
+    List<String> getStatements(final String sqlPart) {
+        final List<String> found = new ArrayList<String>();
+
+        for (final String sql : getStatements()) {
+            if (sql.contains(sqlPart)) {
+                found.add(sql);
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * Get the parameters of the last statement that contains the given part.
+     *
+     * @return the parameters, or null if there is no such statement.
+     */
+    Object[] getParameters(final String sqlPart) {
+        synchronized (statements) {
+            for (int i = statements.size() - 1; i >= 0; i--) {
+                if (statements.get(i).contains(sqlPart)) {
+                    return parameters.get(i);
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private synchronized List<Object[]> takeAnswer(final String sql) {
+        for (int i = 0; i < answers.size(); i++) {
+            if (sql.contains(answers.get(i).sqlPart)) {
+                return answers.remove(i).rows;
+            }
+        }
+
+        return Collections.emptyList();
+    }
+
+    private synchronized void checkFailure(final String sql) throws SQLException {
+        for (final String failure : failures) {
+            if (sql.contains(failure)) {
+                throw new SQLException("Statement failed on purpose", "42000");
+            }
+        }
+    }
+
+    @Override
+    public Connection connect(final String url, final Properties info) throws SQLException {
+        if (!acceptsURL(url)) {
+            return null;
+        }
+
+        return proxy(Connection.class, new InvocationHandler() {
+
+            private boolean autoCommit = true, closed = false;
+
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                final String name = method.getName();
+
+                if (name.equals("prepareStatement")) {
+                    return prepareStatement((String) args[0]);
+                } else if (name.equals("setAutoCommit")) {
+                    autoCommit = (Boolean) args[0];
+                } else if (name.equals("getAutoCommit")) {
+                    return autoCommit;
+                } else if (name.equals("close")) {
+                    closed = true;
+                } else if (name.equals("isClosed")) {
+                    return closed;
+                } else if (name.equals("isValid")) {
+                    return !closed;
+                }
+
+                return defaultValue(method);
+            }
+        });
+    }
+
+    private PreparedStatement prepareStatement(final String sql) {
+        return proxy(PreparedStatement.class, new InvocationHandler() {
+
+            private final List<Object> values = new ArrayList<Object>();
+
+            private final List<Object[]> batch = new ArrayList<Object[]>();
+
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                final String name = method.getName();
+
+                if (name.startsWith("set") && args != null && args.length == 2 && args[0] instanceof Integer) {
+                    final int index = (Integer) args[0] - 1;
+
+                    while (values.size() <= index) {
+                        values.add(null);
+                    }
+
+                    values.set(index, args[1]);
+                } else if (name.equals("addBatch")) {
+                    batch.add(values.toArray());
+                    values.clear();
+                } else if (name.equals("executeBatch")) {
+                    for (final Object[] row : batch) {
+                        record(row);
+                    }
+
+                    final int[] counts = new int[batch.size()];
+                    batch.clear();
+                    return counts;
+                } else if (name.equals("execute") || name.equals("executeUpdate")) {
+                    record(values.toArray());
+                    return name.equals("execute") ? (Object) false : (Object) 0;
+                } else if (name.equals("executeQuery")) {
+                    record(values.toArray());
+                    return resultSet(takeAnswer(sql));
+                }
+
+                return defaultValue(method);
+            }
+
+            private void record(final Object[] row) throws SQLException {
+                synchronized (statements) {
+                    statements.add(sql);
+                    parameters.add(row);
+                }
+
+                checkFailure(sql);
+            }
+        });
+    }
+
+    private static ResultSet resultSet(final List<Object[]> rows) {
+        return proxy(ResultSet.class, new InvocationHandler() {
+
+            private int row = -1;
+
+            private Object last;
+
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                final String name = method.getName();
+
+                if (name.equals("next")) {
+                    return ++row < rows.size();
+                } else if (name.equals("wasNull")) {
+                    return last == null;
+                } else if (name.startsWith("get") && args != null && args.length == 1
+                        && args[0] instanceof Integer) {
+                    last = rows.get(row)[(Integer) args[0] - 1];
+
+                    if (name.equals("getString")) {
+                        return last == null ? null : last.toString();
+                    } else if (name.equals("getInt")) {
+                        return last == null ? 0 : ((Number) last).intValue();
+                    } else if (name.equals("getLong")) {
+                        return last == null ? 0L : ((Number) last).longValue();
+                    }
+
+                    return last;
+                }
+
+                return defaultValue(method);
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(final Class<T> type, final InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(FakeDatabase.class.getClassLoader(), new Class<?>[] { type }, handler);
+    }
+
+    private static Object defaultValue(final Method method) {
+        final Class<?> type = method.getReturnType();
+
+        if (type == boolean.class) {
+            return false;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == short.class) {
+            return (short) 0;
+        } else if (type == byte.class) {
+            return (byte) 0;
+        } else if (type == double.class) {
+            return 0.0;
+        } else if (type == float.class) {
+            return 0.0f;
+        }
+
+        return null;
+    }
+
+    @Override
+    public boolean acceptsURL(final String url) {
+        return url != null && url.startsWith("jdbc:mysql://" + HOST + "/");
+    }
+
+    @Override
+    public DriverPropertyInfo[] getPropertyInfo(final String url, final Properties info) {
+        return new DriverPropertyInfo[0];
+    }
+
+    @Override
+    public int getMajorVersion() {
+        return 1;
+    }
+
+    @Override
+    public int getMinorVersion() {
+        return 0;
+    }
+
+    @Override
+    public boolean jdbcCompliant() {
+        return false;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+}
@@ -0,0 +1,74 @@
+package me.armar.plugins.autorank.data.mysql;
+
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test for {@link GlobalTimeCache}.
+ */
+public class GlobalTimeCacheTest {
+
+    @Test
+    public void shouldReturnFreshTimes() {
+        // given
+        GlobalTimeCache cache = new GlobalTimeCache(60000, 10);
+        UUID uuid = UUID.randomUUID();
+
+        // when
+        cache.put(uuid, 30);
+        cache.add(uuid, 5);
+
+        // then
+        assertThat(cache.get(uuid), equalTo(35));
+        assertThat(cache.isFresh(uuid), equalTo(true));
+        assertThat(cache.needsRefresh(uuid), equalTo(false));
+    }
+
+    @Test
+    public void shouldNotReturnExpiredTimes() {
+        // given
+        GlobalTimeCache cache = new GlobalTimeCache(0, 10);
+        UUID uuid = UUID.randomUUID();
+
+        // when
+        cache.put(uuid, 30);
+
+        // then
+        assertThat(cache.get(uuid), nullValue());
+        assertThat(cache.peek(uuid), equalTo(30));
+        assertThat(cache.needsRefresh(uuid), equalTo(true));
+    }
+
+    @Test
+    public void shouldNotAddToTimesThatAreNotCached() {
+        // given
+        GlobalTimeCache cache = new GlobalTimeCache(60000, 10);
+        UUID uuid = UUID.randomUUID();
+
+        // when
+        cache.add(uuid, 5);
+
+        // then
+        assertThat(cache.peek(uuid), nullValue());
+    }
+
+    @Test
+    public void shouldStayWithinMaximumSize() {
+        // given
+        GlobalTimeCache cache = new GlobalTimeCache(60000, 100);
+
+        // when
+        for (int i = 0; i < 1000; i++) {
+            cache.put(UUID.randomUUID(), i);
+        }
+
+        // then
+        assertThat(cache.size(), lessThanOrEqualTo(100));
+    }
+}
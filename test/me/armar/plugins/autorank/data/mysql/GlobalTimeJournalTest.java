@@ -0,0 +1,118 @@
+package me.armar.plugins.autorank.data.mysql;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test for {@link GlobalTimeJournal}.
+ */
+public class GlobalTimeJournalTest {
+
+    private File file;
+
+    @Before
+    public void createFile() throws IOException {
+        file = File.createTempFile("global_times", ".journal");
+        file.delete();
+    }
+
+    @After
+    public void deleteFile() {
+        file.delete();
+    }
+
+    @Test
+    public void shouldSkipChangesThatWereWritten() {
+        // given
+        GlobalTimeJournal journal = new GlobalTimeJournal(file, Logger.getAnonymousLogger());
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        journal.append(added(first, 5));
+        journal.append(added(second, 10));
+
+        // when
+        List<GlobalTimeJournal.Batch> batches = journal.read(100, 1);
+
+        // then
+        assertThat(batches, hasSize(1));
+        assertThat(batches.get(0).getSequence(), equalTo(2L));
+        assertThat(batches.get(0).getChanges().apply(first, 100), equalTo(100));
+        assertThat(batches.get(0).getChanges().apply(second, 100), equalTo(110));
+    }
+
+    @Test
+    public void shouldKeepSequenceAndIdWhenOpenedAgain() {
+        // given
+        GlobalTimeJournal journal = new GlobalTimeJournal(file, Logger.getAnonymousLogger());
+        journal.append(added(UUID.randomUUID(), 5));
+
+        // when
+        GlobalTimeJournal reopened = new GlobalTimeJournal(file, Logger.getAnonymousLogger());
+        reopened.append(added(UUID.randomUUID(), 5));
+
+        // then
+        assertThat(reopened.getId(), equalTo(journal.getId()));
+        assertThat(reopened.size(), equalTo(2));
+        assertThat(reopened.read(100, 0).get(0).getSequence(), equalTo(2L));
+    }
+
+    @Test
+    public void shouldOnlyKeepChangesThatWereNotWrittenWhenRewriting() {
+        // given
+        GlobalTimeJournal journal = new GlobalTimeJournal(file, Logger.getAnonymousLogger());
+        UUID second = UUID.randomUUID();
+        journal.append(added(UUID.randomUUID(), 5));
+        journal.append(added(second, 10));
+
+        // when
+        boolean rewritten = journal.rewrite(1);
+
+        // then
+        assertThat(rewritten, equalTo(true));
+        assertThat(journal.size(), equalTo(1));
+
+        List<GlobalTimeJournal.Batch> batches = journal.read(100, 0);
+        assertThat(batches, hasSize(1));
+        assertThat(batches.get(0).getSequence(), equalTo(2L));
+        assertThat(batches.get(0).getChanges().apply(second, 0), equalTo(10));
+    }
+
+    @Test
+    public void shouldChooseNewIdAfterClearing() {
+        // given
+        GlobalTimeJournal journal = new GlobalTimeJournal(file, Logger.getAnonymousLogger());
+        journal.append(added(UUID.randomUUID(), 5));
+        String id = journal.getId();
+
+        // when
+        journal.clear();
+
+        // then
+        assertThat(journal.getId(), nullValue());
+        assertThat(journal.isEmpty(), equalTo(true));
+
+        journal.append(added(UUID.randomUUID(), 5));
+        assertThat(journal.getId(), notNullValue());
+        assertThat(journal.getId().equals(id), equalTo(false));
+        assertThat(journal.read(100, 0).get(0).getSequence(), equalTo(1L));
+    }
+
+    private static PendingTimeChanges added(final UUID uuid, final int minutes) {
+        PendingTimeChanges changes = new PendingTimeChanges();
+        changes.addTime(uuid, minutes);
+        return changes;
+    }
+}
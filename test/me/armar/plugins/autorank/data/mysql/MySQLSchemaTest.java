@@ -0,0 +1,187 @@
+package me.armar.plugins.autorank.data.mysql;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import me.armar.plugins.autorank.Autorank;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Test for {@link MySQLSchema}.
+ */
+public class MySQLSchemaTest {
+
+    private static final String LAST_UUID = "ffffffff-ffff-ffff-ffff-ffffffffffff";
+
+    private FakeDatabase database;
+
+    private SQLDataStorage mysql;
+
+    private final List<String> messages = new ArrayList<String>();
+
+    private MySQLSchema schema;
+
+    @Before
+    public void connect() throws SQLException {
+        database = new FakeDatabase();
+        database.register();
+
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        logger.addHandler(new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                messages.add(record.getMessage());
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+
+        mysql = new SQLDataStorage(FakeDatabase.HOST, "autorank", "", "minecraft", 2, logger);
+        assertThat(mysql.connect(), equalTo(true));
+
+        schema = new MySQLSchema(mock(Autorank.class), logger, mysql, "autorank");
+    }
+
+    @After
+    public void disconnect() throws SQLException {
+        mysql.closeConnection();
+        database.deregister();
+    }
+
+    @Test
+    public void shouldCreateBinaryTableWhenThereIsNoTable() {
+        // given
+        // information_schema has no uuid column
+
+        // when
+        boolean loaded = schema.load();
+
+        // then
+        assertThat(loaded, equalTo(true));
+        assertThat(schema.isMigrating(), equalTo(false));
+        assertThat(schema.getWriteTable().getName(), equalTo("`autorank`"));
+        assertThat(database.getStatements("CREATE TABLE IF NOT EXISTS `autorank` (uuid BINARY(16)"), hasSize(1));
+        assertThat(database.getParameters("ON DUPLICATE KEY UPDATE version"),
+                equalTo(new Object[] { "autorank", MySQLSchema.BINARY_VERSION }));
+    }
+
+    @Test
+    public void shouldCopyLegacyTableAndRenameIt() {
+        // given
+        database.answer("information_schema", new Object[] { "varchar" });
+        database.answer("SELECT MAX(uuid)", new Object[] { LAST_UUID });
+        database.answer("SELECT MAX(uuid)", new Object[] { null });
+
+        // when
+        schema.load();
+        boolean migrating = schema.isMigrating();
+        schema.migrate();
+
+        // then
+        assertThat(migrating, equalTo(true));
+        assertThat(database.getParameters("INSERT IGNORE INTO autorank_schema"),
+                equalTo(new Object[] { "autorank", MySQLSchema.VARCHAR_VERSION }));
+
+        List<String> copies = database.getStatements("INSERT IGNORE INTO `autorank_binary`");
+        assertThat(copies, hasSize(1));
+        assertThat(copies.get(0), containsString("UNHEX(REPLACE(uuid, '-', ''))"));
+        assertThat(copies.get(0), containsString("REGEXP '^[0-9a-fA-F]{32}$'"));
+        assertThat(database.getParameters("INSERT IGNORE INTO `autorank_binary`"),
+                equalTo(new Object[] { "", LAST_UUID }));
+
+        assertThat(database.getStatements(),
+                hasItem("RENAME TABLE `autorank` TO `autorank_varchar`, `autorank_binary` TO `autorank`"));
+        assertThat(database.getParameters("ON DUPLICATE KEY UPDATE version"),
+                equalTo(new Object[] { "autorank", MySQLSchema.BINARY_VERSION }));
+
+        assertThat(schema.isMigrating(), equalTo(false));
+        assertThat(schema.getWriteTable().getName(), equalTo("`autorank`"));
+    }
+
+    @Test
+    public void shouldReportRowsWithInvalidUUID() {
+        // given
+        database.answer("information_schema", new Object[] { "varchar" });
+        database.answer("SELECT MAX(uuid)", new Object[] { LAST_UUID });
+        database.answer("NOT (REPLACE(uuid, '-', '') REGEXP", new Object[] { "Notch" }, new Object[] { "1234" });
+        database.answer("SELECT MAX(uuid)", new Object[] { null });
+
+        // when
+        schema.load();
+        schema.migrate();
+
+        // then
+        assertThat(messages, hasItem(containsString("invalid UUID 'Notch'")));
+        assertThat(messages, hasItem(containsString("invalid UUID '1234'")));
+        assertThat(messages, hasItem(containsString("2 rows of MySQL table autorank had an invalid UUID")));
+    }
+
+    @Test
+    public void shouldNotRenameTableWhenCopyFails() {
+        // given
+        database.answer("information_schema", new Object[] { "varchar" });
+        database.answer("information_schema", new Object[] { "varchar" });
+        database.answer("SELECT MAX(uuid)", new Object[] { LAST_UUID });
+        database.fail("INSERT IGNORE INTO `autorank_binary`");
+
+        // when
+        schema.load();
+        schema.migrate();
+
+        // then
+        assertThat(database.getStatements("RENAME TABLE"), empty());
+        assertThat(schema.isMigrating(), equalTo(true));
+        assertThat(schema.getWriteTable().getName(), equalTo("`autorank_binary`"));
+    }
+
+    @Test
+    public void shouldConvertUUIDToBytesAndBack() {
+        // given
+        UUID uuid = UUID.randomUUID();
+
+        // when
+        byte[] bytes = MySQLSchema.toBytes(uuid);
+
+        // then
+        assertThat(bytes.length, equalTo(16));
+        assertThat(MySQLSchema.fromBytes(bytes), equalTo(uuid));
+    }
+
+    @Test
+    public void shouldStoreBytesInSameOrderAsHexString() {
+        // given
+        UUID uuid = UUID.fromString("01234567-89ab-cdef-0011-223344556677");
+
+        // when
+        byte[] bytes = MySQLSchema.toBytes(uuid);
+
+        // then
+        // UNHEX(REPLACE(uuid, '-', '')) gives the same bytes in MySQL
+        assertThat(bytes[0], equalTo((byte) 0x01));
+        assertThat(bytes[7], equalTo((byte) 0xef));
+        assertThat(bytes[15], equalTo((byte) 0x77));
+    }
+}
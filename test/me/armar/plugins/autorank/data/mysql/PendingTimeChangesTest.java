@@ -0,0 +1,91 @@
+package me.armar.plugins.autorank.data.mysql;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test for {@link PendingTimeChanges}.
+ */
+public class PendingTimeChangesTest {
+
+    @Test
+    public void shouldSumAddedMinutes() {
+        // given
+        PendingTimeChanges changes = new PendingTimeChanges();
+        UUID uuid = UUID.randomUUID();
+
+        // when
+        changes.addTime(uuid, 5);
+        changes.addTime(uuid, 5);
+
+        // then
+        assertThat(changes.getTime(uuid), nullValue());
+        assertThat(changes.apply(uuid, 100), equalTo(110));
+        assertThat(changes.apply(uuid, -1), equalTo(10));
+    }
+
+    @Test
+    public void shouldAddMinutesToTimeThatWasSet() {
+        // given
+        PendingTimeChanges changes = new PendingTimeChanges();
+        UUID uuid = UUID.randomUUID();
+        changes.addTime(uuid, 5);
+
+        // when
+        changes.setTime(uuid, 50);
+        changes.addTime(uuid, 5);
+
+        // then
+        assertThat(changes.getTime(uuid), equalTo(55));
+        assertThat(changes.apply(uuid, 100), equalTo(55));
+    }
+
+    @Test
+    public void shouldKeepNewerChangesWhenRestoring() {
+        // given
+        PendingTimeChanges changes = new PendingTimeChanges();
+        UUID added = UUID.randomUUID();
+        UUID set = UUID.randomUUID();
+        changes.addTime(added, 5);
+        changes.setTime(set, 20);
+
+        PendingTimeChanges failed = changes.drain();
+
+        changes.addTime(added, 3);
+        changes.addTime(set, 2);
+
+        // when
+        changes.restore(failed);
+
+        // then
+        assertThat(changes.apply(added, 100), equalTo(108));
+        assertThat(changes.getTime(set), equalTo(22));
+    }
+
+    @Test
+    public void shouldApplyChangesToStoredTimes() {
+        // given
+        PendingTimeChanges changes = new PendingTimeChanges();
+        UUID stored = UUID.randomUUID();
+        UUID notStored = UUID.randomUUID();
+        changes.addTime(stored, 5);
+        changes.addTime(notStored, 7);
+
+        Map<UUID, Integer> times = new HashMap<UUID, Integer>();
+        times.put(stored, 10);
+
+        // when
+        changes.applyAll(times);
+
+        // then
+        assertThat(times.get(stored), equalTo(15));
+        assertThat(times.get(notStored), equalTo(7));
+    }
+}
@@ -0,0 +1,60 @@
+package me.armar.plugins.autorank.data.storage;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import me.armar.plugins.autorank.data.flatfile.FlatFileManager.TimeType;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test for {@link MemoryStorageProvider}.
+ */
+public class MemoryStorageProviderTest {
+
+    @Test
+    public void shouldAddTimesOfManyPlayers() {
+        // given
+        MemoryStorageProvider storage = new MemoryStorageProvider(null);
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        storage.setPlaytime(TimeType.TOTAL_TIME, first, 10);
+
+        Map<UUID, Integer> times = new HashMap<UUID, Integer>();
+        times.put(first, 5);
+        times.put(second, 7);
+
+        // when
+        storage.addPlaytimes(TimeType.TOTAL_TIME, times);
+
+        // then
+        assertThat(storage.getPlaytime(TimeType.TOTAL_TIME, first), equalTo(15));
+        assertThat(storage.getPlaytime(TimeType.TOTAL_TIME, second), equalTo(7));
+        assertThat(storage.getPlaytime(TimeType.DAILY_TIME, first), equalTo(0));
+    }
+
+    @Test
+    public void shouldReturnBestPlayersInOrder() {
+        // given
+        MemoryStorageProvider storage = new MemoryStorageProvider(null);
+        UUID[] uuids = new UUID[100];
+
+        for (int i = 0; i < uuids.length; i++) {
+            uuids[i] = UUID.randomUUID();
+            storage.setPlaytime(TimeType.WEEKLY_TIME, uuids[i], (i * 37) % 100);
+        }
+
+        // when
+        Map<UUID, Integer> top = storage.getTopPlaytimes(TimeType.WEEKLY_TIME, 3);
+
+        // then
+        assertThat(new ArrayList<Integer>(top.values()), contains(99, 98, 97));
+        assertThat(top.get(uuids[27]), equalTo(99));
+    }
+}